@@ -0,0 +1,26 @@
+package com.hyman.springbootwar.cache;
+
+/**
+ * 某种参数类型参与缓存 key 计算的方式，注册为 bean 后由 HashedKeyGenerator 使用。
+ *
+ * 只写入能区分这个参数的内容，例如实体只写 id；写入的内容相同的两个参数生成的 key 相同。对 type 的子类同样生效。
+ *
+ * @param <T>
+ */
+public interface CacheKeyExtractor<T> {
+
+    /**
+     * 处理的参数类型
+     *
+     * @return
+     */
+    Class<T> getType();
+
+    /**
+     * 把参数写入 hasher，不需要自己写类型信息
+     *
+     * @param value  不为 null
+     * @param hasher
+     */
+    void extract(T value, KeyHasher hasher);
+}
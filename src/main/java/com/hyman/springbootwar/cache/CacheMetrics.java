@@ -0,0 +1,65 @@
+package com.hyman.springbootwar.cache;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 单个缓存名的命中率与耗时，本地一级缓存（l1）和 redis（l2）分开统计。都是 LongAdder，热路径上只有一次自增。
+ */
+public class CacheMetrics {
+
+    private final Tier local = new Tier();
+    private final Tier remote = new Tier();
+
+    public Tier getLocal() {
+        return local;
+    }
+
+    public Tier getRemote() {
+        return remote;
+    }
+
+    public Map<String, Object> snapshot(String name) {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("name", name);
+        result.put("l1", local.snapshot());
+        result.put("l2", remote.snapshot());
+        return result;
+    }
+
+    /**
+     * 一级缓存的统计
+     */
+    public static class Tier {
+
+        private final LongAdder hits = new LongAdder();
+        private final LongAdder misses = new LongAdder();
+        private final LongAdder nanos = new LongAdder();
+        private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+        public void record(boolean hit, long elapsedNanos) {
+            if (hit) {
+                hits.increment();
+            } else {
+                misses.increment();
+            }
+            nanos.add(elapsedNanos);
+            maxNanos.accumulate(elapsedNanos);
+        }
+
+        public Map<String, Object> snapshot() {
+            long hit = hits.sum();
+            long miss = misses.sum();
+            long total = hit + miss;
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("hits", hit);
+            result.put("misses", miss);
+            result.put("hitRatio", total == 0 ? 0 : (double) hit / total);
+            result.put("avgMicros", total == 0 ? 0 : nanos.sum() / total / 1000.0);
+            result.put("maxMicros", maxNanos.get() / 1000.0);
+            return result;
+        }
+    }
+}
@@ -0,0 +1,201 @@
+package com.hyman.springbootwar.cache;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 缓存相关配置，从全局配置文件 hyman.cache 下读取
+ */
+@Component
+@ConfigurationProperties(prefix = "hyman.cache")
+public class CacheProperties {
+
+    private Local local = new Local();
+    private Invalidation invalidation = new Invalidation();
+    private Spec defaults = Spec.defaults();
+    // 缓存名 -> 配置，没有配置的项使用 defaults 中的值
+    private Map<String, Spec> caches = new LinkedHashMap<>();
+
+    public Local getLocal() {
+        return local;
+    }
+
+    public void setLocal(Local local) {
+        this.local = local;
+    }
+
+    public Invalidation getInvalidation() {
+        return invalidation;
+    }
+
+    public void setInvalidation(Invalidation invalidation) {
+        this.invalidation = invalidation;
+    }
+
+    public Spec getDefaults() {
+        return defaults;
+    }
+
+    public void setDefaults(Spec defaults) {
+        this.defaults = defaults;
+    }
+
+    public Map<String, Spec> getCaches() {
+        return caches;
+    }
+
+    public void setCaches(Map<String, Spec> caches) {
+        this.caches = caches;
+    }
+
+    /**
+     * 某个缓存名最终生效的配置：单独配置的项覆盖 defaults
+     *
+     * @param name
+     * @return
+     */
+    public Spec resolve(String name) {
+        Spec spec = caches.get(name);
+        if (spec == null) {
+            return defaults;
+        }
+        Spec resolved = new Spec();
+        resolved.setTtlMillis(spec.getTtlMillis() != null ? spec.getTtlMillis() : defaults.getTtlMillis());
+        resolved.setMaxValueBytes(spec.getMaxValueBytes() != null ? spec.getMaxValueBytes() : defaults.getMaxValueBytes());
+        resolved.setSerializer(spec.getSerializer() != null ? spec.getSerializer() : defaults.getSerializer());
+        resolved.setType(spec.getType() != null ? spec.getType() : defaults.getType());
+        resolved.setKeyPrefix(spec.getKeyPrefix() != null ? spec.getKeyPrefix() : defaults.getKeyPrefix());
+        return resolved;
+    }
+
+    /**
+     * 本地一级缓存，每个缓存名一个，按条数和写入时间淘汰
+     */
+    public static class Local {
+
+        // 关闭后直接使用 redis 缓存
+        private boolean enabled = true;
+        // 每个缓存名最多保存的条数
+        private long maxSize = 10_000;
+        // 写入后多久过期（毫秒），其他节点的失效通知丢失时最多读到这么久的旧值
+        private long ttlMillis = 60_000;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public long getMaxSize() {
+            return maxSize;
+        }
+
+        public void setMaxSize(long maxSize) {
+            this.maxSize = maxSize;
+        }
+
+        public long getTtlMillis() {
+            return ttlMillis;
+        }
+
+        public void setTtlMillis(long ttlMillis) {
+            this.ttlMillis = ttlMillis;
+        }
+    }
+
+    /**
+     * 跨节点失效：写入、删除时通过 redis pub/sub 通知其他节点清掉本地缓存
+     */
+    public static class Invalidation {
+
+        private String channel = "cache:invalidate";
+        // 节点标识，为空时启动时随机生成，用来忽略自己发出的通知
+        private String nodeId;
+
+        public String getChannel() {
+            return channel;
+        }
+
+        public void setChannel(String channel) {
+            this.channel = channel;
+        }
+
+        public String getNodeId() {
+            return nodeId;
+        }
+
+        public void setNodeId(String nodeId) {
+            this.nodeId = nodeId;
+        }
+    }
+
+    /**
+     * 单个缓存名的配置。各项为 null 表示使用 defaults 中的值
+     */
+    public static class Spec {
+
+        // 过期时间（毫秒），0 表示不过期
+        private Long ttlMillis;
+        // 序列化后的最大字节数，超过时不写入缓存，0 表示不限制
+        private Integer maxValueBytes;
+        // value 的序列化方式
+        private CacheSerializer serializer;
+        // value 的类型，json 按类型序列化（不写类名）和 binary 需要
+        private Class<?> type;
+        // redis key 前缀，为空时使用默认的 {缓存名}::
+        private String keyPrefix;
+
+        static Spec defaults() {
+            Spec spec = new Spec();
+            spec.setTtlMillis(0L);
+            spec.setMaxValueBytes(0);
+            spec.setSerializer(CacheSerializer.JDK);
+            return spec;
+        }
+
+        public Long getTtlMillis() {
+            return ttlMillis;
+        }
+
+        public void setTtlMillis(Long ttlMillis) {
+            this.ttlMillis = ttlMillis;
+        }
+
+        public Integer getMaxValueBytes() {
+            return maxValueBytes;
+        }
+
+        public void setMaxValueBytes(Integer maxValueBytes) {
+            this.maxValueBytes = maxValueBytes;
+        }
+
+        public CacheSerializer getSerializer() {
+            return serializer;
+        }
+
+        public void setSerializer(CacheSerializer serializer) {
+            this.serializer = serializer;
+        }
+
+        public Class<?> getType() {
+            return type;
+        }
+
+        public void setType(Class<?> type) {
+            this.type = type;
+        }
+
+        public String getKeyPrefix() {
+            return keyPrefix;
+        }
+
+        public void setKeyPrefix(String keyPrefix) {
+            this.keyPrefix = keyPrefix;
+        }
+    }
+}
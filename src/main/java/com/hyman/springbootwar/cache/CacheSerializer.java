@@ -0,0 +1,22 @@
+package com.hyman.springbootwar.cache;
+
+/**
+ * 缓存 value 的序列化方式
+ */
+public enum CacheSerializer {
+
+    /**
+     * JDK 序列化（RedisCacheConfiguration 的默认方式），value 必须实现 Serializable，体积大、速度慢
+     */
+    JDK,
+
+    /**
+     * jackson json。配置了 type 时按类型序列化，不写类名；否则写入 @class 类型信息，可以缓存任意类型
+     */
+    JSON,
+
+    /**
+     * 紧凑二进制（CompactBinaryRedisSerializer），必须配置 type，只支持基本类型、包装类型、String、Date、枚举字段
+     */
+    BINARY
+}
@@ -0,0 +1,72 @@
+package com.hyman.springbootwar.cache;
+
+import com.fasterxml.jackson.annotation.JsonAutoDetect;
+import com.fasterxml.jackson.annotation.PropertyAccessor;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.data.redis.cache.RedisCacheConfiguration;
+import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
+import org.springframework.data.redis.serializer.Jackson2JsonRedisSerializer;
+import org.springframework.data.redis.serializer.JdkSerializationRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializationContext;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.thymeleaf.util.StringUtils;
+
+import java.time.Duration;
+
+/**
+ * 把 CacheProperties.Spec 转换为 RedisCacheManager 使用的 RedisCacheConfiguration
+ */
+public final class CacheSpecs {
+
+    private CacheSpecs() {
+    }
+
+    /**
+     * 某个缓存的 redis 配置：过期时间、value 序列化方式、key 前缀
+     *
+     * @param spec 已经合并过 defaults 的配置，见 CacheProperties.resolve
+     * @return
+     */
+    public static RedisCacheConfiguration toConfiguration(CacheProperties.Spec spec) {
+        RedisCacheConfiguration config = RedisCacheConfiguration.defaultCacheConfig()
+                .serializeValuesWith(RedisSerializationContext.SerializationPair.fromSerializer(serializer(spec)));
+        if (spec.getTtlMillis() != null && spec.getTtlMillis() > 0) {
+            config = config.entryTtl(Duration.ofMillis(spec.getTtlMillis()));
+        }
+        if (!StringUtils.isEmpty(spec.getKeyPrefix())) {
+            config = config.prefixKeysWith(spec.getKeyPrefix());
+        }
+        return config;
+    }
+
+    /**
+     * value 的序列化器
+     *
+     * @param spec
+     * @return
+     */
+    public static RedisSerializer<Object> serializer(CacheProperties.Spec spec) {
+        CacheSerializer serializer = spec.getSerializer() == null ? CacheSerializer.JDK : spec.getSerializer();
+        switch (serializer) {
+            case JSON:
+                if (spec.getType() == null) {
+                    // 写入 @class，能缓存任意类型，NullValue 也已经处理
+                    return new GenericJackson2JsonRedisSerializer();
+                }
+                Jackson2JsonRedisSerializer<?> json = new Jackson2JsonRedisSerializer<>(spec.getType());
+                ObjectMapper om = new ObjectMapper();
+                om.setVisibility(PropertyAccessor.FIELD, JsonAutoDetect.Visibility.ANY);
+                om.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+                json.setObjectMapper(om);
+                return new NullValueAwareSerializer(json);
+            case BINARY:
+                if (spec.getType() == null) {
+                    throw new IllegalStateException("缓存序列化方式为 binary 时必须配置 type");
+                }
+                return new NullValueAwareSerializer(new CompactBinaryRedisSerializer<>(spec.getType()));
+            default:
+                return new JdkSerializationRedisSerializer(CacheSpecs.class.getClassLoader());
+        }
+    }
+}
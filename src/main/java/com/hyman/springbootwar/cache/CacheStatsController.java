@@ -0,0 +1,36 @@
+package com.hyman.springbootwar.cache;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.CacheManager;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 缓存运行指标：每个缓存名本地一级缓存与 redis 的命中率、平均/最大耗时，值太大没有写入的次数（oversizedSkipped）。没有开启本地
+ * 缓存时只有加载与合并加载的次数
+ *
+ * http://localhost:8088/cache/stats
+ */
+@RestController
+@RequestMapping("/cache/stats")
+public class CacheStatsController {
+
+    @Autowired
+    private CacheManager cacheManager;
+
+    @GetMapping
+    public List<Map<String, Object>> caches() {
+        if (cacheManager instanceof TwoLevelCacheManager) {
+            return ((TwoLevelCacheManager) cacheManager).stats();
+        }
+        if (cacheManager instanceof SingleFlightCacheManager) {
+            return ((SingleFlightCacheManager) cacheManager).stats();
+        }
+        return Collections.emptyList();
+    }
+}
@@ -0,0 +1,383 @@
+package com.hyman.springbootwar.cache;
+
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * 按类型的紧凑二进制序列化。
+ *
+ * 创建时按类型把字段（包括父类字段，跳过 static、transient）排好序并确定每个字段的编码方式，序列化时不写类名、字段名：
+ * [4 字节结构签名][可为 null 的字段的 null 位图][各字段的值]。整数用 zigzag 变长编码，String 为变长长度 + UTF-8，Date 为毫秒数，
+ * 枚举为序号。同样一个 User，体积约为 JDK 序列化的几十分之一，也不需要反射创建 ObjectStreamClass。
+ *
+ * 类的字段有增删改时结构签名会变化，旧数据反序列化为 null，按未命中处理，不会读出错位的数据。只支持基本类型、包装类型、String、
+ * Date、枚举字段，其他字段类型在创建时直接报错。缓存的 null 值（NullValue）由外层的 NullValueAwareSerializer 处理。
+ *
+ * @param <T>
+ */
+public class CompactBinaryRedisSerializer<T> implements RedisSerializer<T> {
+
+    private final Class<T> type;
+    private final Constructor<T> constructor;
+    private final Field[] fields;
+    private final Codec[] codecs;
+    private final int nullableCount;
+    private final int signature;
+
+    public CompactBinaryRedisSerializer(Class<T> type) {
+        this.type = type;
+        try {
+            this.constructor = type.getDeclaredConstructor();
+            this.constructor.setAccessible(true);
+        } catch (NoSuchMethodException e) {
+            throw new IllegalArgumentException(type.getName() + " 没有无参构造方法，不能使用二进制序列化", e);
+        }
+        List<Field> all = new ArrayList<>();
+        for (Class<?> current = type; current != null && current != Object.class; current = current.getSuperclass()) {
+            Field[] declared = current.getDeclaredFields();
+            Arrays.sort(declared, Comparator.comparing(Field::getName));
+            List<Field> own = new ArrayList<>();
+            for (Field field : declared) {
+                int modifiers = field.getModifiers();
+                if (!Modifier.isStatic(modifiers) && !Modifier.isTransient(modifiers) && !field.isSynthetic()) {
+                    field.setAccessible(true);
+                    own.add(field);
+                }
+            }
+            // 父类字段在前
+            all.addAll(0, own);
+        }
+        this.fields = all.toArray(new Field[0]);
+        this.codecs = new Codec[fields.length];
+        StringBuilder shape = new StringBuilder(type.getName());
+        int nullable = 0;
+        for (int i = 0; i < fields.length; i++) {
+            codecs[i] = Codec.of(fields[i]);
+            if (!fields[i].getType().isPrimitive()) {
+                nullable++;
+            }
+            shape.append(';').append(fields[i].getName()).append(':').append(fields[i].getType().getName());
+        }
+        this.nullableCount = nullable;
+        this.signature = shape.toString().hashCode();
+    }
+
+    @Override
+    public byte[] serialize(T value) throws SerializationException {
+        if (value == null) {
+            return new byte[0];
+        }
+        if (!type.isInstance(value)) {
+            throw new SerializationException(value.getClass().getName() + " 不是 " + type.getName() + " 类型");
+        }
+        try {
+            Output out = new Output(64);
+            out.writeInt(signature);
+            byte[] nulls = new byte[(nullableCount + 7) / 8];
+            Object[] values = new Object[fields.length];
+            int bit = 0;
+            for (int i = 0; i < fields.length; i++) {
+                values[i] = fields[i].get(value);
+                if (!fields[i].getType().isPrimitive()) {
+                    if (values[i] == null) {
+                        nulls[bit >> 3] |= 1 << (bit & 7);
+                    }
+                    bit++;
+                }
+            }
+            out.writeBytes(nulls);
+            for (int i = 0; i < fields.length; i++) {
+                if (values[i] != null) {
+                    codecs[i].write(out, values[i]);
+                }
+            }
+            return out.toByteArray();
+        } catch (IllegalAccessException e) {
+            throw new SerializationException("序列化 " + type.getName() + " 失败", e);
+        }
+    }
+
+    @Override
+    public T deserialize(byte[] bytes) throws SerializationException {
+        if (bytes == null || bytes.length == 0) {
+            return null;
+        }
+        Input in = new Input(bytes);
+        if (bytes.length < 4 || in.readInt() != signature) {
+            // 类结构已经变化，旧数据当作未命中
+            return null;
+        }
+        try {
+            T value = constructor.newInstance();
+            byte[] nulls = in.readBytes((nullableCount + 7) / 8);
+            int bit = 0;
+            for (int i = 0; i < fields.length; i++) {
+                boolean isNull = false;
+                if (!fields[i].getType().isPrimitive()) {
+                    isNull = (nulls[bit >> 3] & (1 << (bit & 7))) != 0;
+                    bit++;
+                }
+                if (!isNull) {
+                    fields[i].set(value, codecs[i].read(in, fields[i].getType()));
+                }
+            }
+            return value;
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            throw new SerializationException("反序列化 " + type.getName() + " 失败", e);
+        }
+    }
+
+    /**
+     * 字段的编码方式
+     */
+    private enum Codec {
+        INT {
+            void write(Output out, Object value) {
+                out.writeVarLong(((Number) value).intValue());
+            }
+
+            Object read(Input in, Class<?> type) {
+                return (int) in.readVarLong();
+            }
+        },
+        LONG {
+            void write(Output out, Object value) {
+                out.writeVarLong((Long) value);
+            }
+
+            Object read(Input in, Class<?> type) {
+                return in.readVarLong();
+            }
+        },
+        SHORT {
+            void write(Output out, Object value) {
+                out.writeVarLong((Short) value);
+            }
+
+            Object read(Input in, Class<?> type) {
+                return (short) in.readVarLong();
+            }
+        },
+        BYTE {
+            void write(Output out, Object value) {
+                out.write((Byte) value);
+            }
+
+            Object read(Input in, Class<?> type) {
+                return in.read();
+            }
+        },
+        CHAR {
+            void write(Output out, Object value) {
+                out.writeVarLong((Character) value);
+            }
+
+            Object read(Input in, Class<?> type) {
+                return (char) in.readVarLong();
+            }
+        },
+        BOOLEAN {
+            void write(Output out, Object value) {
+                out.write((Boolean) value ? 1 : 0);
+            }
+
+            Object read(Input in, Class<?> type) {
+                return in.read() != 0;
+            }
+        },
+        FLOAT {
+            void write(Output out, Object value) {
+                out.writeInt(Float.floatToIntBits((Float) value));
+            }
+
+            Object read(Input in, Class<?> type) {
+                return Float.intBitsToFloat(in.readInt());
+            }
+        },
+        DOUBLE {
+            void write(Output out, Object value) {
+                long bits = Double.doubleToLongBits((Double) value);
+                out.writeInt((int) (bits >>> 32));
+                out.writeInt((int) bits);
+            }
+
+            Object read(Input in, Class<?> type) {
+                long high = in.readInt() & 0xFFFFFFFFL;
+                long low = in.readInt() & 0xFFFFFFFFL;
+                return Double.longBitsToDouble(high << 32 | low);
+            }
+        },
+        STRING {
+            void write(Output out, Object value) {
+                byte[] bytes = ((String) value).getBytes(StandardCharsets.UTF_8);
+                out.writeVarLong(bytes.length);
+                out.writeBytes(bytes);
+            }
+
+            Object read(Input in, Class<?> type) {
+                int length = (int) in.readVarLong();
+                return new String(in.readBytes(length), StandardCharsets.UTF_8);
+            }
+        },
+        DATE {
+            void write(Output out, Object value) {
+                out.writeVarLong(((Date) value).getTime());
+            }
+
+            Object read(Input in, Class<?> type) {
+                return new Date(in.readVarLong());
+            }
+        },
+        ENUM {
+            void write(Output out, Object value) {
+                out.writeVarLong(((Enum<?>) value).ordinal());
+            }
+
+            Object read(Input in, Class<?> type) {
+                return type.getEnumConstants()[(int) in.readVarLong()];
+            }
+        };
+
+        abstract void write(Output out, Object value);
+
+        abstract Object read(Input in, Class<?> type);
+
+        static Codec of(Field field) {
+            Class<?> type = field.getType();
+            if (type == int.class || type == Integer.class) {
+                return INT;
+            }
+            if (type == long.class || type == Long.class) {
+                return LONG;
+            }
+            if (type == short.class || type == Short.class) {
+                return SHORT;
+            }
+            if (type == byte.class || type == Byte.class) {
+                return BYTE;
+            }
+            if (type == char.class || type == Character.class) {
+                return CHAR;
+            }
+            if (type == boolean.class || type == Boolean.class) {
+                return BOOLEAN;
+            }
+            if (type == float.class || type == Float.class) {
+                return FLOAT;
+            }
+            if (type == double.class || type == Double.class) {
+                return DOUBLE;
+            }
+            if (type == String.class) {
+                return STRING;
+            }
+            if (type == Date.class) {
+                return DATE;
+            }
+            if (type.isEnum()) {
+                return ENUM;
+            }
+            throw new IllegalArgumentException("字段 " + field.getDeclaringClass().getName() + "." + field.getName()
+                    + " 的类型 " + type.getName() + " 不支持二进制序列化");
+        }
+    }
+
+    private static final class Output {
+
+        private byte[] buffer;
+        private int size;
+
+        Output(int capacity) {
+            this.buffer = new byte[capacity];
+        }
+
+        void write(int b) {
+            ensure(1);
+            buffer[size++] = (byte) b;
+        }
+
+        void writeInt(int value) {
+            ensure(4);
+            buffer[size++] = (byte) (value >>> 24);
+            buffer[size++] = (byte) (value >>> 16);
+            buffer[size++] = (byte) (value >>> 8);
+            buffer[size++] = (byte) value;
+        }
+
+        /**
+         * zigzag 之后按 7 位一组写出，绝对值小的数占用字节少
+         */
+        void writeVarLong(long value) {
+            long zigzag = (value << 1) ^ (value >> 63);
+            ensure(10);
+            while ((zigzag & ~0x7FL) != 0) {
+                buffer[size++] = (byte) ((zigzag & 0x7F) | 0x80);
+                zigzag >>>= 7;
+            }
+            buffer[size++] = (byte) zigzag;
+        }
+
+        void writeBytes(byte[] bytes) {
+            ensure(bytes.length);
+            System.arraycopy(bytes, 0, buffer, size, bytes.length);
+            size += bytes.length;
+        }
+
+        private void ensure(int extra) {
+            if (size + extra > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + extra));
+            }
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(buffer, size);
+        }
+    }
+
+    private static final class Input {
+
+        private final byte[] buffer;
+        private int position;
+
+        Input(byte[] buffer) {
+            this.buffer = buffer;
+        }
+
+        byte read() {
+            return buffer[position++];
+        }
+
+        int readInt() {
+            return (buffer[position++] & 0xFF) << 24 | (buffer[position++] & 0xFF) << 16
+                    | (buffer[position++] & 0xFF) << 8 | (buffer[position++] & 0xFF);
+        }
+
+        long readVarLong() {
+            long zigzag = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = buffer[position++];
+                zigzag |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            return (zigzag >>> 1) ^ -(zigzag & 1);
+        }
+
+        byte[] readBytes(int length) {
+            byte[] bytes = Arrays.copyOfRange(buffer, position, position + length);
+            position += length;
+            return bytes;
+        }
+    }
+}
@@ -0,0 +1,405 @@
+package com.hyman.springbootwar.cache;
+
+import org.springframework.cache.interceptor.KeyGenerator;
+import org.springframework.util.ClassUtils;
+
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.BiConsumer;
+
+/**
+ * 哈希缓存 key：{类名}.{方法名}:{128 位哈希}，例如 UserService.findById:Qm9vb2xlYW5Ub0tleUhh1A。
+ *
+ * 类名、方法名部分按 (目标类, 方法) 只生成一次；哈希部分由方法的完整签名和各个参数的内容计算（Murmur3），同名的重载方法、不同
+ * 包下的同名类不会冲突。参数写入复用的 KeyHasher，不再为每个参数调用 toString 拼接长字符串。
+ *
+ * 空闲的 KeyHasher 放在生成器自己的一个小池子里，用完放回，不放在 ThreadLocal 中：容器的工作线程比应用活得久，ThreadLocal 会让
+ * 这些线程一直引用 KeyHasher、生成器以及 webapp 的类加载器，重新部署后旧的应用无法回收。
+ *
+ * 参数按类型写入：基本类型的包装类、String、枚举、Date、数组、集合、Map 直接写内容；注册了 CacheKeyExtractor 的类型交给它；
+ * JPA 实体（有 id 时）写实体类型和 id，hibernate 代理对象与实体本身生成相同的 key；其他覆盖了 toString 的 java.* 类型用
+ * toString；剩下的类型（包括没有覆盖 toString 的 java.* 类型）按字段的值写入。Set 与 Map 和 equals 一样不看迭代顺序。不依赖 toString，没有覆盖 toString 的参数也不会因为每个对象的 toString 不同而永远不命中。
+ */
+public class HashedKeyGenerator implements KeyGenerator {
+
+    static final int MAX_DEPTH = 16;
+
+    private static final byte NULL = 0;
+    private static final byte STRING = 1;
+    private static final byte INT = 2;
+    private static final byte LONG = 3;
+    private static final byte SHORT = 4;
+    private static final byte BYTE = 5;
+    private static final byte BOOLEAN = 6;
+    private static final byte CHAR = 7;
+    private static final byte DOUBLE = 8;
+    private static final byte FLOAT = 9;
+    private static final byte DECIMAL = 10;
+    private static final byte ENUM = 11;
+    private static final byte DATE = 12;
+    private static final byte BYTES = 13;
+    private static final byte ARRAY = 14;
+    private static final byte COLLECTION = 15;
+    private static final byte MAP = 16;
+    private static final byte CLASS = 17;
+    private static final byte OBJECT = 18;
+    private static final byte SET = 19;
+
+    // 空闲 KeyHasher 的个数上限，同时计算 key 的线程更多时多出来的用完丢弃
+    private static final int POOL_SIZE = Math.max(8, Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 2 - 1) << 1);
+
+    // 目标类 -> 方法 -> key 前缀
+    private final ConcurrentHashMap<Class<?>, ConcurrentHashMap<Method, MethodKey>> methodKeys = new ConcurrentHashMap<>();
+    private final List<CacheKeyExtractor<?>> extractors = new CopyOnWriteArrayList<>();
+    // 参数类型 -> 实际使用的写法，按类型第一次出现时确定
+    private final ConcurrentHashMap<Class<?>, CacheKeyExtractor<Object>> resolved = new ConcurrentHashMap<>();
+    private final AtomicReferenceArray<KeyHasher> idle = new AtomicReferenceArray<>(POOL_SIZE);
+
+    /**
+     * 注册参数类型的写法，后注册的优先
+     *
+     * @param extractor
+     * @return
+     */
+    public HashedKeyGenerator register(CacheKeyExtractor<?> extractor) {
+        extractors.add(0, extractor);
+        resolved.clear();
+        return this;
+    }
+
+    @Override
+    public Object generate(Object target, Method method, Object... params) {
+        MethodKey methodKey = methodKey(ClassUtils.getUserClass(target), method);
+        KeyHasher hasher = acquire();
+        try {
+            hasher.putLong(methodKey.signature);
+            hasher.putInt(params.length);
+            for (Object param : params) {
+                hasher.putObject(param);
+            }
+            return hasher.toKey(methodKey.prefix);
+        } finally {
+            release(hasher);
+        }
+    }
+
+    /**
+     * 从线程对应的槽位开始找一个空闲的 KeyHasher，都被占用时新建一个
+     */
+    private KeyHasher acquire() {
+        int start = (int) Thread.currentThread().getId();
+        for (int i = 0; i < POOL_SIZE; i++) {
+            KeyHasher hasher = idle.getAndSet((start + i) & (POOL_SIZE - 1), null);
+            if (hasher != null) {
+                hasher.reset();
+                return hasher;
+            }
+        }
+        return new KeyHasher(this);
+    }
+
+    /**
+     * 放回一个空槽位，没有空槽位时丢弃
+     */
+    private void release(KeyHasher hasher) {
+        int start = (int) Thread.currentThread().getId();
+        for (int i = 0; i < POOL_SIZE; i++) {
+            if (idle.compareAndSet((start + i) & (POOL_SIZE - 1), null, hasher)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * 池中空闲的 KeyHasher 个数，只用于测试
+     */
+    int idleCount() {
+        int count = 0;
+        for (int i = 0; i < POOL_SIZE; i++) {
+            if (idle.get(i) != null) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private MethodKey methodKey(Class<?> targetClass, Method method) {
+        // 先 get：JDK 8 的 computeIfAbsent 即使 key 已存在也要锁住桶
+        ConcurrentHashMap<Method, MethodKey> keys = methodKeys.get(targetClass);
+        if (keys == null) {
+            keys = methodKeys.computeIfAbsent(targetClass, key -> new ConcurrentHashMap<>());
+        }
+        MethodKey methodKey = keys.get(method);
+        if (methodKey == null) {
+            methodKey = keys.computeIfAbsent(method, key -> new MethodKey(targetClass, key));
+        }
+        return methodKey;
+    }
+
+    /**
+     * 按类型写入一个参数，由 KeyHasher.putObject 调用
+     */
+    void write(Object value, KeyHasher hasher) {
+        if (value == null) {
+            hasher.putByte(NULL);
+        } else if (value instanceof String) {
+            hasher.putByte(STRING).putString((String) value);
+        } else if (value instanceof Integer) {
+            hasher.putByte(INT).putInt((Integer) value);
+        } else if (value instanceof Long) {
+            hasher.putByte(LONG).putLong((Long) value);
+        } else if (value instanceof Short) {
+            hasher.putByte(SHORT).putInt((Short) value);
+        } else if (value instanceof Byte) {
+            hasher.putByte(BYTE).putByte((Byte) value);
+        } else if (value instanceof Boolean) {
+            hasher.putByte(BOOLEAN).putBoolean((Boolean) value);
+        } else if (value instanceof Character) {
+            hasher.putByte(CHAR).putInt((Character) value);
+        } else if (value instanceof Double) {
+            hasher.putByte(DOUBLE).putDouble((Double) value);
+        } else if (value instanceof Float) {
+            hasher.putByte(FLOAT).putDouble((Float) value);
+        } else if (value instanceof BigDecimal || value instanceof BigInteger) {
+            hasher.putByte(DECIMAL).putString(value.toString());
+        } else if (value instanceof Enum) {
+            Enum<?> e = (Enum<?>) value;
+            hasher.putByte(ENUM).putString(e.getDeclaringClass().getName()).putString(e.name());
+        } else if (value instanceof Date) {
+            hasher.putByte(DATE).putLong(((Date) value).getTime());
+        } else if (value instanceof byte[]) {
+            hasher.putByte(BYTES).putBytes((byte[]) value);
+        } else if (value.getClass().isArray()) {
+            int length = Array.getLength(value);
+            hasher.putByte(ARRAY).putInt(length);
+            for (int i = 0; i < length; i++) {
+                hasher.putObject(Array.get(value, i));
+            }
+        } else if (value instanceof Set) {
+            // HashSet、TreeSet 等内容相同的 Set 迭代顺序不一定相同
+            Set<?> set = (Set<?>) value;
+            hasher.putByte(SET).putInt(set.size()).putUnordered(set, false);
+        } else if (value instanceof Collection) {
+            Collection<?> collection = (Collection<?>) value;
+            hasher.putByte(COLLECTION).putInt(collection.size());
+            for (Object element : collection) {
+                hasher.putObject(element);
+            }
+        } else if (value instanceof Map) {
+            // 与 Map.equals 一致，插入顺序不同的 LinkedHashMap、容量不同的 HashMap 生成相同的 key
+            Map<?, ?> map = (Map<?, ?>) value;
+            hasher.putByte(MAP).putInt(map.size()).putUnordered(map.entrySet(), true);
+        } else if (value instanceof Class) {
+            hasher.putByte(CLASS).putString(((Class<?>) value).getName());
+        } else {
+            hasher.putByte(OBJECT);
+            resolved.computeIfAbsent(value.getClass(), this::resolve).extract(value, hasher);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private CacheKeyExtractor<Object> resolve(Class<?> type) {
+        for (CacheKeyExtractor<?> extractor : extractors) {
+            if (extractor.getType().isAssignableFrom(type)) {
+                CacheKeyExtractor<Object> registered = (CacheKeyExtractor<Object>) extractor;
+                return new Named(registered.getType(), registered::extract);
+            }
+        }
+        Class<?> entityClass = entityClass(type);
+        if (entityClass != null) {
+            Method idGetter = idGetter(entityClass);
+            if (idGetter != null) {
+                return new EntityExtractor(entityClass, idGetter, new FieldsExtractor(entityClass));
+            }
+        }
+        // 没有覆盖 toString 的（例如 new Object()）用的是 Object.toString，每个对象都不同，按字段写入
+        if (type.getName().startsWith("java.") && declaresToString(type)) {
+            return new Named(type, (value, hasher) -> hasher.putString(value.toString()));
+        }
+        return new FieldsExtractor(type);
+    }
+
+    private static boolean declaresToString(Class<?> type) {
+        try {
+            return type.getMethod("toString").getDeclaringClass() != Object.class;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    /**
+     * 带 @Entity 的类型本身或父类（hibernate 代理是实体的子类）
+     */
+    private static Class<?> entityClass(Class<?> type) {
+        for (Class<?> current = type; current != null && current != Object.class; current = current.getSuperclass()) {
+            if (current.isAnnotationPresent(Entity.class)) {
+                return current;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 读 id 用 getter：代理对象的字段是空的，调用 getter 才能拿到 id，而且不会触发加载
+     */
+    private static Method idGetter(Class<?> entityClass) {
+        for (Class<?> current = entityClass; current != null && current != Object.class; current = current.getSuperclass()) {
+            for (Field field : current.getDeclaredFields()) {
+                if (field.isAnnotationPresent(Id.class)) {
+                    String name = field.getName();
+                    try {
+                        return entityClass.getMethod("get" + Character.toUpperCase(name.charAt(0)) + name.substring(1));
+                    } catch (NoSuchMethodException e) {
+                        return null;
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    private static final class MethodKey {
+
+        private final String prefix;
+        private final long signature;
+
+        MethodKey(Class<?> targetClass, Method method) {
+            this.prefix = targetClass.getSimpleName() + "." + method.getName() + ":";
+            byte[] bytes = (targetClass.getName() + "#" + method.toGenericString()).getBytes(StandardCharsets.UTF_8);
+            byte[] digest = new byte[16];
+            Murmur3.hash128(bytes, bytes.length, 0, digest);
+            long value = 0;
+            for (int i = 0; i < 8; i++) {
+                value |= (digest[i] & 0xFFL) << (i << 3);
+            }
+            this.signature = value;
+        }
+    }
+
+    /**
+     * 先写类型名，再交给具体写法，不同类型写出相同内容时不会冲突
+     */
+    private static final class Named implements CacheKeyExtractor<Object> {
+
+        private final Class<?> type;
+        private final BiConsumer<Object, KeyHasher> writer;
+
+        Named(Class<?> type, BiConsumer<Object, KeyHasher> writer) {
+            this.type = type;
+            this.writer = writer;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public Class<Object> getType() {
+            return (Class<Object>) type;
+        }
+
+        @Override
+        public void extract(Object value, KeyHasher hasher) {
+            hasher.putString(type.getName());
+            writer.accept(value, hasher);
+        }
+    }
+
+    /**
+     * JPA 实体按类型和 id 区分；还没有 id 的实体按字段
+     */
+    private static final class EntityExtractor implements CacheKeyExtractor<Object> {
+
+        private final Class<?> entityClass;
+        private final Method idGetter;
+        private final FieldsExtractor fallback;
+
+        EntityExtractor(Class<?> entityClass, Method idGetter, FieldsExtractor fallback) {
+            this.entityClass = entityClass;
+            this.idGetter = idGetter;
+            this.fallback = fallback;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public Class<Object> getType() {
+            return (Class<Object>) entityClass;
+        }
+
+        @Override
+        public void extract(Object value, KeyHasher hasher) {
+            Object id;
+            try {
+                id = idGetter.invoke(value);
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException("读取 " + entityClass.getName() + " 的 id 失败", e);
+            }
+            if (id == null) {
+                fallback.extract(value, hasher);
+                return;
+            }
+            hasher.putString(entityClass.getName()).putByte(1).putObject(id);
+        }
+    }
+
+    /**
+     * 按字段的值写入：父类字段在前，同一个类的字段按名称排序，跳过 static、transient
+     */
+    private static final class FieldsExtractor implements CacheKeyExtractor<Object> {
+
+        private final Class<?> type;
+        private final Field[] fields;
+
+        FieldsExtractor(Class<?> type) {
+            this.type = type;
+            List<Field> all = new ArrayList<>();
+            for (Class<?> current = type; current != null && current != Object.class; current = current.getSuperclass()) {
+                Field[] declared = current.getDeclaredFields();
+                Arrays.sort(declared, Comparator.comparing(Field::getName));
+                List<Field> own = new ArrayList<>();
+                for (Field field : declared) {
+                    int modifiers = field.getModifiers();
+                    if (!Modifier.isStatic(modifiers) && !Modifier.isTransient(modifiers) && !field.isSynthetic()) {
+                        field.setAccessible(true);
+                        own.add(field);
+                    }
+                }
+                all.addAll(0, own);
+            }
+            this.fields = all.toArray(new Field[0]);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public Class<Object> getType() {
+            return (Class<Object>) type;
+        }
+
+        @Override
+        public void extract(Object value, KeyHasher hasher) {
+            hasher.putString(type.getName()).putByte(0);
+            for (Field field : fields) {
+                try {
+                    hasher.putObject(field.get(value));
+                } catch (IllegalAccessException e) {
+                    throw new IllegalStateException("读取 " + type.getName() + "." + field.getName() + " 失败", e);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package com.hyman.springbootwar.cache;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * 计算缓存 key 时收集参数内容的缓冲区，由 HashedKeyGenerator 池化、反复使用，同一时刻只属于一个线程，计算一次 key 除了最终的字符串不再分配内存。
+ *
+ * 写入的都是定长或带长度的内容，相邻参数不会拼接出相同的字节序列。putObject 会先写类型标记，再按类型写入内容。
+ */
+public final class KeyHasher {
+
+    private static final char[] BASE64_URL =
+            "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_".toCharArray();
+
+    private static final int MAX_RETAINED = 64 * 1024;
+
+    private final HashedKeyGenerator generator;
+    private byte[] buffer = new byte[256];
+    private int size;
+    private int depth;
+    private final byte[] digest = new byte[16];
+
+    KeyHasher(HashedKeyGenerator generator) {
+        this.generator = generator;
+    }
+
+    void reset() {
+        if (buffer.length > MAX_RETAINED) {
+            // 偶尔的大参数不要一直占着池中的内存
+            buffer = new byte[256];
+        }
+        size = 0;
+        depth = 0;
+    }
+
+    public KeyHasher putByte(int value) {
+        ensure(1);
+        buffer[size++] = (byte) value;
+        return this;
+    }
+
+    public KeyHasher putBoolean(boolean value) {
+        return putByte(value ? 1 : 0);
+    }
+
+    public KeyHasher putInt(int value) {
+        ensure(4);
+        buffer[size++] = (byte) value;
+        buffer[size++] = (byte) (value >>> 8);
+        buffer[size++] = (byte) (value >>> 16);
+        buffer[size++] = (byte) (value >>> 24);
+        return this;
+    }
+
+    public KeyHasher putLong(long value) {
+        ensure(8);
+        for (int i = 0; i < 8; i++) {
+            buffer[size++] = (byte) (value >>> (i << 3));
+        }
+        return this;
+    }
+
+    public KeyHasher putDouble(double value) {
+        return putLong(Double.doubleToLongBits(value));
+    }
+
+    /**
+     * 写入长度和每个 char，不经过字符集编码
+     */
+    public KeyHasher putString(CharSequence value) {
+        int length = value.length();
+        putInt(length);
+        ensure(length << 1);
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            buffer[size++] = (byte) c;
+            buffer[size++] = (byte) (c >>> 8);
+        }
+        return this;
+    }
+
+    public KeyHasher putBytes(byte[] value) {
+        putInt(value.length);
+        ensure(value.length);
+        System.arraycopy(value, 0, buffer, size, value.length);
+        size += value.length;
+        return this;
+    }
+
+    /**
+     * 写入任意对象（包括 null），按类型选择写法，见 HashedKeyGenerator
+     */
+    public KeyHasher putObject(Object value) {
+        if (++depth > HashedKeyGenerator.MAX_DEPTH) {
+            throw new IllegalStateException("缓存 key 参数嵌套超过 " + HashedKeyGenerator.MAX_DEPTH + " 层，可能存在循环引用");
+        }
+        try {
+            generator.write(value, this);
+        } finally {
+            depth--;
+        }
+        return this;
+    }
+
+    /**
+     * 写入与迭代顺序无关的一组元素（Set 的元素、Map 的条目）：每个元素单独哈希，128 位结果相加后写入，顺序不同、内容相同的集合写出
+     * 相同的内容。每个元素先写在缓冲区末尾，算完哈希后丢弃
+     *
+     * @param elements
+     * @param entries  为 true 时 elements 是 Map.Entry，key 和 value 一起作为一个元素
+     */
+    KeyHasher putUnordered(Iterable<?> elements, boolean entries) {
+        int start = size;
+        long sum1 = 0;
+        long sum2 = 0;
+        for (Object element : elements) {
+            size = start;
+            if (entries) {
+                Map.Entry<?, ?> entry = (Map.Entry<?, ?>) element;
+                putObject(entry.getKey());
+                putObject(entry.getValue());
+            } else {
+                putObject(element);
+            }
+            Murmur3.hash128(buffer, start, size - start, 0, digest);
+            sum1 += getLong(digest, 0);
+            sum2 += getLong(digest, 8);
+        }
+        size = start;
+        return putLong(sum1).putLong(sum2);
+    }
+
+    /**
+     * prefix 后面接上已写入内容的 128 位哈希（base64url，22 个字符）
+     */
+    String toKey(String prefix) {
+        Murmur3.hash128(buffer, size, 0, digest);
+        char[] chars = new char[prefix.length() + 22];
+        prefix.getChars(0, prefix.length(), chars, 0);
+        int position = prefix.length();
+        // 16 字节按 3 字节一组编码，最后剩 1 字节编码为 2 个字符，不补 =
+        for (int i = 0; i < 15; i += 3) {
+            int bits = (digest[i] & 0xFF) << 16 | (digest[i + 1] & 0xFF) << 8 | (digest[i + 2] & 0xFF);
+            chars[position++] = BASE64_URL[bits >>> 18];
+            chars[position++] = BASE64_URL[(bits >>> 12) & 0x3F];
+            chars[position++] = BASE64_URL[(bits >>> 6) & 0x3F];
+            chars[position++] = BASE64_URL[bits & 0x3F];
+        }
+        int last = digest[15] & 0xFF;
+        chars[position++] = BASE64_URL[last >>> 2];
+        chars[position] = BASE64_URL[(last << 4) & 0x3F];
+        return new String(chars);
+    }
+
+    private static long getLong(byte[] bytes, int offset) {
+        long value = 0;
+        for (int i = 0; i < 8; i++) {
+            value |= (bytes[offset + i] & 0xFFL) << (i << 3);
+        }
+        return value;
+    }
+
+    private void ensure(int extra) {
+        if (size + extra > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length << 1, size + extra));
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package com.hyman.springbootwar.cache;
+
+import org.springframework.cache.support.NullValue;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+/**
+ * 按类型序列化时处理缓存的 null 值。
+ *
+ * RedisCache 允许缓存 null 时写入的是 NullValue.INSTANCE，按类型的序列化器（json 指定类型、binary）处理不了它，这里把它单独编码
+ * 为一个字节 0，其他值交给被包装的序列化器。json 的第一个字节不会是 0，binary 至少有 4 字节的结构签名，不会混淆。
+ */
+public class NullValueAwareSerializer implements RedisSerializer<Object> {
+
+    private static final byte[] NULL_VALUE = new byte[]{0};
+
+    private final RedisSerializer<Object> delegate;
+
+    @SuppressWarnings("unchecked")
+    public NullValueAwareSerializer(RedisSerializer<?> delegate) {
+        this.delegate = (RedisSerializer<Object>) delegate;
+    }
+
+    @Override
+    public byte[] serialize(Object value) throws SerializationException {
+        if (value instanceof NullValue) {
+            return NULL_VALUE;
+        }
+        return delegate.serialize(value);
+    }
+
+    @Override
+    public Object deserialize(byte[] bytes) throws SerializationException {
+        if (bytes != null && bytes.length == 1 && bytes[0] == 0) {
+            return NullValue.INSTANCE;
+        }
+        return delegate.deserialize(bytes);
+    }
+}
@@ -0,0 +1,86 @@
+package com.hyman.springbootwar.cache;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 按 key 合并并发加载（single-flight）。
+ *
+ * 同一个 key 同时只有一个线程执行加载，其他线程等待它的结果，加载结束后立即移除，下一次未命中会重新加载。只在本 JVM 内合并，
+ * 多个节点同时未命中时每个节点各加载一次，不需要 redis 分布式锁。
+ *
+ * @param <K>
+ */
+public class SingleFlight<K> {
+
+    private final ConcurrentHashMap<K, CompletableFuture<Object>> flights = new ConcurrentHashMap<>();
+
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+
+    /**
+     * 加载 key，已有线程在加载时等待它的结果
+     *
+     * @param key
+     * @param loader
+     * @return
+     * @throws Exception 加载抛出的异常，等待的线程收到同一个异常
+     */
+    @SuppressWarnings("unchecked")
+    public <V> V load(K key, Callable<V> loader) throws Exception {
+        CompletableFuture<Object> flight = new CompletableFuture<>();
+        CompletableFuture<Object> existing = flights.putIfAbsent(key, flight);
+        if (existing != null) {
+            coalesced.increment();
+            return (V) await(existing);
+        }
+        loads.increment();
+        try {
+            V value = loader.call();
+            flight.complete(value);
+            return value;
+        } catch (Exception | Error e) {
+            flight.completeExceptionally(e);
+            throw e;
+        } finally {
+            flights.remove(key, flight);
+        }
+    }
+
+    private static Object await(CompletableFuture<Object> flight) throws Exception {
+        try {
+            return flight.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            throw (Error) cause;
+        }
+    }
+
+    /**
+     * 实际执行的加载次数
+     *
+     * @return
+     */
+    public long getLoadCount() {
+        return loads.sum();
+    }
+
+    /**
+     * 等待其他线程结果、没有重复加载的次数
+     *
+     * @return
+     */
+    public long getCoalescedCount() {
+        return coalesced.sum();
+    }
+
+    public int getInFlight() {
+        return flights.size();
+    }
+}
@@ -0,0 +1,93 @@
+package com.hyman.springbootwar.cache;
+
+import org.springframework.cache.Cache;
+
+import java.util.concurrent.Callable;
+
+/**
+ * 没有开启本地缓存时套在 redis 缓存外面的一层，只负责 get(key, valueLoader)（@Cacheable(sync = true) 走这里）：未命中时同一个
+ * key 的并发加载按 key 合并为一次（SingleFlight），与 TwoLevelCache 的做法相同。
+ *
+ * 不使用 RedisCache 自带的 get(key, valueLoader)：它对整个缓存加 synchronized，不同 key 的加载也会互相等待，而且
+ * nonLockingRedisCacheWriter 下多个 key 之间并没有 redis 锁保护。其他操作原样交给 redis 缓存。
+ */
+public class SingleFlightCache implements Cache {
+
+    private final Cache remote;
+    private final SingleFlight<String> flights = new SingleFlight<>();
+
+    public SingleFlightCache(Cache remote) {
+        this.remote = remote;
+    }
+
+    @Override
+    public String getName() {
+        return remote.getName();
+    }
+
+    @Override
+    public Object getNativeCache() {
+        return remote.getNativeCache();
+    }
+
+    @Override
+    public ValueWrapper get(Object key) {
+        return remote.get(key);
+    }
+
+    @Override
+    public <T> T get(Object key, Class<T> type) {
+        return remote.get(key, type);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Callable<T> valueLoader) {
+        ValueWrapper wrapper = remote.get(key);
+        if (wrapper != null) {
+            return (T) wrapper.get();
+        }
+        try {
+            return flights.load(String.valueOf(key), () -> {
+                // 上一轮加载可能刚结束，结果已经在 redis 中
+                ValueWrapper loaded = remote.get(key);
+                if (loaded != null) {
+                    return (T) loaded.get();
+                }
+                T value = valueLoader.call();
+                try {
+                    remote.put(key, value);
+                } catch (ValueTooLargeException e) {
+                    // 只是这次没有缓存，业务调用照常返回，与 CacheConfig 中的 CacheErrorHandler 一致
+                }
+                return value;
+            });
+        } catch (Exception e) {
+            throw new ValueRetrievalException(key, valueLoader, e);
+        }
+    }
+
+    @Override
+    public void put(Object key, Object value) {
+        remote.put(key, value);
+    }
+
+    @Override
+    public ValueWrapper putIfAbsent(Object key, Object value) {
+        return remote.putIfAbsent(key, value);
+    }
+
+    @Override
+    public void evict(Object key) {
+        remote.evict(key);
+    }
+
+    @Override
+    public void clear() {
+        remote.clear();
+    }
+
+    public SingleFlight<String> getFlights() {
+        return flights;
+    }
+}
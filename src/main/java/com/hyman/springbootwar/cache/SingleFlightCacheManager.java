@@ -0,0 +1,65 @@
+package com.hyman.springbootwar.cache;
+
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 没有开启本地缓存（hyman.cache.local.enabled=false）时使用的缓存管理器，给 redis 的 CacheManager 中的每个缓存套上
+ * SingleFlightCache，@Cacheable(sync = true) 仍然按 key 合并并发加载。
+ */
+public class SingleFlightCacheManager implements CacheManager {
+
+    private final CacheManager remote;
+
+    private final ConcurrentHashMap<String, SingleFlightCache> caches = new ConcurrentHashMap<>(16);
+
+    public SingleFlightCacheManager(CacheManager remote) {
+        this.remote = remote;
+    }
+
+    @Override
+    public Cache getCache(String name) {
+        SingleFlightCache cache = caches.get(name);
+        if (cache != null) {
+            return cache;
+        }
+        Cache redisCache = remote.getCache(name);
+        if (redisCache == null) {
+            return null;
+        }
+        return caches.computeIfAbsent(name, key -> new SingleFlightCache(redisCache));
+    }
+
+    @Override
+    public Collection<String> getCacheNames() {
+        Set<String> names = new LinkedHashSet<>(remote.getCacheNames());
+        names.addAll(caches.keySet());
+        return names;
+    }
+
+    /**
+     * 每个缓存名实际加载与合并的次数
+     *
+     * @return
+     */
+    public List<Map<String, Object>> stats() {
+        List<Map<String, Object>> result = new ArrayList<>(caches.size());
+        for (SingleFlightCache cache : caches.values()) {
+            Map<String, Object> item = new LinkedHashMap<>();
+            item.put("name", cache.getName());
+            item.put("loads", cache.getFlights().getLoadCount());
+            item.put("coalescedLoads", cache.getFlights().getCoalescedCount());
+            result.add(item);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,80 @@
+package com.hyman.springbootwar.cache;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.cache.RedisCacheWriter;
+
+import java.time.Duration;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 限制写入 redis 的 value 大小。
+ *
+ * 序列化后超过缓存配置的 maxValueBytes 时不写入，并删掉这个 key 上可能存在的旧值，然后抛出 ValueTooLargeException，让调用方
+ * （TwoLevelCache、CacheErrorHandler）知道这次没有写入，下次仍然未命中。大 value 会占满 redis 内存、拖慢单线程的 redis 和网络，
+ * 不如直接回源。其他操作原样交给被包装的 writer。
+ */
+@Slf4j
+public class SizeLimitedCacheWriter implements RedisCacheWriter {
+
+    private final RedisCacheWriter delegate;
+    private final CacheProperties properties;
+    // 缓存名 -> 最大字节数，0 表示不限制
+    private final ConcurrentHashMap<String, Integer> limits = new ConcurrentHashMap<>();
+
+    public SizeLimitedCacheWriter(RedisCacheWriter delegate, CacheProperties properties) {
+        this.delegate = delegate;
+        this.properties = properties;
+    }
+
+    @Override
+    public void put(String name, byte[] key, byte[] value, Duration ttl) {
+        int limit = limit(name);
+        if (limit > 0 && value.length > limit) {
+            delegate.remove(name, key);
+            throw tooLarge(name, value.length, limit);
+        }
+        delegate.put(name, key, value, ttl);
+    }
+
+    @Override
+    public byte[] get(String name, byte[] key) {
+        return delegate.get(name, key);
+    }
+
+    @Override
+    public byte[] putIfAbsent(String name, byte[] key, byte[] value, Duration ttl) {
+        int limit = limit(name);
+        if (limit > 0 && value.length > limit) {
+            // 没有写入，已有值时照常返回已有值
+            byte[] existing = delegate.get(name, key);
+            if (existing == null) {
+                throw tooLarge(name, value.length, limit);
+            }
+            return existing;
+        }
+        return delegate.putIfAbsent(name, key, value, ttl);
+    }
+
+    @Override
+    public void remove(String name, byte[] key) {
+        delegate.remove(name, key);
+    }
+
+    @Override
+    public void clean(String name, byte[] pattern) {
+        delegate.clean(name, pattern);
+    }
+
+    private int limit(String name) {
+        return limits.computeIfAbsent(name, key -> {
+            Integer max = properties.resolve(key).getMaxValueBytes();
+            return max == null ? 0 : max;
+        });
+    }
+
+    private ValueTooLargeException tooLarge(String name, int length, int limit) {
+        ValueTooLargeException e = new ValueTooLargeException(name, length, limit);
+        log.warn(e.getMessage());
+        return e;
+    }
+}
@@ -0,0 +1,252 @@
+package com.hyman.springbootwar.cache;
+
+import org.springframework.cache.Cache;
+import org.springframework.cache.support.SimpleValueWrapper;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * 二级缓存：本地 caffeine 缓存在前，redis 缓存在后。
+ *
+ * 读取先查本地，命中时不访问网络也不反序列化；未命中再查 redis，查到的结果放入本地。写入、删除先改 redis，再改本地，最后通知
+ * 其他节点清掉各自本地的这个 key（其他节点下次读取时从 redis 取新值）。
+ *
+ * 本地缓存保存的是 ValueWrapper，缓存的 null 值也能命中。本地的 key 使用 key 的字符串形式，与 RedisCache 生成 redis key 的方式
+ * 一致，失效通知里传的也是它。
+ *
+ * get(key, valueLoader)（@Cacheable(sync = true) 走这里）两级都未命中时，同一个 key 的并发加载按 key 合并为一次（SingleFlight），
+ * 不再使用 RedisCache 自带的 get(key, valueLoader)：它对整个缓存加 synchronized，不同 key 的加载也会互相等待。
+ *
+ * redis 因为值太大拒绝写入（ValueTooLargeException）时本地也不保存，两级保持一致，业务调用照常返回。
+ *
+ * 从 redis 读到值到放入本地之间可能收到这个 key 的失效通知，直接放入会把旧值留在本地直到过期。每个 key 按哈希落到一个失效计数上，
+ * 读 redis 之前记下计数，放入本地前后各检查一次，期间计数变了就不放入（不同 key 落到同一个计数上只是少放一次本地缓存）。
+ */
+public class TwoLevelCache implements Cache {
+
+    private static final int VERSION_STRIPES = 64;
+
+    private final String name;
+    private final Cache remote;
+    private final com.github.benmanes.caffeine.cache.Cache<String, ValueWrapper> local;
+    private final CacheMetrics metrics = new CacheMetrics();
+    private final SingleFlight<String> flights = new SingleFlight<>();
+    // 按 key 哈希分段的失效计数，见 populate
+    private final AtomicLongArray versions = new AtomicLongArray(VERSION_STRIPES);
+    // 因为值太大没有写入的次数
+    private final LongAdder oversized = new LongAdder();
+    // 通知其他节点失效，参数为 null 表示清空整个缓存
+    private final Consumer<String> invalidation;
+
+    public TwoLevelCache(String name, Cache remote, com.github.benmanes.caffeine.cache.Cache<String, ValueWrapper> local,
+                         Consumer<String> invalidation) {
+        this.name = name;
+        this.remote = remote;
+        this.local = local;
+        this.invalidation = invalidation;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public Object getNativeCache() {
+        return remote.getNativeCache();
+    }
+
+    @Override
+    public ValueWrapper get(Object key) {
+        String localKey = localKey(key);
+        long begin = System.nanoTime();
+        ValueWrapper value = local.getIfPresent(localKey);
+        metrics.getLocal().record(value != null, System.nanoTime() - begin);
+        if (value != null) {
+            return value;
+        }
+        long version = version(localKey);
+        begin = System.nanoTime();
+        value = remote.get(key);
+        metrics.getRemote().record(value != null, System.nanoTime() - begin);
+        if (value != null) {
+            populate(localKey, version, value);
+        }
+        return value;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Class<T> type) {
+        ValueWrapper wrapper = get(key);
+        if (wrapper == null) {
+            return null;
+        }
+        Object value = wrapper.get();
+        if (value != null && type != null && !type.isInstance(value)) {
+            throw new IllegalStateException("缓存 " + name + " 中 " + key + " 的值不是 " + type.getName() + " 类型：" + value);
+        }
+        return (T) value;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Callable<T> valueLoader) {
+        ValueWrapper wrapper = get(key);
+        if (wrapper != null) {
+            return (T) wrapper.get();
+        }
+        String localKey = localKey(key);
+        try {
+            return flights.load(localKey, () -> {
+                // 上一轮加载可能刚结束，结果已经在本地
+                ValueWrapper loaded = local.getIfPresent(localKey);
+                if (loaded != null) {
+                    return (T) loaded.get();
+                }
+                long version = version(localKey);
+                T value = valueLoader.call();
+                // 只是填充缓存，其他节点本地没有这个 key，不需要通知
+                if (putRemote(key, value)) {
+                    populate(localKey, version, new SimpleValueWrapper(value));
+                }
+                return value;
+            });
+        } catch (Exception e) {
+            throw new ValueRetrievalException(key, valueLoader, e);
+        }
+    }
+
+    @Override
+    public void put(Object key, Object value) {
+        String localKey = localKey(key);
+        // 之前开始的读取不能再放入本地；同一个 key 的写入并发时只有最后一个放入
+        long version = versions.incrementAndGet(stripe(localKey));
+        if (putRemote(key, value)) {
+            populate(localKey, version, new SimpleValueWrapper(value));
+        } else {
+            // redis 中的旧值已经删掉，本地和其他节点的旧值也要清掉
+            local.invalidate(localKey);
+        }
+        invalidation.accept(localKey);
+    }
+
+    @Override
+    public ValueWrapper putIfAbsent(Object key, Object value) {
+        String localKey = localKey(key);
+        long version = versions.incrementAndGet(stripe(localKey));
+        ValueWrapper existing;
+        try {
+            existing = remote.putIfAbsent(key, value);
+        } catch (ValueTooLargeException e) {
+            // 没有已有值，也没有写入
+            oversized.increment();
+            return null;
+        }
+        if (existing == null) {
+            populate(localKey, version, new SimpleValueWrapper(value));
+            invalidation.accept(localKey);
+        } else {
+            populate(localKey, version, existing);
+        }
+        return existing;
+    }
+
+    @Override
+    public void evict(Object key) {
+        remote.evict(key);
+        String localKey = localKey(key);
+        evictLocal(localKey);
+        invalidation.accept(localKey);
+    }
+
+    @Override
+    public void clear() {
+        remote.clear();
+        evictLocal(null);
+        invalidation.accept(null);
+    }
+
+    /**
+     * 收到其他节点的失效通知，只清本地
+     *
+     * @param localKey 为 null 时清空
+     */
+    void evictLocal(String localKey) {
+        // 先改计数再清本地，正在从 redis 读取的线程放入本地前后总能看到其中一个
+        if (localKey == null) {
+            for (int i = 0; i < VERSION_STRIPES; i++) {
+                versions.incrementAndGet(i);
+            }
+            local.invalidateAll();
+        } else {
+            versions.incrementAndGet(stripe(localKey));
+            local.invalidate(localKey);
+        }
+    }
+
+    /**
+     * 放入本地缓存，读取 redis 之后这个 key 收到过失效（计数不再是 version）时不放入
+     */
+    private void populate(String localKey, long version, ValueWrapper value) {
+        int stripe = stripe(localKey);
+        if (versions.get(stripe) != version) {
+            return;
+        }
+        local.put(localKey, value);
+        // 检查之后、放入之前收到的失效，evictLocal 的 invalidate 可能已经执行过了
+        if (versions.get(stripe) != version) {
+            local.invalidate(localKey);
+        }
+    }
+
+    private long version(String localKey) {
+        return versions.get(stripe(localKey));
+    }
+
+    private static int stripe(String localKey) {
+        int h = localKey.hashCode();
+        return (h ^ (h >>> 16)) & (VERSION_STRIPES - 1);
+    }
+
+    /**
+     * 写入 redis，值太大被拒绝时返回 false
+     */
+    private boolean putRemote(Object key, Object value) {
+        try {
+            remote.put(key, value);
+            return true;
+        } catch (ValueTooLargeException e) {
+            oversized.increment();
+            return false;
+        }
+    }
+
+    public long getLocalSize() {
+        return local.estimatedSize();
+    }
+
+    public CacheMetrics getMetrics() {
+        return metrics;
+    }
+
+    public SingleFlight<String> getFlights() {
+        return flights;
+    }
+
+    /**
+     * 因为超过大小上限没有写入的次数
+     *
+     * @return
+     */
+    public long getOversizedCount() {
+        return oversized.sum();
+    }
+
+    private static String localKey(Object key) {
+        return String.valueOf(key);
+    }
+}
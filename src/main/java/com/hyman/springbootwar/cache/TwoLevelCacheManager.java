@@ -0,0 +1,141 @@
+package com.hyman.springbootwar.cache;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.thymeleaf.util.StringUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 二级缓存管理器，给 redis 的 CacheManager 中的每个缓存套上一层本地缓存（见 TwoLevelCache）。
+ *
+ * 失效通知走 redis pub/sub，消息格式为 {节点}|{缓存名}|{key}，清空整个缓存时没有 key 这一段。发布直接用连接工厂拿连接发
+ * PUBLISH（与 RedisRoomBus 相同，不经过 RedisTemplate 的 value 序列化），自己发出的通知收到后忽略。
+ */
+@Slf4j
+public class TwoLevelCacheManager implements CacheManager {
+
+    private static final String SEPARATOR = "|";
+
+    private final CacheManager remote;
+    private final CacheProperties properties;
+    private final CacheProperties.Local config;
+    private final RedisConnectionFactory connectionFactory;
+    private final byte[] channel;
+    private final String nodeId;
+
+    private final ConcurrentHashMap<String, TwoLevelCache> caches = new ConcurrentHashMap<>(16);
+
+    public TwoLevelCacheManager(CacheManager remote, CacheProperties properties, RedisConnectionFactory connectionFactory,
+                                RedisMessageListenerContainer container) {
+        this.remote = remote;
+        this.properties = properties;
+        this.config = properties.getLocal();
+        this.connectionFactory = connectionFactory;
+        CacheProperties.Invalidation invalidation = properties.getInvalidation();
+        this.channel = invalidation.getChannel().getBytes(StandardCharsets.UTF_8);
+        this.nodeId = StringUtils.isEmpty(invalidation.getNodeId()) ? UUID.randomUUID().toString() : invalidation.getNodeId();
+        container.addMessageListener((message, pattern) -> onInvalidation(new String(message.getBody(), StandardCharsets.UTF_8)),
+                new ChannelTopic(invalidation.getChannel()));
+    }
+
+    @Override
+    public Cache getCache(String name) {
+        TwoLevelCache cache = caches.get(name);
+        if (cache != null) {
+            return cache;
+        }
+        Cache redisCache = remote.getCache(name);
+        if (redisCache == null) {
+            return null;
+        }
+        return caches.computeIfAbsent(name, key -> new TwoLevelCache(key, redisCache, Caffeine.newBuilder()
+                .maximumSize(config.getMaxSize())
+                .expireAfterWrite(localTtlMillis(key), TimeUnit.MILLISECONDS)
+                .build(), localKey -> publish(key, localKey)));
+    }
+
+    /**
+     * 本地缓存的过期时间不超过这个缓存在 redis 中的过期时间，否则 redis 中已经过期的值还会在本地命中
+     */
+    private long localTtlMillis(String name) {
+        Long ttl = properties.resolve(name).getTtlMillis();
+        if (ttl != null && ttl > 0) {
+            return Math.min(config.getTtlMillis(), ttl);
+        }
+        return config.getTtlMillis();
+    }
+
+    @Override
+    public Collection<String> getCacheNames() {
+        Set<String> names = new LinkedHashSet<>(remote.getCacheNames());
+        names.addAll(caches.keySet());
+        return names;
+    }
+
+    /**
+     * 通知其他节点。发布失败只影响其他节点的本地缓存在 ttl 内读到旧值，不影响本次写入
+     */
+    private void publish(String name, String localKey) {
+        String body = nodeId + SEPARATOR + name + (localKey == null ? "" : SEPARATOR + localKey);
+        try {
+            RedisConnection connection = connectionFactory.getConnection();
+            try {
+                connection.publish(channel, body.getBytes(StandardCharsets.UTF_8));
+            } finally {
+                connection.close();
+            }
+        } catch (Exception e) {
+            log.warn("缓存失效通知发送失败：" + e.getMessage());
+        }
+    }
+
+    void onInvalidation(String body) {
+        String[] parts = body.split("\\|", 3);
+        if (parts.length < 2 || nodeId.equals(parts[0])) {
+            return;
+        }
+        TwoLevelCache cache = caches.get(parts[1]);
+        if (cache != null) {
+            cache.evictLocal(parts.length == 3 ? parts[2] : null);
+        }
+    }
+
+    /**
+     * 每个缓存名各级的命中率与耗时，以及因为值太大没有写入的次数
+     *
+     * @return
+     */
+    public List<Map<String, Object>> stats() {
+        List<Map<String, Object>> result = new ArrayList<>(caches.size());
+        for (TwoLevelCache cache : caches.values()) {
+            Map<String, Object> item = new LinkedHashMap<>(cache.getMetrics().snapshot(cache.getName()));
+            item.put("l1Size", cache.getLocalSize());
+            item.put("loads", cache.getFlights().getLoadCount());
+            item.put("coalescedLoads", cache.getFlights().getCoalescedCount());
+            item.put("oversizedSkipped", cache.getOversizedCount());
+            result.add(item);
+        }
+        return result;
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+}
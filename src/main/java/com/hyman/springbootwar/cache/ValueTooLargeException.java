@@ -0,0 +1,34 @@
+package com.hyman.springbootwar.cache;
+
+/**
+ * 序列化后的值超过缓存配置的 maxValueBytes，没有写入 redis（见 SizeLimitedCacheWriter）。
+ *
+ * TwoLevelCache 收到后同样不放入本地缓存；直接使用 redis 缓存时由 CacheConfig 中的 CacheErrorHandler 忽略，业务调用照常返回。
+ */
+public class ValueTooLargeException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String cacheName;
+    private final int length;
+    private final int limit;
+
+    public ValueTooLargeException(String cacheName, int length, int limit) {
+        super("缓存 " + cacheName + " 的值有 " + length + " 字节，超过上限 " + limit + "，不写入缓存");
+        this.cacheName = cacheName;
+        this.length = length;
+        this.limit = limit;
+    }
+
+    public String getCacheName() {
+        return cacheName;
+    }
+
+    public int getLength() {
+        return length;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+}
@@ -3,12 +3,24 @@ package com.hyman.springbootwar.config;
 import com.fasterxml.jackson.annotation.JsonAutoDetect;
 import com.fasterxml.jackson.annotation.PropertyAccessor;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hyman.springbootwar.cache.CacheKeyExtractor;
+import com.hyman.springbootwar.cache.CacheProperties;
+import com.hyman.springbootwar.cache.CacheSpecs;
+import com.hyman.springbootwar.cache.HashedKeyGenerator;
+import com.hyman.springbootwar.cache.SingleFlightCacheManager;
+import com.hyman.springbootwar.cache.SizeLimitedCacheWriter;
+import com.hyman.springbootwar.cache.TwoLevelCacheManager;
+import com.hyman.springbootwar.cache.ValueTooLargeException;
 import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.Cache;
 import org.springframework.cache.CacheManager;
 import org.springframework.cache.annotation.CachingConfigurerSupport;
 import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.cache.interceptor.CacheErrorHandler;
 import org.springframework.cache.interceptor.KeyGenerator;
+import org.springframework.cache.interceptor.SimpleCacheErrorHandler;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.data.redis.cache.RedisCacheConfiguration;
@@ -20,12 +32,16 @@ import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
 import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
 import org.springframework.data.redis.connection.lettuce.LettucePoolingClientConfiguration;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.data.redis.serializer.Jackson2JsonRedisSerializer;
 import org.springframework.data.redis.serializer.StringRedisSerializer;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 
-import java.lang.reflect.Method;
 import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * 缓存配置-使用Lettuce客户端，自动注入配置的方式
@@ -34,48 +50,93 @@ import java.time.Duration;
 @EnableCaching
 public class CacheConfig extends CachingConfigurerSupport {
 
+    // 自定义的参数类型 key 写法，见 HashedKeyGenerator
+    @Autowired(required = false)
+    private List<CacheKeyExtractor<?>> keyExtractors;
+
     /**
      * 自定义缓存key的生成策略。默认的生成策略是看不懂的(乱码内容)，通过Spring 的依赖注入特性进行自定义的配置注入，并且此类是
      * 一个配置类可以更多程度的自定义配置。
+     *
+     * 原来的做法每次调用都把完整类名、方法名和每个参数的 toString 拼成一个长字符串，没有覆盖 toString 的参数（每个对象都不同）
+     * 永远不命中。改为 {类名}.{方法名}:{参数的 128 位哈希}，见 HashedKeyGenerator。
      */
     @Bean
     @Override
     public KeyGenerator keyGenerator() {
-        return new KeyGenerator() {
+        HashedKeyGenerator generator = new HashedKeyGenerator();
+        if (keyExtractors != null) {
+            keyExtractors.forEach(generator::register);
+        }
+        return generator;
+    }
+
+    /**
+     * 没有开启本地缓存时 RedisCache 直接把 SizeLimitedCacheWriter 的 ValueTooLargeException 抛给缓存切面，这里忽略它，只是这次
+     * 没有缓存，业务调用照常返回；其他异常仍按默认方式抛出。
+     */
+    @Override
+    public CacheErrorHandler errorHandler() {
+        return new SimpleCacheErrorHandler() {
+
             @Override
-            public Object generate(Object target, Method method, Object... params) {
-                StringBuilder sb = new StringBuilder();
-                sb.append(target.getClass().getName());
-                sb.append(method.getName());
-                for (Object obj : params) {
-                    sb.append(obj.toString());
+            public void handleCachePutError(RuntimeException exception, Cache cache, Object key, Object value) {
+                if (!(exception instanceof ValueTooLargeException)) {
+                    super.handleCachePutError(exception, cache, key, value);
                 }
-                return sb.toString();
             }
         };
     }
 
     /**
-     * 缓存配置管理器
+     * 缓存配置管理器。开启本地缓存时在 redis 缓存前面再加一级本地缓存，见 TwoLevelCacheManager；不开启时只套一层按 key 合并加载，
+     * 见 SingleFlightCacheManager
      */
     @Bean
-    public CacheManager cacheManager(LettuceConnectionFactory factory) {
+    public CacheManager cacheManager(LettuceConnectionFactory factory, CacheProperties properties,
+                                     RedisMessageListenerContainer cacheListenerContainer) {
 
-        //以锁写入的方式创建RedisCacheWriter对象
-        RedisCacheWriter writer = RedisCacheWriter.lockingRedisCacheWriter(factory);
+        // 不加锁的 RedisCacheWriter。加锁的方式每次写入都要多几次 redis 往返去设置、检查、删除锁 key，却仍然挡不住多个线程同时
+        // 重复加载同一个未命中的 key；并发加载改由 TwoLevelCache 在本 JVM 内按 key 合并。
+        // 外面再包一层 SizeLimitedCacheWriter，超过 maxValueBytes 的值不写入
+        RedisCacheWriter writer = new SizeLimitedCacheWriter(RedisCacheWriter.nonLockingRedisCacheWriter(factory), properties);
 
         /**
-         * 设置 CacheManager 的 Value 序列化方式为 JdkSerializationRedisSerializer，但其实 RedisCacheConfiguration 默认就
-         * 是使用 StringRedisSerializer序列化key，JdkSerializationRedisSerializer序列化value。
-         * 所以以下注释代码就是默认实现，没必要写，直接注释掉。
+         * 默认配置来自 hyman.cache.defaults（默认仍是 JDK 序列化、不过期），hyman.cache.caches 下单独配置的缓存各自有过期时间、
+         * 序列化方式和 key 前缀，见 CacheSpecs。没有单独配置的缓存名在第一次使用时按默认配置创建。
          */
-        // RedisSerializationContext.SerializationPair pair = RedisSerializationContext.SerializationPair.fromSerializer(new JdkSerializationRedisSerializer(this.getClass().getClassLoader()));
-        // RedisCacheConfiguration config = RedisCacheConfiguration.defaultCacheConfig().serializeValuesWith(pair);
+        Map<String, RedisCacheConfiguration> configs = new LinkedHashMap<>();
+        for (String name : properties.getCaches().keySet()) {
+            configs.put(name, CacheSpecs.toConfiguration(properties.resolve(name)));
+        }
+        RedisCacheManager cacheManager = RedisCacheManager.builder(writer)
+                .cacheDefaults(CacheSpecs.toConfiguration(properties.getDefaults()))
+                .withInitialCacheConfigurations(configs)
+                .build();
+        // 不再作为 bean 注册，需要手动初始化
+        cacheManager.afterPropertiesSet();
+        if (!properties.getLocal().isEnabled()) {
+            // 没有本地缓存也要按 key 合并并发加载，不能退回 RedisCache 自带的整个缓存加锁
+            return new SingleFlightCacheManager(cacheManager);
+        }
+        return new TwoLevelCacheManager(cacheManager, properties, factory, cacheListenerContainer);
+    }
 
-        // 创建默认缓存配置对象
-        RedisCacheConfiguration config = RedisCacheConfiguration.defaultCacheConfig();
-        RedisCacheManager cacheManager = new RedisCacheManager(writer, config);
-        return cacheManager;
+    /**
+     * 订阅缓存失效通知的容器，只有一个频道，单线程分发即可
+     */
+    @Bean
+    public RedisMessageListenerContainer cacheListenerContainer(LettuceConnectionFactory factory) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(factory);
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(1);
+        executor.setMaxPoolSize(1);
+        executor.setThreadNamePrefix("cache-invalidate-");
+        executor.setDaemon(true);
+        executor.initialize();
+        container.setTaskExecutor(executor);
+        return container;
     }
 
     /**
@@ -1,6 +1,7 @@
 package com.hyman.springbootwar.config;
 
 import com.hyman.springbootwar.util.RequestWrapper;
+import com.hyman.springbootwar.websocket.ConnectionDrainer;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.catalina.filters.RemoteIpFilter;
 import org.springframework.boot.web.servlet.FilterRegistrationBean;
@@ -163,6 +164,8 @@ public class SeverConfiguration {
         @Override
         public void contextDestroyed(ServletContextEvent servletContextEvent) {
             log.info("============= 自定义 listener ==== 服务器关闭");
+            // 先分批关闭 websocket 连接，避免所有客户端同时涌向其他节点
+            ConnectionDrainer.drainOnShutdown();
         }
     }
 }
@@ -1,11 +1,14 @@
 package com.hyman.springbootwar.entity;
 
 import javax.persistence.*;
+import java.io.Serializable;
 import java.util.Date;
 
 @Entity
 @Table(name = "user_info")
-public class UserInfo {
+public class UserInfo implements Serializable {
+
+    private static final long serialVersionUID = 114L;
 
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
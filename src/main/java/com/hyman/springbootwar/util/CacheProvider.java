@@ -2,23 +2,37 @@ package com.hyman.springbootwar.util;
 
 import com.google.gson.Gson;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.dao.DataAccessException;
 import org.springframework.data.redis.connection.RedisConnection;
 import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * 缓存提供类，用于给开发提供缓存操作
  */
+@Component
 public class CacheProvider {
 
     //由于当前 class 不在spring boot框架内（不在web项目中）所以无法使用 autowired，使用此种方法进行注入
     //private static RedisTemplate<String, String> redisTemplate = (RedisTemplate<String, String>) SpringBeanUtil.getBean("redisTemplate");
 
-    @Autowired
+    // spring 不会给静态变量注入，直接在静态变量上 @Autowired 得到的永远是 null，改为通过 setter 注入
     private static RedisTemplate<String, String> redisTemplate;
 
+    @Autowired
+    public void setRedisTemplate(@Qualifier("redisTemplate") RedisTemplate<String, String> redisTemplate) {
+        CacheProvider.redisTemplate = redisTemplate;
+    }
+
     public static <T> boolean set(String key, T value) {
         Gson gson = new Gson();
         return set(key, gson.toJson(value));
@@ -56,4 +70,139 @@ public class CacheProvider {
     public static boolean del(String key) {
         return redisTemplate.delete(key);
     }
+
+    /**
+     * 批量获取，一次 MGET，一个网络往返。逐个调用 get 时 100 个 key 就是 100 个往返
+     *
+     * @param keys
+     * @return 与 keys 一一对应，不存在的 key 为 null
+     */
+    public static List<String> getAll(List<String> keys) {
+        if (keys == null || keys.isEmpty()) {
+            return new ArrayList<>();
+        }
+        List<String> result = redisTemplate.execute(new RedisCallback<List<String>>() {
+            @Override
+            public List<String> doInRedis(RedisConnection connection) throws DataAccessException {
+                RedisSerializer<String> serializer = redisTemplate.getStringSerializer();
+                byte[][] rawKeys = new byte[keys.size()][];
+                for (int i = 0; i < rawKeys.length; i++) {
+                    rawKeys[i] = serializer.serialize(keys.get(i));
+                }
+                List<byte[]> values = connection.mGet(rawKeys);
+                List<String> strings = new ArrayList<>(keys.size());
+                for (int i = 0; i < keys.size(); i++) {
+                    strings.add(values == null ? null : serializer.deserialize(values.get(i)));
+                }
+                return strings;
+            }
+        });
+        return result;
+    }
+
+    /**
+     * 批量获取并按 json 反序列化，所有值共用一个 Gson
+     *
+     * @param keys
+     * @param clazz
+     * @return 与 keys 一一对应，不存在的 key 为 null
+     */
+    public static <T> List<T> getAll(List<String> keys, Class<T> clazz) {
+        List<String> values = getAll(keys);
+        Gson gson = GsonUtil.getGson();
+        List<T> result = new ArrayList<>(values.size());
+        for (String value : values) {
+            result.add(value == null ? null : gson.fromJson(value, clazz));
+        }
+        return result;
+    }
+
+    /**
+     * 批量获取，只返回存在的 key
+     *
+     * @param keys
+     * @param clazz
+     * @return key -> 反序列化后的值，保持 keys 的顺序
+     */
+    public static <T> Map<String, T> getAllAsMap(List<String> keys, Class<T> clazz) {
+        List<T> values = getAll(keys, clazz);
+        Map<String, T> result = new LinkedHashMap<>();
+        for (int i = 0; i < values.size(); i++) {
+            if (values.get(i) != null) {
+                result.put(keys.get(i), values.get(i));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 批量写入。有过期时间时用管道发送 SETEX，没有时一次 MSET，都只有一个网络往返
+     *
+     * @param values
+     * @param validTime 过期时间（秒），小于等于 0 表示不过期
+     * @return
+     */
+    public static boolean setAll(Map<String, String> values, long validTime) {
+        if (values == null || values.isEmpty()) {
+            return true;
+        }
+        RedisSerializer<String> serializer = redisTemplate.getStringSerializer();
+        if (validTime <= 0) {
+            Boolean result = redisTemplate.execute(new RedisCallback<Boolean>() {
+                @Override
+                public Boolean doInRedis(RedisConnection connection) throws DataAccessException {
+                    Map<byte[], byte[]> raw = new LinkedHashMap<>(values.size() * 2);
+                    for (Map.Entry<String, String> entry : values.entrySet()) {
+                        raw.put(serializer.serialize(entry.getKey()), serializer.serialize(entry.getValue()));
+                    }
+                    return connection.mSet(raw);
+                }
+            });
+            return Boolean.TRUE.equals(result);
+        }
+        redisTemplate.executePipelined(new RedisCallback<Object>() {
+            @Override
+            public Object doInRedis(RedisConnection connection) throws DataAccessException {
+                for (Map.Entry<String, String> entry : values.entrySet()) {
+                    connection.setEx(serializer.serialize(entry.getKey()), validTime, serializer.serialize(entry.getValue()));
+                }
+                // 管道中的结果由 executePipelined 返回，这里必须返回 null
+                return null;
+            }
+        });
+        return true;
+    }
+
+    /**
+     * 批量按 json 序列化后写入，所有值共用一个 Gson
+     *
+     * @param values
+     * @param validTime 过期时间（秒），小于等于 0 表示不过期
+     * @return
+     */
+    public static boolean setAllAsJson(Map<String, ?> values, long validTime) {
+        if (values == null || values.isEmpty()) {
+            return true;
+        }
+        Gson gson = GsonUtil.getGson();
+        Map<String, String> json = new LinkedHashMap<>(values.size() * 2);
+        for (Map.Entry<String, ?> entry : values.entrySet()) {
+            json.put(entry.getKey(), gson.toJson(entry.getValue()));
+        }
+        return setAll(json, validTime);
+    }
+
+    /**
+     * 批量删除，一个 DEL 命令
+     *
+     * @param keys
+     * @return 实际删除的 key 数
+     */
+    public static long deleteAll(Collection<String> keys) {
+        if (keys == null || keys.isEmpty()) {
+            return 0;
+        }
+        Long result = redisTemplate.delete(keys);
+        return result == null ? 0 : result;
+    }
 }
@@ -0,0 +1,183 @@
+package com.hyman.springbootwar.websocket;
+
+import lombok.extern.slf4j.Slf4j;
+
+import javax.websocket.CloseReason;
+import javax.websocket.SendHandler;
+import javax.websocket.SendResult;
+import javax.websocket.Session;
+import java.io.IOException;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 原生 javax.websocket.Session 的异步发送器。
+ *
+ * getBasicRemote().sendText 会阻塞调用线程直到写完，推送线程被一个慢客户端拖住。这里改用 getAsyncRemote()：消息先放入 session
+ * 自己的有界队列，同一时刻只有一条在发送中（容器不允许同一个 session 并发异步发送），发送完成的回调里接着发队列中的下一条。
+ * 积压的消息在回调线程上连续发出，不再切换线程，也不占用推送方的请求线程或定时任务线程。
+ */
+@Slf4j
+public class AsyncEndpointSender implements SendHandler {
+
+    /**
+     * session.getUserProperties() 中存放发送器的 key
+     */
+    public static final String PROPERTY = "asyncSender";
+
+    private static final LongAdder SENT = new LongAdder();
+    private static final LongAdder FAILED = new LongAdder();
+    private static final LongAdder DROPPED = new LongAdder();
+
+    private static final int IDLE = 0;
+    private static final int SENDING = 1;
+    private static final int COMPLETED_INLINE = 2;
+
+    private final Session session;
+    private final WebSocketProperties.Endpoint config;
+
+    private final Queue<String> queue = new ConcurrentLinkedQueue<>();
+    // ConcurrentLinkedQueue.size() 需要遍历，单独计数
+    private final AtomicInteger size = new AtomicInteger();
+    // 是否有一条消息正在发送中
+    private final AtomicBoolean inFlight = new AtomicBoolean();
+    // 容器可能在 sendText 内部直接回调 onResult，此时不能在回调里递归发送下一条，交给外层循环继续
+    private final AtomicInteger phase = new AtomicInteger(IDLE);
+
+    private volatile boolean closed;
+
+    public AsyncEndpointSender(Session session, WebSocketProperties.Endpoint config) {
+        this.session = session;
+        this.config = config;
+        session.getAsyncRemote().setSendTimeout(config.getSendTimeoutMillis());
+    }
+
+    /**
+     * 放入发送队列后立即返回
+     *
+     * @param message
+     */
+    public void send(String message) {
+        if (closed) {
+            return;
+        }
+        if (size.incrementAndGet() > config.getMaxPending()) {
+            switch (config.getOverflowPolicy()) {
+                case DROP_OLDEST:
+                    if (queue.poll() != null) {
+                        size.decrementAndGet();
+                    }
+                    DROPPED.increment();
+                    break;
+                case DISCONNECT:
+                    size.decrementAndGet();
+                    DROPPED.increment();
+                    log.warn("session " + session.getId() + " 发送队列已满，断开连接");
+                    close(new CloseReason(CloseReason.CloseCodes.TRY_AGAIN_LATER, "send queue full"));
+                    return;
+                case DROP_NEWEST:
+                default:
+                    size.decrementAndGet();
+                    DROPPED.increment();
+                    return;
+            }
+        }
+        queue.offer(message);
+        if (inFlight.compareAndSet(false, true)) {
+            sendNext();
+        }
+    }
+
+    /**
+     * 发出队列中的下一条。只有持有 inFlight 的线程会调用
+     */
+    private void sendNext() {
+        while (true) {
+            String message = queue.poll();
+            if (message != null) {
+                size.decrementAndGet();
+                if (closed || !session.isOpen()) {
+                    discard();
+                    return;
+                }
+                phase.set(SENDING);
+                try {
+                    session.getAsyncRemote().sendText(message, this);
+                } catch (RuntimeException e) {
+                    FAILED.increment();
+                    log.debug("session " + session.getId() + " 异步发送失败：" + e.getMessage());
+                    phase.set(COMPLETED_INLINE);
+                }
+                if (phase.compareAndSet(SENDING, IDLE)) {
+                    // 还没有完成，由回调接着发
+                    return;
+                }
+                phase.set(IDLE);
+                continue;
+            }
+            inFlight.set(false);
+            // 释放之后又有消息进来，并且没有被其他线程接手时继续发
+            if (queue.isEmpty() || !inFlight.compareAndSet(false, true)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * 上一条发送完成的回调
+     *
+     * @param result
+     */
+    @Override
+    public void onResult(SendResult result) {
+        if (result.isOK()) {
+            SENT.increment();
+        } else {
+            FAILED.increment();
+            log.debug("session " + session.getId() + " 异步发送失败：" + result.getException());
+        }
+        if (phase.compareAndSet(SENDING, COMPLETED_INLINE)) {
+            return;
+        }
+        sendNext();
+    }
+
+    private void close(CloseReason reason) {
+        closed = true;
+        try {
+            session.close(reason);
+        } catch (IOException e) {
+            log.debug("session " + session.getId() + " 关闭失败：" + e.getMessage());
+        }
+    }
+
+    /**
+     * 连接关闭后丢弃还未发出的消息
+     */
+    public void discard() {
+        closed = true;
+        while (queue.poll() != null) {
+            size.decrementAndGet();
+        }
+        inFlight.set(false);
+    }
+
+    public int getPending() {
+        return size.get();
+    }
+
+    public static long getSentCount() {
+        return SENT.sum();
+    }
+
+    public static long getFailedCount() {
+        return FAILED.sum();
+    }
+
+    public static long getDroppedCount() {
+        return DROPPED.sum();
+    }
+}
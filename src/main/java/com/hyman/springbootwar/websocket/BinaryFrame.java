@@ -0,0 +1,29 @@
+package com.hyman.springbootwar.websocket;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 二进制协议中的一帧：类型 + 负载
+ */
+public class BinaryFrame {
+
+    private final byte type;
+    private final byte[] payload;
+
+    public BinaryFrame(byte type, byte[] payload) {
+        this.type = type;
+        this.payload = payload;
+    }
+
+    public byte getType() {
+        return type;
+    }
+
+    public byte[] getPayload() {
+        return payload;
+    }
+
+    public String getText() {
+        return new String(payload, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,239 @@
+package com.hyman.springbootwar.websocket;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * 二进制协议编解码。
+ *
+ * 每帧格式为：1 字节消息类型 + 变长整数（varint，7 位一组，最高位表示后面还有）表示的负载长度 + 负载。短消息的头只有 2 个字节，
+ * 一个 websocket 消息里可以连续放多帧。
+ *
+ * 类型的最高位 COMPRESSED 表示负载是用预置字典 DICTIONARY 压缩过的 raw deflate。服务端发出的 MESSAGE、SYSTEM 帧压缩后更短时
+ * 发压缩的内容（encodeCompact），房间群发时每条消息只压缩一次，所有二进制连接共用；文本端点的 permessage-deflate 是每个连接各
+ * 压缩一次，并且没有字典，几十字节的短消息基本压不动。客户端可以按字典解压，字典的内容与服务端必须一致。
+ */
+public final class BinaryFrameCodec {
+
+    /**
+     * 聊天消息，负载为 UTF-8 文本
+     */
+    public static final byte MESSAGE = 0x01;
+    /**
+     * 服务端通知（连接成功等）
+     */
+    public static final byte SYSTEM = 0x02;
+    public static final byte PING = 0x03;
+    public static final byte PONG = 0x04;
+    public static final byte ERROR = 0x7F;
+    /**
+     * 类型的最高位：负载经过字典压缩
+     */
+    public static final byte COMPRESSED = (byte) 0x80;
+
+    /**
+     * 压缩用的预置字典：服务端消息的固定部分和常见的字段、用语。只能在末尾追加，修改已有内容会让按旧字典解压的客户端出错
+     */
+    static final byte[] DICTIONARY = ("{\"type\":\"message\",\"text\":\"\",\"room\":\"\",\"topic\":\"\",\"liveId\":\"\",\"event\":\"goal\","
+            + "\"player\":\"\",\"home\":,\"away\":,\"minute\":,\"score\":\"\",\"id\":,\"name\":\"\",\"time\":\"\"}"
+            + " 主队进球 客队进球 连接成功 2026-01-01T00:00:00.000 server 发送给  消息 ").getBytes(StandardCharsets.UTF_8);
+
+    // 更短的负载压缩后不会更小，不压缩
+    private static final int MIN_COMPRESS_BYTES = 8;
+    // 解码时一帧解压后的最大字节数
+    private static final int MAX_INFLATED_BYTES = 1 << 20;
+    // 空闲 Deflater 的个数上限，都被占用时临时创建，用完释放
+    private static final int POOL_SIZE = 8;
+    private static final AtomicReferenceArray<Deflater> DEFLATERS = new AtomicReferenceArray<>(POOL_SIZE);
+
+    private BinaryFrameCodec() {
+    }
+
+    public static byte[] encode(byte type, String text) {
+        return encode(type, text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static byte[] encode(byte type, byte[] payload) {
+        return encode(type, payload, payload.length);
+    }
+
+    /**
+     * 编码一帧，负载用字典压缩后更短时写压缩后的内容并在类型上加 COMPRESSED，否则与 encode 相同
+     *
+     * @param type
+     * @param payload
+     * @return
+     */
+    public static byte[] encodeCompact(byte type, byte[] payload) {
+        if (payload.length < MIN_COMPRESS_BYTES) {
+            return encode(type, payload);
+        }
+        byte[] compressed = new byte[payload.length];
+        int length = deflate(payload, compressed);
+        if (length < 0) {
+            return encode(type, payload);
+        }
+        return encode((byte) (type | COMPRESSED), compressed, length);
+    }
+
+    public static byte[] encodeCompact(byte type, String text) {
+        return encodeCompact(type, text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static byte[] encode(byte type, byte[] payload, int length) {
+        byte[] frame = new byte[1 + varintSize(length) + length];
+        frame[0] = type;
+        int offset = writeVarint(frame, 1, length);
+        System.arraycopy(payload, 0, frame, offset, length);
+        return frame;
+    }
+
+    /**
+     * 解码一个 websocket 消息中的所有帧，压缩的帧解压后返回，类型中不再带 COMPRESSED
+     *
+     * @param buffer
+     * @return
+     */
+    public static List<BinaryFrame> decode(ByteBuffer buffer) {
+        return decode(buffer, true);
+    }
+
+    /**
+     * @param buffer
+     * @param inflate 为 false 时遇到压缩的帧直接报错。服务端解码客户端的消息时不解压，几 KB 的压缩帧可以解压出上百倍的内容，
+     *                绕过按字节数的限流
+     * @return
+     */
+    public static List<BinaryFrame> decode(ByteBuffer buffer, boolean inflate) {
+        List<BinaryFrame> frames = new ArrayList<>(1);
+        while (buffer.hasRemaining()) {
+            byte type = buffer.get();
+            int length = readVarint(buffer);
+            if (length < 0 || length > buffer.remaining()) {
+                throw new IllegalArgumentException("帧长度非法：" + length);
+            }
+            byte[] payload = new byte[length];
+            buffer.get(payload);
+            if ((type & COMPRESSED) != 0) {
+                if (!inflate) {
+                    throw new IllegalArgumentException("不接受压缩的帧");
+                }
+                type &= ~COMPRESSED;
+                payload = inflate(payload);
+            }
+            frames.add(new BinaryFrame(type, payload));
+        }
+        return frames;
+    }
+
+    /**
+     * 压缩到 target 中
+     *
+     * @return 压缩后的长度，不比原文短（target 放不下）时返回 -1
+     */
+    private static int deflate(byte[] payload, byte[] target) {
+        Deflater deflater = acquire();
+        try {
+            deflater.setDictionary(DICTIONARY);
+            deflater.setInput(payload);
+            deflater.finish();
+            int length = deflater.deflate(target, 0, target.length);
+            return deflater.finished() && length < payload.length ? length : -1;
+        } finally {
+            release(deflater);
+        }
+    }
+
+    private static byte[] inflate(byte[] payload) {
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setDictionary(DICTIONARY);
+            inflater.setInput(payload);
+            byte[] result = new byte[Math.max(64, payload.length * 4)];
+            int length = 0;
+            while (!inflater.finished()) {
+                if (length == result.length) {
+                    if (result.length >= MAX_INFLATED_BYTES) {
+                        throw new IllegalArgumentException("解压后超过 " + MAX_INFLATED_BYTES + " 字节");
+                    }
+                    result = Arrays.copyOf(result, Math.min(MAX_INFLATED_BYTES, result.length * 2));
+                }
+                int n = inflater.inflate(result, length, result.length - length);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IllegalArgumentException("压缩的负载不完整");
+                }
+                length += n;
+            }
+            return length == result.length ? result : Arrays.copyOf(result, length);
+        } catch (DataFormatException e) {
+            throw new IllegalArgumentException("压缩的负载格式错误：" + e.getMessage());
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * Deflater 占用几百 KB 的本地内存，创建、释放都不便宜，按槽位复用
+     */
+    private static Deflater acquire() {
+        int start = (int) Thread.currentThread().getId();
+        for (int i = 0; i < POOL_SIZE; i++) {
+            Deflater deflater = DEFLATERS.getAndSet((start + i) & (POOL_SIZE - 1), null);
+            if (deflater != null) {
+                deflater.reset();
+                return deflater;
+            }
+        }
+        return new Deflater(Deflater.BEST_SPEED, true);
+    }
+
+    private static void release(Deflater deflater) {
+        int start = (int) Thread.currentThread().getId();
+        for (int i = 0; i < POOL_SIZE; i++) {
+            if (DEFLATERS.compareAndSet((start + i) & (POOL_SIZE - 1), null, deflater)) {
+                return;
+            }
+        }
+        deflater.end();
+    }
+
+    static int varintSize(int value) {
+        int size = 1;
+        while ((value & ~0x7F) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    private static int writeVarint(byte[] target, int offset, int value) {
+        while ((value & ~0x7F) != 0) {
+            target[offset++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        target[offset++] = (byte) value;
+        return offset;
+    }
+
+    private static int readVarint(ByteBuffer buffer) {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            if (!buffer.hasRemaining()) {
+                throw new IllegalArgumentException("帧头不完整");
+            }
+            byte b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("帧长度超出范围");
+    }
+}
@@ -0,0 +1,61 @@
+package com.hyman.springbootwar.websocket;
+
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.WebSocketSessionDecorator;
+
+import java.io.IOException;
+
+/**
+ * 二进制端点的 session。单发、补发的 TextMessage 经过这里时转换成 MESSAGE 帧（能压缩时压缩，见 BinaryFrameCodec.encodeCompact）
+ * 再发给客户端；群发时由 OutboundFrame 为整轮群发转换一次，这里收到的已经是 BinaryMessage。
+ *
+ * 容器写出 BinaryMessage 时会读走它的 ByteBuffer（position 移到末尾），同一个 BinaryMessage 发给多个连接时后面的连接就只剩
+ * 空负载。所以写出前换成 ByteBuffer 的 duplicate：共用同一份字节，各自有独立的读取位置，不复制负载。
+ */
+public class BinaryFramingSession extends WebSocketSessionDecorator {
+
+    public BinaryFramingSession(WebSocketSession delegate) {
+        super(delegate);
+    }
+
+    @Override
+    public void sendMessage(WebSocketMessage<?> message) throws IOException {
+        if (message instanceof TextMessage) {
+            super.sendMessage(frame((TextMessage) message));
+        } else if (message instanceof BinaryMessage) {
+            BinaryMessage binary = (BinaryMessage) message;
+            super.sendMessage(new BinaryMessage(binary.getPayload().duplicate(), binary.isLast()));
+        } else {
+            super.sendMessage(message);
+        }
+    }
+
+    /**
+     * 文本消息对应的 MESSAGE 帧
+     *
+     * @param message
+     * @return
+     */
+    public static BinaryMessage frame(TextMessage message) {
+        return new BinaryMessage(BinaryFrameCodec.encodeCompact(BinaryFrameCodec.MESSAGE, message.asBytes()));
+    }
+
+    /**
+     * session（可能外面还包着发送队列等装饰）是否是二进制端点的连接
+     *
+     * @param session
+     * @return
+     */
+    public static boolean isBinary(WebSocketSession session) {
+        while (session instanceof WebSocketSessionDecorator) {
+            if (session instanceof BinaryFramingSession) {
+                return true;
+            }
+            session = ((WebSocketSessionDecorator) session).getDelegate();
+        }
+        return false;
+    }
+}
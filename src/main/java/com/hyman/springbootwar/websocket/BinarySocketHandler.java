@@ -0,0 +1,80 @@
+package com.hyman.springbootwar.websocket;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.PongMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.BinaryWebSocketHandler;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 二进制端点，给网络条件差的移动端使用。
+ *
+ * 客户端发送的每个 websocket 消息由一个或多个 BinaryFrameCodec 帧组成，不接受压缩的帧，整个消息按原始字节数限速一次；服务端发出的房间消息经
+ * BinaryFramingSession 转成 MESSAGE 帧，能压缩时压缩。
+ * 连接建立、关闭以及消息的业务处理与文本端点完全相同，直接交给 WebSocketHandler 处理。
+ */
+@Component
+@Slf4j
+public class BinarySocketHandler extends BinaryWebSocketHandler {
+
+    @Autowired
+    private WebSocketHandler textHandler;
+
+    @Override
+    public void afterConnectionEstablished(WebSocketSession session) throws Exception {
+        textHandler.afterConnectionEstablished(new BinaryFramingSession(session));
+    }
+
+    @Override
+    protected void handleBinaryMessage(WebSocketSession session, BinaryMessage message) throws Exception {
+        ByteBuffer buffer = message.getPayload();
+        // 与文本端点一样先限速，按整个消息的原始字节数算，在解码之前；PING 帧也计入
+        if (!InboundRateLimiter.admit(session, buffer.remaining())) {
+            return;
+        }
+        HeartbeatWheel.touch(session);
+        for (BinaryFrame frame : BinaryFrameCodec.decode(buffer, false)) {
+            switch (frame.getType()) {
+                case BinaryFrameCodec.MESSAGE:
+                    textHandler.handlePayload(session, new String(frame.getPayload(), StandardCharsets.UTF_8));
+                    break;
+                case BinaryFrameCodec.PING:
+                    reply(session, BinaryFrameCodec.encode(BinaryFrameCodec.PONG, frame.getPayload()));
+                    break;
+                default:
+                    log.debug("忽略未知的帧类型 " + frame.getType());
+            }
+        }
+    }
+
+    /**
+     * 回复也要走房间里的发送队列，不能直接写原始 session，否则会与群发线程并发写同一个连接
+     */
+    private void reply(WebSocketSession session, byte[] frame) throws Exception {
+        WebSocketSession outbound = TalkerRoomManager.getSession(WebSocketHandler.getTalker(session));
+        if (outbound != null) {
+            outbound.sendMessage(new BinaryMessage(frame));
+        }
+    }
+
+    @Override
+    protected void handlePongMessage(WebSocketSession session, PongMessage message) throws Exception {
+        textHandler.handlePongMessage(session, message);
+    }
+
+    @Override
+    public void handleTransportError(WebSocketSession session, Throwable exception) throws Exception {
+        textHandler.handleTransportError(session, exception);
+    }
+
+    @Override
+    public void afterConnectionClosed(WebSocketSession session, CloseStatus status) throws Exception {
+        textHandler.afterConnectionClosed(session, status);
+    }
+}
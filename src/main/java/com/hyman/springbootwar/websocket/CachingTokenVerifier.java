@@ -0,0 +1,74 @@
+package com.hyman.springbootwar.websocket;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 带本地短期缓存的 token 校验。
+ *
+ * 重连风暴时同一批 token 会在几秒内反复握手，校验通过的 token 在本地缓存 ttl 时间，期间不再访问 redis。只缓存校验通过的结果，
+ * 登出后最多 ttl 时间内旧 token 仍可握手，所以 ttl 要设得短一些。
+ *
+ * 缓存用 caffeine，超过 maxSize 时只淘汰最近最少使用的一部分，不会像清空整个 map 那样让所有 token 同时回源 redis。
+ */
+public class CachingTokenVerifier implements TokenVerifier {
+
+    private final TokenVerifier delegate;
+
+    private final Cache<String, Boolean> verified;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public CachingTokenVerifier(TokenVerifier delegate, long ttlMillis, int maxSize) {
+        this.delegate = delegate;
+        this.verified = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttlMillis, TimeUnit.MILLISECONDS)
+                .build();
+    }
+
+    @Override
+    public boolean verify(String token) {
+        if (verified.getIfPresent(token) != null) {
+            hits.increment();
+            return true;
+        }
+        misses.increment();
+        if (!delegate.verify(token)) {
+            return false;
+        }
+        verified.put(token, Boolean.TRUE);
+        return true;
+    }
+
+    /**
+     * 主动失效，比如用户登出时
+     *
+     * @param token
+     */
+    public void invalidate(String token) {
+        verified.invalidate(token);
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /**
+     * 先执行一次待处理的淘汰，返回的数量不会超过 maxSize
+     *
+     * @return
+     */
+    public long getSize() {
+        verified.cleanUp();
+        return verified.estimatedSize();
+    }
+}
@@ -0,0 +1,170 @@
+package com.hyman.springbootwar.websocket;
+
+import com.hyman.springbootwar.util.GsonUtil;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.List;
+
+/**
+ * 集群群发。
+ *
+ * ROOM_POOL 只在当前 JVM 中，负载均衡后同一个房间的人分散在不同的节点上。开启集群模式后，发往房间的消息先投递给本节点的成员，
+ * 再向该房间的频道发布一次，其他节点收到后只投递给自己本地的成员。
+ *
+ * 节点只订阅本地有成员的房间（房间创建时订阅，房间删除时取消订阅），所以 redis 的流量只与活跃房间数有关，与房间总数无关。
+ * 全局群发单独走一个所有节点都订阅的频道，同样只发布一次。
+ */
+@Slf4j
+public class ClusterBroadcaster {
+
+    private final RoomBus bus;
+    private final String nodeId;
+    private final String channelPrefix;
+    private final LocalDelivery delivery;
+
+    public ClusterBroadcaster(RoomBus bus, String nodeId, String channelPrefix, LocalDelivery delivery) {
+        this.bus = bus;
+        this.nodeId = nodeId;
+        this.channelPrefix = channelPrefix;
+        this.delivery = delivery;
+    }
+
+    /**
+     * 订阅全局频道
+     */
+    public void start() {
+        bus.subscribe(globalChannel(), this::onMessage);
+    }
+
+    public void stop() {
+        bus.unsubscribe(globalChannel());
+    }
+
+    /**
+     * 本节点出现了该房间的第一个成员
+     *
+     * @param roomID
+     */
+    public void roomActivated(String roomID) {
+        bus.subscribe(roomChannel(roomID), this::onMessage);
+    }
+
+    /**
+     * 本节点上该房间已经没人了
+     *
+     * @param roomID
+     */
+    public void roomDeactivated(String roomID) {
+        bus.unsubscribe(roomChannel(roomID));
+    }
+
+    /**
+     * 发给整个房间：本地成员直接投递，其他节点通过频道投递
+     *
+     * @param roomID
+     * @param message
+     */
+    public void publishToRoom(String roomID, String message) {
+        delivery.toRoom(roomID, message);
+        bus.publish(roomChannel(roomID), envelope(roomID, null, null, message));
+    }
+
+    /**
+     * 批量推送：同一房间需要其他节点投递的多条合成一个消息体，只发布一次。本节点上的投递由调用方完成。
+     *
+     * 房间频道只有该房间有成员的节点订阅，各节点按原来的顺序投递自己的那一部分：发给整个房间的投递给本地成员，发给 session 的
+     * 只有持有该 session 的节点投递。
+     *
+     * @param roomID
+     * @param targets
+     */
+    public void publishBatch(String roomID, List<PushTarget> targets) {
+        ClusterMessage envelope = new ClusterMessage();
+        envelope.setOrigin(nodeId);
+        envelope.setRoom(roomID);
+        envelope.setTargets(targets);
+        bus.publish(roomChannel(roomID), GsonUtil.getGson().toJson(envelope));
+    }
+
+    /**
+     * 发给不在本节点上的某个 session，由持有它的节点投递
+     *
+     * @param roomID
+     * @param sessionID
+     * @param liveid
+     * @param message
+     */
+    public void publishToSession(String roomID, String sessionID, String liveid, String message) {
+        bus.publish(roomChannel(roomID), envelope(roomID, sessionID, liveid, message));
+    }
+
+    /**
+     * 全局群发
+     *
+     * @param message
+     */
+    public void publishToAll(String message) {
+        delivery.toAll(message);
+        bus.publish(globalChannel(), envelope(null, null, null, message));
+    }
+
+    private void onMessage(String body) {
+        try {
+            ClusterMessage message = GsonUtil.getGson().fromJson(body, ClusterMessage.class);
+            if (message == null || nodeId.equals(message.getOrigin())) {
+                return;
+            }
+            if (message.getRoom() == null) {
+                delivery.toAll(message.getPayload());
+            } else if (message.getTargets() != null) {
+                for (PushTarget target : message.getTargets()) {
+                    if (target.getSession() == null || target.getSession().isEmpty()) {
+                        delivery.toRoom(message.getRoom(), target.getPayload());
+                    } else {
+                        delivery.toSession(message.getRoom(), target.getSession(), null, target.getPayload());
+                    }
+                }
+            } else if (message.getSession() == null) {
+                delivery.toRoom(message.getRoom(), message.getPayload());
+            } else {
+                delivery.toSession(message.getRoom(), message.getSession(), message.getLiveid(), message.getPayload());
+            }
+        } catch (Exception e) {
+            log.error("集群消息处理失败：" + e.getMessage(), e);
+        }
+    }
+
+    private String envelope(String roomID, String sessionID, String liveid, String payload) {
+        ClusterMessage message = new ClusterMessage();
+        message.setOrigin(nodeId);
+        message.setRoom(roomID);
+        message.setSession(sessionID);
+        message.setLiveid(liveid);
+        message.setPayload(payload);
+        return GsonUtil.getGson().toJson(message);
+    }
+
+    String roomChannel(String roomID) {
+        return channelPrefix + "room:" + roomID;
+    }
+
+    String globalChannel() {
+        return channelPrefix + "all";
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    /**
+     * 投递给本节点上的成员
+     */
+    public interface LocalDelivery {
+
+        void toRoom(String roomID, String message);
+
+        void toSession(String roomID, String sessionID, String liveid, String message);
+
+        void toAll(String message);
+    }
+}
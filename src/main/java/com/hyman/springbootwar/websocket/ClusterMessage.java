@@ -0,0 +1,69 @@
+package com.hyman.springbootwar.websocket;
+
+import java.util.List;
+
+/**
+ * 节点之间通过 RoomBus 传递的消息体
+ */
+public class ClusterMessage {
+
+    // 发布消息的节点，收到自己发布的消息时直接忽略（本地已经投递过）
+    private String origin;
+    // 目标房间，全局群发时为空
+    private String room;
+    // 目标 session，为空表示发给整个房间
+    private String session;
+    // 直播号，单条发送时拼接消息用，为空时原样发送
+    private String liveid;
+    private String payload;
+    // 批量推送时同一房间的多条（发给整个房间或房间中的某个 session）合在一个消息体里发布，按顺序投递
+    private List<PushTarget> targets;
+
+    public String getOrigin() {
+        return origin;
+    }
+
+    public void setOrigin(String origin) {
+        this.origin = origin;
+    }
+
+    public String getRoom() {
+        return room;
+    }
+
+    public void setRoom(String room) {
+        this.room = room;
+    }
+
+    public String getSession() {
+        return session;
+    }
+
+    public void setSession(String session) {
+        this.session = session;
+    }
+
+    public String getLiveid() {
+        return liveid;
+    }
+
+    public void setLiveid(String liveid) {
+        this.liveid = liveid;
+    }
+
+    public String getPayload() {
+        return payload;
+    }
+
+    public void setPayload(String payload) {
+        this.payload = payload;
+    }
+
+    public List<PushTarget> getTargets() {
+        return targets;
+    }
+
+    public void setTargets(List<PushTarget> targets) {
+        this.targets = targets;
+    }
+}
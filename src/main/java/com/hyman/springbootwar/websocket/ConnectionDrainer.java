@@ -0,0 +1,232 @@
+package com.hyman.springbootwar.websocket;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketSession;
+
+import javax.websocket.CloseReason;
+import javax.websocket.Session;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 连接排空。
+ *
+ * 发版时如果所有连接同时断开，客户端会在同一秒涌向剩下的节点。排空开始后先拒绝新的握手，再把本节点上的连接打乱顺序，
+ * 在 windowMillis 内每隔 intervalMillis 关闭一批。关闭码默认 1012（Service Restart），关闭原因中带上随机的重连等待时间
+ * reconnect-after={毫秒}，客户端按它延迟之后换一个节点重连，进一步把重连打散。
+ *
+ * 由 MyListener.contextDestroyed 在应用关闭时触发，也可以通过管理接口手动触发。每个进程只排空一次。
+ */
+@Slf4j
+public class ConnectionDrainer {
+
+    /**
+     * 关闭原因中重连等待时间的前缀
+     */
+    public static final String RECONNECT_HINT = "reconnect-after=";
+
+    private static volatile WebSocketProperties.Drain config = new WebSocketProperties.Drain();
+
+    private static final AtomicBoolean DRAINING = new AtomicBoolean();
+    private static final LongAdder CLOSED = new LongAdder();
+
+    private static volatile CountDownLatch done = new CountDownLatch(1);
+
+    private static volatile int total;
+    private static volatile long startedAt;
+
+    public static void setConfig(WebSocketProperties.Drain config) {
+        ConnectionDrainer.config = config;
+    }
+
+    public static WebSocketProperties.Drain getConfig() {
+        return config;
+    }
+
+    public static boolean isDraining() {
+        return DRAINING.get();
+    }
+
+    /**
+     * 开始排空，立即返回
+     *
+     * @param windowMillis 为 null 时使用配置的时间
+     * @return 已经在排空时返回 false
+     */
+    public static boolean start(Long windowMillis) {
+        if (!DRAINING.compareAndSet(false, true)) {
+            return false;
+        }
+        WebSocketProperties.Drain current = config;
+        long window = windowMillis == null ? current.getWindowMillis() : Math.max(0, windowMillis);
+        long interval = Math.max(1, current.getIntervalMillis());
+        startedAt = System.currentTimeMillis();
+
+        List<Runnable> closers = collect(current);
+        Collections.shuffle(closers);
+        total = closers.size();
+        int perRound = batchSize(closers.size(), window, interval);
+        log.info("开始排空 " + closers.size() + " 个连接，" + window + " 毫秒内每 " + interval + " 毫秒关闭 " + perRound + " 个");
+        CountDownLatch finished = done;
+
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "ws-drain");
+            thread.setDaemon(true);
+            return thread;
+        });
+        int[] next = {0};
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                next[0] = closeBatch(closers, next[0], perRound);
+                if (next[0] >= closers.size()) {
+                    // 排空期间握手已被拒绝，这里只是兜底关闭开始之后才完成握手的连接
+                    List<Runnable> late = collect(current);
+                    closeBatch(late, 0, late.size());
+                    log.info("连接排空完成，共关闭 " + CLOSED.sum() + " 个连接");
+                    finished.countDown();
+                    scheduler.shutdown();
+                }
+            } catch (Exception e) {
+                // 异常不能抛出，否则定时任务会被取消
+                log.error(e.getMessage(), e);
+            }
+        }, 0, interval, TimeUnit.MILLISECONDS);
+        return true;
+    }
+
+    /**
+     * 每批关闭的连接数：在 window 内每隔 interval 关闭一批，至少一批，最后一批可能不满
+     *
+     * @param count    连接数
+     * @param window
+     * @param interval 大于 0
+     * @return
+     */
+    static int batchSize(int count, long window, long interval) {
+        long rounds = Math.max(1, window / interval);
+        return (int) Math.max(1, (count + rounds - 1) / rounds);
+    }
+
+    /**
+     * 关闭 [from, from + batchSize) 中的连接，单个连接关闭时抛出的异常不影响其他连接
+     *
+     * @return 下一批的起始位置
+     */
+    static int closeBatch(List<Runnable> closers, int from, int batchSize) {
+        int end = Math.min(closers.size(), from + batchSize);
+        for (int i = from; i < end; i++) {
+            try {
+                closers.get(i).run();
+            } catch (RuntimeException e) {
+                log.warn("排空时关闭连接失败：" + e.getMessage());
+            }
+        }
+        return end;
+    }
+
+    /**
+     * 应用关闭时调用：按配置排空并等待结束
+     */
+    public static void drainOnShutdown() {
+        WebSocketProperties.Drain current = config;
+        if (!current.isDrainOnShutdown()) {
+            return;
+        }
+        start(null);
+        try {
+            if (!done.await(current.getWindowMillis() + current.getIntervalMillis() * 2, TimeUnit.MILLISECONDS)) {
+                log.warn("连接排空超时，剩余连接随容器关闭");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 本节点上所有需要关闭的连接：房间中的连接以及原生端点 /myWs/{sid} 上的连接
+     */
+    private static List<Runnable> collect(WebSocketProperties.Drain current) {
+        List<Runnable> closers = new ArrayList<>();
+        for (WebSocketSession session : TalkerRoomManager.getAllSessions()) {
+            closers.add(() -> close(session, current));
+        }
+        for (Session session : WsServerEndpoint.getSessions()) {
+            closers.add(() -> close(session, current));
+        }
+        return closers;
+    }
+
+    private static void close(WebSocketSession session, WebSocketProperties.Drain current) {
+        if (!session.isOpen()) {
+            return;
+        }
+        try {
+            session.close(new CloseStatus(current.getCloseCode(), reconnectHint(current)));
+            CLOSED.increment();
+        } catch (IOException e) {
+            log.debug("session " + session.getId() + " 关闭失败：" + e.getMessage());
+        }
+    }
+
+    static void close(Session session, WebSocketProperties.Drain current) {
+        if (!session.isOpen()) {
+            return;
+        }
+        try {
+            session.close(new CloseReason(CloseReason.CloseCodes.getCloseCode(current.getCloseCode()), reconnectHint(current)));
+            CLOSED.increment();
+        } catch (IOException e) {
+            log.debug("session " + session.getId() + " 关闭失败：" + e.getMessage());
+        }
+    }
+
+    /**
+     * 随机的重连等待时间，每个连接不同
+     */
+    static String reconnectHint(WebSocketProperties.Drain current) {
+        long jitter = current.getReconnectJitterMillis() <= 0 ? 0
+                : ThreadLocalRandom.current().nextLong(current.getReconnectJitterMillis());
+        return RECONNECT_HINT + jitter;
+    }
+
+    /**
+     * 距离下一次可以握手的秒数（只是建议值），用于拒绝握手时的 Retry-After
+     *
+     * @return
+     */
+    public static long retryAfterSeconds() {
+        return Math.max(1, TimeUnit.MILLISECONDS.toSeconds(config.getReconnectJitterMillis()));
+    }
+
+    public static Map<String, Object> stats() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("draining", DRAINING.get());
+        result.put("finished", done.getCount() == 0);
+        result.put("startedAt", startedAt);
+        result.put("total", total);
+        result.put("closed", CLOSED.sum());
+        return result;
+    }
+
+    /**
+     * 结束排空状态，只用于测试。正在进行的排空不会停止
+     */
+    static void reset() {
+        DRAINING.set(false);
+        done = new CountDownLatch(1);
+        total = 0;
+        startedAt = 0;
+    }
+}
@@ -0,0 +1,36 @@
+package com.hyman.springbootwar.websocket;
+
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.web.socket.WebSocketExtension;
+import org.springframework.web.socket.server.support.DefaultHandshakeHandler;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 握手时的扩展协商：客户端请求了 permessage-deflate 且容器（tomcat 自带）支持时，按配置决定是否启用压缩。
+ * 压缩能明显减小文本较多的帧，但会消耗 CPU，并且每个连接要额外占用压缩窗口的内存，所以做成可配置。
+ */
+public class DeflateHandshakeHandler extends DefaultHandshakeHandler {
+
+    private static final String PERMESSAGE_DEFLATE = "permessage-deflate";
+
+    private final boolean deflate;
+
+    public DeflateHandshakeHandler(boolean deflate) {
+        this.deflate = deflate;
+    }
+
+    @Override
+    protected List<WebSocketExtension> filterRequestedExtensions(ServerHttpRequest request,
+                                                                 List<WebSocketExtension> requestedExtensions,
+                                                                 List<WebSocketExtension> supportedExtensions) {
+        List<WebSocketExtension> result = new ArrayList<>();
+        for (WebSocketExtension extension : super.filterRequestedExtensions(request, requestedExtensions, supportedExtensions)) {
+            if (!PERMESSAGE_DEFLATE.equalsIgnoreCase(extension.getName()) || deflate) {
+                result.add(extension);
+            }
+        }
+        return result;
+    }
+}
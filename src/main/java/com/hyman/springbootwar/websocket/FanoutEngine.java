@@ -0,0 +1,104 @@
+package com.hyman.springbootwar.websocket;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 群发引擎。
+ *
+ * WebSocketSession.sendMessage 是阻塞写，之前群发时在调用线程上逐个写出，一个网络慢的客户端就会卡住整个群发，以及触发群发的
+ * 那个接收线程。这里给每个 session 包一层 QueuedWebSocketSession，sendMessage 只是放入该 session 自己的有界队列，真正的写出
+ * 交给独立的线程池完成，调用方放入队列后立即返回。
+ */
+@Slf4j
+public class FanoutEngine {
+
+    private final WebSocketProperties.Fanout config;
+
+    private volatile ExecutorService executor;
+
+    // 因队列溢出而丢弃的消息数
+    private final AtomicLong dropped = new AtomicLong();
+    // 因跟不上而被断开的 session 数
+    private final AtomicLong disconnected = new AtomicLong();
+
+    public FanoutEngine(WebSocketProperties.Fanout config) {
+        this.config = config;
+    }
+
+    /**
+     * 给 session 包上发送队列
+     *
+     * @param session
+     * @return
+     */
+    public WebSocketSession decorate(WebSocketSession session) {
+        if (session instanceof QueuedWebSocketSession) {
+            return session;
+        }
+        return new QueuedWebSocketSession(session, this);
+    }
+
+    WebSocketProperties.Fanout getConfig() {
+        return config;
+    }
+
+    void execute(Runnable task) {
+        getExecutor().execute(task);
+    }
+
+    void onDropped() {
+        dropped.incrementAndGet();
+    }
+
+    void onDisconnected() {
+        disconnected.incrementAndGet();
+    }
+
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    public long getDisconnectedCount() {
+        return disconnected.get();
+    }
+
+    /**
+     * 线程池延迟到第一次发送时才创建，没有 websocket 流量的节点不会多出线程
+     */
+    private ExecutorService getExecutor() {
+        ExecutorService current = executor;
+        if (current == null) {
+            synchronized (this) {
+                current = executor;
+                if (current == null) {
+                    current = Executors.newFixedThreadPool(Math.max(1, config.getThreads()), new ThreadFactory() {
+                        private final AtomicInteger index = new AtomicInteger();
+
+                        @Override
+                        public Thread newThread(Runnable r) {
+                            Thread thread = new Thread(r, "ws-fanout-" + index.incrementAndGet());
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    });
+                    executor = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    public void shutdown() {
+        ExecutorService current = executor;
+        if (current != null) {
+            current.shutdown();
+        }
+    }
+}
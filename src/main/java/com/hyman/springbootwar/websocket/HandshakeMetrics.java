@@ -0,0 +1,55 @@
+package com.hyman.springbootwar.websocket;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 握手指标，代替之前的 System.out 输出
+ */
+public class HandshakeMetrics {
+
+    private final LongAdder accepted = new LongAdder();
+    private final LongAdder missingToken = new LongAdder();
+    private final LongAdder invalidToken = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+    void accepted(long nanos) {
+        accepted.increment();
+        record(nanos);
+    }
+
+    void missingToken(long nanos) {
+        missingToken.increment();
+        record(nanos);
+    }
+
+    void invalidToken(long nanos) {
+        invalidToken.increment();
+        record(nanos);
+    }
+
+    void error() {
+        errors.increment();
+    }
+
+    private void record(long nanos) {
+        totalNanos.add(nanos);
+        maxNanos.accumulate(nanos);
+    }
+
+    public Map<String, Object> snapshot() {
+        long total = accepted.sum() + missingToken.sum() + invalidToken.sum();
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("accepted", accepted.sum());
+        result.put("missingToken", missingToken.sum());
+        result.put("invalidToken", invalidToken.sum());
+        result.put("errors", errors.sum());
+        result.put("avgMicros", total == 0 ? 0 : totalNanos.sum() / total / 1000);
+        result.put("maxMicros", maxNanos.get() / 1000);
+        return result;
+    }
+}
@@ -0,0 +1,293 @@
+package com.hyman.springbootwar.websocket;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.socket.PingMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.WebSocketSessionDecorator;
+import org.springframework.web.socket.sockjs.transport.SockJsSession;
+
+import java.util.ArrayDeque;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * 心跳与空闲连接清理，基于哈希时间轮。
+ *
+ * 所有连接共用一个线程和一个环形数组（每格一个队列），连接按下次检查的 tick 放入对应的格子。线程每个 tick 只处理当前这一格，
+ * 到期的连接发送 ping 后放到 interval 之后的格子里；超过 idleTimeout 没有收到 pong 或任何消息的连接交给 evictor 清理。
+ * ping 经过发送队列，放入队列就返回，不会因为连接断了而抛出异常，所以到期时先检查连接本身：底层连接已经关闭、或者发送队列
+ * 溢出正在断开的，不再发 ping，直接清理。
+ * 十万个连接也只有一个定时任务，每个 tick 的开销只与这一格里的连接数有关，不需要每个连接一个 ScheduledFuture。
+ *
+ * 格子只由时间轮线程读写；新连接先放入 pending 队列，下一个 tick 再挂到轮上；取消只是打标记，转到该格时顺手移除。
+ */
+@Slf4j
+public class HeartbeatWheel {
+
+    /**
+     * 连接对应的心跳记录存放在 session 属性中的 key
+     */
+    public static final String ATTRIBUTE = "heartbeat";
+
+    private final WebSocketProperties.Heartbeat config;
+    private final Consumer<Talker> evictor;
+    private final ArrayDeque<Entry>[] wheel;
+    private final long intervalTicks;
+
+    private final ConcurrentLinkedQueue<Entry> pending = new ConcurrentLinkedQueue<>();
+    private long tick;
+
+    private final LongAdder active = new LongAdder();
+    private final LongAdder pingsSent = new LongAdder();
+    private final LongAdder pongs = new LongAdder();
+    private final LongAdder evicted = new LongAdder();
+    private final LongAdder rttTotalNanos = new LongAdder();
+    private final LongAccumulator rttMaxNanos = new LongAccumulator(Math::max, 0);
+
+    private volatile ScheduledExecutorService scheduler;
+
+    /**
+     * @param config
+     * @param evictor 清理失效连接的方法
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public HeartbeatWheel(WebSocketProperties.Heartbeat config, Consumer<Talker> evictor) {
+        this.config = config;
+        this.evictor = evictor;
+        this.wheel = new ArrayDeque[Math.max(1, config.getWheelSize())];
+        for (int i = 0; i < wheel.length; i++) {
+            wheel[i] = new ArrayDeque<>();
+        }
+        this.intervalTicks = Math.max(1, config.getIntervalMillis() / Math.max(1, config.getTickMillis()));
+    }
+
+    /**
+     * 登记一个连接，返回的记录放入 session 属性，收到 pong 或消息时通过它刷新活跃时间。
+     *
+     * SockJS 会话只能发文本消息，并且 SockJS 自己有心跳帧，不登记。
+     *
+     * @param session 房间中的 session，ping 也要走它的发送队列
+     * @param talker
+     * @return 未开启心跳或不需要心跳时返回 null
+     */
+    public Entry register(WebSocketSession session, Talker talker) {
+        if (!config.isEnabled() || WebSocketSessionDecorator.unwrap(session) instanceof SockJsSession) {
+            return null;
+        }
+        Entry entry = new Entry(session, talker);
+        active.increment();
+        pending.add(entry);
+        getScheduler();
+        return entry;
+    }
+
+    /**
+     * 收到客户端任意消息，刷新活跃时间
+     *
+     * @param session
+     */
+    public static void touch(WebSocketSession session) {
+        Object entry = session.getAttributes().get(ATTRIBUTE);
+        if (entry instanceof Entry) {
+            ((Entry) entry).touch();
+        }
+    }
+
+    /**
+     * 收到 pong，记录往返时间
+     *
+     * @param session
+     */
+    public void pong(WebSocketSession session) {
+        Object value = session.getAttributes().get(ATTRIBUTE);
+        if (!(value instanceof Entry)) {
+            return;
+        }
+        Entry entry = (Entry) value;
+        long sent = entry.pingSentNanos;
+        entry.touch();
+        pongs.increment();
+        if (sent != 0) {
+            long rtt = System.nanoTime() - sent;
+            entry.pingSentNanos = 0;
+            entry.rttNanos = rtt;
+            rttTotalNanos.add(rtt);
+            rttMaxNanos.accumulate(rtt);
+        }
+    }
+
+    /**
+     * 连接关闭时取消
+     *
+     * @param session
+     */
+    public static void cancel(WebSocketSession session) {
+        Object entry = session.getAttributes().remove(ATTRIBUTE);
+        if (entry instanceof Entry) {
+            ((Entry) entry).cancelled = true;
+        }
+    }
+
+    /**
+     * 时间轮前进一格，只在时间轮线程上调用
+     */
+    void tick() {
+        long now = System.currentTimeMillis();
+        Entry entry;
+        while ((entry = pending.poll()) != null) {
+            schedule(entry, intervalTicks);
+        }
+
+        ArrayDeque<Entry> slot = wheel[(int) (tick % wheel.length)];
+        // 只处理进入本格时已有的记录，本轮重新放回本格的留到下一圈
+        for (int i = slot.size(); i > 0; i--) {
+            entry = slot.poll();
+            if (entry.cancelled) {
+                active.decrement();
+            } else if (entry.deadline > tick) {
+                slot.add(entry);
+            } else {
+                expire(entry, now);
+            }
+        }
+        tick++;
+    }
+
+    private void schedule(Entry entry, long ticks) {
+        entry.deadline = tick + ticks;
+        wheel[(int) (entry.deadline % wheel.length)].add(entry);
+    }
+
+    private void expire(Entry entry, long now) {
+        if (now - entry.lastSeen > config.getIdleTimeoutMillis() || !isAlive(entry.session)) {
+            evict(entry);
+            return;
+        }
+        try {
+            entry.pingSentNanos = System.nanoTime();
+            entry.session.sendMessage(new PingMessage());
+            pingsSent.increment();
+            schedule(entry, intervalTicks);
+        } catch (Exception e) {
+            // 只有没有发送队列的 session 会走到这里
+            log.debug("session " + entry.session.getId() + " 发送 ping 失败：" + e.getMessage());
+            evict(entry);
+        }
+    }
+
+    /**
+     * 底层连接仍然打开，并且没有因为发送队列溢出而正在断开
+     *
+     * @param session
+     * @return
+     */
+    private static boolean isAlive(WebSocketSession session) {
+        if (session instanceof QueuedWebSocketSession && ((QueuedWebSocketSession) session).isClosing()) {
+            return false;
+        }
+        return session.isOpen();
+    }
+
+    private void evict(Entry entry) {
+        entry.cancelled = true;
+        active.decrement();
+        evicted.increment();
+        try {
+            evictor.accept(entry.talker);
+        } catch (Exception e) {
+            log.error(e.getMessage(), e);
+        }
+    }
+
+    private ScheduledExecutorService getScheduler() {
+        ScheduledExecutorService current = scheduler;
+        if (current == null) {
+            synchronized (this) {
+                current = scheduler;
+                if (current == null) {
+                    current = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                        Thread thread = new Thread(runnable, "ws-heartbeat");
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+                    current.scheduleAtFixedRate(this::safeTick, config.getTickMillis(), config.getTickMillis(),
+                            TimeUnit.MILLISECONDS);
+                    scheduler = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    private void safeTick() {
+        try {
+            tick();
+        } catch (Exception e) {
+            // 异常不能抛出，否则定时任务会被取消
+            log.error(e.getMessage(), e);
+        }
+    }
+
+    public Map<String, Object> stats() {
+        long pongCount = pongs.sum();
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("active", active.sum());
+        result.put("pingsSent", pingsSent.sum());
+        result.put("pongs", pongCount);
+        result.put("evicted", evicted.sum());
+        result.put("avgRttMicros", pongCount == 0 ? 0 : rttTotalNanos.sum() / pongCount / 1000);
+        result.put("maxRttMicros", rttMaxNanos.get() / 1000);
+        return result;
+    }
+
+    public void shutdown() {
+        ScheduledExecutorService current = scheduler;
+        if (current != null) {
+            current.shutdownNow();
+        }
+    }
+
+    /**
+     * 单个连接的心跳记录
+     */
+    public static class Entry {
+
+        private final WebSocketSession session;
+        private final Talker talker;
+
+        private volatile long lastSeen = System.currentTimeMillis();
+        private volatile long pingSentNanos;
+        private volatile long rttNanos;
+        private volatile boolean cancelled;
+
+        // 下次检查的 tick，只由时间轮线程读写
+        private long deadline;
+
+        Entry(WebSocketSession session, Talker talker) {
+            this.session = session;
+            this.talker = talker;
+        }
+
+        void touch() {
+            lastSeen = System.currentTimeMillis();
+        }
+
+        public long getLastSeen() {
+            return lastSeen;
+        }
+
+        /**
+         * 最近一次 ping 的往返时间（微秒）
+         */
+        public long getRttMicros() {
+            return rttNanos / 1000;
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.hyman.springbootwar.websocket;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonSyntaxException;
+
+/**
+ * 客户端发来的消息。
+ *
+ * 需要指定投递方式时发送 {"route":"topic","topic":"match-1001","body":"..."}；普通文本（或者没有 route 字段的 json）整个作为
+ * body，按默认投递方式处理，老客户端不需要修改。
+ */
+public class InboundMessage {
+
+    private static final Gson GSON = new Gson();
+
+    private String route;
+    private String topic;
+    private String body;
+
+    /**
+     * 解析客户端消息，只有以 { 开头并且带 route 字段时才做 json 解析
+     *
+     * @param payload
+     * @param defaultRoute
+     * @return
+     */
+    public static InboundMessage parse(String payload, Route defaultRoute) {
+        if (!payload.isEmpty() && payload.charAt(0) == '{' && payload.contains("\"route\"")) {
+            try {
+                InboundMessage message = GSON.fromJson(payload, InboundMessage.class);
+                if (message != null && message.route != null) {
+                    return message;
+                }
+            } catch (JsonSyntaxException e) {
+                // 不是合法的 json，按普通文本处理
+            }
+        }
+        InboundMessage message = new InboundMessage();
+        message.route = defaultRoute.name();
+        message.body = payload;
+        return message;
+    }
+
+    /**
+     * @return 无法识别的投递方式返回 null
+     */
+    public Route getRoute() {
+        try {
+            return Route.valueOf(route.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    public String getTopic() {
+        return topic;
+    }
+
+    public String getBody() {
+        return body;
+    }
+}
@@ -0,0 +1,234 @@
+package com.hyman.springbootwar.websocket;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 客户端消息限速。
+ *
+ * 每个连接两个令牌桶：一个按消息数、一个按字节数，按经过的时间补充令牌，不需要定时线程。消息进入 handleTextMessage 之后、
+ * 解析和投递之前先取令牌，取不到时按 RateLimitPolicy 丢弃或者断开连接，不会阻塞容器的读取线程；超过 maxMessageBytes 的消息
+ * 直接断开连接。
+ *
+ * 字节数按 UTF-8 计算，但不编码出一份字节数组：字符数已经超过 maxMessageBytes 时直接判定过大，否则逐个字符累加 UTF-8 长度。
+ *
+ * 同一个连接的消息由容器按顺序回调，令牌桶只有一个线程在用，这里仍然加锁，是为了统计接口读取时数据一致。
+ */
+@Slf4j
+public class InboundRateLimiter {
+
+    /**
+     * session 属性中存放限速器的 key
+     */
+    public static final String ATTRIBUTE = "rateLimiter";
+
+    // 当前所有连接的限速器，用于找出刷消息的连接
+    private static final ConcurrentHashMap<String, InboundRateLimiter> LIMITERS = new ConcurrentHashMap<>();
+
+    private static final LongAdder ACCEPTED = new LongAdder();
+    private static final LongAdder DROPPED = new LongAdder();
+    private static final LongAdder CLOSED = new LongAdder();
+    private static final LongAdder OVERSIZED = new LongAdder();
+
+    private final String sessionId;
+    private final WebSocketProperties.RateLimit config;
+    private final double messagesPerNano;
+    private final double bytesPerNano;
+
+    private double messageTokens;
+    private double byteTokens;
+    private long lastRefill;
+
+    private long accepted;
+    private long dropped;
+
+    public InboundRateLimiter(String sessionId, WebSocketProperties.RateLimit config) {
+        this.sessionId = sessionId;
+        this.config = config;
+        this.messagesPerNano = config.getMessagesPerSecond() / 1e9;
+        this.bytesPerNano = config.getBytesPerSecond() / 1e9;
+        this.messageTokens = config.getMessageBurst();
+        this.byteTokens = config.getByteBurst();
+        this.lastRefill = System.nanoTime();
+    }
+
+    /**
+     * 连接建立时创建限速器
+     *
+     * @param session
+     * @param config
+     */
+    public static void register(WebSocketSession session, WebSocketProperties.RateLimit config) {
+        if (!config.isEnabled()) {
+            return;
+        }
+        InboundRateLimiter limiter = new InboundRateLimiter(session.getId(), config);
+        session.getAttributes().put(ATTRIBUTE, limiter);
+        LIMITERS.put(session.getId(), limiter);
+    }
+
+    public static void unregister(WebSocketSession session) {
+        Object limiter = session.getAttributes().remove(ATTRIBUTE);
+        if (limiter != null) {
+            LIMITERS.remove(session.getId(), limiter);
+        }
+    }
+
+    /**
+     * 检查是否可以处理这条消息
+     *
+     * @param session
+     * @param payload 消息内容
+     * @return false 时调用方直接丢弃这条消息（连接可能已经被关闭）
+     */
+    public static boolean admit(WebSocketSession session, String payload) {
+        Object limiter = session.getAttributes().get(ATTRIBUTE);
+        if (!(limiter instanceof InboundRateLimiter)) {
+            return true;
+        }
+        int maxBytes = ((InboundRateLimiter) limiter).config.getMaxMessageBytes();
+        // UTF-8 字节数不少于字符数，先用字符数排除过大的消息，不用逐个字符计算
+        int bytes = maxBytes > 0 && payload.length() > maxBytes ? payload.length() : RoomBatcher.utf8Length(payload);
+        return ((InboundRateLimiter) limiter).admit0(session, bytes);
+    }
+
+    /**
+     * 按原始字节数检查，二进制端点在解码之前对整个消息调用，一个消息里有多少帧都只算一条消息
+     *
+     * @param session
+     * @param bytes   消息的字节数
+     * @return false 时调用方直接丢弃这条消息（连接可能已经被关闭）
+     */
+    public static boolean admit(WebSocketSession session, int bytes) {
+        Object limiter = session.getAttributes().get(ATTRIBUTE);
+        return !(limiter instanceof InboundRateLimiter) || ((InboundRateLimiter) limiter).admit0(session, bytes);
+    }
+
+    private boolean admit0(WebSocketSession session, int bytes) {
+        int maxBytes = config.getMaxMessageBytes();
+        if (maxBytes > 0 && bytes > maxBytes) {
+            OVERSIZED.increment();
+            reject();
+            log.warn("session " + sessionId + " 消息过大（至少 " + bytes + " 字节），断开连接");
+            close(session, CloseStatus.TOO_BIG_TO_PROCESS);
+            return false;
+        }
+        if (tryAcquire(bytes) == 0) {
+            ACCEPTED.increment();
+            return true;
+        }
+        switch (config.getPolicy()) {
+            case CLOSE:
+                reject();
+                log.warn("session " + sessionId + " 发送过快，断开连接");
+                close(session, CloseStatus.POLICY_VIOLATION);
+                return false;
+            case DROP:
+            default:
+                reject();
+                return false;
+        }
+    }
+
+    /**
+     * 取一个消息令牌和 bytes 个字节令牌
+     *
+     * @param bytes
+     * @return 0 表示取到；否则是令牌足够还需要等待的纳秒数
+     */
+    long tryAcquire(int bytes) {
+        return tryAcquire(bytes, System.nanoTime());
+    }
+
+    /**
+     * @param bytes
+     * @param now   当前的 System.nanoTime()，测试时直接指定
+     * @return
+     */
+    synchronized long tryAcquire(int bytes, long now) {
+        long elapsed = Math.max(0, now - lastRefill);
+        lastRefill = now;
+        if (messagesPerNano > 0) {
+            messageTokens = Math.min(config.getMessageBurst(), messageTokens + elapsed * messagesPerNano);
+        }
+        if (bytesPerNano > 0) {
+            byteTokens = Math.min(config.getByteBurst(), byteTokens + elapsed * bytesPerNano);
+        }
+        // 字节数超过桶容量的消息永远取不到令牌，按桶满处理，交给 maxMessageBytes 限制
+        double needBytes = Math.min(bytes, config.getByteBurst());
+        boolean messageOk = messagesPerNano <= 0 || messageTokens >= 1;
+        boolean bytesOk = bytesPerNano <= 0 || byteTokens >= needBytes;
+        if (messageOk && bytesOk) {
+            if (messagesPerNano > 0) {
+                messageTokens -= 1;
+            }
+            if (bytesPerNano > 0) {
+                byteTokens -= needBytes;
+            }
+            accepted++;
+            return 0;
+        }
+        double messageWait = messageOk ? 0 : (1 - messageTokens) / messagesPerNano;
+        double byteWait = bytesOk ? 0 : (needBytes - byteTokens) / bytesPerNano;
+        return Math.max(1, (long) Math.ceil(Math.max(messageWait, byteWait)));
+    }
+
+    private synchronized void reject() {
+        dropped++;
+        DROPPED.increment();
+    }
+
+    private static void close(WebSocketSession session, CloseStatus status) {
+        CLOSED.increment();
+        try {
+            session.close(status);
+        } catch (IOException e) {
+            log.debug("session " + session.getId() + " 关闭失败：" + e.getMessage());
+        }
+    }
+
+    private synchronized Map<String, Object> snapshot() {
+        Map<String, Object> item = new LinkedHashMap<>();
+        item.put("sessionId", sessionId);
+        item.put("accepted", accepted);
+        item.put("dropped", dropped);
+        return item;
+    }
+
+    /**
+     * 全局计数，以及被丢弃消息最多的 limit 个连接
+     *
+     * @param limit
+     * @return
+     */
+    public static Map<String, Object> stats(int limit) {
+        // 先取快照再排序，排序过程中计数还在变化
+        List<Map<String, Object>> offenders = new ArrayList<>();
+        for (InboundRateLimiter limiter : LIMITERS.values()) {
+            Map<String, Object> item = limiter.snapshot();
+            if ((Long) item.get("dropped") > 0) {
+                offenders.add(item);
+            }
+        }
+        offenders.sort(Comparator.comparingLong((Map<String, Object> item) -> (Long) item.get("dropped")).reversed());
+        List<Map<String, Object>> top = offenders.subList(0, Math.max(0, Math.min(limit, offenders.size())));
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("sessions", LIMITERS.size());
+        result.put("accepted", ACCEPTED.sum());
+        result.put("dropped", DROPPED.sum());
+        result.put("closed", CLOSED.sum());
+        result.put("oversized", OVERSIZED.sum());
+        result.put("offenders", top);
+        return result;
+    }
+}
@@ -1,14 +1,17 @@
 package com.hyman.springbootwar.websocket;
 
-import com.hyman.springbootwar.util.CacheProvider;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.ResponseBody;
 import org.springframework.web.servlet.ModelAndView;
 
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -22,6 +25,12 @@ import java.util.Map;
 @RequestMapping("/main")
 public class MainController {
 
+    // 单次批量推送的最大条数
+    private static final int MAX_BATCH_SIZE = 10000;
+
+    @Autowired
+    private WebSocketProperties properties;
+
     //页面请求
     @GetMapping("/page/{id}")
     public ModelAndView socket(@PathVariable String id) {
@@ -30,18 +39,94 @@ public class MainController {
         return mav;
     }
 
-    //推送数据接口
+    /**
+     * 推送数据接口，推送给整个房间。与批量推送、排空一样只允许 routing.admin-tokens 中的 token 调用，并且只接受 POST，
+     * 不能通过页面上的链接、图片等跨站发起
+     *
+     * @param liveId
+     * @param token
+     * @param message
+     */
+    @ResponseBody
+    @PostMapping("/socket/push/{liveId}")
+    public Map<String, Object> pushToWeb(@PathVariable String liveId, String token, String message) {
+        Map<String, Object> result = new HashMap<>();
+        if (!isAdmin(token)) {
+            return forbidden(result, "没有推送权限");
+        }
+        try {
+            TalkerRoomManager.sendToRoom(liveId, message);
+            result.put("code", 200);
+            result.put("msg", "success");
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        return result;
+    }
+
+    /**
+     * 批量推送接口，一次请求推送多条消息，如：
+     * [{"room":"1001","payload":"..."},{"room":"1001","session":"0a","payload":"..."}]
+     *
+     * 不传 session 时推送给整个房间，否则只推送给该 session。返回每一条在本节点上的投递数，以及是否已转发给集群。
+     * token 以请求参数传递，只允许 routing.admin-tokens 中的 token 调用。
+     */
     @ResponseBody
-    @RequestMapping("/socket/push/{liveId}")
-    public Map pushToWeb(@PathVariable String liveId, String message) {
-        Map result = new HashMap();
+    @PostMapping("/socket/push/batch")
+    public Map<String, Object> pushBatch(String token, @RequestBody List<PushTarget> targets) {
+        Map<String, Object> result = new HashMap<>();
+        if (!isAdmin(token)) {
+            return forbidden(result, "没有推送权限");
+        }
+        if (targets == null || targets.isEmpty()) {
+            result.put("code", 400);
+            result.put("msg", "推送内容不能为空");
+            return result;
+        }
+        if (targets.size() > MAX_BATCH_SIZE) {
+            result.put("code", 413);
+            result.put("msg", "单次最多推送 " + MAX_BATCH_SIZE + " 条");
+            return result;
+        }
         try {
-            CacheProvider.get(liveId);
+            result.put("results", TalkerRoomManager.push(targets));
             result.put("code", 200);
             result.put("msg", "success");
         } catch (Exception e) {
             e.printStackTrace();
+            result.put("code", 500);
+            result.put("msg", e.getMessage());
         }
         return result;
     }
+
+    /**
+     * 手动排空本节点的连接（发版前先调用，再摘除节点），只允许 routing.admin-tokens 中的 token 调用
+     *
+     * @param token
+     * @param windowMillis 不传时使用配置的排空时间
+     */
+    @ResponseBody
+    @PostMapping("/socket/drain")
+    public Map<String, Object> drain(String token, Long windowMillis) {
+        Map<String, Object> result = new HashMap<>();
+        if (!isAdmin(token)) {
+            return forbidden(result, "没有排空权限");
+        }
+        boolean started = ConnectionDrainer.start(windowMillis);
+        result.put("code", 200);
+        result.put("msg", started ? "success" : "已经在排空中");
+        result.put("drain", ConnectionDrainer.stats());
+        return result;
+    }
+
+    private boolean isAdmin(String token) {
+        return token != null && properties.getRouting().getAdminTokens().contains(token);
+    }
+
+    private static Map<String, Object> forbidden(Map<String, Object> result, String msg) {
+        result.put("code", 403);
+        result.put("msg", msg);
+        return result;
+    }
 }
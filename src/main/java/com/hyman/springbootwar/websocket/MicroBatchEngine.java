@@ -0,0 +1,145 @@
+package com.hyman.springbootwar.websocket;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.function.BiConsumer;
+
+/**
+ * 高频直播频道的合并推送。
+ *
+ * 按房间开启（opt-in），开启后发往该房间的消息交给对应的 RoomBatcher 合并，未开启的房间不受影响。所有房间共用一个定时线程来
+ * 触发窗口到期。
+ */
+public class MicroBatchEngine {
+
+    private final WebSocketProperties.Batch config;
+    private final BiConsumer<String, String> target;
+
+    private final ConcurrentHashMap<String, RoomBatcher> batchers = new ConcurrentHashMap<>();
+
+    private volatile ScheduledExecutorService scheduler;
+
+    /**
+     * @param config
+     * @param target 合并后的投递方法，参数为房间号与合并后的消息
+     */
+    public MicroBatchEngine(WebSocketProperties.Batch config, BiConsumer<String, String> target) {
+        this.config = config;
+        this.target = target;
+        for (String roomID : config.getRooms()) {
+            enable(roomID);
+        }
+    }
+
+    /**
+     * 对房间开启合并推送
+     *
+     * @param roomID
+     */
+    public void enable(String roomID) {
+        batchers.computeIfAbsent(roomID, id -> new RoomBatcher(id, config, getScheduler(), target));
+    }
+
+    /**
+     * 关闭合并推送，已经攒下的消息立即发出
+     *
+     * @param roomID
+     */
+    public void disable(String roomID) {
+        RoomBatcher batcher = batchers.remove(roomID);
+        if (batcher != null) {
+            batcher.flush();
+        }
+    }
+
+    /**
+     * 立即发出房间已经攒下的消息，未开启合并的房间什么也不做
+     *
+     * @param roomID
+     */
+    public void flush(String roomID) {
+        RoomBatcher batcher = batchers.get(roomID);
+        if (batcher != null) {
+            batcher.flush();
+        }
+    }
+
+    public boolean isEnabled(String roomID) {
+        return batchers.containsKey(roomID);
+    }
+
+    /**
+     * 房间开启了合并时交给合并器，返回 true；否则返回 false，由调用方直接投递
+     *
+     * @param roomID
+     * @param message
+     * @return
+     */
+    public boolean offer(String roomID, String message) {
+        RoomBatcher batcher = batchers.get(roomID);
+        if (batcher == null) {
+            return false;
+        }
+        batcher.offer(message);
+        return true;
+    }
+
+    /**
+     * 合并窗口与每个房间观测到的批大小
+     *
+     * @return
+     */
+    public Map<String, Object> stats() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("windowMillis", config.getWindowMillis());
+        result.put("maxBytes", config.getMaxBytes());
+        List<Map<String, Object>> rooms = new ArrayList<>();
+        for (RoomBatcher batcher : batchers.values()) {
+            Map<String, Object> room = new LinkedHashMap<>();
+            long flushes = batcher.getFlushCount();
+            long messages = batcher.getMessageCount();
+            room.put("roomID", batcher.getRoomID());
+            room.put("frames", flushes);
+            room.put("messages", messages);
+            room.put("avgBatch", flushes == 0 ? 0 : (double) messages / flushes);
+            room.put("maxBatch", batcher.getMaxBatch());
+            room.put("histogram", batcher.getBatchHistogram());
+            rooms.add(room);
+        }
+        result.put("rooms", rooms);
+        return result;
+    }
+
+    private ScheduledExecutorService getScheduler() {
+        ScheduledExecutorService current = scheduler;
+        if (current == null) {
+            synchronized (this) {
+                current = scheduler;
+                if (current == null) {
+                    current = Executors.newSingleThreadScheduledExecutor(r -> {
+                        Thread thread = new Thread(r, "ws-batch");
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+                    scheduler = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    public void shutdown() {
+        for (RoomBatcher batcher : batchers.values()) {
+            batcher.flush();
+        }
+        ScheduledExecutorService current = scheduler;
+        if (current != null) {
+            current.shutdown();
+        }
+    }
+}
@@ -1,5 +1,8 @@
 package com.hyman.springbootwar.websocket;
 
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.server.ServerHttpRequest;
 import org.springframework.http.server.ServerHttpResponse;
 import org.springframework.http.server.ServletServerHttpRequest;
@@ -7,7 +10,7 @@ import org.springframework.stereotype.Component;
 import org.springframework.web.socket.WebSocketHandler;
 import org.springframework.web.socket.server.HandshakeInterceptor;
 
-import java.util.HashMap;
+import javax.annotation.PostConstruct;
 import java.util.Map;
 
 /**
@@ -17,11 +20,35 @@ import java.util.Map;
  * 它主要有两个方法 beforeHandshake 与 afterHandshake，顾名思义一个在握手前触发，一个在握手后触发。
  * attributes 属性最终在 WebSocketSession 里，可通过 webSocketSession.getAttributes().get(key值) 获得。
  */
+@Slf4j
 @Component
 public class MyInterceptor implements HandshakeInterceptor {
 
+    @Autowired
+    private WebSocketProperties properties;
+
     /**
-     * 握手前
+     * 容器中有自定义的 TokenVerifier 时使用它，否则使用默认的 RedisTokenVerifier
+     */
+    @Autowired(required = false)
+    private TokenVerifier customVerifier;
+
+    private CachingTokenVerifier tokenVerifier;
+
+    private final HandshakeMetrics metrics = new HandshakeMetrics();
+
+    @PostConstruct
+    public void init() {
+        WebSocketProperties.Handshake handshake = properties.getHandshake();
+        TokenVerifier delegate = customVerifier != null ? customVerifier : new RedisTokenVerifier(handshake.getTokenKeyPrefix());
+        tokenVerifier = new CachingTokenVerifier(delegate, handshake.getCacheTtlMillis(), handshake.getCacheMaxSize());
+    }
+
+    /**
+     * 握手前。
+     *
+     * 重连风暴时握手的吞吐最关键，这里只在查询串中扫描出 token（不拆分成 map），校验结果在本地短期缓存，统计数据记录到
+     * HandshakeMetrics 中，不再输出到控制台。
      *
      * @param request
      * @param response
@@ -33,27 +60,50 @@ public class MyInterceptor implements HandshakeInterceptor {
     @Override
     public boolean beforeHandshake(ServerHttpRequest request, ServerHttpResponse response, WebSocketHandler wsHandler, Map<String, Object> attributes) throws Exception {
 
-        if (request instanceof ServletServerHttpRequest) {
-            System.out.println("握手开始");
-
-            // 获得请求参数
-            ServletServerHttpRequest serverHttpRequest = (ServletServerHttpRequest) request;
-            String token = serverHttpRequest.getServletRequest().getParameter("token");
-
-            //HashMap<String, String> paramMap = HttpUtil.decodeParamMap(request.getURI().getQuery(), "utf-8");
-            Map<String, String> paramMap = getStringToMap(request.getURI().getQuery());
-            String uid = paramMap.get("token");
-            if (uid != null && !"".equals(uid)) {
-                // 放入属性域
-                attributes.put("token", uid);
-                System.out.println("用户 token " + uid + " 握手成功！");
-                return true;
-            }
-            System.out.println("用户登录已失效");
+        if (!(request instanceof ServletServerHttpRequest)) {
+            return false;
+        }
+        // 排空中拒绝握手，客户端换节点重连
+        if (ConnectionDrainer.isDraining()) {
+            response.setStatusCode(HttpStatus.SERVICE_UNAVAILABLE);
+            response.getHeaders().set("Retry-After", String.valueOf(ConnectionDrainer.retryAfterSeconds()));
             return false;
-        } else {
+        }
+        long begin = System.nanoTime();
+
+        // 获得请求参数
+        String token = getParameter(request.getURI().getQuery(), "token");
+        if (token == null || token.isEmpty()) {
+            metrics.missingToken(System.nanoTime() - begin);
+            response.setStatusCode(HttpStatus.UNAUTHORIZED);
             return false;
         }
+
+        boolean valid;
+        try {
+            valid = !properties.getHandshake().isVerifyToken() || tokenVerifier.verify(token);
+        } catch (Exception e) {
+            metrics.error();
+            log.error("token 校验失败：" + e.getMessage(), e);
+            response.setStatusCode(HttpStatus.SERVICE_UNAVAILABLE);
+            return false;
+        }
+        if (!valid) {
+            metrics.invalidToken(System.nanoTime() - begin);
+            log.debug("用户 token " + token + " 登录已失效");
+            response.setStatusCode(HttpStatus.UNAUTHORIZED);
+            return false;
+        }
+
+        // 放入属性域
+        attributes.put("token", token);
+        // 重连时客户端带上收到的最后一个位置 {epoch}.{seq}，加入房间时补发之后的消息，格式不对时补发 RESET_FRAME
+        String lastSeq = getParameter(request.getURI().getQuery(), ReplayBuffer.LAST_SEQ_ATTRIBUTE);
+        if (lastSeq != null && !lastSeq.isEmpty()) {
+            attributes.put(ReplayBuffer.LAST_SEQ_ATTRIBUTE, lastSeq);
+        }
+        metrics.accepted(System.nanoTime() - begin);
+        return true;
     }
 
     /**
@@ -66,34 +116,45 @@ public class MyInterceptor implements HandshakeInterceptor {
      */
     @Override
     public void afterHandshake(ServerHttpRequest request, ServerHttpResponse response, WebSocketHandler wsHandler, Exception exception) {
-        System.out.println("握手完成");
-    }
-
-    public static Map<String, String> getStringToMap(String str) {
-        //判断str是否有值
-        if (null == str || "".equals(str)) {
-            return null;
+        if (exception != null) {
+            metrics.error();
+            log.error("握手异常：" + exception.getMessage());
         }
+    }
 
-        //根据&截取
-        String[] strings = str.split("&");
+    public HandshakeMetrics getMetrics() {
+        return metrics;
+    }
 
-        //设置HashMap长度
-        int mapLength = strings.length;
+    public CachingTokenVerifier getTokenVerifier() {
+        return tokenVerifier;
+    }
 
-        //判断hashMap的长度是否是2的幂。
-        if ((strings.length % 2) != 0) {
-            mapLength = mapLength + 1;
+    /**
+     * 在查询串中直接找出某个参数的值，不拆分字符串、不创建 map，只有找到的值会生成一个子串
+     *
+     * @param query 已解码的查询串，如 token=abc&liveid=1
+     * @param name
+     * @return
+     */
+    public static String getParameter(String query, String name) {
+        if (query == null) {
+            return null;
         }
-
-        Map<String, String> map = new HashMap<>(mapLength);
-        //循环加入map集合
-        for (int i = 0; i < strings.length; i++) {
-            //截取一组字符串
-            String[] strArray = strings[i].split("=");
-            //strArray[0]为KEY  strArray[1]为值
-            map.put(strArray[0], strArray[1]);
+        int length = query.length();
+        int nameLength = name.length();
+        int start = 0;
+        while (start < length) {
+            int end = query.indexOf('&', start);
+            if (end < 0) {
+                end = length;
+            }
+            if (end - start > nameLength && query.charAt(start + nameLength) == '='
+                    && query.regionMatches(start, name, 0, nameLength)) {
+                return query.substring(start + nameLength + 1, end);
+            }
+            start = end + 1;
         }
-        return map;
+        return null;
     }
 }
@@ -0,0 +1,32 @@
+package com.hyman.springbootwar.websocket;
+
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+/**
+ * 一次群发要发出的帧：文本连接发 TextMessage，二进制端点的连接发转换好的 BinaryMessage。
+ *
+ * 遇到第一个二进制连接时才转换（压缩），之后整轮群发的二进制连接共用这一个 BinaryMessage，不再每个接收者各编码一次。只在执行
+ * 这次群发的线程内使用，不需要同步。
+ */
+final class OutboundFrame {
+
+    private final TextMessage text;
+    private BinaryMessage binary;
+
+    OutboundFrame(TextMessage text) {
+        this.text = text;
+    }
+
+    WebSocketMessage<?> to(WebSocketSession session) {
+        if (!BinaryFramingSession.isBinary(session)) {
+            return text;
+        }
+        if (binary == null) {
+            binary = BinaryFramingSession.frame(text);
+        }
+        return binary;
+    }
+}
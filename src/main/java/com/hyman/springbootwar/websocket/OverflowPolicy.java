@@ -0,0 +1,22 @@
+package com.hyman.springbootwar.websocket;
+
+/**
+ * session 发送队列满了之后的处理策略
+ */
+public enum OverflowPolicy {
+
+    /**
+     * 丢弃队列中最旧的一条，再放入新消息（适合行情、比分这类只关心最新值的推送）
+     */
+    DROP_OLDEST,
+
+    /**
+     * 直接丢弃新消息，保留已排队的消息
+     */
+    DROP_NEWEST,
+
+    /**
+     * 认为客户端已经跟不上，直接断开连接，让客户端重连
+     */
+    DISCONNECT
+}
@@ -0,0 +1,52 @@
+package com.hyman.springbootwar.websocket;
+
+/**
+ * 批量推送中每一条的投递结果
+ */
+public class PushResult {
+
+    private String room;
+    private String session;
+    // 本节点上投递（放入发送队列）的 session 数
+    private int delivered;
+    // 是否已转发给集群中的其他节点
+    private boolean forwarded;
+    private String error;
+
+    public PushResult(PushTarget target) {
+        this.room = target.getRoom();
+        this.session = target.getSession();
+    }
+
+    public String getRoom() {
+        return room;
+    }
+
+    public String getSession() {
+        return session;
+    }
+
+    public int getDelivered() {
+        return delivered;
+    }
+
+    public void setDelivered(int delivered) {
+        this.delivered = delivered;
+    }
+
+    public boolean isForwarded() {
+        return forwarded;
+    }
+
+    public void setForwarded(boolean forwarded) {
+        this.forwarded = forwarded;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public void setError(String error) {
+        this.error = error;
+    }
+}
@@ -0,0 +1,35 @@
+package com.hyman.springbootwar.websocket;
+
+/**
+ * 批量推送中的一条：推送给房间（session 为空）或房间中的某个 session
+ */
+public class PushTarget {
+
+    private String room;
+    private String session;
+    private String payload;
+
+    public String getRoom() {
+        return room;
+    }
+
+    public void setRoom(String room) {
+        this.room = room;
+    }
+
+    public String getSession() {
+        return session;
+    }
+
+    public void setSession(String session) {
+        this.session = session;
+    }
+
+    public String getPayload() {
+        return payload;
+    }
+
+    public void setPayload(String payload) {
+        this.payload = payload;
+    }
+}
@@ -0,0 +1,178 @@
+package com.hyman.springbootwar.websocket;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.WebSocketSessionDecorator;
+
+import java.io.IOException;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 带有界发送队列的 session，用法与 spring 自带的 ConcurrentWebSocketSessionDecorator 类似，区别是写出永远在 FanoutEngine
+ * 的线程池中进行，不会借用调用方线程。
+ *
+ * 同一时刻只会有一个线程在写出同一个 session（scheduled 标记保证），所以也顺带解决了多线程并发调用 sendMessage 不安全的问题。
+ * 队列溢出需要断开时也只是记下关闭状态，由写出线程在写完当前这条之后关闭，不会出现一个线程在写、另一个线程同时关闭底层连接。
+ */
+@Slf4j
+public class QueuedWebSocketSession extends WebSocketSessionDecorator {
+
+    private final FanoutEngine engine;
+
+    private final Queue<WebSocketMessage<?>> queue = new ConcurrentLinkedQueue<>();
+
+    // ConcurrentLinkedQueue.size() 需要遍历，单独计数
+    private final AtomicInteger size = new AtomicInteger();
+
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+
+    private volatile boolean closed;
+
+    // 溢出后等待写出线程执行的关闭，只设置一次
+    private final AtomicReference<CloseStatus> pendingClose = new AtomicReference<>();
+
+    public QueuedWebSocketSession(WebSocketSession delegate, FanoutEngine engine) {
+        super(delegate);
+        this.engine = engine;
+    }
+
+    /**
+     * 放入发送队列后立即返回
+     *
+     * @param message
+     */
+    @Override
+    public void sendMessage(WebSocketMessage<?> message) {
+        if (closed || pendingClose.get() != null) {
+            return;
+        }
+        if (size.incrementAndGet() > engine.getConfig().getQueueCapacity()) {
+            if (!overflow(message)) {
+                return;
+            }
+        } else {
+            queue.offer(message);
+        }
+        schedule();
+    }
+
+    /**
+     * 队列已满时按策略处理
+     *
+     * @return 是否需要调度写出
+     */
+    private boolean overflow(WebSocketMessage<?> message) {
+        switch (engine.getConfig().getOverflowPolicy()) {
+            case DROP_OLDEST:
+                if (queue.poll() != null) {
+                    size.decrementAndGet();
+                }
+                queue.offer(message);
+                engine.onDropped();
+                return true;
+            case DISCONNECT:
+                size.decrementAndGet();
+                if (pendingClose.compareAndSet(null, CloseStatus.SESSION_NOT_RELIABLE)) {
+                    engine.onDisconnected();
+                    log.warn("session " + getId() + " 发送队列已满，断开连接");
+                }
+                // 交给写出线程关闭
+                return true;
+            case DROP_NEWEST:
+            default:
+                size.decrementAndGet();
+                engine.onDropped();
+                return false;
+        }
+    }
+
+    private void schedule() {
+        if (scheduled.compareAndSet(false, true)) {
+            engine.execute(this::drain);
+        }
+    }
+
+    private void drain() {
+        try {
+            int batch = engine.getConfig().getDrainBatch();
+            while (batch-- > 0) {
+                CloseStatus status = pendingClose.get();
+                if (status != null && !closed) {
+                    // 剩下排队的消息随关闭一起丢弃
+                    closeQuietly(status);
+                    break;
+                }
+                WebSocketMessage<?> message = queue.poll();
+                if (message == null) {
+                    break;
+                }
+                size.decrementAndGet();
+                if (closed) {
+                    continue;
+                }
+                try {
+                    getDelegate().sendMessage(message);
+                } catch (IOException | RuntimeException e) {
+                    log.error("session " + getId() + " 发送失败：" + e.getMessage());
+                    closeQuietly(CloseStatus.SESSION_NOT_RELIABLE);
+                }
+            }
+        } finally {
+            scheduled.set(false);
+            // 释放标记后再检查一次，避免与 sendMessage 之间的竞争导致消息留在队列里没人写
+            if (!queue.isEmpty() || (pendingClose.get() != null && !closed)) {
+                schedule();
+            }
+        }
+    }
+
+    /**
+     * 已经关闭，或者因发送队列溢出正在等待写出线程关闭。此时底层连接可能还是打开的，但之后的消息都不会再发出
+     *
+     * @return
+     */
+    public boolean isClosing() {
+        return closed || pendingClose.get() != null;
+    }
+
+    /**
+     * 当前排队的消息数
+     *
+     * @return
+     */
+    public int getQueueSize() {
+        return size.get();
+    }
+
+    @Override
+    public void close() throws IOException {
+        close(CloseStatus.NORMAL);
+    }
+
+    @Override
+    public void close(CloseStatus status) throws IOException {
+        closed = true;
+        clear();
+        super.close(status);
+    }
+
+    private void closeQuietly(CloseStatus status) {
+        try {
+            close(status);
+        } catch (IOException e) {
+            log.error(e.getMessage(), e);
+        }
+    }
+
+    private void clear() {
+        while (queue.poll() != null) {
+            size.decrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package com.hyman.springbootwar.websocket;
+
+/**
+ * 客户端发送超过限速之后的处理策略
+ */
+public enum RateLimitPolicy {
+
+    /**
+     * 直接丢弃超出的消息
+     */
+    DROP,
+
+    /**
+     * 认为客户端在恶意刷消息，直接断开连接
+     */
+    CLOSE
+}
@@ -0,0 +1,57 @@
+package com.hyman.springbootwar.websocket;
+
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * 基于 redis pub/sub 的 RoomBus。
+ *
+ * 订阅统一走 RedisMessageListenerContainer（共用一个订阅连接），发布直接用连接工厂拿连接发 PUBLISH，不经过 RedisTemplate 的
+ * value 序列化（项目里的 redisTemplate 配的是 Jackson 序列化，会给字符串多包一层引号）。
+ */
+public class RedisRoomBus implements RoomBus {
+
+    private final RedisConnectionFactory connectionFactory;
+    private final RedisMessageListenerContainer container;
+
+    private final ConcurrentHashMap<String, MessageListener> listeners = new ConcurrentHashMap<>();
+
+    public RedisRoomBus(RedisConnectionFactory connectionFactory, RedisMessageListenerContainer container) {
+        this.connectionFactory = connectionFactory;
+        this.container = container;
+    }
+
+    @Override
+    public void publish(String channel, String body) {
+        RedisConnection connection = connectionFactory.getConnection();
+        try {
+            connection.publish(channel.getBytes(StandardCharsets.UTF_8), body.getBytes(StandardCharsets.UTF_8));
+        } finally {
+            connection.close();
+        }
+    }
+
+    @Override
+    public void subscribe(String channel, Consumer<String> listener) {
+        MessageListener messageListener = (message, pattern) ->
+                listener.accept(new String(message.getBody(), StandardCharsets.UTF_8));
+        if (listeners.putIfAbsent(channel, messageListener) == null) {
+            container.addMessageListener(messageListener, new ChannelTopic(channel));
+        }
+    }
+
+    @Override
+    public void unsubscribe(String channel) {
+        MessageListener messageListener = listeners.remove(channel);
+        if (messageListener != null) {
+            container.removeMessageListener(messageListener, new ChannelTopic(channel));
+        }
+    }
+}
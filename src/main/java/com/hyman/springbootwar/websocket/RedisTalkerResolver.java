@@ -0,0 +1,16 @@
+package com.hyman.springbootwar.websocket;
+
+import com.hyman.springbootwar.util.CacheProvider;
+import org.springframework.web.socket.WebSocketSession;
+
+/**
+ * 默认的用户解析：从 redis 中按 sessionId 取出用户信息
+ */
+public class RedisTalkerResolver implements TalkerResolver {
+
+    @Override
+    public Talker resolve(WebSocketSession session) {
+        String talkerString = CacheProvider.get(session.getId());
+        return CacheProvider.get(talkerString, Talker.class);
+    }
+}
@@ -0,0 +1,20 @@
+package com.hyman.springbootwar.websocket;
+
+import com.hyman.springbootwar.util.CacheProvider;
+
+/**
+ * 默认的 token 校验：登录时写入 redis 的 {prefix}{token} 存在即有效
+ */
+public class RedisTokenVerifier implements TokenVerifier {
+
+    private final String keyPrefix;
+
+    public RedisTokenVerifier(String keyPrefix) {
+        this.keyPrefix = keyPrefix;
+    }
+
+    @Override
+    public boolean verify(String token) {
+        return CacheProvider.get(keyPrefix + token) != null;
+    }
+}
@@ -0,0 +1,132 @@
+package com.hyman.springbootwar.websocket;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 房间的补发缓冲区：固定大小的环形数组，保存最近 capacity 条消息。
+ *
+ * 每条消息分配一个单调递增的序号（从 1 开始），并按 {epoch}.{seq}|{消息} 编码成 UTF-8 后保存，补发时直接发出，不需要再编码
+ * 一次。客户端记住收到的最后一个位置 {epoch}.{seq}，重连时带上 lastSeq 参数，只补发 (seq, 最新] 之间的消息；缺失的部分已经
+ * 被覆盖时补发一帧 RESET_FRAME，由客户端重新拉取完整数据。
+ *
+ * 序号只在当前节点上的这个房间实例内有效：房间空了被删除、再次创建时序号从 1 重新开始，重连到集群中的其他节点时序号也不同。
+ * epoch 在创建缓冲区时随机生成，lastSeq 中的 epoch 不是当前的 epoch 时一律补发 RESET_FRAME，不会按序号错误地补发或漏发。
+ *
+ * offHeap 时每条消息占用一块固定大小（slotBytes）的堆外内存，环形数组整体只是一块 DirectByteBuffer，大房间的历史消息不会
+ * 进入老年代；超过 slotBytes 的消息仍存放在堆内。堆外内存在第一条消息写入时才分配，只有人进出、没有消息的房间不占用。
+ */
+public class ReplayBuffer {
+
+    /**
+     * session 属性中客户端上报的最后序号的 key
+     */
+    public static final String LAST_SEQ_ATTRIBUTE = "lastSeq";
+
+    /**
+     * 缺失的消息已经不在缓冲区中
+     */
+    public static final String RESET_FRAME = "0|reset";
+
+    private final String epoch;
+    private final int capacity;
+    private final int slotBytes;
+    private final boolean offHeapEnabled;
+    private final int[] lengths;
+    private final byte[][] onHeap;
+
+    // 开启 offHeap 时在第一条能放入的消息写入时分配
+    private ByteBuffer offHeap;
+
+    private long lastSequence;
+
+    public ReplayBuffer(WebSocketProperties.Replay config) {
+        this.epoch = Long.toString(ThreadLocalRandom.current().nextLong() & Long.MAX_VALUE, 36);
+        this.capacity = Math.max(1, config.getCapacity());
+        this.slotBytes = config.getSlotBytes();
+        this.offHeapEnabled = config.isOffHeap();
+        this.lengths = new int[capacity];
+        this.onHeap = new byte[capacity][];
+    }
+
+    /**
+     * 分配序号并保存，返回带序号的帧
+     *
+     * @param message
+     * @return
+     */
+    public synchronized byte[] append(String message) {
+        long sequence = ++lastSequence;
+        byte[] frame = (epoch + "." + sequence + "|" + message).getBytes(StandardCharsets.UTF_8);
+        int slot = (int) (sequence % capacity);
+        if (offHeapEnabled && frame.length <= slotBytes) {
+            if (offHeap == null) {
+                offHeap = ByteBuffer.allocateDirect(capacity * slotBytes);
+            }
+            ByteBuffer target = offHeap.duplicate();
+            target.position(slot * slotBytes);
+            target.put(frame);
+            lengths[slot] = frame.length;
+            onHeap[slot] = null;
+        } else {
+            onHeap[slot] = frame;
+        }
+        return frame;
+    }
+
+    /**
+     * 取出 lastSeq 之后的所有消息
+     *
+     * @param lastSeq 客户端收到的最后一个位置，格式为 {epoch}.{seq}
+     * @return 按序号排列的帧；epoch 不是当前缓冲区的、格式不对、或者缺失的部分已经被覆盖时返回 null
+     */
+    public synchronized List<byte[]> since(String lastSeq) {
+        int dot = lastSeq.lastIndexOf('.');
+        if (dot != epoch.length() || !lastSeq.startsWith(epoch)) {
+            return null;
+        }
+        try {
+            return since(Long.parseLong(lastSeq.substring(dot + 1)));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private List<byte[]> since(long lastSeq) {
+        long oldest = Math.max(1, lastSequence - capacity + 1);
+        if (lastSeq + 1 < oldest || lastSeq > lastSequence) {
+            return null;
+        }
+        List<byte[]> frames = new ArrayList<>((int) (lastSequence - lastSeq));
+        for (long sequence = lastSeq + 1; sequence <= lastSequence; sequence++) {
+            frames.add(read((int) (sequence % capacity)));
+        }
+        return frames;
+    }
+
+    private byte[] read(int slot) {
+        if (onHeap[slot] != null) {
+            return onHeap[slot];
+        }
+        byte[] frame = new byte[lengths[slot]];
+        ByteBuffer source = offHeap.duplicate();
+        source.position(slot * slotBytes);
+        source.get(frame);
+        return frame;
+    }
+
+    public synchronized long getLastSequence() {
+        return lastSequence;
+    }
+
+    public String getEpoch() {
+        return epoch;
+    }
+
+    synchronized boolean isOffHeapAllocated() {
+        return offHeap != null;
+    }
+}
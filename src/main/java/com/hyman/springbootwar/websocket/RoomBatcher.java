@@ -0,0 +1,201 @@
+package com.hyman.springbootwar.websocket;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+
+/**
+ * 单个房间的消息合并器。
+ *
+ * 第一条消息到达时开始计时，窗口期内（比如 20ms）到达的消息合成一帧再群发；累计字节数达到上限时不等窗口结束，立即发出。
+ * 增加的延迟最多一个窗口，换来帧数、系统调用次数成倍下降。
+ *
+ * 合并后的帧是一个 JSON 字符串数组，例如 ["消息1","消息2"]，每条消息按 JSON 字符串转义，消息内容中有换行、引号也能原样拆回。
+ * 只有一条消息时同样是数组，开启合并的房间的客户端只需要按数组解析。
+ *
+ * 合并与投递都在房间自己的锁内完成，保证消息顺序；锁只属于这个房间，不影响其他房间。
+ */
+public class RoomBatcher {
+
+    // 批大小分布的上界：1、2~4、5~16、17~64、65 以上
+    private static final int[] BUCKET_BOUNDS = {1, 4, 16, 64, Integer.MAX_VALUE};
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final String roomID;
+    private final WebSocketProperties.Batch config;
+    private final ScheduledExecutorService scheduler;
+    private final BiConsumer<String, String> target;
+
+    private final StringBuilder buffer = new StringBuilder();
+    // 已写入部分的 UTF-8 字节数，不含结尾的 ]
+    private int bytes;
+    private int count;
+    private boolean scheduled;
+
+    private final LongAdder flushes = new LongAdder();
+    private final LongAdder messages = new LongAdder();
+    private final LongAccumulator maxBatch = new LongAccumulator(Math::max, 0);
+    private final LongAdder[] buckets = new LongAdder[BUCKET_BOUNDS.length];
+
+    public RoomBatcher(String roomID, WebSocketProperties.Batch config, ScheduledExecutorService scheduler,
+                       BiConsumer<String, String> target) {
+        this.roomID = roomID;
+        this.config = config;
+        this.scheduler = scheduler;
+        this.target = target;
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * 放入一条消息
+     *
+     * @param message
+     */
+    public synchronized void offer(String message) {
+        int start = buffer.length();
+        // 先按非第一条写入（前面带逗号），装不下时撤回，发出之前的再作为第一条写入
+        buffer.append(count == 0 ? '[' : ',');
+        appendQuoted(buffer, message);
+        int size = utf8Length(buffer, start);
+        if (count > 0 && bytes + size + 1 > config.getMaxBytes()) {
+            buffer.setLength(start);
+            flushLocked();
+            buffer.append('[');
+            appendQuoted(buffer, message);
+            size = utf8Length(buffer, 0);
+        }
+        bytes += size;
+        count++;
+
+        // 加上结尾的 ] 已经满了
+        if (bytes + 1 >= config.getMaxBytes()) {
+            flushLocked();
+        } else if (!scheduled) {
+            scheduled = true;
+            scheduler.schedule(this::flush, config.getWindowMillis(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * 窗口到期，或者房间关闭合并时调用
+     */
+    public synchronized void flush() {
+        scheduled = false;
+        flushLocked();
+    }
+
+    private void flushLocked() {
+        if (count == 0) {
+            return;
+        }
+        String merged = buffer.append(']').toString();
+        int batch = count;
+        buffer.setLength(0);
+        bytes = 0;
+        count = 0;
+
+        flushes.increment();
+        messages.add(batch);
+        maxBatch.accumulate(batch);
+        for (int i = 0; i < BUCKET_BOUNDS.length; i++) {
+            if (batch <= BUCKET_BOUNDS[i]) {
+                buckets[i].increment();
+                break;
+            }
+        }
+        target.accept(roomID, merged);
+    }
+
+    public String getRoomID() {
+        return roomID;
+    }
+
+    public long getFlushCount() {
+        return flushes.sum();
+    }
+
+    public long getMessageCount() {
+        return messages.sum();
+    }
+
+    public long getMaxBatch() {
+        return maxBatch.get();
+    }
+
+    /**
+     * 批大小分布，依次为 1、2~4、5~16、17~64、65 以上
+     *
+     * @return
+     */
+    public long[] getBatchHistogram() {
+        long[] histogram = new long[buckets.length];
+        for (int i = 0; i < buckets.length; i++) {
+            histogram[i] = buckets[i].sum();
+        }
+        return histogram;
+    }
+
+    /**
+     * 按 JSON 字符串写入：加上引号，转义引号、反斜杠与控制字符
+     */
+    static void appendQuoted(StringBuilder out, String text) {
+        out.append('"');
+        for (int i = 0, n = text.length(); i < n; i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '"':
+                    out.append("\\\"");
+                    break;
+                case '\\':
+                    out.append("\\\\");
+                    break;
+                case '\n':
+                    out.append("\\n");
+                    break;
+                case '\r':
+                    out.append("\\r");
+                    break;
+                case '\t':
+                    out.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        out.append("\\u00").append(HEX[c >> 4]).append(HEX[c & 0xF]);
+                    } else {
+                        out.append(c);
+                    }
+            }
+        }
+        out.append('"');
+    }
+
+    /**
+     * 计算 UTF-8 编码后的字节数，不真正编码
+     */
+    static int utf8Length(CharSequence text) {
+        return utf8Length(text, 0);
+    }
+
+    private static int utf8Length(CharSequence text, int from) {
+        int length = 0;
+        for (int i = from, n = text.length(); i < n; i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(text.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+}
@@ -0,0 +1,32 @@
+package com.hyman.springbootwar.websocket;
+
+import java.util.function.Consumer;
+
+/**
+ * 节点之间传递房间消息的通道（发布/订阅），生产环境是 redis pub/sub（RedisRoomBus），测试时可以换成进程内的实现。
+ */
+public interface RoomBus {
+
+    /**
+     * 向频道发布一条消息
+     *
+     * @param channel
+     * @param body
+     */
+    void publish(String channel, String body);
+
+    /**
+     * 订阅频道，同一个频道重复订阅只会生效一次
+     *
+     * @param channel
+     * @param listener
+     */
+    void subscribe(String channel, Consumer<String> listener);
+
+    /**
+     * 取消订阅
+     *
+     * @param channel
+     */
+    void unsubscribe(String channel);
+}
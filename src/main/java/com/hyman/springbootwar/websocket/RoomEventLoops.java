@@ -0,0 +1,300 @@
+package com.hyman.springbootwar.websocket;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 房间的单线程执行模型（actor）。
+ *
+ * 启动 N 个单线程事件循环，每个房间对应一个 RoomActor，固定在其中一个循环上。房间的进出、发送都作为任务放入 RoomActor 自己的
+ * 无锁邮箱，同一时刻最多只有一个线程在处理同一个房间（scheduled 标记保证），所以房间内的操作严格按提交顺序执行，不需要加锁。
+ * 不同房间分布在不同的循环上并行处理，吞吐随循环数增长。
+ *
+ * 负载均衡：定时统计每个循环在上一个周期内的忙碌时间，最忙的循环超过平均值 imbalanceRatio 倍时，把它上面的一个热点房间迁移到
+ * 最空闲的循环。迁移只是修改 RoomActor 指向的循环，正在执行的那一轮结束后，下一轮才会在新循环上执行，顺序不受影响。
+ *
+ * 长时间没有任务、并且已经不在房间池中的 RoomActor 在均衡时顺带清理。清理时用 CAS 把它标记为 dead（没有正在进行的 offer
+ * 时才能标记成功），之后的 offer 都会被拒绝，execute 等均衡线程把它移除后在新的 RoomActor 上重新提交；标记之后发现邮箱中
+ * 已经有任务则撤销标记、放弃清理。任务不会留在已经从 actors 中移除的 RoomActor 里，同一个房间也不会同时有两个 RoomActor
+ * 在不同的循环上执行。
+ */
+@Slf4j
+public class RoomEventLoops {
+
+    // 空闲多少个均衡周期之后清理 RoomActor
+    private static final int IDLE_ROUNDS = 3;
+    private static final int DEAD = -1;
+
+    private final WebSocketProperties.Actor config;
+    private final EventLoop[] loops;
+    private final ConcurrentHashMap<String, RoomActor> actors = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService rebalancer;
+
+    private final LongAdder migrations = new LongAdder();
+
+    public RoomEventLoops(WebSocketProperties.Actor config) {
+        this.config = config;
+        this.loops = new EventLoop[Math.max(1, config.getLoops())];
+        for (int i = 0; i < loops.length; i++) {
+            loops[i] = new EventLoop(i);
+        }
+        this.rebalancer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "ws-room-rebalance");
+            thread.setDaemon(true);
+            return thread;
+        });
+        rebalancer.scheduleWithFixedDelay(this::safeRebalance, config.getRebalanceMillis(), config.getRebalanceMillis(),
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 在房间所在的事件循环上执行任务，同一房间的任务按提交顺序执行
+     *
+     * @param roomID
+     * @param task
+     */
+    public void execute(String roomID, Runnable task) {
+        while (true) {
+            RoomActor actor = actors.get(roomID);
+            if (actor == null) {
+                actor = actors.computeIfAbsent(roomID, id -> new RoomActor(id, loops[Math.floorMod(id.hashCode(), loops.length)]));
+            }
+            if (actor.offer(task)) {
+                return;
+            }
+            // 正在被清理，均衡线程随后就会移除或者撤销，不能自己移除，否则撤销之后会有两个 RoomActor
+            Thread.yield();
+        }
+    }
+
+    private void safeRebalance() {
+        try {
+            rebalance();
+        } catch (Exception e) {
+            // 异常不能抛出，否则定时任务会被取消
+            log.error(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 负载均衡，只在均衡线程上调用
+     */
+    void rebalance() {
+        long[] busy = new long[loops.length];
+        long total = 0;
+        for (int i = 0; i < loops.length; i++) {
+            busy[i] = loops[i].busyNanos.sumThenReset();
+            loops[i].lastBusyNanos = busy[i];
+            total += busy[i];
+        }
+
+        // 各房间上一周期的忙碌时间，顺带清理空闲的 RoomActor
+        Map<RoomActor, Long> actorBusy = new LinkedHashMap<>();
+        for (RoomActor actor : actors.values()) {
+            long nanos = actor.busyNanos.getAndSet(0);
+            if (nanos > 0) {
+                actor.idleRounds = 0;
+                actorBusy.put(actor, nanos);
+            } else if (++actor.idleRounds >= IDLE_ROUNDS && TalkerRoomManager.getRoom(actor.roomID) == null && actor.retire()) {
+                actors.remove(actor.roomID, actor);
+            }
+        }
+
+        if (loops.length < 2 || total == 0) {
+            return;
+        }
+        int hottest = 0;
+        int coolest = 0;
+        for (int i = 1; i < loops.length; i++) {
+            if (busy[i] > busy[hottest]) {
+                hottest = i;
+            }
+            if (busy[i] < busy[coolest]) {
+                coolest = i;
+            }
+        }
+        double average = (double) total / loops.length;
+        if (busy[hottest] <= average * config.getImbalanceRatio()) {
+            return;
+        }
+
+        // 选最忙、但迁移之后不会让目标循环比原来的最忙循环更忙的房间
+        long gap = busy[hottest] - busy[coolest];
+        RoomActor candidate = null;
+        long candidateBusy = 0;
+        for (Map.Entry<RoomActor, Long> entry : actorBusy.entrySet()) {
+            RoomActor actor = entry.getKey();
+            long nanos = entry.getValue();
+            if (actor.loop == loops[hottest] && nanos < gap && nanos > candidateBusy) {
+                candidate = actor;
+                candidateBusy = nanos;
+            }
+        }
+        if (candidate != null) {
+            candidate.loop = loops[coolest];
+            migrations.increment();
+            log.info("房间 " + candidate.roomID + " 从事件循环 " + hottest + " 迁移到 " + coolest);
+        }
+    }
+
+    public Map<String, Object> stats() {
+        long window = TimeUnit.MILLISECONDS.toNanos(config.getRebalanceMillis());
+        int[] rooms = new int[loops.length];
+        for (RoomActor actor : actors.values()) {
+            rooms[actor.loop.index]++;
+        }
+        List<Map<String, Object>> perLoop = new ArrayList<>(loops.length);
+        for (EventLoop loop : loops) {
+            Map<String, Object> item = new LinkedHashMap<>();
+            item.put("loop", loop.index);
+            item.put("rooms", rooms[loop.index]);
+            item.put("busyPercent", window == 0 ? 0 : loop.lastBusyNanos * 100 / window);
+            item.put("tasks", loop.tasks.sum());
+            perLoop.add(item);
+        }
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("actors", actors.size());
+        result.put("migrations", migrations.sum());
+        result.put("loops", perLoop);
+        return result;
+    }
+
+    public void shutdown() {
+        rebalancer.shutdownNow();
+        for (EventLoop loop : loops) {
+            loop.executor.shutdown();
+        }
+    }
+
+    /**
+     * 单线程事件循环
+     */
+    private static final class EventLoop {
+
+        private final int index;
+        private final ExecutorService executor;
+        private final LongAdder busyNanos = new LongAdder();
+        private final LongAdder tasks = new LongAdder();
+        private volatile long lastBusyNanos;
+
+        EventLoop(int index) {
+            this.index = index;
+            this.executor = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "ws-room-loop-" + index);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    /**
+     * 房间的邮箱与执行状态
+     */
+    private final class RoomActor implements Runnable {
+
+        private final String roomID;
+        private final ConcurrentLinkedQueue<Runnable> mailbox = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        private final AtomicLong busyNanos = new AtomicLong();
+
+        // 迁移时由均衡线程修改，下一轮执行生效
+        private volatile EventLoop loop;
+        // 正在进行的 offer 数，DEAD 表示已经被清理，不再接受任务
+        private final AtomicInteger offers = new AtomicInteger();
+        // 只由均衡线程读写
+        private int idleRounds;
+
+        RoomActor(String roomID, EventLoop loop) {
+            this.roomID = roomID;
+            this.loop = loop;
+        }
+
+        /**
+         * @param task
+         * @return 已经被清理时返回 false，任务没有放入，需要换一个 RoomActor 重新提交
+         */
+        boolean offer(Runnable task) {
+            int current;
+            do {
+                current = offers.get();
+                if (current == DEAD) {
+                    return false;
+                }
+            } while (!offers.compareAndSet(current, current + 1));
+            try {
+                mailbox.offer(task);
+            } finally {
+                offers.decrementAndGet();
+            }
+            schedule();
+            return true;
+        }
+
+        private void schedule() {
+            if (scheduled.compareAndSet(false, true)) {
+                loop.executor.execute(this);
+            }
+        }
+
+        boolean isIdle() {
+            return !scheduled.get() && mailbox.isEmpty();
+        }
+
+        /**
+         * 标记为 dead，只在均衡线程上调用
+         *
+         * @return 没有任务、可以从 actors 中移除时返回 true
+         */
+        boolean retire() {
+            if (!isIdle() || !offers.compareAndSet(0, DEAD)) {
+                return false;
+            }
+            if (!isIdle()) {
+                // 检查之后、标记之前有任务放了进来，继续使用。还没有从 actors 中移除，等待中的 execute 会重新提交到这里
+                offers.set(0);
+                return false;
+            }
+            return true;
+        }
+
+        @Override
+        public void run() {
+            EventLoop current = loop;
+            long begin = System.nanoTime();
+            int count = 0;
+            Runnable task;
+            while (count < config.getDrainBatch() && (task = mailbox.poll()) != null) {
+                try {
+                    task.run();
+                } catch (Exception e) {
+                    log.error("房间 " + roomID + " 任务执行失败：" + e.getMessage(), e);
+                }
+                count++;
+            }
+            long nanos = System.nanoTime() - begin;
+            busyNanos.addAndGet(nanos);
+            current.busyNanos.add(nanos);
+            current.tasks.add(count);
+
+            scheduled.set(false);
+            // 还有任务（或者处理期间又来了新任务）时重新调度，迁移过的房间这时会进入新的循环
+            if (!mailbox.isEmpty()) {
+                schedule();
+            }
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package com.hyman.springbootwar.websocket;
+
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+/**
+ * 房间成员的存储，按房间大小自动切换结构。
+ *
+ * 绝大多数房间只有 2~20 人，之前每个房间都预先分配一个容量一万的 ConcurrentHashMap，几十万个房间光空表就占掉大量堆内存。这里
+ * 人数不超过 threshold 时只用一个 [id0, session0, id1, session1, ...] 交替排列的数组，写入时复制一份新数组再 CAS 替换，读取、
+ * 遍历都不加锁；人数超过 threshold 时一次性换成 ConcurrentHashMap，之后不再换回（房间空了会被整个删除）。
+ */
+public class RoomMembers {
+
+    /**
+     * 切换为 ConcurrentHashMap 的人数
+     */
+    public static final int DEFAULT_THRESHOLD = 32;
+
+    private static final Object[] EMPTY = new Object[0];
+
+    private static final AtomicReferenceFieldUpdater<RoomMembers, Object> STATE =
+            AtomicReferenceFieldUpdater.newUpdater(RoomMembers.class, Object.class, "state");
+
+    private final int threshold;
+
+    // Object[] 或 ConcurrentHashMap
+    private volatile Object state;
+
+    public RoomMembers() {
+        this(DEFAULT_THRESHOLD, 0);
+    }
+
+    /**
+     * @param threshold
+     * @param expectedSize 预计人数，超过 threshold 时直接使用 ConcurrentHashMap
+     */
+    public RoomMembers(int threshold, int expectedSize) {
+        this.threshold = threshold;
+        this.state = expectedSize > threshold ? new ConcurrentHashMap<String, WebSocketSession>(expectedSize) : EMPTY;
+    }
+
+    /**
+     * @return 之前的 session，不存在时返回 null
+     */
+    public WebSocketSession put(String sessionId, WebSocketSession session) {
+        while (true) {
+            Object current = state;
+            if (current instanceof ConcurrentHashMap) {
+                return map(current).put(sessionId, session);
+            }
+            Object[] members = (Object[]) current;
+            int index = indexOf(members, sessionId);
+            Object next;
+            WebSocketSession previous = null;
+            if (index >= 0) {
+                previous = (WebSocketSession) members[index + 1];
+                Object[] copy = members.clone();
+                copy[index + 1] = session;
+                next = copy;
+            } else if (members.length / 2 >= threshold) {
+                ConcurrentHashMap<String, WebSocketSession> map = new ConcurrentHashMap<>(threshold * 4);
+                for (int i = 0; i < members.length; i += 2) {
+                    map.put((String) members[i], (WebSocketSession) members[i + 1]);
+                }
+                map.put(sessionId, session);
+                next = map;
+            } else {
+                Object[] copy = Arrays.copyOf(members, members.length + 2);
+                copy[members.length] = sessionId;
+                copy[members.length + 1] = session;
+                next = copy;
+            }
+            if (STATE.compareAndSet(this, current, next)) {
+                return previous;
+            }
+        }
+    }
+
+    public WebSocketSession get(String sessionId) {
+        Object current = state;
+        if (current instanceof ConcurrentHashMap) {
+            return map(current).get(sessionId);
+        }
+        Object[] members = (Object[]) current;
+        int index = indexOf(members, sessionId);
+        return index >= 0 ? (WebSocketSession) members[index + 1] : null;
+    }
+
+    /**
+     * @return 删除的 session，不存在时返回 null
+     */
+    public WebSocketSession remove(String sessionId) {
+        while (true) {
+            Object current = state;
+            if (current instanceof ConcurrentHashMap) {
+                return map(current).remove(sessionId);
+            }
+            Object[] members = (Object[]) current;
+            int index = indexOf(members, sessionId);
+            if (index < 0) {
+                return null;
+            }
+            Object[] next = EMPTY;
+            if (members.length > 2) {
+                next = new Object[members.length - 2];
+                System.arraycopy(members, 0, next, 0, index);
+                System.arraycopy(members, index + 2, next, index, members.length - index - 2);
+            }
+            if (STATE.compareAndSet(this, current, next)) {
+                return (WebSocketSession) members[index + 1];
+            }
+        }
+    }
+
+    public int size() {
+        Object current = state;
+        if (current instanceof ConcurrentHashMap) {
+            return map(current).size();
+        }
+        return ((Object[]) current).length / 2;
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * 当前成员的只读视图。数组存储时是调用这一刻的快照，之后的加入、退出不影响本次遍历
+     *
+     * @return
+     */
+    public Collection<WebSocketSession> values() {
+        Object current = state;
+        if (current instanceof ConcurrentHashMap) {
+            return Collections.unmodifiableCollection(map(current).values());
+        }
+        Object[] members = (Object[]) current;
+        return new AbstractList<WebSocketSession>() {
+            @Override
+            public WebSocketSession get(int index) {
+                return (WebSocketSession) members[index * 2 + 1];
+            }
+
+            @Override
+            public int size() {
+                return members.length / 2;
+            }
+        };
+    }
+
+    /**
+     * 是否已经切换为 ConcurrentHashMap
+     *
+     * @return
+     */
+    public boolean isHashed() {
+        return state instanceof ConcurrentHashMap;
+    }
+
+    private static int indexOf(Object[] members, String sessionId) {
+        for (int i = 0; i < members.length; i += 2) {
+            if (sessionId.equals(members[i])) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static ConcurrentHashMap<String, WebSocketSession> map(Object state) {
+        return (ConcurrentHashMap<String, WebSocketSession>) state;
+    }
+}
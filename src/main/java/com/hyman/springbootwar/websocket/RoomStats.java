@@ -0,0 +1,65 @@
+package com.hyman.springbootwar.websocket;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 单个房间的在线与消息计数。
+ *
+ * 全部用 LongAdder / LongAccumulator，热点房间里大量线程同时累加时各写各的 cell，不会争抢同一个变量；读取时只是把 cell
+ * 加起来，不需要加锁，也不需要遍历或复制房间的 sessionMap。
+ */
+public class RoomStats {
+
+    private final LongAdder members = new LongAdder();
+    private final LongAccumulator peakMembers = new LongAccumulator(Math::max, 0);
+    private final LongAdder messagesIn = new LongAdder();
+    private final LongAdder messagesOut = new LongAdder();
+
+    void joined() {
+        members.increment();
+        peakMembers.accumulate(members.sum());
+    }
+
+    void left() {
+        members.decrement();
+    }
+
+    void received() {
+        messagesIn.increment();
+    }
+
+    void sent(long count) {
+        if (count > 0) {
+            messagesOut.add(count);
+        }
+    }
+
+    public long getMembers() {
+        return members.sum();
+    }
+
+    public long getPeakMembers() {
+        return peakMembers.get();
+    }
+
+    public long getMessagesIn() {
+        return messagesIn.sum();
+    }
+
+    public long getMessagesOut() {
+        return messagesOut.sum();
+    }
+
+    public Map<String, Object> snapshot(String roomID) {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("room", roomID);
+        result.put("members", getMembers());
+        result.put("peakMembers", getPeakMembers());
+        result.put("messagesIn", getMessagesIn());
+        result.put("messagesOut", getMessagesOut());
+        return result;
+    }
+}
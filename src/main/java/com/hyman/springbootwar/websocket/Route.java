@@ -0,0 +1,37 @@
+package com.hyman.springbootwar.websocket;
+
+/**
+ * 客户端消息的投递方式
+ */
+public enum Route {
+
+    /**
+     * 只发回给发送者自己
+     */
+    SENDER,
+
+    /**
+     * 发给发送者所在房间的所有成员，只遍历这一个房间
+     */
+    ROOM,
+
+    /**
+     * 发给订阅了某个主题的所有连接
+     */
+    TOPIC,
+
+    /**
+     * 发给本节点（集群模式下为所有节点）的所有连接，会遍历全部房间，只允许管理员使用
+     */
+    GLOBAL,
+
+    /**
+     * 订阅主题
+     */
+    SUBSCRIBE,
+
+    /**
+     * 取消订阅主题
+     */
+    UNSUBSCRIBE
+}
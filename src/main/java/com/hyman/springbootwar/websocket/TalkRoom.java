@@ -1,39 +1,109 @@
 package com.hyman.springbootwar.websocket;
 
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.socket.BinaryMessage;
 import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
 import org.springframework.web.socket.WebSocketSession;
 
 import java.io.IOException;
-import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
 import java.time.LocalDateTime;
-import java.util.concurrent.ConcurrentHashMap;
+import java.time.ZoneId;
+import java.util.Collection;
+import java.util.List;
 
 /**
  * 聊天室
  */
-public class TalkRoom implements Serializable {
+@Slf4j
+public class TalkRoom {
 
-    private ConcurrentHashMap<String, WebSocketSession> sessionMap;
+    /**
+     * 房间成员，人少时是紧凑数组，人多了自动换成 ConcurrentHashMap
+     */
+    private final RoomMembers sessionMap;
+
+    /**
+     * 在线人数与收发消息数，读取时不碰 sessionMap
+     */
+    private final RoomStats stats = new RoomStats();
+
+    /**
+     * 断线重连补发，未开启时为 null
+     */
+    private final ReplayBuffer replay;
 
     public TalkRoom() {
-        sessionMap = new ConcurrentHashMap<String, WebSocketSession>(10000);
+        sessionMap = new RoomMembers();
+        replay = null;
     }
 
-    public TalkRoom(int size) {
-        sessionMap = new ConcurrentHashMap<String, WebSocketSession>(size);
+    public TalkRoom(ReplayBuffer replay) {
+        sessionMap = new RoomMembers();
+        this.replay = replay;
     }
 
-    public ConcurrentHashMap<String, WebSocketSession> getSessionMap() {
-        return sessionMap;
+    /**
+     * @param size 预计人数，大房间一开始就使用 ConcurrentHashMap
+     */
+    public TalkRoom(int size) {
+        sessionMap = new RoomMembers(RoomMembers.DEFAULT_THRESHOLD, size);
+        replay = null;
     }
 
-    public void setSessionMap(
-            ConcurrentHashMap<String, WebSocketSession> sessionMap) {
-        this.sessionMap = sessionMap;
+    /**
+     * 房间成员的只读视图
+     *
+     * @return
+     */
+    public Collection<WebSocketSession> getSessions() {
+        return sessionMap.values();
     }
 
     public void add(String sessionId, WebSocketSession session) {
-        this.sessionMap.put(sessionId, session);
+        if (this.sessionMap.put(sessionId, session) == null) {
+            stats.joined();
+        }
+    }
+
+    /**
+     * 加入房间，并补发 lastSeq 之后错过的消息。
+     *
+     * 加入与补发在补发缓冲区的锁内完成，与 broadcast 互斥：补发的消息一定在之后的实时消息之前，也不会重复。
+     *
+     * @param sessionId
+     * @param session
+     * @param lastSeq   客户端收到的最后一个位置 {epoch}.{seq}，首次连接为 null
+     */
+    public void join(String sessionId, WebSocketSession session, String lastSeq) {
+        if (replay == null) {
+            add(sessionId, session);
+            return;
+        }
+        synchronized (replay) {
+            add(sessionId, session);
+            if (lastSeq != null) {
+                replayTo(session, lastSeq);
+            }
+        }
+    }
+
+    private void replayTo(WebSocketSession session, String lastSeq) {
+        List<byte[]> frames = replay.since(lastSeq);
+        try {
+            if (frames == null) {
+                session.sendMessage(new TextMessage(ReplayBuffer.RESET_FRAME));
+                return;
+            }
+            for (byte[] frame : frames) {
+                session.sendMessage(new TextMessage(frame));
+            }
+            stats.sent(frames.size());
+        } catch (IOException | RuntimeException e) {
+            log.error("session " + session.getId() + " 补发失败：" + e.getMessage());
+        }
     }
 
     public WebSocketSession get(String sessionId) {
@@ -44,8 +114,9 @@ public class TalkRoom implements Serializable {
      * 删除并同步关闭连接
      *
      * @param sessionId
+     * @return 房间中确实存在该 session 时返回 true
      */
-    public void removeAndClose(String sessionId) {
+    public boolean removeAndClose(String sessionId) {
         WebSocketSession session = remove(sessionId);
         if (session != null) {
             try {
@@ -55,7 +126,9 @@ public class TalkRoom implements Serializable {
                 // 关闭出现异常处理
                 e.printStackTrace();
             }
+            return true;
         }
+        return false;
     }
 
     /**
@@ -68,9 +141,24 @@ public class TalkRoom implements Serializable {
         if (null == sessionId) {
             return null;
         }
-        return this.sessionMap.get(sessionId);
+        WebSocketSession session = this.sessionMap.remove(sessionId);
+        if (session != null) {
+            stats.left();
+        }
+        return session;
+    }
+
+    public int size() {
+        return this.sessionMap.size();
     }
 
+    public boolean isEmpty() {
+        return this.sessionMap.isEmpty();
+    }
+
+    public RoomStats getStats() {
+        return stats;
+    }
 
     /**
      * 单条发送，实现服务器主动推送
@@ -80,17 +168,157 @@ public class TalkRoom implements Serializable {
      * @throws Exception
      */
     public void send(String liveid, String sessionId, String message) throws Exception {
-        this.sessionMap.get(sessionId).sendMessage(new TextMessage("server 发送给 " + liveid + " 消息 " + message + " " + LocalDateTime.now().toString()));
+        WebSocketSession session = this.sessionMap.get(sessionId);
+        if (session == null) {
+            return;
+        }
+        session.sendMessage(new TextMessage(format(liveid, message)));
+        stats.sent(1);
+    }
+
+    /**
+     * 系统通知（连接成功等）。文本格式与 send 相同，二进制端点的连接收到的是 SYSTEM 帧而不是 MESSAGE 帧
+     *
+     * @param liveid
+     * @param sessionId
+     * @param message
+     * @throws Exception
+     */
+    public void notice(String liveid, String sessionId, String message) throws Exception {
+        WebSocketSession session = this.sessionMap.get(sessionId);
+        if (session == null) {
+            return;
+        }
+        StringBuilder text = format(liveid, message);
+        WebSocketMessage<?> frame = BinaryFramingSession.isBinary(session)
+                ? new BinaryMessage(BinaryFrameCodec.encodeCompact(BinaryFrameCodec.SYSTEM, text.toString()))
+                : new TextMessage(text);
+        session.sendMessage(frame);
+        stats.sent(1);
+    }
+
+    private static StringBuilder format(String liveid, String message) {
+        String now = Timestamp.now();
+        StringBuilder text = new StringBuilder(24 + liveid.length() + message.length() + now.length());
+        return text.append("server 发送给 ").append(liveid).append(" 消息 ").append(message).append(' ').append(now);
     }
 
     /**
-     * 群发，实现服务器主动推送
+     * 原样发给房间中的某个 session
+     *
+     * @param sessionId
+     * @param frame
+     * @return session 在本房间中时返回 true
+     */
+    public boolean sendTo(String sessionId, TextMessage frame) {
+        WebSocketSession session = this.sessionMap.get(sessionId);
+        if (session == null) {
+            return false;
+        }
+        try {
+            session.sendMessage(frame);
+            stats.sent(1);
+            return true;
+        } catch (IOException | RuntimeException e) {
+            log.error("session " + sessionId + " 发送失败：" + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * 房间消息的统一出口。开启补发时分配序号、保存后再群发，整个过程在补发缓冲区的锁内，保证序号与发出的顺序一致。
+     *
+     * @param message
+     * @return 成功放入发送队列的 session 数
+     */
+    public int broadcast(String message) {
+        if (replay == null) {
+            return batchSend(encode(message));
+        }
+        synchronized (replay) {
+            return batchSend(new TextMessage(replay.append(message)));
+        }
+    }
+
+    public boolean isReplayEnabled() {
+        return replay != null;
+    }
+
+    /**
+     * 群发，实现服务器主动推送。
+     * 房间中的 session 都是 QueuedWebSocketSession，这里只是放入各自的发送队列，不会阻塞在某个慢客户端上。
      *
      * @param message
      */
     public void batchSend(String message) throws Exception {
-        for (String item : sessionMap.keySet()) {
-            sessionMap.get(item).sendMessage(new TextMessage(message));
+        batchSend(encode(message));
+    }
+
+    /**
+     * 群发一个已经编码好的帧。
+     *
+     * TextMessage 是不可变的，同一个实例可以发给房间里所有人，不必每个接收者都 new 一次。一万人的房间里，每次群发就少了一万个
+     * TextMessage 以及对应的 byte[]。
+     *
+     * 注意节省的只是应用这一侧的分配：spring 的 StandardWebSocketSession 最终对每个接收者调用
+     * getBasicRemote().sendText(String)，容器仍然会为每个连接各做一次 UTF-8 编码和组帧。真正共用编码后的帧需要用到容器
+     * 内部的 API（例如 tomcat 的 WsRemoteEndpointImplBase），这里没有这样做。
+     *
+     * 二进制端点的连接收到的是整轮群发共用的一个 BinaryMessage，只转换、压缩一次，见 OutboundFrame。
+     *
+     * @param frame
+     * @return 成功放入发送队列的 session 数
+     */
+    public int batchSend(TextMessage frame) {
+        OutboundFrame outbound = new OutboundFrame(frame);
+        int sent = 0;
+        for (WebSocketSession session : sessionMap.values()) {
+            try {
+                session.sendMessage(outbound.to(session));
+                sent++;
+            } catch (IOException | RuntimeException e) {
+                // 单个 session 失败不影响其他人
+                log.error("session " + session.getId() + " 发送失败：" + e.getMessage());
+            }
+        }
+        // 整轮群发只累加一次
+        stats.sent(sent);
+        return sent;
+    }
+
+    /**
+     * 把消息一次性编码成 UTF-8 帧，供多个接收者共用。getPayloadLength 直接返回这份字节的长度，不会每次调用都重新编码
+     *
+     * @param message
+     * @return
+     */
+    public static TextMessage encode(String message) {
+        return new TextMessage(message.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 时间戳缓存，同一毫秒内的消息共用一个字符串，不必每条消息都 LocalDateTime.now().toString()
+     */
+    private static final class Timestamp {
+
+        private static volatile Timestamp last = new Timestamp(0L, "");
+
+        private final long millis;
+        private final String text;
+
+        private Timestamp(long millis, String text) {
+            this.millis = millis;
+            this.text = text;
+        }
+
+        static String now() {
+            long millis = System.currentTimeMillis();
+            Timestamp current = last;
+            if (current.millis != millis) {
+                current = new Timestamp(millis, LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneId.systemDefault()).toString());
+                last = current;
+            }
+            return current.text;
         }
     }
 
@@ -0,0 +1,18 @@
+package com.hyman.springbootwar.websocket;
+
+import org.springframework.web.socket.WebSocketSession;
+
+/**
+ * 连接建立时解析用户信息。默认实现为 RedisTalkerResolver，接入其他登录体系（或压测时）在容器中放一个自己的实现即可，
+ * WebSocketHandler 会优先使用容器中的实现。
+ */
+public interface TalkerResolver {
+
+    /**
+     * 解析连接对应的用户
+     *
+     * @param session
+     * @return 用户登录已失效时返回 null
+     */
+    Talker resolve(WebSocketSession session);
+}
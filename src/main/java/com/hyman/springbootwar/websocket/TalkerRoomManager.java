@@ -1,17 +1,36 @@
 package com.hyman.springbootwar.websocket;
 
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 import org.springframework.web.socket.TextMessage;
 import org.springframework.web.socket.WebSocketSession;
 import org.thymeleaf.util.StringUtils;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.websocket.Session;
 import java.io.IOException;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArraySet;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToLongFunction;
+import java.util.stream.Collectors;
 
 /**
  * 该类也可以充当聊天室管理器
@@ -28,14 +47,245 @@ public class TalkerRoomManager {
      * 前文提过，服务端发送消息给客户端必须要通过这个 session（java 原生提供的 javax.websocket.Session）。
      * <p>
      * 可以充当房间池。
+     *
+     * ConcurrentHashMap 内部按桶加锁，compute 系列方法只会锁住 roomID 所在的桶，所以不同房间的加入、退出互不阻塞，不再需要
+     * 整个类级别的 synchronized。初始容量给大一些，避免重连高峰时频繁扩容。
      */
-    private static ConcurrentHashMap<String, TalkRoom> ROOM_POOL = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<String, TalkRoom> ROOM_POOL = new ConcurrentHashMap<>(1024);
 
     /**
      * 静态变量，用来记录当前在线连接数。应该把它设计成线程安全的。
+     *
+     * 每次连接、断开都要累加，用 LongAdder 分散到多个 cell 上，高并发连接时不会全部争抢同一个变量。
+     */
+    private static final LongAdder onlineCount = new LongAdder();
+
+    /**
+     * 群发引擎，每个加入房间的 session 都会包上一个有界发送队列。启动时按配置文件重新创建，这里先给默认配置，保证不在 spring
+     * 容器中（比如单元测试）时也能用。
+     */
+    private static volatile FanoutEngine FANOUT = new FanoutEngine(new WebSocketProperties.Fanout());
+
+    /**
+     * 合并推送，按房间开启
+     */
+    private static volatile MicroBatchEngine BATCH = new MicroBatchEngine(new WebSocketProperties.Batch(), TalkerRoomManager::deliverFrame);
+
+    /**
+     * 心跳与空闲连接清理，失效的连接与正常断开一样退出房间
+     */
+    private static volatile HeartbeatWheel HEARTBEAT = new HeartbeatWheel(new WebSocketProperties.Heartbeat(), TalkerRoomManager::evict);
+
+    /**
+     * 断线重连补发配置，开启后新建的房间都带补发缓冲区
+     */
+    private static volatile WebSocketProperties.Replay REPLAY = new WebSocketProperties.Replay();
+
+    /**
+     * 房间单线程执行，开启后房间的进出、发送都在房间所在的事件循环上按顺序执行；未开启时为 null，在调用线程上直接执行
+     */
+    private static volatile RoomEventLoops ACTORS;
+
+    /**
+     * 主题订阅
+     */
+    private static final TopicRegistry TOPICS = new TopicRegistry();
+
+    /**
+     * session 属性中记录该连接订阅的主题，断开时逐个取消
+     */
+    private static final String TOPICS_ATTRIBUTE = "topics";
+
+    /**
+     * 批量推送等待本节点投递完成的最长时间
      */
-    private static final AtomicInteger onlineCount = new AtomicInteger(0);
+    private static final long PUSH_TIMEOUT_MILLIS = 5_000;
 
+    /**
+     * 加入房间时等待房间事件循环执行完的最长时间
+     */
+    private static final long JOIN_TIMEOUT_MILLIS = 5_000;
+
+    /**
+     * 集群群发，未开启集群模式时为 null，只在本节点内投递
+     */
+    private static volatile ClusterBroadcaster CLUSTER;
+
+    /**
+     * 开启房间单线程执行时，房间频道的订阅、取消订阅交给这个线程执行，不在房间的事件循环上等 redis 往返：一个事件循环上固定着
+     * 很多房间，等待期间它们的消息都发不出去。与 CLUSTER 一起创建、停止
+     */
+    private static volatile ExecutorService SUBSCRIBER;
+
+    /**
+     * 本节点已经订阅了频道的房间。订阅、取消订阅是一次 redis 往返，不能放在 ROOM_POOL.compute 里（会一直锁住 roomID 所在的桶），
+     * 所以 compute 返回之后再按房间当前是否存在补齐，见 syncSubscription
+     */
+    private static final Set<String> SUBSCRIBED = ConcurrentHashMap.newKeySet();
+
+    /**
+     * 同一个房间的订阅、取消订阅按顺序执行，不同房间按 roomID 的 hash 分散到不同的锁上
+     */
+    private static final Object[] SUBSCRIPTION_LOCKS = new Object[64];
+
+    static {
+        for (int i = 0; i < SUBSCRIPTION_LOCKS.length; i++) {
+            SUBSCRIPTION_LOCKS[i] = new Object();
+        }
+    }
+
+    @Autowired
+    private WebSocketProperties properties;
+
+    @Autowired(required = false)
+    private RoomBus roomBus;
+
+    /**
+     * 静态方法无法直接注入，借助 PostConstruct 把配置设置到静态变量上
+     */
+    @PostConstruct
+    public void init() {
+        FanoutEngine old = FANOUT;
+        FANOUT = new FanoutEngine(properties.getFanout());
+        old.shutdown();
+
+        MicroBatchEngine oldBatch = BATCH;
+        BATCH = new MicroBatchEngine(properties.getBatch(), TalkerRoomManager::deliverFrame);
+        oldBatch.shutdown();
+
+        REPLAY = properties.getReplay();
+        ConnectionDrainer.setConfig(properties.getDrain());
+
+        if (properties.getActor().isEnabled()) {
+            startActors(properties.getActor());
+            log.info("websocket 房间单线程执行已开启，事件循环数 " + properties.getActor().getLoops());
+        }
+
+        HeartbeatWheel oldHeartbeat = HEARTBEAT;
+        HEARTBEAT = new HeartbeatWheel(properties.getHeartbeat(), TalkerRoomManager::evict);
+        oldHeartbeat.shutdown();
+
+        WebSocketProperties.Cluster cluster = properties.getCluster();
+        if (cluster.isEnabled() && roomBus != null) {
+            String nodeId = StringUtils.isEmpty(cluster.getNodeId()) ? UUID.randomUUID().toString() : cluster.getNodeId();
+            startCluster(roomBus, nodeId, cluster.getChannelPrefix());
+            log.info("websocket 集群模式已开启，节点 " + nodeId);
+        }
+    }
+
+    @PreDestroy
+    public void destroy() {
+        stopCluster();
+        HEARTBEAT.shutdown();
+        stopActors();
+        BATCH.shutdown();
+        FANOUT.shutdown();
+    }
+
+    /**
+     * 开启集群模式，本节点上的房间消息由 ClusterBroadcaster 投递
+     *
+     * @param bus
+     * @param nodeId
+     * @param channelPrefix
+     */
+    static void startCluster(RoomBus bus, String nodeId, String channelPrefix) {
+        ClusterBroadcaster cluster = new ClusterBroadcaster(bus, nodeId, channelPrefix, new LocalDelivery());
+        cluster.start();
+        SUBSCRIBER = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "ws-room-subscribe");
+            thread.setDaemon(true);
+            return thread;
+        });
+        CLUSTER = cluster;
+    }
+
+    /**
+     * 开启房间单线程执行
+     *
+     * @param config
+     */
+    static void startActors(WebSocketProperties.Actor config) {
+        RoomEventLoops old = ACTORS;
+        ACTORS = new RoomEventLoops(config);
+        if (old != null) {
+            old.shutdown();
+        }
+    }
+
+    static void stopActors() {
+        RoomEventLoops actors = ACTORS;
+        ACTORS = null;
+        if (actors != null) {
+            actors.shutdown();
+        }
+    }
+
+    static void stopCluster() {
+        ClusterBroadcaster cluster = CLUSTER;
+        if (cluster == null) {
+            return;
+        }
+        CLUSTER = null;
+        // 等已经提交的订阅执行完，之后再统一取消，不会有订阅在取消之后才执行
+        ExecutorService subscriber = SUBSCRIBER;
+        subscriber.shutdown();
+        try {
+            if (!subscriber.awaitTermination(JOIN_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+                log.warn("等待房间频道订阅执行完超时");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (String roomID : SUBSCRIBED) {
+            syncSubscription(cluster, roomID, false);
+        }
+        cluster.stop();
+    }
+
+    public static FanoutEngine getFanoutEngine() {
+        return FANOUT;
+    }
+
+    public static MicroBatchEngine getBatchEngine() {
+        return BATCH;
+    }
+
+    public static HeartbeatWheel getHeartbeat() {
+        return HEARTBEAT;
+    }
+
+    public static RoomEventLoops getRoomEventLoops() {
+        return ACTORS;
+    }
+
+    /**
+     * 在房间所在的事件循环上执行；未开启房间单线程执行时直接在调用线程上执行
+     *
+     * @param roomID
+     * @param task
+     */
+    private static void inRoom(String roomID, Runnable task) {
+        RoomEventLoops actors = ACTORS;
+        if (actors == null) {
+            task.run();
+        } else {
+            actors.execute(roomID, task);
+        }
+    }
+
+    /**
+     * 对高频推送的房间开启合并推送
+     *
+     * @param roomID
+     */
+    public static void enableBatching(String roomID) {
+        BATCH.enable(roomID);
+    }
+
+    public static void disableBatching(String roomID) {
+        BATCH.disable(roomID);
+    }
 
     /**
      * 删除 session，会返回删除的 session
@@ -44,25 +294,41 @@ public class TalkerRoomManager {
      * @return
      */
     public static void remove(Talker talker) {
+        if (null == talker) {
+            return;
+        }
+        inRoom(talker.getRoomID(), () -> leaveRoom(talker));
+    }
+
+    private static void leaveRoom(Talker talker) {
         try {
-            if (null == talker) {
-                return;
-            }
             TalkRoom room = ROOM_POOL.get(talker.getRoomID());
             if (null == room) {
                 return;
             }
 
-            room.removeAndClose(talker.getSessionID());
-            // 在线数减1
-            subOnlineCount();
-            log.info("有一连接关闭！当前在线人数为" + getOnlineCount());
+            if (room.removeAndClose(talker.getSessionID())) {
+                // 在线数减1
+                subOnlineCount();
+                log.debug("有一连接关闭！当前在线人数为" + getOnlineCount());
+            }
 
         } catch (Exception e) {
             log.error(e.getMessage(), e);
         }
     }
 
+    /**
+     * 心跳超时或 ping 发送失败的连接：关闭并退出房间，房间空了一并删除
+     *
+     * @param talker
+     */
+    private static void evict(Talker talker) {
+        log.debug("连接 " + talker.getSessionID() + " 心跳超时，已清理");
+        remove(talker);
+        deleteRoom(talker.getRoomID());
+    }
+
     /**
      * 获得用户 session
      *
@@ -108,50 +374,225 @@ public class TalkerRoomManager {
     }
 
     /**
-     * 添加用户进入房间并是否创建房间
+     * 添加用户进入房间并是否创建房间。
+     *
+     * 创建房间与加入房间在 compute 中原子完成，只锁住当前 roomID，与 deleteRoom 的“为空才删除”互斥，不会出现加入一个刚被删除
+     * 的房间而丢失 session 的情况。
+     *
+     * 开启房间单线程执行时加入房间在事件循环上执行，这里等它执行完再返回（最多 JOIN_TIMEOUT_MILLIS）：连接建立之后紧接着的
+     * send、subscribe 在调用线程上查找成员，不等的话可能还找不到刚加入的 session。
      */
-    public static synchronized void creatRoom(WebSocketSession session, Talker talker) {
-        TalkRoom room = ROOM_POOL.get(talker.getRoomID());
-        if (null == room) {
-            room = new TalkRoom();
-            ROOM_POOL.put(talker.getRoomID(), room);
+    public static void creatRoom(WebSocketSession session, Talker talker) {
+        RoomEventLoops actors = ACTORS;
+        if (actors == null) {
+            joinRoom(session, talker);
+            return;
+        }
+        CountDownLatch joined = new CountDownLatch(1);
+        actors.execute(talker.getRoomID(), () -> {
+            try {
+                joinRoom(session, talker);
+            } finally {
+                joined.countDown();
+            }
+        });
+        try {
+            if (!joined.await(JOIN_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+                log.warn("session " + talker.getSessionID() + " 等待加入房间 " + talker.getRoomID() + " 超时");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void joinRoom(WebSocketSession session, Talker talker) {
+        WebSocketSession outbound = FANOUT.decorate(session);
+        boolean[] created = new boolean[1];
+        ROOM_POOL.compute(talker.getRoomID(), (roomID, room) -> {
+            if (null == room) {
+                room = REPLAY.isEnabled() ? new TalkRoom(new ReplayBuffer(REPLAY)) : new TalkRoom();
+                created[0] = true;
+            }
+            room.join(talker.getSessionID(), outbound, (String) session.getAttributes().get(ReplayBuffer.LAST_SEQ_ATTRIBUTE));
+            return room;
+        });
+        // 本节点出现该房间的第一个成员时才订阅房间频道，在 compute 之外进行
+        if (created[0]) {
+            syncSubscription(talker.getRoomID());
+        }
+
+        HeartbeatWheel.Entry heartbeat = HEARTBEAT.register(outbound, talker);
+        if (heartbeat != null) {
+            session.getAttributes().put(HeartbeatWheel.ATTRIBUTE, heartbeat);
         }
-        room.add(talker.getSessionID(), session);
 
         // 在线数加 1
         addOnlineCount();
-        log.info("有新窗口开始监听:" + talker.getRoomID() + ",当前在线人数为" + getOnlineCount());
+        log.debug("有新窗口开始监听:" + talker.getRoomID() + ",当前在线人数为" + getOnlineCount());
 
         try {
-            send(talker, "连接成功");
+            // joinRoom 本身已经在 inRoom 中执行，直接发出；二进制端点收到的是 SYSTEM 帧
+            TalkRoom joined = ROOM_POOL.get(talker.getRoomID());
+            if (joined != null) {
+                joined.notice(talker.getLiveid(), talker.getSessionID(), "连接成功");
+            }
         } catch (Exception e) {
             log.error("websocket IO异常");
         }
     }
 
     /**
-     * 删除房间
+     * 删除房间，只有房间已经为空时才会删除（原子操作，返回 null 即从房间池中移除）
+     */
+    public static void deleteRoom(String roomID) {
+        if (StringUtils.isEmpty(roomID)) {
+            return;
+        }
+        inRoom(roomID, () -> {
+            boolean[] deleted = new boolean[1];
+            ROOM_POOL.computeIfPresent(roomID, (id, room) -> {
+                if (!room.isEmpty()) {
+                    return room;
+                }
+                deleted[0] = true;
+                return null;
+            });
+            // 房间删除后再取消订阅，同样不占着 compute 的锁
+            if (deleted[0]) {
+                syncSubscription(roomID);
+            }
+        });
+    }
+
+    /**
+     * 让房间频道的订阅与房间当前是否存在保持一致。
+     *
+     * 不直接按“刚创建”“刚删除”去订阅、取消订阅：两个线程的 compute 先后完成，但随后的订阅调用可能反过来执行。这里在房间的锁内
+     * 重新读一次 ROOM_POOL，最后一个执行的线程看到的就是最终状态，不会留下多余的订阅，也不会漏掉订阅。
+     *
+     * 开启房间单线程执行时调用方是房间的事件循环，交给 SUBSCRIBER 异步执行；同样是按执行时的状态补齐，晚一点执行不影响结果。
+     *
+     * @param roomID
      */
-    public static synchronized void deleteRoom(String roomID) {
-        TalkRoom socketRoom = ROOM_POOL.get(roomID);
-        if (null == socketRoom) {
+    private static void syncSubscription(String roomID) {
+        ClusterBroadcaster cluster = CLUSTER;
+        if (cluster == null) {
+            return;
+        }
+        if (ACTORS == null) {
+            syncSubscription(cluster, roomID, true);
             return;
         }
-        if (socketRoom.getSessionMap().size() == 0) {
-            ROOM_POOL.remove(roomID);
+        try {
+            SUBSCRIBER.execute(() -> {
+                // 执行前集群模式已经停止或者重新开启，交给 stopCluster、新的 CLUSTER 处理
+                if (CLUSTER == cluster) {
+                    syncSubscription(cluster, roomID, true);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // 集群模式正在停止，stopCluster 会取消所有订阅
+        }
+    }
+
+    /**
+     * @param cluster
+     * @param roomID
+     * @param keep    为 false 时不管房间是否存在都取消订阅（停止集群模式时）
+     */
+    private static void syncSubscription(ClusterBroadcaster cluster, String roomID, boolean keep) {
+        synchronized (SUBSCRIPTION_LOCKS[(roomID.hashCode() & 0x7fffffff) % SUBSCRIPTION_LOCKS.length]) {
+            boolean active = keep && ROOM_POOL.containsKey(roomID);
+            try {
+                if (active && !SUBSCRIBED.contains(roomID)) {
+                    cluster.roomActivated(roomID);
+                    SUBSCRIBED.add(roomID);
+                } else if (!active && SUBSCRIBED.remove(roomID)) {
+                    cluster.roomDeactivated(roomID);
+                }
+            } catch (Exception e) {
+                log.error("房间 " + roomID + " 频道订阅失败：" + e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * 当前节点上的房间数
+     *
+     * @return
+     */
+    public static int getRoomCount() {
+        return ROOM_POOL.size();
+    }
+
+    /**
+     * 当前节点上所有房间中的连接（带发送队列的 session），用于排空
+     *
+     * @return
+     */
+    public static List<WebSocketSession> getAllSessions() {
+        List<WebSocketSession> sessions = new ArrayList<>(getOnlineCount());
+        for (TalkRoom room : ROOM_POOL.values()) {
+            sessions.addAll(room.getSessions());
         }
+        return sessions;
     }
 
     public static int getOnlineCount() {
-        return onlineCount.get();
+        return onlineCount.intValue();
     }
 
     public static void addOnlineCount() {
-        onlineCount.getAndIncrement();
+        onlineCount.increment();
+    }
+
+    public static void subOnlineCount() {
+        onlineCount.decrement();
     }
 
-    public static synchronized void subOnlineCount() {
-        onlineCount.decrementAndGet();
+    /**
+     * 记录一条客户端发来的消息
+     *
+     * @param talker
+     */
+    public static void received(Talker talker) {
+        TalkRoom room = ROOM_POOL.get(talker.getRoomID());
+        if (room != null) {
+            room.getStats().received();
+        }
+    }
+
+    /**
+     * 房间计数，按指定指标倒序取前 limit 个，方便找出热点房间。
+     *
+     * 只读取各房间的 RoomStats，不会锁住或复制房间中的 sessionMap。
+     *
+     * @param sort  members、peakMembers、messagesIn、messagesOut
+     * @param limit
+     * @return
+     */
+    public static List<Map<String, Object>> topRooms(String sort, int limit) {
+        ToLongFunction<RoomStats> metric = roomMetric(sort);
+        Comparator<Map.Entry<String, TalkRoom>> order =
+                Comparator.comparingLong(entry -> metric.applyAsLong(entry.getValue().getStats()));
+        return ROOM_POOL.entrySet().stream()
+                .sorted(order.reversed())
+                .limit(limit)
+                .map(entry -> entry.getValue().getStats().snapshot(entry.getKey()))
+                .collect(Collectors.toList());
+    }
+
+    private static ToLongFunction<RoomStats> roomMetric(String sort) {
+        if ("peakMembers".equals(sort)) {
+            return RoomStats::getPeakMembers;
+        }
+        if ("messagesIn".equals(sort)) {
+            return RoomStats::getMessagesIn;
+        }
+        if ("messagesOut".equals(sort)) {
+            return RoomStats::getMessagesOut;
+        }
+        return RoomStats::getMembers;
     }
 
     /**
@@ -165,22 +606,317 @@ public class TalkerRoomManager {
      * @throws Exception
      */
     public static void send(Talker talker, String message) throws Exception {
-        ROOM_POOL.get(talker.getRoomID()).send(talker.getLiveid(), talker.getSessionID(), message);
+        TalkRoom room = ROOM_POOL.get(talker.getRoomID());
+        if (room != null && room.get(talker.getSessionID()) != null) {
+            inRoom(talker.getRoomID(), () -> {
+                try {
+                    room.send(talker.getLiveid(), talker.getSessionID(), message);
+                } catch (Exception e) {
+                    log.error(e.getMessage(), e);
+                }
+            });
+        } else if (CLUSTER != null) {
+            // session 不在本节点，交给持有它的节点投递
+            CLUSTER.publishToSession(talker.getRoomID(), talker.getSessionID(), talker.getLiveid(), message);
+        }
     }
 
     /**
-     * 群发，实现服务器主动推送
+     * 发给某个房间的所有成员（集群模式下包括其他节点上的成员）
+     *
+     * @param roomID
+     * @param message
+     */
+    public static void sendToRoom(String roomID, String message) {
+        try {
+            if (CLUSTER != null) {
+                CLUSTER.publishToRoom(roomID, message);
+            } else {
+                deliverToRoom(roomID, message);
+            }
+        } catch (Exception e) {
+            log.error(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 群发，实现服务器主动推送。
+     *
+     * 消息只是放入各个 session 的发送队列，放完即返回，不会等待真正写出。集群模式下只向全局频道发布一次。
      *
      * @param message
      */
     public static void batchSend(String message) {
         try {
-            for (String item : ROOM_POOL.keySet()) {
-                ROOM_POOL.get(item).batchSend(message);
+            if (CLUSTER != null) {
+                CLUSTER.publishToAll(message);
+            } else {
+                deliverToAll(message);
             }
         } catch (Exception e) {
             log.error(e.getMessage(), e);
         }
     }
 
+    /**
+     * 订阅主题，订阅者是房间中带发送队列的 session。主题可以带通配符，见 TopicRegistry
+     *
+     * 同一连接的订阅、取消订阅在它的订阅集合上加锁执行，上限检查与加入是原子的，并发订阅不会超过 maxTopics；连接断开时
+     * unsubscribeAll 取下集合之后，还没执行完的订阅不会再留下订阅。
+     *
+     * @param session
+     * @param talker
+     * @param topic
+     * @param maxTopics 每个连接最多订阅的主题数
+     * @return 不在房间中、订阅数已满或者主题不合法时返回 false
+     */
+    @SuppressWarnings("unchecked")
+    public static boolean subscribe(WebSocketSession session, Talker talker, String topic, int maxTopics) {
+        WebSocketSession outbound = getSession(talker);
+        if (outbound == null) {
+            return false;
+        }
+        Set<String> subscribed = (Set<String>) session.getAttributes()
+                .computeIfAbsent(TOPICS_ATTRIBUTE, key -> new HashSet<>());
+        synchronized (subscribed) {
+            if (session.getAttributes().get(TOPICS_ATTRIBUTE) != subscribed) {
+                // 连接已经断开
+                return false;
+            }
+            if (!subscribed.contains(topic) && subscribed.size() >= maxTopics) {
+                return false;
+            }
+            if (!TOPICS.subscribe(topic, talker.getSessionID(), outbound)) {
+                return false;
+            }
+            subscribed.add(topic);
+            return true;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public static void unsubscribe(WebSocketSession session, Talker talker, String topic) {
+        Set<String> subscribed = (Set<String>) session.getAttributes().get(TOPICS_ATTRIBUTE);
+        if (topic == null || subscribed == null) {
+            return;
+        }
+        synchronized (subscribed) {
+            if (subscribed.remove(topic)) {
+                TOPICS.unsubscribe(topic, talker.getSessionID());
+            }
+        }
+    }
+
+    /**
+     * 连接断开时取消所有订阅
+     *
+     * @param session
+     * @param talker
+     */
+    @SuppressWarnings("unchecked")
+    public static void unsubscribeAll(WebSocketSession session, Talker talker) {
+        Set<String> subscribed = (Set<String>) session.getAttributes().remove(TOPICS_ATTRIBUTE);
+        if (subscribed != null) {
+            synchronized (subscribed) {
+                for (String topic : subscribed) {
+                    TOPICS.unsubscribe(topic, talker.getSessionID());
+                }
+                subscribed.clear();
+            }
+        }
+    }
+
+    /**
+     * 发布到主题（只投递给本节点上的订阅者）
+     *
+     * @param topic
+     * @param message
+     * @return 投递的订阅者数
+     */
+    public static int publishToTopic(String topic, String message) {
+        return TOPICS.publish(topic, message);
+    }
+
+    public static TopicRegistry getTopics() {
+        return TOPICS;
+    }
+
+    /**
+     * 批量推送，返回每一条的投递结果，顺序与传入一致。
+     *
+     * 按房间分组，每个房间只查找一次，同一房间的各条按请求中的顺序投递：
+     * 1. 其他节点：集群模式下，发给整个房间的以及 session 不在本节点上的，每个房间合成一个消息体只发布一次。房间频道只有该房间
+     * 有成员的节点订阅，各节点按同样的顺序投递自己的那一部分。
+     * 2. 本节点：每个房间只提交一个任务到房间所在的事件循环（未开启房间单线程执行时在当前线程执行），任务内依次群发或单发，
+     * delivered 是实际放入发送队列的 session 数。推送本身已经是批量的，不再经过合并推送；开启了合并的房间先把攒下的消息发出，
+     * 保证顺序。
+     *
+     * 等本节点的投递完成后返回，最多等待 PUSH_TIMEOUT_MILLIS，超时的房间 delivered 可能不完整。
+     *
+     * @param targets
+     * @return
+     */
+    public static List<PushResult> push(List<PushTarget> targets) {
+        PushResult[] results = new PushResult[targets.size()];
+        Map<String, List<Integer>> byRoom = new LinkedHashMap<>();
+        for (int i = 0; i < targets.size(); i++) {
+            PushTarget target = targets.get(i);
+            results[i] = new PushResult(target);
+            if (StringUtils.isEmpty(target.getRoom()) || target.getPayload() == null) {
+                results[i].setError("room 与 payload 不能为空");
+                continue;
+            }
+            byRoom.computeIfAbsent(target.getRoom(), k -> new ArrayList<>()).add(i);
+        }
+
+        ClusterBroadcaster cluster = CLUSTER;
+        if (cluster != null) {
+            for (Map.Entry<String, List<Integer>> entry : byRoom.entrySet()) {
+                forward(cluster, entry.getKey(), entry.getValue(), targets, results);
+            }
+        }
+
+        CountDownLatch done = new CountDownLatch(byRoom.size());
+        for (Map.Entry<String, List<Integer>> entry : byRoom.entrySet()) {
+            String roomID = entry.getKey();
+            BATCH.flush(roomID);
+            inRoom(roomID, () -> {
+                try {
+                    pushLocal(roomID, entry.getValue(), targets, results);
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+        try {
+            if (!done.await(PUSH_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+                log.warn("批量推送等待本节点投递超时，剩余房间数 " + done.getCount());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return Arrays.asList(results);
+    }
+
+    /**
+     * 一个房间中需要其他节点投递的部分：发给整个房间的（其他节点上可能也有成员），以及 session 不在本节点上的
+     */
+    private static void forward(ClusterBroadcaster cluster, String roomID, List<Integer> indexes,
+                                List<PushTarget> targets, PushResult[] results) {
+        TalkRoom room = ROOM_POOL.get(roomID);
+        List<Integer> forwarded = new ArrayList<>();
+        List<PushTarget> remote = new ArrayList<>();
+        for (int index : indexes) {
+            PushTarget target = targets.get(index);
+            if (StringUtils.isEmpty(target.getSession()) || room == null || room.get(target.getSession()) == null) {
+                forwarded.add(index);
+                remote.add(target);
+            }
+        }
+        if (remote.isEmpty()) {
+            return;
+        }
+        try {
+            cluster.publishBatch(roomID, remote);
+            for (int index : forwarded) {
+                results[index].setForwarded(true);
+            }
+        } catch (Exception e) {
+            log.error(e.getMessage(), e);
+            for (int index : forwarded) {
+                results[index].setError(e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 在房间内按顺序投递给本节点上的成员
+     */
+    private static void pushLocal(String roomID, List<Integer> indexes, List<PushTarget> targets, PushResult[] results) {
+        TalkRoom room = ROOM_POOL.get(roomID);
+        if (room == null) {
+            return;
+        }
+        for (int index : indexes) {
+            PushTarget target = targets.get(index);
+            try {
+                if (StringUtils.isEmpty(target.getSession())) {
+                    results[index].setDelivered(room.broadcast(target.getPayload()));
+                } else if (room.sendTo(target.getSession(), TalkRoom.encode(target.getPayload()))) {
+                    results[index].setDelivered(1);
+                }
+            } catch (Exception e) {
+                log.error(e.getMessage(), e);
+                results[index].setError(e.getMessage());
+            }
+        }
+    }
+
+    private static void deliverToRoom(String roomID, String message) {
+        // 开启了合并推送的房间先攒起来，窗口到期后由 deliverFrame 发出
+        if (!BATCH.offer(roomID, message)) {
+            deliverFrame(roomID, message);
+        }
+    }
+
+    private static void deliverFrame(String roomID, String message) {
+        inRoom(roomID, () -> {
+            TalkRoom room = ROOM_POOL.get(roomID);
+            if (room != null) {
+                room.broadcast(message);
+            }
+        });
+    }
+
+    private static void deliverToAll(String message) {
+        // 只编码一次，所有房间、所有接收者共用同一个帧
+        TextMessage frame = TalkRoom.encode(message);
+        for (Map.Entry<String, TalkRoom> entry : ROOM_POOL.entrySet()) {
+            TalkRoom room = entry.getValue();
+            inRoom(entry.getKey(), () -> {
+                if (room.isReplayEnabled()) {
+                    // 带序号的房间每个房间的帧都不同
+                    room.broadcast(message);
+                } else {
+                    room.batchSend(frame);
+                }
+            });
+        }
+    }
+
+    /**
+     * 集群消息在本节点上的投递
+     */
+    private static class LocalDelivery implements ClusterBroadcaster.LocalDelivery {
+
+        @Override
+        public void toRoom(String roomID, String message) {
+            deliverToRoom(roomID, message);
+        }
+
+        @Override
+        public void toSession(String roomID, String sessionID, String liveid, String message) {
+            inRoom(roomID, () -> {
+                TalkRoom room = ROOM_POOL.get(roomID);
+                if (room == null) {
+                    return;
+                }
+                try {
+                    if (liveid == null) {
+                        room.sendTo(sessionID, TalkRoom.encode(message));
+                    } else {
+                        room.send(liveid, sessionID, message);
+                    }
+                } catch (Exception e) {
+                    log.error(e.getMessage(), e);
+                }
+            });
+        }
+
+        @Override
+        public void toAll(String message) {
+            deliverToAll(message);
+        }
+    }
+
 }
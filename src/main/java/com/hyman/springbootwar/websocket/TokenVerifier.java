@@ -0,0 +1,16 @@
+package com.hyman.springbootwar.websocket;
+
+/**
+ * 握手时的 token 校验。默认实现为 RedisTokenVerifier，需要接入其他登录体系时在容器中放一个自己的实现即可，MyInterceptor 会优先
+ * 使用容器中的实现，并在外面包一层本地缓存。
+ */
+public interface TokenVerifier {
+
+    /**
+     * token 是否有效
+     *
+     * @param token
+     * @return
+     */
+    boolean verify(String token);
+}
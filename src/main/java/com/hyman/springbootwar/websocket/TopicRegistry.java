@@ -0,0 +1,252 @@
+package com.hyman.springbootwar.websocket;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 主题订阅，支持通配符。
+ *
+ * 主题按 . 分成多级，例如 live.123.score。订阅时可以使用通配符：* 匹配一级（live.*.alerts），# 只能放在最后，匹配剩余的
+ * 零级或多级（live.123.#）。发布的主题中不能有通配符。
+ *
+ * 所有订阅按级保存在一棵前缀树中，节点上挂着订阅了该模式的 session（与房间成员相同的 RoomMembers）。发布时从根节点开始，每一级
+ * 只查找精确、* 和 # 三个子节点，耗时与主题级数、匹配到的订阅者数有关，与订阅总数无关。
+ *
+ * 订阅、取消订阅修改树结构，加锁串行执行；发布只读 ConcurrentHashMap，不加锁。
+ */
+@Slf4j
+public class TopicRegistry {
+
+    public static final char SEPARATOR = '.';
+    public static final String SINGLE_WILDCARD = "*";
+    public static final String MULTI_WILDCARD = "#";
+
+    private final Node root = new Node();
+
+    // 只在持有锁时修改
+    private volatile int patternCount;
+    private volatile int subscriptionCount;
+
+    /**
+     * 订阅
+     *
+     * @param pattern   主题或带通配符的模式
+     * @param sessionId
+     * @param session
+     * @return 模式不合法时返回 false
+     */
+    public synchronized boolean subscribe(String pattern, String sessionId, WebSocketSession session) {
+        String[] segments = split(pattern, true);
+        if (segments == null) {
+            return false;
+        }
+        Node node = root;
+        for (String segment : segments) {
+            node = node.children.computeIfAbsent(segment, key -> new Node());
+        }
+        if (node.subscribers == null) {
+            node.subscribers = new RoomMembers();
+            patternCount++;
+        }
+        if (node.subscribers.put(sessionId, session) == null) {
+            subscriptionCount++;
+        }
+        return true;
+    }
+
+    /**
+     * 取消订阅，顺带删除已经没有订阅者的节点
+     *
+     * @param pattern
+     * @param sessionId
+     * @return 原来没有订阅时返回 false
+     */
+    public synchronized boolean unsubscribe(String pattern, String sessionId) {
+        String[] segments = split(pattern, true);
+        if (segments == null) {
+            return false;
+        }
+        Node[] path = new Node[segments.length + 1];
+        path[0] = root;
+        for (int i = 0; i < segments.length; i++) {
+            path[i + 1] = path[i].children.get(segments[i]);
+            if (path[i + 1] == null) {
+                return false;
+            }
+        }
+        Node node = path[segments.length];
+        if (node.subscribers == null || node.subscribers.remove(sessionId) == null) {
+            return false;
+        }
+        subscriptionCount--;
+        if (node.subscribers.isEmpty()) {
+            node.subscribers = null;
+            patternCount--;
+        }
+        for (int i = segments.length; i > 0 && path[i].isEmpty(); i--) {
+            path[i - 1].children.remove(segments[i - 1], path[i]);
+        }
+        return true;
+    }
+
+    /**
+     * 发布到主题，同时匹配多个模式的 session 只收到一次
+     *
+     * @param topic
+     * @param message
+     * @return 投递的订阅者数
+     */
+    public int publish(String topic, String message) {
+        List<RoomMembers> matched = match(topic);
+        if (matched.isEmpty()) {
+            return 0;
+        }
+        OutboundFrame frame = new OutboundFrame(TalkRoom.encode(message));
+        int sent = 0;
+        if (matched.size() == 1) {
+            for (WebSocketSession session : matched.get(0).values()) {
+                sent += sendMessage(session, frame);
+            }
+            return sent;
+        }
+        Set<String> delivered = new HashSet<>();
+        for (RoomMembers members : matched) {
+            for (WebSocketSession session : members.values()) {
+                if (delivered.add(session.getId())) {
+                    sent += sendMessage(session, frame);
+                }
+            }
+        }
+        return sent;
+    }
+
+    /**
+     * 找出匹配主题的所有订阅者列表
+     *
+     * @param topic
+     * @return
+     */
+    List<RoomMembers> match(String topic) {
+        List<RoomMembers> matched = new ArrayList<>(4);
+        String[] segments = split(topic, false);
+        if (segments != null) {
+            collect(root, segments, 0, matched);
+        }
+        return matched;
+    }
+
+    private static void collect(Node node, String[] segments, int depth, List<RoomMembers> matched) {
+        Node multi = node.children.get(MULTI_WILDCARD);
+        if (multi != null) {
+            addTo(matched, multi.subscribers);
+        }
+        if (depth == segments.length) {
+            addTo(matched, node.subscribers);
+            return;
+        }
+        Node exact = node.children.get(segments[depth]);
+        if (exact != null) {
+            collect(exact, segments, depth + 1, matched);
+        }
+        Node single = node.children.get(SINGLE_WILDCARD);
+        if (single != null) {
+            collect(single, segments, depth + 1, matched);
+        }
+    }
+
+    private static void addTo(List<RoomMembers> matched, RoomMembers members) {
+        if (members != null && !members.isEmpty()) {
+            matched.add(members);
+        }
+    }
+
+    private static int sendMessage(WebSocketSession session, OutboundFrame frame) {
+        try {
+            session.sendMessage(frame.to(session));
+            return 1;
+        } catch (IOException | RuntimeException e) {
+            log.error("session " + session.getId() + " 发送失败：" + e.getMessage());
+            return 0;
+        }
+    }
+
+    /**
+     * 按 . 分级
+     *
+     * @param topic
+     * @param wildcard 是否允许通配符
+     * @return 有空的级、通配符不合法时返回 null
+     */
+    static String[] split(String topic, boolean wildcard) {
+        if (topic == null || topic.isEmpty()) {
+            return null;
+        }
+        List<String> segments = new ArrayList<>(4);
+        int begin = 0;
+        while (true) {
+            int end = topic.indexOf(SEPARATOR, begin);
+            String segment = end < 0 ? topic.substring(begin) : topic.substring(begin, end);
+            if (segment.isEmpty()) {
+                return null;
+            }
+            boolean multi = MULTI_WILDCARD.equals(segment);
+            if (multi || SINGLE_WILDCARD.equals(segment)) {
+                // # 只能是最后一级
+                if (!wildcard || (multi && end >= 0)) {
+                    return null;
+                }
+            } else if (segment.indexOf('*') >= 0 || segment.indexOf('#') >= 0) {
+                return null;
+            }
+            segments.add(segment);
+            if (end < 0) {
+                return segments.toArray(new String[0]);
+            }
+            begin = end + 1;
+        }
+    }
+
+    /**
+     * 有订阅者的模式数
+     *
+     * @return
+     */
+    public int getPatternCount() {
+        return patternCount;
+    }
+
+    public int getSubscriptionCount() {
+        return subscriptionCount;
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("patterns", patternCount);
+        result.put("subscriptions", subscriptionCount);
+        return result;
+    }
+
+    /**
+     * 前缀树节点
+     */
+    private static final class Node {
+
+        private final ConcurrentHashMap<String, Node> children = new ConcurrentHashMap<>(4);
+
+        // 订阅了到这一级为止的模式的 session，没有订阅者时为 null
+        private volatile RoomMembers subscribers;
+
+        boolean isEmpty() {
+            return subscribers == null && children.isEmpty();
+        }
+    }
+}
@@ -1,8 +1,13 @@
 package com.hyman.springbootwar.websocket;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.web.socket.config.annotation.EnableWebSocket;
 import org.springframework.web.socket.config.annotation.WebSocketConfigurer;
 import org.springframework.web.socket.config.annotation.WebSocketHandlerRegistry;
@@ -44,6 +49,10 @@ public class WebSocketConfig implements WebSocketConfigurer {
     private WebSocketHandler httpAuthHandler;
     @Autowired
     private MyInterceptor myInterceptor;
+    @Autowired
+    private BinarySocketHandler binarySocketHandler;
+    @Autowired
+    private WebSocketProperties webSocketProperties;
 
     /**
      * 重写该方法，通过向 WebSocketHandlerRegistry 设置不同参数来进行配置。其中：
@@ -66,10 +75,42 @@ public class WebSocketConfig implements WebSocketConfigurer {
                 .setAllowedOrigins("*")
                 // 开启sockJs支持
                 .withSockJS();
+
+        // 二进制通道，紧凑的长度前缀帧格式，消息按预置字典压缩一次供所有连接共用（见 BinaryFrameCodec），默认不再协商 permessage-deflate
+        registry.addHandler(binarySocketHandler, "/websocket-bin")
+                .setHandshakeHandler(new DeflateHandshakeHandler(webSocketProperties.getBinary().isDeflate()))
+                .addInterceptors(myInterceptor)
+                .setAllowedOrigins("*");
     }
 
     @Bean
     public ServerEndpointExporter serverEndpoint() {
         return new ServerEndpointExporter();
     }
+
+    /**
+     * 集群模式下订阅房间频道的容器。所有频道共用一个订阅连接，消息用单线程分发，保证同一频道的消息按顺序投递（分发只是放入
+     * session 的发送队列，单线程足够）。
+     */
+    @Bean
+    @ConditionalOnProperty(prefix = "hyman.websocket.cluster", name = "enabled", havingValue = "true")
+    public RedisMessageListenerContainer roomListenerContainer(RedisConnectionFactory factory) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(factory);
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(1);
+        executor.setMaxPoolSize(1);
+        executor.setThreadNamePrefix("ws-cluster-");
+        executor.setDaemon(true);
+        executor.initialize();
+        container.setTaskExecutor(executor);
+        return container;
+    }
+
+    @Bean
+    @ConditionalOnProperty(prefix = "hyman.websocket.cluster", name = "enabled", havingValue = "true")
+    public RoomBus roomBus(RedisConnectionFactory factory,
+                           @Qualifier("roomListenerContainer") RedisMessageListenerContainer roomListenerContainer) {
+        return new RedisRoomBus(factory, roomListenerContainer);
+    }
 }
@@ -2,13 +2,16 @@ package com.hyman.springbootwar.websocket;
 
 import com.hyman.springbootwar.util.CacheProvider;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.PongMessage;
 import org.springframework.web.socket.TextMessage;
 import org.springframework.web.socket.WebSocketSession;
 import org.springframework.web.socket.handler.TextWebSocketHandler;
 import org.thymeleaf.util.StringUtils;
 
+import javax.annotation.PostConstruct;
 import javax.websocket.server.ServerEndpoint;
 
 /**
@@ -23,6 +26,32 @@ import javax.websocket.server.ServerEndpoint;
 @Slf4j
 public class WebSocketHandler extends TextWebSocketHandler {
 
+    /**
+     * 连接建立时解析好的 Talker 存放在 session 属性中的 key
+     */
+    public static final String TALKER_ATTRIBUTE = "talker";
+
+    /**
+     * 用户解析方式，容器中有自定义的 TalkerResolver 时使用它，否则从 redis 中取
+     */
+    private static volatile TalkerResolver talkerResolver = new RedisTalkerResolver();
+
+    @Autowired(required = false)
+    private TalkerResolver customResolver;
+
+    private WebSocketProperties properties;
+
+    @Autowired
+    public void setProperties(WebSocketProperties properties) {
+        this.properties = properties;
+    }
+
+    @PostConstruct
+    public void init() {
+        if (customResolver != null) {
+            talkerResolver = customResolver;
+        }
+    }
 
     /**
      * session 是与某个客户端的连接会话，需要通过它来给客户端发送数据。
@@ -50,12 +79,15 @@ public class WebSocketHandler extends TextWebSocketHandler {
      */
     @Override
     public void afterConnectionEstablished(WebSocketSession session) throws Exception {
-        Object token = session.getAttributes().get("sid");
-        String sid = session.getUri().getQuery();
+        // 握手拦截器 MyInterceptor 放入的是 token
+        Object token = session.getAttributes().get("token");
+        InboundRateLimiter.register(session, properties.getRateLimit());
 
         try {
             if (token != null) {
-                Talker talker = getTalker(session);
+                // 只在连接建立时查一次 redis，之后的消息都从 session 属性中取
+                Talker talker = loadTalker(session);
+                session.getAttributes().put(TALKER_ATTRIBUTE, talker);
 
                 // 用户连接成功，放入本地在线用户缓存
                 // 用户连接成功，放入 redis
@@ -73,7 +105,8 @@ public class WebSocketHandler extends TextWebSocketHandler {
     }
 
     /**
-     * 接收消息事件，在新的WebSocket消息到达时调用,也就是接受客户端信息并发发送
+     * 接收消息事件，在新的WebSocket消息到达时调用,也就是接受客户端信息并发发送。
+     * 这是最热的路径，不访问 redis，用户信息直接从 session 属性中取。
      *
      * @param session
      * @param message
@@ -82,22 +115,96 @@ public class WebSocketHandler extends TextWebSocketHandler {
     @Override
     protected void handleTextMessage(WebSocketSession session, TextMessage message) throws Exception {
 
+        // 获得客户端传来的消息，getPayload 直接返回容器解码好的字符串，不会再编码
+        String payload = message.getPayload();
+        // 先限速，超出的消息不做任何处理
+        if (!InboundRateLimiter.admit(session, payload)) {
+            return;
+        }
+        handlePayload(session, payload);
+    }
+
+    /**
+     * 处理一条已经通过限速的消息。二进制端点对整个消息限速之后，按帧直接调用这里，不再逐帧限速
+     *
+     * @param session
+     * @param payload
+     * @throws Exception
+     */
+    void handlePayload(WebSocketSession session, String payload) throws Exception {
         Talker talker = getTalker(session);
-        log.info("收到来自窗口" + talker.getLiveid() + "的信息:" + message);
 
-        // 获得客户端传来的消息
-        String payload = message.getPayload();
         // 空消息不做操作
         if (StringUtils.isEmpty(payload)) {
             return;
         }
-        System.out.println("server 接收到 " + talker.getLiveid() + " 发送的 " + payload);
+        if (log.isDebugEnabled()) {
+            log.debug("server 接收到 " + talker.getLiveid() + " 发送的 " + payload);
+        }
+        TalkerRoomManager.received(talker);
+        HeartbeatWheel.touch(session);
+
+        // 按投递方式分发，默认只发给发送者所在的房间，不再每条消息都遍历全部房间
+        InboundMessage inbound = InboundMessage.parse(payload, properties.getRouting().getDefaultRoute());
+        Route route = inbound.getRoute();
+        if (route == null) {
+            TalkerRoomManager.send(talker, "不支持的投递方式");
+            return;
+        }
+        switch (route) {
+            case SUBSCRIBE:
+                if (StringUtils.isEmpty(inbound.getTopic())
+                        || !TalkerRoomManager.subscribe(session, talker, inbound.getTopic(), properties.getRouting().getMaxTopicsPerSession())) {
+                    TalkerRoomManager.send(talker, "订阅失败");
+                }
+                return;
+            case UNSUBSCRIBE:
+                TalkerRoomManager.unsubscribe(session, talker, inbound.getTopic());
+                return;
+            default:
+                break;
+        }
 
-        // 后端发送自己的消息
-        TalkerRoomManager.send(talker, payload);
+        String body = inbound.getBody();
+        if (body == null) {
+            return;
+        }
+        switch (route) {
+            case SENDER:
+                TalkerRoomManager.send(talker, body);
+                break;
+            case ROOM:
+                TalkerRoomManager.sendToRoom(talker.getRoomID(), body);
+                break;
+            case TOPIC:
+                if (!StringUtils.isEmpty(inbound.getTopic())) {
+                    TalkerRoomManager.publishToTopic(inbound.getTopic(), body);
+                }
+                break;
+            case GLOBAL:
+                // 全局群发要遍历所有房间，只允许管理员使用
+                if (properties.getRouting().getAdminTokens().contains(talker.getToken())) {
+                    TalkerRoomManager.batchSend(body);
+                } else {
+                    log.warn("用户 " + talker.getLiveid() + " 没有全局群发权限");
+                    TalkerRoomManager.send(talker, "没有全局群发权限");
+                }
+                break;
+            default:
+                break;
+        }
+    }
 
-        // 后端群发消息
-        TalkerRoomManager.batchSend(payload);
+    /**
+     * 收到客户端对心跳 ping 的回应（浏览器会自动回复 pong）
+     *
+     * @param session
+     * @param message
+     * @throws Exception
+     */
+    @Override
+    protected void handlePongMessage(WebSocketSession session, PongMessage message) throws Exception {
+        TalkerRoomManager.getHeartbeat().pong(session);
     }
 
     /**
@@ -122,23 +229,56 @@ public class WebSocketHandler extends TextWebSocketHandler {
      */
     @Override
     public void afterConnectionClosed(WebSocketSession session, CloseStatus status) throws Exception {
-        Object token = session.getAttributes().get("token");
-        if (token != null) {
-            Talker talker = getTalker(session);
-
+        HeartbeatWheel.cancel(session);
+        InboundRateLimiter.unregister(session);
+        Object talker = session.getAttributes().remove(TALKER_ATTRIBUTE);
+        if (talker instanceof Talker) {
             // 用户退出，移除缓存
             CacheProvider.del(session.getId());
+            // 取消所有主题订阅
+            TalkerRoomManager.unsubscribeAll(session, (Talker) talker);
             // 退出房间
-            TalkerRoomManager.remove(talker);
+            TalkerRoomManager.remove((Talker) talker);
             //是否删除房间
-            TalkerRoomManager.deleteRoom(talker.getRoomID());
+            TalkerRoomManager.deleteRoom(((Talker) talker).getRoomID());
+        }
+    }
+
+    /**
+     * 从 session 属性中取出连接时解析好的用户信息，不访问 redis
+     *
+     * @param session
+     * @return
+     */
+    public static Talker getTalker(WebSocketSession session) {
+        Object talker = session.getAttributes().get(TALKER_ATTRIBUTE);
+        if (!(talker instanceof Talker)) {
+            throw new RuntimeException("用户登录已经失效!");
         }
+        return (Talker) talker;
+    }
+
+    /**
+     * 显式失效：用户信息在 redis 中被修改后调用，重新从 redis 加载并替换 session 属性中的缓存
+     *
+     * @param session
+     * @return
+     */
+    public static Talker refreshTalker(WebSocketSession session) {
+        Talker talker = loadTalker(session);
+        session.getAttributes().put(TALKER_ATTRIBUTE, talker);
+        return talker;
     }
 
-    private Talker getTalker(WebSocketSession session) {
+    /**
+     * 从 redis 加载用户信息，只在连接建立和显式失效时调用
+     *
+     * @param session
+     * @return
+     */
+    private static Talker loadTalker(WebSocketSession session) {
         //获取用户信息
-        String talkerString = CacheProvider.get(session.getId());
-        Talker talker = CacheProvider.get(talkerString, Talker.class);
+        Talker talker = talkerResolver.resolve(session);
         if(null == talker){
             throw new RuntimeException("用户登录已经失效!");
         }
@@ -0,0 +1,686 @@
+package com.hyman.springbootwar.websocket;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * websocket 相关配置，从全局配置文件 hyman.websocket 下读取
+ */
+@Component
+@ConfigurationProperties(prefix = "hyman.websocket")
+public class WebSocketProperties {
+
+    private Fanout fanout = new Fanout();
+    private Cluster cluster = new Cluster();
+    private Batch batch = new Batch();
+    private Binary binary = new Binary();
+    private Handshake handshake = new Handshake();
+    private Heartbeat heartbeat = new Heartbeat();
+    private Replay replay = new Replay();
+    private Endpoint endpoint = new Endpoint();
+    private Actor actor = new Actor();
+    private Routing routing = new Routing();
+    private RateLimit rateLimit = new RateLimit();
+    private Drain drain = new Drain();
+
+    public Fanout getFanout() {
+        return fanout;
+    }
+
+    public void setFanout(Fanout fanout) {
+        this.fanout = fanout;
+    }
+
+    public Cluster getCluster() {
+        return cluster;
+    }
+
+    public void setCluster(Cluster cluster) {
+        this.cluster = cluster;
+    }
+
+    public Batch getBatch() {
+        return batch;
+    }
+
+    public void setBatch(Batch batch) {
+        this.batch = batch;
+    }
+
+    public Binary getBinary() {
+        return binary;
+    }
+
+    public void setBinary(Binary binary) {
+        this.binary = binary;
+    }
+
+    public Handshake getHandshake() {
+        return handshake;
+    }
+
+    public void setHandshake(Handshake handshake) {
+        this.handshake = handshake;
+    }
+
+    public Heartbeat getHeartbeat() {
+        return heartbeat;
+    }
+
+    public void setHeartbeat(Heartbeat heartbeat) {
+        this.heartbeat = heartbeat;
+    }
+
+    public Replay getReplay() {
+        return replay;
+    }
+
+    public void setReplay(Replay replay) {
+        this.replay = replay;
+    }
+
+    public Endpoint getEndpoint() {
+        return endpoint;
+    }
+
+    public void setEndpoint(Endpoint endpoint) {
+        this.endpoint = endpoint;
+    }
+
+    public Actor getActor() {
+        return actor;
+    }
+
+    public void setActor(Actor actor) {
+        this.actor = actor;
+    }
+
+    public Routing getRouting() {
+        return routing;
+    }
+
+    public void setRouting(Routing routing) {
+        this.routing = routing;
+    }
+
+    public RateLimit getRateLimit() {
+        return rateLimit;
+    }
+
+    public void setRateLimit(RateLimit rateLimit) {
+        this.rateLimit = rateLimit;
+    }
+
+    public Drain getDrain() {
+        return drain;
+    }
+
+    public void setDrain(Drain drain) {
+        this.drain = drain;
+    }
+
+    /**
+     * 群发配置：每个 session 一个有界发送队列，由独立的线程池负责真正写出
+     */
+    public static class Fanout {
+
+        // 每个 session 发送队列的最大长度
+        private int queueCapacity = 1024;
+        // 队列满了之后的处理策略
+        private OverflowPolicy overflowPolicy = OverflowPolicy.DROP_OLDEST;
+        // 负责写出的线程数
+        private int threads = Runtime.getRuntime().availableProcessors();
+        // 一个 session 每次最多连续写出多少条，之后让出线程给其他 session，避免一个大队列独占线程
+        private int drainBatch = 64;
+
+        public int getQueueCapacity() {
+            return queueCapacity;
+        }
+
+        public void setQueueCapacity(int queueCapacity) {
+            this.queueCapacity = queueCapacity;
+        }
+
+        public OverflowPolicy getOverflowPolicy() {
+            return overflowPolicy;
+        }
+
+        public void setOverflowPolicy(OverflowPolicy overflowPolicy) {
+            this.overflowPolicy = overflowPolicy;
+        }
+
+        public int getThreads() {
+            return threads;
+        }
+
+        public void setThreads(int threads) {
+            this.threads = threads;
+        }
+
+        public int getDrainBatch() {
+            return drainBatch;
+        }
+
+        public void setDrainBatch(int drainBatch) {
+            this.drainBatch = drainBatch;
+        }
+    }
+
+    /**
+     * 集群群发配置：通过 redis pub/sub 把房间消息转发到其他节点
+     */
+    public static class Cluster {
+
+        private boolean enabled = false;
+        // 频道前缀，房间频道为 {prefix}room:{roomID}，全局频道为 {prefix}all
+        private String channelPrefix = "ws:";
+        // 节点标识，不配置时启动时随机生成
+        private String nodeId;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public String getChannelPrefix() {
+            return channelPrefix;
+        }
+
+        public void setChannelPrefix(String channelPrefix) {
+            this.channelPrefix = channelPrefix;
+        }
+
+        public String getNodeId() {
+            return nodeId;
+        }
+
+        public void setNodeId(String nodeId) {
+            this.nodeId = nodeId;
+        }
+    }
+
+    /**
+     * 合并推送配置：按房间开启，窗口期内的消息合并成一帧
+     */
+    public static class Batch {
+
+        // 合并窗口（毫秒）
+        private long windowMillis = 20;
+        // 一帧最多合并的字节数，达到后立即发出
+        private int maxBytes = 16 * 1024;
+        // 启动时即开启合并的房间号
+        private List<String> rooms = new ArrayList<>();
+
+        public long getWindowMillis() {
+            return windowMillis;
+        }
+
+        public void setWindowMillis(long windowMillis) {
+            this.windowMillis = windowMillis;
+        }
+
+        public int getMaxBytes() {
+            return maxBytes;
+        }
+
+        public void setMaxBytes(int maxBytes) {
+            this.maxBytes = maxBytes;
+        }
+
+        public List<String> getRooms() {
+            return rooms;
+        }
+
+        public void setRooms(List<String> rooms) {
+            this.rooms = rooms;
+        }
+    }
+
+    /**
+     * 二进制端点配置
+     */
+    public static class Binary {
+
+        // 客户端请求时是否同意启用 permessage-deflate 压缩。负载已经按字典压缩过，再压缩一次省不了多少，还要每个连接各占一份
+        // 压缩窗口的内存
+        private boolean deflate = false;
+
+        public boolean isDeflate() {
+            return deflate;
+        }
+
+        public void setDeflate(boolean deflate) {
+            this.deflate = deflate;
+        }
+    }
+
+    /**
+     * 握手配置
+     */
+    public static class Handshake {
+
+        // 是否校验 token，关闭后只检查 token 是否存在。默认的 RedisTokenVerifier 要求登录时写入 {tokenKeyPrefix}{token}，
+        // 本项目中没有写入它的地方，接入了登录体系（写入该 key 或者提供自己的 TokenVerifier）之后再打开
+        private boolean verifyToken = false;
+        // 默认校验方式下 token 在 redis 中的 key 前缀
+        private String tokenKeyPrefix = "token:";
+        // 校验通过的 token 在本地缓存的时间（毫秒）
+        private long cacheTtlMillis = 30_000;
+        // 本地最多缓存的 token 数
+        private int cacheMaxSize = 100_000;
+
+        public boolean isVerifyToken() {
+            return verifyToken;
+        }
+
+        public void setVerifyToken(boolean verifyToken) {
+            this.verifyToken = verifyToken;
+        }
+
+        public String getTokenKeyPrefix() {
+            return tokenKeyPrefix;
+        }
+
+        public void setTokenKeyPrefix(String tokenKeyPrefix) {
+            this.tokenKeyPrefix = tokenKeyPrefix;
+        }
+
+        public long getCacheTtlMillis() {
+            return cacheTtlMillis;
+        }
+
+        public void setCacheTtlMillis(long cacheTtlMillis) {
+            this.cacheTtlMillis = cacheTtlMillis;
+        }
+
+        public int getCacheMaxSize() {
+            return cacheMaxSize;
+        }
+
+        public void setCacheMaxSize(int cacheMaxSize) {
+            this.cacheMaxSize = cacheMaxSize;
+        }
+    }
+
+    /**
+     * 心跳配置：时间轮定时发送 ping，长时间没有任何响应的连接被清理
+     */
+    public static class Heartbeat {
+
+        private boolean enabled = true;
+        // 时间轮每一格的时长（毫秒），也是检测的精度
+        private long tickMillis = 1_000;
+        // 时间轮的格数
+        private int wheelSize = 512;
+        // 每个连接发送 ping 的间隔（毫秒）
+        private long intervalMillis = 30_000;
+        // 超过该时长没有收到 pong 或任何消息，认为连接已经失效（毫秒）
+        private long idleTimeoutMillis = 90_000;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public long getTickMillis() {
+            return tickMillis;
+        }
+
+        public void setTickMillis(long tickMillis) {
+            this.tickMillis = tickMillis;
+        }
+
+        public int getWheelSize() {
+            return wheelSize;
+        }
+
+        public void setWheelSize(int wheelSize) {
+            this.wheelSize = wheelSize;
+        }
+
+        public long getIntervalMillis() {
+            return intervalMillis;
+        }
+
+        public void setIntervalMillis(long intervalMillis) {
+            this.intervalMillis = intervalMillis;
+        }
+
+        public long getIdleTimeoutMillis() {
+            return idleTimeoutMillis;
+        }
+
+        public void setIdleTimeoutMillis(long idleTimeoutMillis) {
+            this.idleTimeoutMillis = idleTimeoutMillis;
+        }
+    }
+
+    /**
+     * 断线重连补发：每个房间保留最近的若干条消息，重连时只补发缺失的部分
+     */
+    public static class Replay {
+
+        // 开启后房间消息带上位置，格式为 {epoch}.{seq}|{消息}，epoch 在房间重新创建后改变（见 ReplayBuffer）
+        private boolean enabled = false;
+        // 每个房间保留的消息条数
+        private int capacity = 256;
+        // 消息存放在堆外内存，减少大房间历史消息对 GC 的压力
+        private boolean offHeap = false;
+        // 堆外存放时每条消息的最大字节数，超出的消息仍存放在堆内
+        private int slotBytes = 1024;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public int getCapacity() {
+            return capacity;
+        }
+
+        public void setCapacity(int capacity) {
+            this.capacity = capacity;
+        }
+
+        public boolean isOffHeap() {
+            return offHeap;
+        }
+
+        public void setOffHeap(boolean offHeap) {
+            this.offHeap = offHeap;
+        }
+
+        public int getSlotBytes() {
+            return slotBytes;
+        }
+
+        public void setSlotBytes(int slotBytes) {
+            this.slotBytes = slotBytes;
+        }
+    }
+
+    /**
+     * 原生 JSR-356 端点 /myWs/{sid} 的主动推送配置
+     */
+    public static class Endpoint {
+
+        // 异步发送，推送线程放入队列后立即返回；关闭后退回 getBasicRemote 阻塞发送
+        private boolean async = true;
+        // 每个 session 排队等待发送的最大消息数
+        private int maxPending = 1024;
+        // 队列满了之后的处理策略
+        private OverflowPolicy overflowPolicy = OverflowPolicy.DROP_OLDEST;
+        // 单条消息异步发送的超时时间（毫秒）
+        private long sendTimeoutMillis = 10_000;
+
+        public boolean isAsync() {
+            return async;
+        }
+
+        public void setAsync(boolean async) {
+            this.async = async;
+        }
+
+        public int getMaxPending() {
+            return maxPending;
+        }
+
+        public void setMaxPending(int maxPending) {
+            this.maxPending = maxPending;
+        }
+
+        public OverflowPolicy getOverflowPolicy() {
+            return overflowPolicy;
+        }
+
+        public void setOverflowPolicy(OverflowPolicy overflowPolicy) {
+            this.overflowPolicy = overflowPolicy;
+        }
+
+        public long getSendTimeoutMillis() {
+            return sendTimeoutMillis;
+        }
+
+        public void setSendTimeoutMillis(long sendTimeoutMillis) {
+            this.sendTimeoutMillis = sendTimeoutMillis;
+        }
+    }
+
+    /**
+     * 房间单线程执行：每个房间固定在一个事件循环线程上，进出房间、发送都在该线程上按顺序执行
+     */
+    public static class Actor {
+
+        private boolean enabled = false;
+        // 事件循环线程数
+        private int loops = Runtime.getRuntime().availableProcessors();
+        // 一个房间每次最多连续处理多少个任务，之后让出线程给同一循环上的其他房间
+        private int drainBatch = 256;
+        // 负载均衡的检查间隔（毫秒）
+        private long rebalanceMillis = 5_000;
+        // 最忙的循环超过平均负载的多少倍时迁移房间
+        private double imbalanceRatio = 1.5;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public int getLoops() {
+            return loops;
+        }
+
+        public void setLoops(int loops) {
+            this.loops = loops;
+        }
+
+        public int getDrainBatch() {
+            return drainBatch;
+        }
+
+        public void setDrainBatch(int drainBatch) {
+            this.drainBatch = drainBatch;
+        }
+
+        public long getRebalanceMillis() {
+            return rebalanceMillis;
+        }
+
+        public void setRebalanceMillis(long rebalanceMillis) {
+            this.rebalanceMillis = rebalanceMillis;
+        }
+
+        public double getImbalanceRatio() {
+            return imbalanceRatio;
+        }
+
+        public void setImbalanceRatio(double imbalanceRatio) {
+            this.imbalanceRatio = imbalanceRatio;
+        }
+    }
+
+    /**
+     * 客户端消息的投递方式
+     */
+    public static class Routing {
+
+        // 没有指定 route 的消息的投递方式
+        private Route defaultRoute = Route.ROOM;
+        // 允许全局群发的 token
+        private List<String> adminTokens = new ArrayList<>();
+        // 每个连接最多订阅的主题数
+        private int maxTopicsPerSession = 100;
+
+        public Route getDefaultRoute() {
+            return defaultRoute;
+        }
+
+        public void setDefaultRoute(Route defaultRoute) {
+            this.defaultRoute = defaultRoute;
+        }
+
+        public List<String> getAdminTokens() {
+            return adminTokens;
+        }
+
+        public void setAdminTokens(List<String> adminTokens) {
+            this.adminTokens = adminTokens;
+        }
+
+        public int getMaxTopicsPerSession() {
+            return maxTopicsPerSession;
+        }
+
+        public void setMaxTopicsPerSession(int maxTopicsPerSession) {
+            this.maxTopicsPerSession = maxTopicsPerSession;
+        }
+    }
+
+    /**
+     * 客户端消息限速：每个连接两个令牌桶，分别限制每秒消息数和字节数
+     */
+    public static class RateLimit {
+
+        private boolean enabled = true;
+        // 每秒消息数，0 表示不限制
+        private int messagesPerSecond = 20;
+        // 消息数的突发上限
+        private int messageBurst = 40;
+        // 每秒字节数，0 表示不限制
+        private int bytesPerSecond = 64 * 1024;
+        // 字节数的突发上限
+        private int byteBurst = 128 * 1024;
+        // 单条消息的最大字节数，超过时直接断开连接
+        private int maxMessageBytes = 64 * 1024;
+        // 超过限速之后的处理策略
+        private RateLimitPolicy policy = RateLimitPolicy.DROP;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public int getMessagesPerSecond() {
+            return messagesPerSecond;
+        }
+
+        public void setMessagesPerSecond(int messagesPerSecond) {
+            this.messagesPerSecond = messagesPerSecond;
+        }
+
+        public int getMessageBurst() {
+            return messageBurst;
+        }
+
+        public void setMessageBurst(int messageBurst) {
+            this.messageBurst = messageBurst;
+        }
+
+        public int getBytesPerSecond() {
+            return bytesPerSecond;
+        }
+
+        public void setBytesPerSecond(int bytesPerSecond) {
+            this.bytesPerSecond = bytesPerSecond;
+        }
+
+        public int getByteBurst() {
+            return byteBurst;
+        }
+
+        public void setByteBurst(int byteBurst) {
+            this.byteBurst = byteBurst;
+        }
+
+        public int getMaxMessageBytes() {
+            return maxMessageBytes;
+        }
+
+        public void setMaxMessageBytes(int maxMessageBytes) {
+            this.maxMessageBytes = maxMessageBytes;
+        }
+
+        public RateLimitPolicy getPolicy() {
+            return policy;
+        }
+
+        public void setPolicy(RateLimitPolicy policy) {
+            this.policy = policy;
+        }
+    }
+
+    /**
+     * 发版时的连接排空：停止握手，在 windowMillis 内分批关闭已有连接
+     */
+    public static class Drain {
+
+        // 应用关闭（MyListener.contextDestroyed）时自动排空，并等待排空结束
+        private boolean drainOnShutdown = true;
+        // 关闭全部连接所用的时间（毫秒）
+        private long windowMillis = 30_000;
+        // 每批之间的间隔（毫秒）
+        private long intervalMillis = 500;
+        // 关闭码，默认 1012（Service Restart），客户端收到后换一个节点重连
+        private int closeCode = 1012;
+        // 提示客户端在 [0, reconnectJitterMillis) 之间随机等待后再重连
+        private long reconnectJitterMillis = 10_000;
+
+        public boolean isDrainOnShutdown() {
+            return drainOnShutdown;
+        }
+
+        public void setDrainOnShutdown(boolean drainOnShutdown) {
+            this.drainOnShutdown = drainOnShutdown;
+        }
+
+        public long getWindowMillis() {
+            return windowMillis;
+        }
+
+        public void setWindowMillis(long windowMillis) {
+            this.windowMillis = windowMillis;
+        }
+
+        public long getIntervalMillis() {
+            return intervalMillis;
+        }
+
+        public void setIntervalMillis(long intervalMillis) {
+            this.intervalMillis = intervalMillis;
+        }
+
+        public int getCloseCode() {
+            return closeCode;
+        }
+
+        public void setCloseCode(int closeCode) {
+            this.closeCode = closeCode;
+        }
+
+        public long getReconnectJitterMillis() {
+            return reconnectJitterMillis;
+        }
+
+        public void setReconnectJitterMillis(long reconnectJitterMillis) {
+            this.reconnectJitterMillis = reconnectJitterMillis;
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package com.hyman.springbootwar.websocket;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * websocket 运行指标，给容量规划、排查问题使用
+ *
+ * http://localhost:8088/ws/stats
+ * http://localhost:8088/ws/stats/rooms?sort=messagesOut&limit=20
+ * http://localhost:8088/ws/stats/rooms/1001
+ * http://localhost:8088/ws/stats/batch
+ * http://localhost:8088/ws/stats/heartbeat
+ * http://localhost:8088/ws/stats/endpoint
+ * http://localhost:8088/ws/stats/actors
+ * http://localhost:8088/ws/stats/handshake
+ * http://localhost:8088/ws/stats/topics
+ * http://localhost:8088/ws/stats/ratelimit?limit=20
+ * http://localhost:8088/ws/stats/drain
+ */
+@RestController
+@RequestMapping("/ws/stats")
+public class WebSocketStatsController {
+
+    @Autowired
+    private MyInterceptor myInterceptor;
+
+    /**
+     * 节点整体情况
+     *
+     * @return
+     */
+    @GetMapping
+    public Map<String, Object> overview() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("online", TalkerRoomManager.getOnlineCount());
+        result.put("rooms", TalkerRoomManager.getRoomCount());
+        result.put("fanoutDropped", TalkerRoomManager.getFanoutEngine().getDroppedCount());
+        result.put("fanoutDisconnected", TalkerRoomManager.getFanoutEngine().getDisconnectedCount());
+        return result;
+    }
+
+    /**
+     * 热点房间：按在线人数、峰值人数、收到或发出的消息数倒序
+     *
+     * @param sort
+     * @param limit
+     * @return
+     */
+    @GetMapping("/rooms")
+    public List<Map<String, Object>> rooms(@RequestParam(defaultValue = "members") String sort,
+                                           @RequestParam(defaultValue = "20") int limit) {
+        return TalkerRoomManager.topRooms(sort, Math.max(1, Math.min(limit, 1000)));
+    }
+
+    /**
+     * 单个房间的计数
+     *
+     * @param roomID
+     * @return
+     */
+    @GetMapping("/rooms/{roomID}")
+    public Map<String, Object> room(@PathVariable String roomID) {
+        TalkRoom room = TalkerRoomManager.getRoom(roomID);
+        if (room == null) {
+            return Collections.emptyMap();
+        }
+        return room.getStats().snapshot(roomID);
+    }
+
+    /**
+     * 合并推送的窗口与各房间观测到的批大小
+     *
+     * @return
+     */
+    @GetMapping("/batch")
+    public Map<String, Object> batch() {
+        return TalkerRoomManager.getBatchEngine().stats();
+    }
+
+    /**
+     * 心跳：在册连接数、ping/pong 次数、清理数与往返时间
+     *
+     * @return
+     */
+    @GetMapping("/heartbeat")
+    public Map<String, Object> heartbeat() {
+        return TalkerRoomManager.getHeartbeat().stats();
+    }
+
+    /**
+     * 原生端点 /myWs/{sid} 的异步发送情况
+     *
+     * @return
+     */
+    @GetMapping("/endpoint")
+    public Map<String, Object> endpoint() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("sent", AsyncEndpointSender.getSentCount());
+        result.put("failed", AsyncEndpointSender.getFailedCount());
+        result.put("dropped", AsyncEndpointSender.getDroppedCount());
+        return result;
+    }
+
+    /**
+     * 房间事件循环：每个循环上的房间数、上一周期的忙碌比例以及迁移次数
+     *
+     * @return
+     */
+    @GetMapping("/actors")
+    public Map<String, Object> actors() {
+        RoomEventLoops loops = TalkerRoomManager.getRoomEventLoops();
+        return loops == null ? Collections.singletonMap("enabled", false) : loops.stats();
+    }
+
+    /**
+     * 主题订阅：有订阅者的模式数与订阅总数
+     *
+     * @return
+     */
+    @GetMapping("/topics")
+    public Map<String, Object> topics() {
+        return TalkerRoomManager.getTopics().stats();
+    }
+
+    /**
+     * 客户端消息限速：丢弃、等待、断开的次数，以及被丢弃消息最多的连接
+     *
+     * @param limit
+     * @return
+     */
+    @GetMapping("/ratelimit")
+    public Map<String, Object> rateLimit(@RequestParam(defaultValue = "20") int limit) {
+        return InboundRateLimiter.stats(limit);
+    }
+
+    /**
+     * 连接排空进度
+     *
+     * @return
+     */
+    @GetMapping("/drain")
+    public Map<String, Object> drain() {
+        return ConnectionDrainer.stats();
+    }
+
+    /**
+     * 握手次数、耗时与 token 缓存命中情况
+     *
+     * @return
+     */
+    @GetMapping("/handshake")
+    public Map<String, Object> handshake() {
+        Map<String, Object> result = myInterceptor.getMetrics().snapshot();
+        CachingTokenVerifier verifier = myInterceptor.getTokenVerifier();
+        result.put("tokenCacheHits", verifier.getHitCount());
+        result.put("tokenCacheMisses", verifier.getMissCount());
+        result.put("tokenCacheSize", verifier.getSize());
+        return result;
+    }
+}
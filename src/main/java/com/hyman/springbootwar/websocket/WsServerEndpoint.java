@@ -1,12 +1,15 @@
 package com.hyman.springbootwar.websocket;
 
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 import javax.websocket.*;
 import javax.websocket.server.PathParam;
 import javax.websocket.server.ServerEndpoint;
 import java.io.IOException;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * 需要注意一下，此类使用的注解及参数（websocket，Session）都是在 javax.websocket 下，是 jdk 自带的，即它们都是 java 原生的
@@ -24,12 +27,29 @@ import java.io.IOException;
  * 需要注意的是，服务端发送消息给客户端必须通过上面说的 Session 类（spring 提供了 WebSocketSession），通常是在 @OnOpen 方法中，
  * 当连接成功后把 session 存入 Map 的 value，key 是与 session 对应的用户标识，当要发送的时候通过 key 获得 session 再发送。
  * 可以通过 session.getBasicRemote().sendText(*) 来对客户端发送消息。
+ *
+ * 主动推送默认走 AsyncEndpointSender 异步发送（hyman.websocket.endpoint.async），推送方放入队列后立即返回。
  */
 @Slf4j
 @ServerEndpoint("/myWs/{sid}")
 @Component
 public class WsServerEndpoint {
 
+    /**
+     * 端点实例由容器为每个连接单独创建，不经过 spring 注入，配置通过 setter 注入到静态变量上
+     */
+    private static volatile WebSocketProperties.Endpoint config = new WebSocketProperties.Endpoint();
+
+    /**
+     * sid 与连接的对应关系，推送时按 sid 查找
+     */
+    private static final ConcurrentHashMap<String, Session> SESSIONS = new ConcurrentHashMap<>();
+
+    @Autowired
+    public void setProperties(WebSocketProperties properties) {
+        WsServerEndpoint.config = properties.getEndpoint();
+    }
+
     /**
      * 连接成功
      *
@@ -37,16 +57,39 @@ public class WsServerEndpoint {
      */
     @OnOpen
     public void onOpen(Session session, @PathParam("sid") String sid) {
+        if (ConnectionDrainer.isDraining()) {
+            // 排空中不再接受新连接，让客户端换节点重连
+            ConnectionDrainer.close(session, ConnectionDrainer.getConfig());
+            return;
+        }
+        if (config.isAsync()) {
+            session.getUserProperties().put(AsyncEndpointSender.PROPERTY, new AsyncEndpointSender(session, config));
+        }
+        SESSIONS.put(sid, session);
         log.info("连接成功" + sid);
     }
 
+    /**
+     * 当前所有连接，用于排空
+     *
+     * @return
+     */
+    public static Collection<Session> getSessions() {
+        return SESSIONS.values();
+    }
+
     /**
      * 连接关闭
      *
      * @param session
      */
     @OnClose
-    public void onClose(Session session) {
+    public void onClose(Session session, @PathParam("sid") String sid) {
+        SESSIONS.remove(sid, session);
+        Object sender = session.getUserProperties().remove(AsyncEndpointSender.PROPERTY);
+        if (sender instanceof AsyncEndpointSender) {
+            ((AsyncEndpointSender) sender).discard();
+        }
         log.info("连接关闭");
     }
 
@@ -67,10 +110,32 @@ public class WsServerEndpoint {
     }
 
     /**
-     * 实现服务器主动推送
+     * 实现服务器主动推送。异步模式下只是放入该连接的发送队列，不会阻塞调用线程
      */
     public void activeSendMessage(Session session, String message) throws IOException {
-        session.getBasicRemote().sendText(message);
+        Object sender = session.getUserProperties().get(AsyncEndpointSender.PROPERTY);
+        if (sender instanceof AsyncEndpointSender) {
+            ((AsyncEndpointSender) sender).send(message);
+        } else {
+            session.getBasicRemote().sendText(message);
+        }
+    }
+
+    /**
+     * 按 sid 推送
+     *
+     * @param sid
+     * @param message
+     * @return 连接不在本节点时返回 false
+     * @throws IOException
+     */
+    public boolean push(String sid, String message) throws IOException {
+        Session session = SESSIONS.get(sid);
+        if (session == null) {
+            return false;
+        }
+        activeSendMessage(session, message);
+        return true;
     }
 
 }
@@ -0,0 +1,106 @@
+package com.hyman.springbootwar.cache;
+
+import com.hyman.springbootwar.entity.User;
+import com.hyman.springbootwar.entity.UserInfo;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 缓存 value 序列化对比：JDK、json（写类名）、json（按类型）、binary 分别序列化 User 和 UserInfo，输出序列化后的字节数和
+ * 一次序列化加反序列化的平均耗时，并检查反序列化结果与原对象一致。
+ *
+ * 每种序列化方式要跑十几万次，默认跳过，加 -Dws.benchmark=true 运行：
+ * mvn test -Dtest=CacheSerializerBenchmarkTests -Dws.benchmark=true
+ */
+@Slf4j
+public class CacheSerializerBenchmarkTests {
+
+    private static final int WARMUP = 20_000;
+    private static final int ROUNDS = 100_000;
+
+    @BeforeClass
+    public static void enabled() {
+        Assume.assumeTrue("加 -Dws.benchmark=true 运行", Boolean.getBoolean("ws.benchmark"));
+    }
+
+    @Test
+    public void user() {
+        User user = new User(42, "hyman", 28);
+        user.setPassword("123456");
+        Map<String, Integer> sizes = compare(User.class, user, (expected, actual) -> {
+            Assert.assertEquals(expected.getId(), actual.getId());
+            Assert.assertEquals(expected.getName(), actual.getName());
+            Assert.assertEquals(expected.getAge(), actual.getAge());
+            Assert.assertEquals(expected.getPassword(), actual.getPassword());
+        });
+        Assert.assertTrue(sizes.get("binary") < sizes.get("jdk"));
+        Assert.assertTrue(sizes.get("binary") < sizes.get("json-typed"));
+    }
+
+    @Test
+    public void userInfo() {
+        UserInfo info = new UserInfo();
+        info.setId(10086L);
+        info.setRealName("张三");
+        info.setHobby("篮球、游泳");
+        info.setGmtCreate(new Date(1_500_000_000_000L));
+        // 留一个 null 字段
+        Map<String, Integer> sizes = compare(UserInfo.class, info, (expected, actual) -> {
+            Assert.assertEquals(expected.getId(), actual.getId());
+            Assert.assertEquals(expected.getRealName(), actual.getRealName());
+            Assert.assertEquals(expected.getHobby(), actual.getHobby());
+            Assert.assertEquals(expected.getGmtCreate(), actual.getGmtCreate());
+            Assert.assertNull(actual.getGmtModified());
+        });
+        Assert.assertTrue(sizes.get("binary") < sizes.get("jdk"));
+    }
+
+    private <T> Map<String, Integer> compare(Class<T> type, T value, Verifier<T> verifier) {
+        Map<String, RedisSerializer<Object>> serializers = new LinkedHashMap<>();
+        serializers.put("jdk", serializer(CacheSerializer.JDK, null));
+        serializers.put("json", serializer(CacheSerializer.JSON, null));
+        serializers.put("json-typed", serializer(CacheSerializer.JSON, type));
+        serializers.put("binary", serializer(CacheSerializer.BINARY, type));
+
+        Map<String, Integer> sizes = new LinkedHashMap<>();
+        for (Map.Entry<String, RedisSerializer<Object>> entry : serializers.entrySet()) {
+            RedisSerializer<Object> serializer = entry.getValue();
+            byte[] bytes = serializer.serialize(value);
+            verifier.verify(value, type.cast(serializer.deserialize(bytes)));
+            sizes.put(entry.getKey(), bytes.length);
+
+            for (int i = 0; i < WARMUP; i++) {
+                serializer.deserialize(serializer.serialize(value));
+            }
+            long begin = System.nanoTime();
+            for (int i = 0; i < ROUNDS; i++) {
+                serializer.deserialize(serializer.serialize(value));
+            }
+            long nanos = System.nanoTime() - begin;
+            log.info("{} {}: {} bytes, {} ns/op (serialize + deserialize), {} ms total",
+                    type.getSimpleName(), entry.getKey(), bytes.length, nanos / ROUNDS, TimeUnit.NANOSECONDS.toMillis(nanos));
+        }
+        return sizes;
+    }
+
+    private static RedisSerializer<Object> serializer(CacheSerializer serializer, Class<?> type) {
+        CacheProperties.Spec spec = new CacheProperties.Spec();
+        spec.setSerializer(serializer);
+        spec.setType(type);
+        return CacheSpecs.serializer(spec);
+    }
+
+    private interface Verifier<T> {
+
+        void verify(T expected, T actual);
+    }
+}
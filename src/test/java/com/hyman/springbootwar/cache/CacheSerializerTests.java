@@ -0,0 +1,51 @@
+package com.hyman.springbootwar.cache;
+
+import com.hyman.springbootwar.entity.User;
+import com.hyman.springbootwar.entity.UserInfo;
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.cache.support.NullValue;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+/**
+ * 缓存 value 序列化的正确性，耗时与字节数的对比见 CacheSerializerBenchmarkTests
+ */
+public class CacheSerializerTests {
+
+    @Test
+    public void roundTripWithEverySerializer() {
+        User user = new User(42, "hyman", 28);
+        user.setPassword("123456");
+        for (CacheSerializer serializer : CacheSerializer.values()) {
+            RedisSerializer<Object> redisSerializer = serializer(serializer, User.class);
+            User actual = (User) redisSerializer.deserialize(redisSerializer.serialize(user));
+            Assert.assertEquals(serializer.name(), user.getId(), actual.getId());
+            Assert.assertEquals(serializer.name(), user.getName(), actual.getName());
+            Assert.assertEquals(serializer.name(), user.getAge(), actual.getAge());
+            Assert.assertEquals(serializer.name(), user.getPassword(), actual.getPassword());
+        }
+    }
+
+    @Test
+    public void nullValueSurvivesTypedSerializers() {
+        for (CacheSerializer serializer : CacheSerializer.values()) {
+            RedisSerializer<Object> redisSerializer = serializer(serializer, User.class);
+            Assert.assertTrue(serializer.name(),
+                    redisSerializer.deserialize(redisSerializer.serialize(NullValue.INSTANCE)) instanceof NullValue);
+        }
+    }
+
+    @Test
+    public void binaryRejectsChangedSchema() {
+        byte[] bytes = new CompactBinaryRedisSerializer<>(User.class).serialize(new User(1, "a", 2));
+        // 其他类型的结构签名不同，按未命中处理
+        Assert.assertNull(new CompactBinaryRedisSerializer<>(UserInfo.class).deserialize(bytes));
+    }
+
+    private static RedisSerializer<Object> serializer(CacheSerializer serializer, Class<?> type) {
+        CacheProperties.Spec spec = new CacheProperties.Spec();
+        spec.setSerializer(serializer);
+        spec.setType(type);
+        return CacheSpecs.serializer(spec);
+    }
+}
@@ -0,0 +1,101 @@
+package com.hyman.springbootwar.cache;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.springframework.cache.Cache;
+import org.springframework.cache.concurrent.ConcurrentMapCache;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 缓存击穿压测：500 个线程同时读取同一个冷 key，加载一次耗时 LOAD_MILLIS（模拟查库）。
+ *
+ * 对比两种方式：先查缓存、未命中各自加载再写入（@Cacheable 默认的方式），以及 TwoLevelCache.get(key, loader) 按 key 合并加载
+ * （@Cacheable(sync = true)）。输出实际加载次数与全部线程拿到结果的总耗时，合并之后只应该加载一次。
+ *
+ * 要起 500 个线程，默认跳过，加 -Dws.benchmark=true 运行：
+ * mvn test -Dtest=CacheStampedeBenchmarkTests -Dws.benchmark=true
+ */
+@Slf4j
+public class CacheStampedeBenchmarkTests {
+
+    private static final int READERS = 500;
+    private static final long LOAD_MILLIS = 50;
+
+    @BeforeClass
+    public static void enabled() {
+        Assume.assumeTrue("加 -Dws.benchmark=true 运行", Boolean.getBoolean("ws.benchmark"));
+    }
+
+    @Test
+    public void coldKeyStampede() throws Exception {
+        AtomicInteger naiveLoads = new AtomicInteger();
+        Cache naive = new ConcurrentMapCache("users");
+        long naiveNanos = stampede(() -> {
+            Cache.ValueWrapper cached = naive.get("user:1");
+            if (cached != null) {
+                return cached.get();
+            }
+            Object value = load(naiveLoads);
+            naive.put("user:1", value);
+            return value;
+        });
+
+        AtomicInteger flightLoads = new AtomicInteger();
+        TwoLevelCache cache = new TwoLevelCache("users", new ConcurrentMapCache("users"),
+                Caffeine.newBuilder().maximumSize(100).build(), key -> {
+        });
+        long flightNanos = stampede(() -> cache.get("user:1", () -> load(flightLoads)));
+
+        log.info("{} readers on a cold key: get-then-put {} loads in {} ms, single-flight {} loads ({} waited) in {} ms",
+                READERS, naiveLoads.get(), TimeUnit.NANOSECONDS.toMillis(naiveNanos),
+                flightLoads.get(), cache.getFlights().getCoalescedCount(), TimeUnit.NANOSECONDS.toMillis(flightNanos));
+        // 晚到的线程直接命中本地缓存，不一定计入 waited，但加载只能有一次
+        Assert.assertEquals(1, flightLoads.get());
+        Assert.assertEquals(0, cache.getFlights().getInFlight());
+    }
+
+    private static Object load(AtomicInteger loads) throws InterruptedException {
+        loads.incrementAndGet();
+        Thread.sleep(LOAD_MILLIS);
+        return "tom";
+    }
+
+    /**
+     * 所有线程就绪后同时开始读取，返回全部读完的耗时
+     */
+    private long stampede(Callable<Object> reader) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(READERS);
+        CountDownLatch ready = new CountDownLatch(READERS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Object>> results = new ArrayList<>(READERS);
+        for (int i = 0; i < READERS; i++) {
+            results.add(executor.submit(() -> {
+                ready.countDown();
+                start.await();
+                return reader.call();
+            }));
+        }
+        ready.await();
+        long begin = System.nanoTime();
+        start.countDown();
+        for (Future<Object> result : results) {
+            Assert.assertEquals("tom", result.get(10, TimeUnit.SECONDS));
+        }
+        long nanos = System.nanoTime() - begin;
+        executor.shutdown();
+        return nanos;
+    }
+}
@@ -0,0 +1,289 @@
+package com.hyman.springbootwar.cache;
+
+import com.hyman.springbootwar.entity.User;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * HashedKeyGenerator：key 稳定、参数不同 key 不同、实体按 id、不依赖 toString、Set 与 Map 不看顺序，KeyHasher 池化复用且不被
+ * 工作线程留住，并与原来拼接 toString 的方式对比 key 长度和耗时
+ */
+@Slf4j
+public class HashedKeyGeneratorTests {
+
+    private final HashedKeyGenerator generator = new HashedKeyGenerator();
+    private final UserService target = new UserService();
+
+    @Test
+    public void murmur3MatchesReferenceVector() {
+        byte[] data = "The quick brown fox jumps over the lazy dog".getBytes(StandardCharsets.UTF_8);
+        byte[] digest = new byte[16];
+        Murmur3.hash128(data, data.length, 0, digest);
+        StringBuilder hex = new StringBuilder();
+        for (byte b : digest) {
+            hex.append(String.format("%02x", b));
+        }
+        Assert.assertEquals("6c1b07bc7bbc4be347939ac4a93c437a", hex.toString());
+    }
+
+    @Test
+    public void murmur3WithOffsetHashesOnlyTheRange() {
+        byte[] data = "xxThe quick brown fox jumps over the lazy dogyy".getBytes(StandardCharsets.UTF_8);
+        byte[] expected = new byte[16];
+        byte[] actual = new byte[16];
+        byte[] range = Arrays.copyOfRange(data, 2, data.length - 2);
+        Murmur3.hash128(range, range.length, 0, expected);
+        Murmur3.hash128(data, 2, range.length, 0, actual);
+        Assert.assertArrayEquals(expected, actual);
+    }
+
+    @Test
+    public void sameArgumentsSameKey() throws Exception {
+        Method find = UserService.class.getMethod("find", String.class, Integer.class);
+        Object key = generator.generate(target, find, "hyman", 28);
+        Assert.assertEquals(key, generator.generate(new UserService(), find, "hyman", 28));
+        Assert.assertTrue(key.toString().startsWith("UserService.find:"));
+        Assert.assertEquals("UserService.find:".length() + 22, key.toString().length());
+    }
+
+    @Test
+    public void differentArgumentsDifferentKey() throws Exception {
+        Method find = UserService.class.getMethod("find", String.class, Integer.class);
+        Method findLong = UserService.class.getMethod("find", String.class, Long.class);
+        Assert.assertNotEquals(generator.generate(target, find, "hyman", 28), generator.generate(target, find, "hyman", 29));
+        Assert.assertNotEquals(generator.generate(target, find, "ab", null), generator.generate(target, find, "a", null));
+        // 重载方法的前缀相同，签名参与哈希
+        Assert.assertNotEquals(generator.generate(target, find, "hyman", 28), generator.generate(target, findLong, "hyman", 28L));
+    }
+
+    @Test
+    public void entitiesAreKeyedById() throws Exception {
+        Method save = UserService.class.getMethod("byUser", User.class);
+        Object key = generator.generate(target, save, new User(1, "hyman", 28));
+        Assert.assertEquals(key, generator.generate(target, save, new User(1, "renamed", 30)));
+        Assert.assertNotEquals(key, generator.generate(target, save, new User(2, "hyman", 28)));
+        // 没有 id 的实体按字段
+        Assert.assertEquals(generator.generate(target, save, new User("a", 1)), generator.generate(target, save, new User("a", 1)));
+        Assert.assertNotEquals(generator.generate(target, save, new User("a", 1)), generator.generate(target, save, new User("b", 1)));
+    }
+
+    @Test
+    public void plainObjectsDoNotDependOnToString() throws Exception {
+        Method query = UserService.class.getMethod("query", Query.class);
+        Assert.assertEquals(generator.generate(target, query, new Query("a", Arrays.asList(1, 2))),
+                generator.generate(target, query, new Query("a", Arrays.asList(1, 2))));
+        Assert.assertNotEquals(generator.generate(target, query, new Query("a", Arrays.asList(1, 2))),
+                generator.generate(target, query, new Query("a", Collections.singletonList(1))));
+    }
+
+    @Test
+    public void javaTypesWithoutToStringAreNotKeyedByIdentity() throws Exception {
+        Method any = UserService.class.getMethod("any", Object.class);
+        Assert.assertEquals(generator.generate(target, any, new Object()), generator.generate(target, any, new Object()));
+        // 覆盖了 toString 的 java.* 类型仍按 toString
+        Assert.assertNotEquals(generator.generate(target, any, new StringBuilder("a")),
+                generator.generate(target, any, new StringBuilder("b")));
+    }
+
+    @Test
+    public void setsIgnoreIterationOrder() throws Exception {
+        Method any = UserService.class.getMethod("any", Object.class);
+        Set<String> hashed = new HashSet<>(Arrays.asList("tom", "jerry", "spike"));
+        Set<String> sorted = new TreeSet<>(Comparator.reverseOrder());
+        sorted.addAll(hashed);
+        Set<String> inserted = new LinkedHashSet<>(Arrays.asList("spike", "tom", "jerry"));
+        Object key = generator.generate(target, any, hashed);
+        Assert.assertEquals(key, generator.generate(target, any, sorted));
+        Assert.assertEquals(key, generator.generate(target, any, inserted));
+
+        Assert.assertNotEquals(key, generator.generate(target, any, new HashSet<>(Arrays.asList("tom", "jerry"))));
+        // 元素相同的 List 仍按顺序，与 Set 不同
+        Assert.assertNotEquals(key, generator.generate(target, any, new ArrayList<>(sorted)));
+    }
+
+    @Test
+    public void mapsIgnoreIterationOrder() throws Exception {
+        Method any = UserService.class.getMethod("any", Object.class);
+        Map<String, Object> first = new LinkedHashMap<>();
+        first.put("name", "tom");
+        first.put("tags", new HashSet<>(Arrays.asList(1, 2)));
+        Map<String, Object> second = new LinkedHashMap<>();
+        second.put("tags", new TreeSet<>(Arrays.asList(2, 1)));
+        second.put("name", "tom");
+        Assert.assertEquals(generator.generate(target, any, first), generator.generate(target, any, second));
+
+        // key 与 value 作为一个整体，交换不同条目的 value 生成不同的 key
+        Map<String, String> swapped = new HashMap<>();
+        swapped.put("a", "1");
+        swapped.put("b", "2");
+        Map<String, String> original = new HashMap<>();
+        original.put("a", "2");
+        original.put("b", "1");
+        Assert.assertNotEquals(generator.generate(target, any, swapped), generator.generate(target, any, original));
+    }
+
+    @Test
+    public void registeredExtractorWins() throws Exception {
+        generator.register(new CacheKeyExtractor<Query>() {
+            @Override
+            public Class<Query> getType() {
+                return Query.class;
+            }
+
+            @Override
+            public void extract(Query value, KeyHasher hasher) {
+                hasher.putString(value.name);
+            }
+        });
+        Method query = UserService.class.getMethod("query", Query.class);
+        Assert.assertEquals(generator.generate(target, query, new Query("a", Arrays.asList(1, 2))),
+                generator.generate(target, query, new Query("a", Collections.emptyList())));
+    }
+
+    @Test
+    public void concurrentCallsShareThePool() throws Exception {
+        Method find = UserService.class.getMethod("find", String.class, Integer.class);
+        Object expected = generator.generate(target, find, "hyman", 28);
+        Assert.assertEquals(1, generator.idleCount());
+
+        ExecutorService executor = Executors.newFixedThreadPool(16);
+        try {
+            List<Future<Boolean>> results = new ArrayList<>();
+            for (int i = 0; i < 64; i++) {
+                results.add(executor.submit(() -> {
+                    for (int round = 0; round < 1_000; round++) {
+                        if (!expected.equals(generator.generate(target, find, "hyman", 28))) {
+                            return false;
+                        }
+                    }
+                    return true;
+                }));
+            }
+            for (Future<Boolean> result : results) {
+                Assert.assertTrue(result.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+        Assert.assertTrue(generator.idleCount() >= 1);
+        Assert.assertTrue(generator.idleCount() <= 16);
+    }
+
+    @Test
+    public void workerThreadDoesNotRetainGenerator() throws Exception {
+        Method find = UserService.class.getMethod("find", String.class, Integer.class);
+        // 容器的工作线程在应用重新部署后还活着
+        ExecutorService worker = Executors.newSingleThreadExecutor();
+        try {
+            HashedKeyGenerator[] used = {new HashedKeyGenerator()};
+            worker.submit(() -> used[0].generate(target, find, "hyman", 28)).get();
+            WeakReference<HashedKeyGenerator> ref = new WeakReference<>(used[0]);
+            used[0] = null;
+
+            long deadline = System.currentTimeMillis() + 5000;
+            while (ref.get() != null && System.currentTimeMillis() < deadline) {
+                System.gc();
+                Thread.sleep(10);
+            }
+            Assert.assertNull(ref.get());
+        } finally {
+            worker.shutdown();
+        }
+    }
+
+    @Test
+    public void compareWithToStringKeys() throws Exception {
+        Method find = UserService.class.getMethod("find", String.class, Integer.class);
+        int rounds = 1_000_000;
+        for (int i = 0; i < rounds; i++) {
+            concatKey(target, find, "hyman", i);
+            generator.generate(target, find, "hyman", i);
+        }
+        long begin = System.nanoTime();
+        int concatLength = 0;
+        for (int i = 0; i < rounds; i++) {
+            concatLength = concatKey(target, find, "hyman", i).length();
+        }
+        long concatNanos = System.nanoTime() - begin;
+        begin = System.nanoTime();
+        int hashedLength = 0;
+        for (int i = 0; i < rounds; i++) {
+            hashedLength = generator.generate(target, find, "hyman", i).toString().length();
+        }
+        long hashedNanos = System.nanoTime() - begin;
+        log.info("toString concat: {} chars, {} ms; hashed: {} chars, {} ms ({} calls)", concatLength,
+                TimeUnit.NANOSECONDS.toMillis(concatNanos), hashedLength, TimeUnit.NANOSECONDS.toMillis(hashedNanos), rounds);
+        Assert.assertTrue(hashedLength < concatLength);
+    }
+
+    /**
+     * 原来 CacheConfig.keyGenerator 的做法
+     */
+    private static String concatKey(Object target, Method method, Object... params) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(target.getClass().getName());
+        sb.append(method.getName());
+        for (Object obj : params) {
+            sb.append(obj.toString());
+        }
+        return sb.toString();
+    }
+
+    public static class UserService {
+
+        public User find(String name, Integer age) {
+            return null;
+        }
+
+        public User find(String name, Long age) {
+            return null;
+        }
+
+        public User byUser(User user) {
+            return user;
+        }
+
+        public User query(Query query) {
+            return null;
+        }
+
+        public User any(Object value) {
+            return null;
+        }
+    }
+
+    /**
+     * 没有覆盖 toString
+     */
+    public static class Query {
+
+        private final String name;
+        private final List<Integer> ids;
+
+        Query(String name, List<Integer> ids) {
+            this.name = name;
+            this.ids = ids;
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.hyman.springbootwar.cache;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.cache.concurrent.ConcurrentMapCache;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 用 ConcurrentMapCache 充当 redis，检查没有本地缓存时 get(key, valueLoader) 仍然按 key 合并加载
+ */
+public class SingleFlightCacheTests {
+
+    private static final int READERS = 16;
+
+    @Test
+    public void concurrentMissesLoadOnce() throws Exception {
+        SingleFlightCache cache = new SingleFlightCache(new ConcurrentMapCache("users"));
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(READERS);
+        try {
+            List<Future<String>> results = new ArrayList<>(READERS);
+            for (int i = 0; i < READERS; i++) {
+                results.add(executor.submit(() -> cache.get("1", () -> {
+                    loads.incrementAndGet();
+                    loading.countDown();
+                    release.await();
+                    return "tom";
+                })));
+            }
+            Assert.assertTrue(loading.await(5, TimeUnit.SECONDS));
+            // 等其他线程都进入等待
+            long deadline = System.currentTimeMillis() + 5000;
+            while (cache.getFlights().getCoalescedCount() + 1 < READERS && System.currentTimeMillis() < deadline) {
+                Thread.sleep(1);
+            }
+            release.countDown();
+            for (Future<String> result : results) {
+                Assert.assertEquals("tom", result.get(5, TimeUnit.SECONDS));
+            }
+        } finally {
+            release.countDown();
+            executor.shutdownNow();
+        }
+        Assert.assertEquals(1, loads.get());
+        Assert.assertEquals(1L, cache.getFlights().getLoadCount());
+        Assert.assertEquals(0, cache.getFlights().getInFlight());
+        Assert.assertEquals("tom", cache.get("1", String.class));
+    }
+
+    @Test
+    public void otherKeysAreNotBlocked() throws Exception {
+        SingleFlightCache cache = new SingleFlightCache(new ConcurrentMapCache("users"));
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<String> slow = executor.submit(() -> cache.get("1", () -> {
+                loading.countDown();
+                release.await();
+                return "tom";
+            }));
+            Assert.assertTrue(loading.await(5, TimeUnit.SECONDS));
+            // RedisCache 自带的 get(key, valueLoader) 在这里会等待 key 1 的加载
+            Assert.assertEquals("jerry", cache.get("2", () -> "jerry"));
+            release.countDown();
+            Assert.assertEquals("tom", slow.get(5, TimeUnit.SECONDS));
+        } finally {
+            release.countDown();
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void oversizedValueIsReturnedWithoutCaching() {
+        ConcurrentMapCache redis = new ConcurrentMapCache("users") {
+
+            @Override
+            public void put(Object key, Object value) {
+                throw new ValueTooLargeException("users", 100, 10);
+            }
+        };
+        SingleFlightCache cache = new SingleFlightCache(redis);
+
+        Assert.assertEquals("tom", cache.get("1", () -> "tom"));
+        Assert.assertNull(cache.get("1"));
+    }
+}
@@ -0,0 +1,138 @@
+package com.hyman.springbootwar.cache;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.hyman.springbootwar.config.CacheConfig;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.cache.interceptor.CacheErrorHandler;
+import org.springframework.data.redis.cache.RedisCacheManager;
+import org.springframework.data.redis.cache.RedisCacheWriter;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 值大小上限：redis 拒绝写入的值本地也不保存，redis 中的旧值和各节点本地的旧值都被清掉，次数计入 oversizedSkipped。
+ *
+ * 用内存中的 RedisCacheWriter 代替 redis，前面是真实的 RedisCache（JDK 序列化），上限 256 字节。
+ */
+public class SizeLimitedCacheWriterTests {
+
+    private static final String SMALL = "tom";
+    private static final String LARGE = new String(new char[1024]).replace('\0', 'x');
+
+    private final InMemoryWriter redis = new InMemoryWriter();
+    private final List<String> invalidations = new ArrayList<>();
+    private TwoLevelCache cache;
+
+    @Before
+    public void setUp() {
+        CacheProperties properties = new CacheProperties();
+        CacheProperties.Spec spec = new CacheProperties.Spec();
+        spec.setMaxValueBytes(256);
+        properties.getCaches().put("users", spec);
+        RedisCacheManager manager = RedisCacheManager.builder(new SizeLimitedCacheWriter(redis, properties))
+                .cacheDefaults(CacheSpecs.toConfiguration(properties.getDefaults()))
+                .build();
+        cache = new TwoLevelCache("users", manager.getCache("users"), Caffeine.newBuilder().maximumSize(100).build(),
+                invalidations::add);
+    }
+
+    @Test
+    public void oversizedPutReplacesNeitherLevel() {
+        cache.put("1", SMALL);
+        Assert.assertEquals(1, redis.size());
+        Assert.assertEquals(1L, cache.getLocalSize());
+
+        // 新值太大：redis 删掉旧值，本地也清掉，不能继续读到旧值或者只在本节点读到新值
+        cache.put("1", LARGE);
+        Assert.assertEquals(0, redis.size());
+        Assert.assertNull(cache.get("1"));
+        Assert.assertEquals(1L, cache.getOversizedCount());
+        // 其他节点本地的旧值同样要清掉
+        Assert.assertEquals(2, invalidations.size());
+    }
+
+    @Test
+    public void oversizedLoadIsReturnedButNotCached() {
+        AtomicInteger loads = new AtomicInteger();
+        Assert.assertEquals(LARGE, cache.get("1", () -> {
+            loads.incrementAndGet();
+            return LARGE;
+        }));
+        Assert.assertEquals(LARGE, cache.get("1", () -> {
+            loads.incrementAndGet();
+            return LARGE;
+        }));
+        Assert.assertEquals(2, loads.get());
+        Assert.assertEquals(0L, cache.getLocalSize());
+        Assert.assertEquals(2L, cache.getOversizedCount());
+    }
+
+    @Test
+    public void oversizedPutIfAbsentIsNotCached() {
+        Assert.assertNull(cache.putIfAbsent("1", LARGE));
+        Assert.assertNull(cache.get("1"));
+        Assert.assertEquals(1L, cache.getOversizedCount());
+
+        // 已有值时照常返回已有值
+        cache.put("2", SMALL);
+        Assert.assertEquals(SMALL, cache.putIfAbsent("2", LARGE).get());
+        Assert.assertEquals(1L, cache.getOversizedCount());
+    }
+
+    @Test
+    public void errorHandlerIgnoresOnlyOversizedPut() {
+        CacheErrorHandler handler = new CacheConfig().errorHandler();
+        handler.handleCachePutError(new ValueTooLargeException("users", 1024, 256), cache, "1", LARGE);
+        try {
+            handler.handleCachePutError(new IllegalStateException("redis down"), cache, "1", SMALL);
+            Assert.fail();
+        } catch (IllegalStateException expected) {
+        }
+    }
+
+    private static class InMemoryWriter implements RedisCacheWriter {
+
+        private final Map<String, byte[]> values = new ConcurrentHashMap<>();
+
+        @Override
+        public void put(String name, byte[] key, byte[] value, Duration ttl) {
+            values.put(key(name, key), value);
+        }
+
+        @Override
+        public byte[] get(String name, byte[] key) {
+            return values.get(key(name, key));
+        }
+
+        @Override
+        public byte[] putIfAbsent(String name, byte[] key, byte[] value, Duration ttl) {
+            return values.putIfAbsent(key(name, key), value);
+        }
+
+        @Override
+        public void remove(String name, byte[] key) {
+            values.remove(key(name, key));
+        }
+
+        @Override
+        public void clean(String name, byte[] pattern) {
+            values.clear();
+        }
+
+        int size() {
+            return values.size();
+        }
+
+        private static String key(String name, byte[] key) {
+            return name + ":" + new String(key, StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.hyman.springbootwar.cache;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+/**
+ * 失效通知的处理，通知内容直接交给 onInvalidation，不经过 redis。redis 缓存用 ConcurrentMapCacheManager 代替，没有连接工厂，
+ * 本节点发出的通知只会记一条发送失败的日志。
+ */
+public class TwoLevelCacheManagerTests {
+
+    private ConcurrentMapCacheManager redis;
+    private CacheProperties properties;
+    private TwoLevelCacheManager manager;
+
+    @Before
+    public void setUp() {
+        redis = new ConcurrentMapCacheManager();
+        properties = new CacheProperties();
+        properties.getInvalidation().setNodeId("A");
+        manager = new TwoLevelCacheManager(redis, properties, null, new RedisMessageListenerContainer());
+    }
+
+    @Test
+    public void keyInvalidationEvictsOnlyThatKey() {
+        TwoLevelCache users = cached("users", "1", "2");
+
+        manager.onInvalidation("B|users|1");
+
+        Assert.assertEquals(1L, users.getLocalSize());
+        users.get("2");
+        Assert.assertEquals(1L, users.getMetrics().getLocal().snapshot().get("hits"));
+    }
+
+    @Test
+    public void keyMayContainSeparator() {
+        TwoLevelCache users = cached("users", "user|1");
+
+        manager.onInvalidation("B|users|user|1");
+
+        Assert.assertEquals(0L, users.getLocalSize());
+    }
+
+    @Test
+    public void missingKeyClearsTheCache() {
+        TwoLevelCache users = cached("users", "1", "2");
+        TwoLevelCache orders = cached("orders", "1");
+
+        manager.onInvalidation("B|users");
+
+        Assert.assertEquals(0L, users.getLocalSize());
+        Assert.assertEquals(1L, orders.getLocalSize());
+    }
+
+    @Test
+    public void ownMessagesAreIgnored() {
+        TwoLevelCache users = cached("users", "1");
+
+        manager.onInvalidation("A|users|1");
+        manager.onInvalidation("A|users");
+
+        Assert.assertEquals(1L, users.getLocalSize());
+    }
+
+    @Test
+    public void malformedAndUnknownMessagesAreIgnored() {
+        TwoLevelCache users = cached("users", "1");
+
+        manager.onInvalidation("B");
+        manager.onInvalidation("");
+        manager.onInvalidation("B|orders|1");
+
+        Assert.assertEquals(1L, users.getLocalSize());
+    }
+
+    @Test
+    public void localTtlIsClampedToRedisTtl() throws InterruptedException {
+        properties.getLocal().setTtlMillis(60_000);
+        CacheProperties.Spec spec = new CacheProperties.Spec();
+        spec.setTtlMillis(50L);
+        properties.getCaches().put("users", spec);
+        TwoLevelCache users = cached("users", "1");
+
+        Thread.sleep(200);
+        users.get("1");
+
+        // 本地已经按 redis 的 50ms 过期，第二次读取又去了 redis
+        Assert.assertEquals(0L, users.getMetrics().getLocal().snapshot().get("hits"));
+        Assert.assertEquals(2L, users.getMetrics().getRemote().snapshot().get("hits"));
+    }
+
+    @Test
+    public void localTtlIsKeptWhenRedisNeverExpires() throws InterruptedException {
+        properties.getLocal().setTtlMillis(60_000);
+        TwoLevelCache users = cached("users", "1");
+
+        Thread.sleep(200);
+        users.get("1");
+
+        Assert.assertEquals(1L, users.getMetrics().getLocal().snapshot().get("hits"));
+    }
+
+    /**
+     * 在 redis 中放好这些 key 并各读一次，让它们进入本地缓存
+     */
+    private TwoLevelCache cached(String name, String... keys) {
+        TwoLevelCache cache = (TwoLevelCache) manager.getCache(name);
+        for (String key : keys) {
+            redis.getCache(name).put(key, "v" + key);
+            cache.get(key);
+        }
+        Assert.assertEquals(keys.length, cache.getLocalSize());
+        return cache;
+    }
+}
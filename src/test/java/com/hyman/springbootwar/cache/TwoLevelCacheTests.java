@@ -0,0 +1,87 @@
+package com.hyman.springbootwar.cache;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.cache.concurrent.ConcurrentMapCache;
+
+/**
+ * 用一个 ConcurrentMapCache 充当共享的 redis，两个 TwoLevelCache 模拟两个节点，失效通知直接调用对方的 evictLocal。
+ */
+public class TwoLevelCacheTests {
+
+    private ConcurrentMapCache redis;
+    private TwoLevelCache nodeA;
+    private TwoLevelCache nodeB;
+
+    @Before
+    public void setUp() {
+        redis = new ConcurrentMapCache("users");
+        nodeA = new TwoLevelCache("users", redis, Caffeine.newBuilder().maximumSize(100).build(), key -> nodeB.evictLocal(key));
+        nodeB = new TwoLevelCache("users", redis, Caffeine.newBuilder().maximumSize(100).build(), key -> nodeA.evictLocal(key));
+    }
+
+    @Test
+    public void secondReadIsServedLocally() {
+        redis.put("1", "tom");
+
+        Assert.assertEquals("tom", nodeA.get("1", String.class));
+        Assert.assertEquals("tom", nodeA.get("1", String.class));
+
+        Assert.assertEquals(1L, nodeA.getMetrics().getRemote().snapshot().get("hits"));
+        Assert.assertEquals(1L, nodeA.getMetrics().getLocal().snapshot().get("hits"));
+        Assert.assertEquals(1L, nodeA.getLocalSize());
+    }
+
+    @Test
+    public void writeOnOneNodeInvalidatesTheOther() {
+        nodeA.put("1", "tom");
+        Assert.assertEquals("tom", nodeB.get("1", String.class));
+
+        nodeA.put("1", "jerry");
+        Assert.assertEquals("jerry", nodeB.get("1", String.class));
+
+        nodeB.evict("1");
+        Assert.assertNull(nodeA.get("1"));
+    }
+
+    @Test
+    public void nullValuesAreCachedLocally() {
+        Assert.assertNull(nodeA.get("2", () -> null));
+        Assert.assertNotNull(nodeA.get("2"));
+        Assert.assertNull(nodeA.get("2").get());
+    }
+
+    @Test
+    public void clearEmptiesBothNodes() {
+        nodeA.put("1", "tom");
+        nodeB.get("1");
+        nodeB.clear();
+
+        Assert.assertEquals(0L, nodeA.getLocalSize());
+        Assert.assertNull(nodeA.get("1"));
+    }
+
+    @Test
+    public void invalidationDuringRemoteReadIsNotOverwritten() {
+        redis.put("1", "tom");
+        TwoLevelCache[] node = new TwoLevelCache[1];
+        ConcurrentMapCache remote = new ConcurrentMapCache("users") {
+
+            @Override
+            public ValueWrapper get(Object key) {
+                ValueWrapper value = redis.get(key);
+                // 读到旧值之后、放入本地之前，其他节点改了这个 key
+                redis.put(key, "jerry");
+                node[0].evictLocal(String.valueOf(key));
+                return value;
+            }
+        };
+        node[0] = new TwoLevelCache("users", remote, Caffeine.newBuilder().maximumSize(100).build(), key -> {
+        });
+
+        Assert.assertEquals("tom", node[0].get("1", String.class));
+        Assert.assertEquals(0L, node[0].getLocalSize());
+    }
+}
@@ -0,0 +1,190 @@
+package com.hyman.springbootwar.util;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * CacheProvider 的批量操作：用内存里的假连接记录发出的命令，检查 100 个 key 只发一个 MGET / DEL、SETEX 都在一个管道里
+ */
+public class CacheProviderTests {
+
+    private final Map<String, byte[]> store = new HashMap<>();
+    // 发出的命令，管道中的命令前面带 "pipelined:"
+    private final List<String> commands = new CopyOnWriteArrayList<>();
+    private boolean pipelined;
+
+    @Before
+    public void setUp() {
+        RedisConnection connection = (RedisConnection) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{RedisConnection.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "equals":
+                            return proxy == args[0];
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        case "toString":
+                            return "stub connection";
+                        case "openPipeline":
+                            pipelined = true;
+                            return null;
+                        case "isPipelined":
+                            return pipelined;
+                        case "closePipeline":
+                            List<Object> results = new ArrayList<>();
+                            for (String command : commands) {
+                                if (command.startsWith("pipelined:")) {
+                                    results.add(Boolean.TRUE);
+                                }
+                            }
+                            pipelined = false;
+                            return results;
+                        case "mGet":
+                            commands.add("mGet");
+                            List<byte[]> values = new ArrayList<>();
+                            for (Object key : (Object[]) args[0]) {
+                                values.add(store.get(new String((byte[]) key, StandardCharsets.UTF_8)));
+                            }
+                            return values;
+                        case "mSet":
+                            commands.add("mSet");
+                            for (Map.Entry<?, ?> entry : ((Map<?, ?>) args[0]).entrySet()) {
+                                store.put(new String((byte[]) entry.getKey(), StandardCharsets.UTF_8), (byte[]) entry.getValue());
+                            }
+                            return true;
+                        case "setEx":
+                            commands.add((pipelined ? "pipelined:" : "") + "setEx");
+                            store.put(new String((byte[]) args[0], StandardCharsets.UTF_8), (byte[]) args[2]);
+                            return pipelined ? null : true;
+                        case "del":
+                            commands.add("del");
+                            long deleted = 0;
+                            for (Object key : (Object[]) args[0]) {
+                                if (store.remove(new String((byte[]) key, StandardCharsets.UTF_8)) != null) {
+                                    deleted++;
+                                }
+                            }
+                            return deleted;
+                        default:
+                            if (method.getReturnType() == boolean.class) {
+                                return false;
+                            }
+                            if ("get".equals(method.getName()) || "set".equals(method.getName())) {
+                                // 单 key 命令也记录，批量操作不应该出现
+                                commands.add(method.getName());
+                            }
+                            return null;
+                    }
+                });
+        RedisConnectionFactory factory = (RedisConnectionFactory) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{RedisConnectionFactory.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getConnection":
+                            return connection;
+                        case "equals":
+                            return proxy == args[0];
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        default:
+                            return method.getReturnType() == boolean.class ? false : null;
+                    }
+                });
+        new CacheProvider().setRedisTemplate(new StringRedisTemplate(factory));
+    }
+
+    @Test
+    public void setAllWithTtlUsesOnePipeline() {
+        Map<String, String> values = new LinkedHashMap<>();
+        for (int i = 0; i < 100; i++) {
+            values.put("k" + i, "v" + i);
+        }
+        Assert.assertTrue(CacheProvider.setAll(values, 60));
+        Assert.assertEquals(100, commands.size());
+        for (String command : commands) {
+            Assert.assertEquals("pipelined:setEx", command);
+        }
+        Assert.assertFalse(pipelined);
+    }
+
+    @Test
+    public void setAllWithoutTtlIsOneMset() {
+        Map<String, String> values = new LinkedHashMap<>();
+        values.put("a", "1");
+        values.put("b", "2");
+        Assert.assertTrue(CacheProvider.setAll(values, 0));
+        Assert.assertEquals(Arrays.asList("mSet"), commands);
+    }
+
+    @Test
+    public void getAllIsOneMget() {
+        List<String> keys = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            keys.add("k" + i);
+            if (i % 2 == 0) {
+                store.put("k" + i, ("v" + i).getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        List<String> values = CacheProvider.getAll(keys);
+        Assert.assertEquals(Arrays.asList("mGet"), commands);
+        Assert.assertEquals(100, values.size());
+        Assert.assertEquals("v0", values.get(0));
+        Assert.assertNull(values.get(1));
+        Assert.assertEquals("v98", values.get(98));
+    }
+
+    @Test
+    public void typedBulkRoundTrip() {
+        Map<String, Item> items = new LinkedHashMap<>();
+        items.put("item:1", new Item(1, "a"));
+        items.put("item:2", new Item(2, "b"));
+        CacheProvider.setAllAsJson(items, 60);
+
+        Map<String, Item> loaded = CacheProvider.getAllAsMap(Arrays.asList("item:1", "item:3", "item:2"), Item.class);
+        Assert.assertEquals(Arrays.asList("item:1", "item:2"), new ArrayList<>(loaded.keySet()));
+        Assert.assertEquals("b", loaded.get("item:2").name);
+
+        List<Item> list = CacheProvider.getAll(Arrays.asList("item:3", "item:1"), Item.class);
+        Assert.assertNull(list.get(0));
+        Assert.assertEquals(1, list.get(1).id);
+    }
+
+    @Test
+    public void deleteAllIsOneDel() {
+        store.put("a", new byte[]{1});
+        store.put("b", new byte[]{1});
+        Assert.assertEquals(2, CacheProvider.deleteAll(Arrays.asList("a", "b", "c")));
+        Assert.assertEquals(Arrays.asList("del"), commands);
+    }
+
+    @Test
+    public void emptyInputSkipsRedis() {
+        Assert.assertTrue(CacheProvider.getAll(new ArrayList<>()).isEmpty());
+        Assert.assertTrue(CacheProvider.setAll(new HashMap<>(), 60));
+        Assert.assertEquals(0, CacheProvider.deleteAll(new ArrayList<>()));
+        Assert.assertTrue(commands.isEmpty());
+    }
+
+    static class Item {
+
+        int id;
+        String name;
+
+        Item(int id, String name) {
+            this.id = id;
+            this.name = name;
+        }
+    }
+}
@@ -0,0 +1,219 @@
+package com.hyman.springbootwar.websocket;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.websocket.CloseReason;
+import javax.websocket.RemoteEndpoint;
+import javax.websocket.SendHandler;
+import javax.websocket.SendResult;
+import javax.websocket.Session;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 异步发送器的状态切换：发送中再 send 只入队，完成回调接着发下一条，容器在 sendText 内部直接回调时不递归，
+ * 关闭时丢弃队列中的消息，以及队列满时断开。
+ *
+ * 用动态代理替代容器的 Session 和 RemoteEndpoint.Async，由测试决定每一条什么时候完成。
+ */
+public class AsyncEndpointSenderTests {
+
+    @Test
+    public void sendWhileInFlightOnlyQueues() {
+        FakeEndpoint endpoint = new FakeEndpoint();
+        AsyncEndpointSender sender = new AsyncEndpointSender(endpoint.session, config(16, OverflowPolicy.DROP_NEWEST));
+
+        sender.send("a");
+        sender.send("b");
+        sender.send("c");
+        // 同一时刻只有一条交给容器
+        Assert.assertEquals(Arrays.asList("a"), endpoint.sent);
+        Assert.assertEquals(2, sender.getPending());
+
+        endpoint.complete();
+        Assert.assertEquals(Arrays.asList("a", "b"), endpoint.sent);
+        Assert.assertEquals(1, sender.getPending());
+        endpoint.complete();
+        endpoint.complete();
+        Assert.assertEquals(Arrays.asList("a", "b", "c"), endpoint.sent);
+        Assert.assertEquals(0, sender.getPending());
+        Assert.assertNull(endpoint.handler);
+
+        // 空闲之后再 send 直接发出
+        sender.send("d");
+        Assert.assertEquals(Arrays.asList("a", "b", "c", "d"), endpoint.sent);
+    }
+
+    @Test
+    public void inlineCompletionDoesNotRecurse() {
+        FakeEndpoint endpoint = new FakeEndpoint();
+        AsyncEndpointSender sender = new AsyncEndpointSender(endpoint.session, config(10_000, OverflowPolicy.DROP_NEWEST));
+        sender.send("m0");
+        for (int i = 1; i <= 5_000; i++) {
+            sender.send("m" + i);
+        }
+
+        // 之后的每一条都在 sendText 内部完成，积压在外层循环里发完，不会一层层递归
+        endpoint.inline = true;
+        endpoint.complete();
+        Assert.assertEquals(5_001, endpoint.sent.size());
+        Assert.assertEquals("m5000", endpoint.sent.get(5_000));
+        Assert.assertEquals(1, endpoint.maxDepth);
+        Assert.assertEquals(0, sender.getPending());
+
+        endpoint.inline = false;
+        sender.send("next");
+        Assert.assertEquals("next", endpoint.sent.get(5_001));
+    }
+
+    @Test
+    public void sendTextFailureMovesOn() {
+        FakeEndpoint endpoint = new FakeEndpoint();
+        AsyncEndpointSender sender = new AsyncEndpointSender(endpoint.session, config(16, OverflowPolicy.DROP_NEWEST));
+        sender.send("a");
+        sender.send("b");
+        endpoint.failNext = true;
+        endpoint.complete();
+        // b 发送时抛异常，不占住 inFlight
+        Assert.assertEquals(Arrays.asList("a", "b"), endpoint.sent);
+        Assert.assertNull(endpoint.handler);
+        sender.send("c");
+        Assert.assertEquals(Arrays.asList("a", "b", "c"), endpoint.sent);
+    }
+
+    @Test
+    public void discardDropsQueuedFrames() {
+        FakeEndpoint endpoint = new FakeEndpoint();
+        AsyncEndpointSender sender = new AsyncEndpointSender(endpoint.session, config(16, OverflowPolicy.DROP_NEWEST));
+        sender.send("a");
+        sender.send("b");
+        sender.send("c");
+
+        sender.discard();
+        Assert.assertEquals(0, sender.getPending());
+        // 发送中的那条完成后不再继续，关闭后的 send 直接忽略
+        endpoint.complete();
+        sender.send("d");
+        Assert.assertEquals(Arrays.asList("a"), endpoint.sent);
+        Assert.assertEquals(0, sender.getPending());
+    }
+
+    @Test
+    public void closedSessionDiscardsOnNextSend() {
+        FakeEndpoint endpoint = new FakeEndpoint();
+        AsyncEndpointSender sender = new AsyncEndpointSender(endpoint.session, config(16, OverflowPolicy.DROP_NEWEST));
+        sender.send("a");
+        sender.send("b");
+        endpoint.open = false;
+        endpoint.complete();
+        Assert.assertEquals(Arrays.asList("a"), endpoint.sent);
+        Assert.assertEquals(0, sender.getPending());
+    }
+
+    @Test
+    public void overflowPolicies() {
+        FakeEndpoint oldest = new FakeEndpoint();
+        AsyncEndpointSender dropOldest = new AsyncEndpointSender(oldest.session, config(2, OverflowPolicy.DROP_OLDEST));
+        for (String message : new String[]{"a", "b", "c", "d"}) {
+            dropOldest.send(message);
+        }
+        drain(oldest);
+        Assert.assertEquals(Arrays.asList("a", "c", "d"), oldest.sent);
+
+        FakeEndpoint newest = new FakeEndpoint();
+        AsyncEndpointSender dropNewest = new AsyncEndpointSender(newest.session, config(2, OverflowPolicy.DROP_NEWEST));
+        for (String message : new String[]{"a", "b", "c", "d"}) {
+            dropNewest.send(message);
+        }
+        drain(newest);
+        Assert.assertEquals(Arrays.asList("a", "b", "c"), newest.sent);
+
+        FakeEndpoint disconnect = new FakeEndpoint();
+        AsyncEndpointSender disconnecting = new AsyncEndpointSender(disconnect.session, config(2, OverflowPolicy.DISCONNECT));
+        for (String message : new String[]{"a", "b", "c", "d"}) {
+            disconnecting.send(message);
+        }
+        Assert.assertEquals(CloseReason.CloseCodes.TRY_AGAIN_LATER, disconnect.closeReason.getCloseCode());
+        disconnecting.send("e");
+        Assert.assertEquals(2, disconnecting.getPending());
+    }
+
+    private static void drain(FakeEndpoint endpoint) {
+        while (endpoint.handler != null) {
+            endpoint.complete();
+        }
+    }
+
+    private static WebSocketProperties.Endpoint config(int maxPending, OverflowPolicy policy) {
+        WebSocketProperties.Endpoint config = new WebSocketProperties.Endpoint();
+        config.setMaxPending(maxPending);
+        config.setOverflowPolicy(policy);
+        return config;
+    }
+
+    /**
+     * 记录交给容器的消息，inline 时在 sendText 内部直接回调
+     */
+    private static class FakeEndpoint {
+
+        final List<String> sent = new ArrayList<>();
+        SendHandler handler;
+        boolean inline;
+        boolean failNext;
+        boolean open = true;
+        int depth;
+        int maxDepth;
+        CloseReason closeReason;
+
+        final RemoteEndpoint.Async async = (RemoteEndpoint.Async) Proxy.newProxyInstance(
+                getClass().getClassLoader(), new Class<?>[]{RemoteEndpoint.Async.class}, (proxy, method, args) -> {
+                    if ("sendText".equals(method.getName())) {
+                        sendText((String) args[0], (SendHandler) args[1]);
+                    }
+                    return null;
+                });
+
+        final Session session = (Session) Proxy.newProxyInstance(
+                getClass().getClassLoader(), new Class<?>[]{Session.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getAsyncRemote":
+                            return async;
+                        case "isOpen":
+                            return open;
+                        case "getId":
+                            return "s1";
+                        case "close":
+                            closeReason = (CloseReason) args[0];
+                            open = false;
+                            return null;
+                        default:
+                            return null;
+                    }
+                });
+
+        private void sendText(String message, SendHandler handler) {
+            sent.add(message);
+            if (failNext) {
+                failNext = false;
+                throw new IllegalStateException("TEXT_PARTIAL_WRITING");
+            }
+            if (inline) {
+                depth++;
+                maxDepth = Math.max(maxDepth, depth);
+                handler.onResult(new SendResult());
+                depth--;
+            } else {
+                this.handler = handler;
+            }
+        }
+
+        void complete() {
+            SendHandler current = handler;
+            handler = null;
+            current.onResult(new SendResult());
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package com.hyman.springbootwar.websocket;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.TextMessage;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * 二进制协议：帧的编解码、字典压缩只在更短时使用、服务端不解压客户端的压缩帧，以及群发时所有二进制连接共用一份编码结果
+ */
+public class BinaryFrameCodecTests {
+
+    static final String[] CONTENTS = {
+            "1",
+            "主队进球 2:1",
+            "{\"home\":2,\"away\":1,\"minute\":67,\"event\":\"goal\",\"player\":\"No.9\"}",
+    };
+
+    @Test
+    public void roundTrip() {
+        byte[] first = BinaryFrameCodec.encode(BinaryFrameCodec.MESSAGE, "你好");
+        byte[] second = BinaryFrameCodec.encode(BinaryFrameCodec.PING, new byte[300]);
+        ByteBuffer buffer = ByteBuffer.allocate(first.length + second.length).put(first).put(second);
+        buffer.flip();
+
+        List<BinaryFrame> frames = BinaryFrameCodec.decode(buffer);
+        Assert.assertEquals(2, frames.size());
+        Assert.assertEquals("你好", frames.get(0).getText());
+        Assert.assertEquals(BinaryFrameCodec.PING, frames.get(1).getType());
+        Assert.assertEquals(300, frames.get(1).getPayload().length);
+        // 300 字节的负载只需要 2 字节的长度
+        Assert.assertEquals(1 + 2 + 300, second.length);
+    }
+
+    @Test
+    public void compactFramesAreSmallerThanText() {
+        for (String content : CONTENTS) {
+            int textBytes = content.getBytes(StandardCharsets.UTF_8).length;
+            byte[] frame = BinaryFrameCodec.encodeCompact(BinaryFrameCodec.MESSAGE, content);
+            List<BinaryFrame> frames = BinaryFrameCodec.decode(ByteBuffer.wrap(frame));
+            Assert.assertEquals(BinaryFrameCodec.MESSAGE, frames.get(0).getType());
+            Assert.assertEquals(content, frames.get(0).getText());
+            if (textBytes > 8) {
+                // 有实际内容的消息连同 2 字节帧头也比 UTF-8 文本短
+                Assert.assertTrue(content + "：" + frame.length + " >= " + textBytes, frame.length < textBytes);
+                Assert.assertEquals(BinaryFrameCodec.MESSAGE | BinaryFrameCodec.COMPRESSED, frame[0]);
+            }
+        }
+        // 压缩不会更短时原样放入，最多多出帧头
+        Assert.assertEquals(3, BinaryFrameCodec.encodeCompact(BinaryFrameCodec.MESSAGE, "1").length);
+        byte[] random = new byte[200];
+        new Random(1).nextBytes(random);
+        byte[] frame = BinaryFrameCodec.encodeCompact(BinaryFrameCodec.MESSAGE, random);
+        Assert.assertEquals(BinaryFrameCodec.MESSAGE, frame[0]);
+        Assert.assertEquals(random.length + 3, frame.length);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void serverRejectsCompressedFrames() {
+        byte[] frame = BinaryFrameCodec.encodeCompact(BinaryFrameCodec.MESSAGE, CONTENTS[2]);
+        BinaryFrameCodec.decode(ByteBuffer.wrap(frame), false);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void truncatedCompressedPayloadIsRejected() {
+        byte[] frame = BinaryFrameCodec.encodeCompact(BinaryFrameCodec.MESSAGE, CONTENTS[2]);
+        // 长度改小，负载截断
+        frame[1] = (byte) (frame[1] - 4);
+        BinaryFrameCodec.decode(ByteBuffer.wrap(frame, 0, frame.length - 4));
+    }
+
+    @Test
+    public void broadcastSharesOneEncodedFrame() throws Exception {
+        TalkRoom room = new TalkRoom();
+        StubWebSocketSession first = new StubWebSocketSession("b1");
+        StubWebSocketSession second = new StubWebSocketSession("b2");
+        StubWebSocketSession text = new StubWebSocketSession("t1");
+        room.add("b1", new BinaryFramingSession(first));
+        room.add("b2", new BinaryFramingSession(second));
+        room.add("t1", text);
+
+        room.broadcast(CONTENTS[2]);
+
+        ByteBuffer firstPayload = ((BinaryMessage) first.getLastMessage()).getPayload();
+        ByteBuffer secondPayload = ((BinaryMessage) second.getLastMessage()).getPayload();
+        // 同一份字节，各自独立的读取位置：第一个连接读完不影响第二个
+        Assert.assertSame(firstPayload.array(), secondPayload.array());
+        Assert.assertEquals(CONTENTS[2], BinaryFrameCodec.decode(firstPayload).get(0).getText());
+        Assert.assertEquals(CONTENTS[2], BinaryFrameCodec.decode(secondPayload).get(0).getText());
+        Assert.assertEquals(CONTENTS[2], ((TextMessage) text.getLastMessage()).getPayload());
+    }
+
+    @Test
+    public void systemNoticeUsesSystemFrame() throws Exception {
+        TalkRoom room = new TalkRoom();
+        StubWebSocketSession binary = new StubWebSocketSession("b1");
+        StubWebSocketSession text = new StubWebSocketSession("t1");
+        room.add("b1", new BinaryFramingSession(binary));
+        room.add("t1", text);
+
+        room.notice("live-1", "b1", "连接成功");
+        room.notice("live-1", "t1", "连接成功");
+
+        List<BinaryFrame> frames = BinaryFrameCodec.decode(((BinaryMessage) binary.getLastMessage()).getPayload());
+        Assert.assertEquals(BinaryFrameCodec.SYSTEM, frames.get(0).getType());
+        Assert.assertTrue(frames.get(0).getText().startsWith("server 发送给 live-1 消息 连接成功 "));
+        Assert.assertTrue(text.getLastMessage() instanceof TextMessage);
+        Assert.assertTrue(((TextMessage) text.getLastMessage()).getPayload().startsWith("server 发送给 live-1 消息 连接成功 "));
+
+        // 普通消息仍然是 MESSAGE 帧
+        room.broadcast("hello");
+        frames = BinaryFrameCodec.decode(((BinaryMessage) binary.getLastMessage()).getPayload());
+        Assert.assertEquals(BinaryFrameCodec.MESSAGE, frames.get(0).getType());
+        Assert.assertEquals("hello", frames.get(0).getText());
+    }
+}
@@ -0,0 +1,96 @@
+package com.hyman.springbootwar.websocket;
+
+import lombok.extern.slf4j.Slf4j;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.TextMessage;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.Deflater;
+
+/**
+ * 文本与二进制两种端点的对比：线上字节数（含 websocket 帧头，另外估算文本帧经 permessage-deflate 之后的大小）以及服务端编解码
+ * 耗时。
+ *
+ * 文本端点发出的房间消息就是原始字符串（TalkRoom.broadcast 直接编码 message，没有外层 JSON）；二进制端点按预置字典压缩负载，
+ * 每次群发只压缩一次。帧格式与大小的断言见 BinaryFrameCodecTests。
+ *
+ * 耗时与机器相关，默认跳过，加 -Dws.benchmark=true 运行：
+ * mvn test -Dtest=BinaryProtocolBenchmarkTests -Dws.benchmark=true
+ */
+@Slf4j
+public class BinaryProtocolBenchmarkTests {
+
+    private static final int ITERATIONS = 200_000;
+
+    @BeforeClass
+    public static void enabled() {
+        Assume.assumeTrue("加 -Dws.benchmark=true 运行", Boolean.getBoolean("ws.benchmark"));
+    }
+
+    @Test
+    public void bytesOnWireAndCpu() throws Exception {
+        for (String content : BinaryFrameCodecTests.CONTENTS) {
+            // 与房间群发时文本端点、二进制端点实际发出的负载相同
+            TextMessage text = TalkRoom.encode(content);
+            StubWebSocketSession binarySession = new StubWebSocketSession("b1");
+            new BinaryFramingSession(binarySession).sendMessage(text);
+            ByteBuffer binary = ((BinaryMessage) binarySession.getLastMessage()).getPayload();
+
+            int textBytes = text.getPayloadLength();
+            int binaryBytes = binary.remaining();
+            log.info("content={} text {} bytes (permessage-deflate {}), binary {} bytes", content,
+                    wire(textBytes), wire(deflated(content.getBytes(StandardCharsets.UTF_8))), wire(binaryBytes));
+            // 压缩后更短时，帧头加上压缩的负载也不比文本长
+            Assert.assertTrue(binaryBytes <= textBytes + 2);
+
+            long textNanos = time(() -> TalkRoom.encode(content).asBytes().length);
+            long binaryNanos = time(() -> BinaryFrameCodec.encodeCompact(BinaryFrameCodec.MESSAGE, content).length);
+            byte[] frame = BinaryFrameCodec.encodeCompact(BinaryFrameCodec.MESSAGE, content);
+            long decodeNanos = time(() -> BinaryFrameCodec.decode(ByteBuffer.wrap(frame)).size());
+            log.info("encode text {} ns/msg, encode binary {} ns/msg, decode binary {} ns/msg",
+                    textNanos / ITERATIONS, binaryNanos / ITERATIONS, decodeNanos / ITERATIONS);
+        }
+    }
+
+    /**
+     * 服务端发出的帧不加掩码，帧头 2 / 4 / 10 字节
+     */
+    private static int wire(int payload) {
+        return payload + (payload < 126 ? 2 : payload < 65536 ? 4 : 10);
+    }
+
+    /**
+     * 按 permessage-deflate（不保留上下文）估算压缩后的大小：raw deflate + sync flush，去掉末尾 4 字节
+     */
+    private static int deflated(byte[] payload) {
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        deflater.setInput(payload);
+        byte[] out = new byte[payload.length + 64];
+        int length = deflater.deflate(out, 0, out.length, Deflater.SYNC_FLUSH);
+        deflater.end();
+        return length - 4;
+    }
+
+    private static long time(Encoder encoder) {
+        long sink = 0;
+        for (int i = 0; i < ITERATIONS / 10; i++) {
+            sink += encoder.run();
+        }
+        long begin = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            sink += encoder.run();
+        }
+        long elapsed = System.nanoTime() - begin;
+        Assert.assertTrue(sink > 0);
+        return elapsed;
+    }
+
+    private interface Encoder {
+        int run();
+    }
+}
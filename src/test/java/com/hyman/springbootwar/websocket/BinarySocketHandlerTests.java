@@ -0,0 +1,72 @@
+package com.hyman.springbootwar.websocket;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.CloseStatus;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 二进制端点的限速：在解码之前按整个消息的原始字节数检查，一个消息里有多少帧都只算一条。
+ *
+ * 被拒绝的消息用解码会失败的内容，没有抛出异常说明根本没有解码。
+ */
+public class BinarySocketHandlerTests {
+
+    // 声明长度 127 的 MESSAGE 帧，实际没有负载
+    private static final byte[] TRUNCATED = {BinaryFrameCodec.MESSAGE, 0x7F};
+
+    private final BinarySocketHandler handler = new BinarySocketHandler();
+
+    @Test
+    public void oversizedMessageIsRejectedBeforeDecoding() throws Exception {
+        WebSocketProperties.RateLimit config = new WebSocketProperties.RateLimit();
+        config.setMaxMessageBytes(10);
+        StubWebSocketSession session = register("binary-1", config);
+        try {
+            handler.handleBinaryMessage(session, message(new byte[11]));
+            Assert.assertEquals(CloseStatus.TOO_BIG_TO_PROCESS, session.getCloseStatus());
+        } finally {
+            InboundRateLimiter.unregister(session);
+        }
+    }
+
+    @Test
+    public void framesInOneMessageCountAsOneMessage() throws Exception {
+        WebSocketProperties.RateLimit config = new WebSocketProperties.RateLimit();
+        config.setMessagesPerSecond(1);
+        config.setMessageBurst(1);
+        config.setBytesPerSecond(0);
+        config.setByteBurst(0);
+        config.setPolicy(RateLimitPolicy.DROP);
+        StubWebSocketSession session = register("binary-2", config);
+        try {
+            // 客户端发来的 SYSTEM 帧会被忽略，不需要房间
+            byte[] frame = BinaryFrameCodec.encode(BinaryFrameCodec.SYSTEM, "x");
+            ByteBuffer packed = ByteBuffer.allocate(frame.length * 3).put(frame).put(frame).put(frame);
+            handler.handleBinaryMessage(session, message(packed.array()));
+
+            // 令牌已经用完，连 PING 也不再处理，更不会解码
+            handler.handleBinaryMessage(session, message(TRUNCATED));
+            Assert.assertNull(session.getCloseStatus());
+        } finally {
+            InboundRateLimiter.unregister(session);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void admittedMessageIsDecoded() throws Exception {
+        handler.handleBinaryMessage(new StubWebSocketSession("binary-3"), message(TRUNCATED));
+    }
+
+    private static BinaryMessage message(byte[] bytes) {
+        return new BinaryMessage(bytes);
+    }
+
+    private static StubWebSocketSession register(String id, WebSocketProperties.RateLimit config) {
+        StubWebSocketSession session = new StubWebSocketSession(id);
+        InboundRateLimiter.register(session, config);
+        return session;
+    }
+}
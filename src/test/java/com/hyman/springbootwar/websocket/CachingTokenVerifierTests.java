@@ -0,0 +1,63 @@
+package com.hyman.springbootwar.websocket;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * CachingTokenVerifier：只缓存校验通过的 token，过期后回源，缓存满时只淘汰一部分
+ */
+public class CachingTokenVerifierTests {
+
+    private final Map<String, AtomicInteger> calls = new ConcurrentHashMap<>();
+
+    private final TokenVerifier backend = token -> {
+        calls.computeIfAbsent(token, key -> new AtomicInteger()).incrementAndGet();
+        return token.startsWith("ok");
+    };
+
+    @Test
+    public void cachesOnlyValidTokens() {
+        CachingTokenVerifier verifier = new CachingTokenVerifier(backend, 60_000, 100);
+        Assert.assertTrue(verifier.verify("ok-1"));
+        Assert.assertTrue(verifier.verify("ok-1"));
+        Assert.assertFalse(verifier.verify("bad-1"));
+        Assert.assertFalse(verifier.verify("bad-1"));
+
+        Assert.assertEquals(1, calls.get("ok-1").get());
+        Assert.assertEquals(2, calls.get("bad-1").get());
+        Assert.assertEquals(1, verifier.getHitCount());
+        Assert.assertEquals(3, verifier.getMissCount());
+        Assert.assertEquals(1, verifier.getSize());
+    }
+
+    @Test
+    public void expiredAndInvalidatedTokensAreVerifiedAgain() throws InterruptedException {
+        CachingTokenVerifier verifier = new CachingTokenVerifier(backend, 50, 100);
+        verifier.verify("ok-1");
+        verifier.verify("ok-2");
+        verifier.invalidate("ok-2");
+        verifier.verify("ok-2");
+        Assert.assertEquals(2, calls.get("ok-2").get());
+
+        Thread.sleep(120);
+        verifier.verify("ok-1");
+        Assert.assertEquals(2, calls.get("ok-1").get());
+    }
+
+    @Test
+    public void fullCacheKeepsMostEntries() {
+        int maxSize = 1_000;
+        CachingTokenVerifier verifier = new CachingTokenVerifier(backend, 60_000, maxSize);
+        for (int i = 0; i < maxSize * 2; i++) {
+            verifier.verify("ok-" + i);
+        }
+        long size = verifier.getSize();
+        Assert.assertTrue("size " + size, size <= maxSize);
+        // 之前满了就清空，这里只淘汰超出的部分
+        Assert.assertTrue("size " + size, size >= maxSize / 2);
+    }
+}
@@ -0,0 +1,99 @@
+package com.hyman.springbootwar.websocket;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * 用进程内的 pub/sub 替身模拟两个节点，验证房间消息只发布一次、只投递给有本地成员的节点。
+ */
+public class ClusterBroadcasterTests {
+
+    private InMemoryRoomBus redis;
+    private RecordingDelivery deliveryA;
+    private RecordingDelivery deliveryB;
+    private ClusterBroadcaster nodeA;
+    private ClusterBroadcaster nodeB;
+
+    @Before
+    public void setUp() {
+        redis = new InMemoryRoomBus();
+        deliveryA = new RecordingDelivery();
+        deliveryB = new RecordingDelivery();
+        nodeA = new ClusterBroadcaster(redis.connect(), "A", "ws:", deliveryA);
+        nodeB = new ClusterBroadcaster(redis.connect(), "B", "ws:", deliveryB);
+        nodeA.start();
+        nodeB.start();
+    }
+
+    @Test
+    public void roomMessageReachesOnlyNodesWithLocalMembers() {
+        nodeA.roomActivated("r1");
+        nodeB.roomActivated("r1");
+        nodeB.roomActivated("r2");
+
+        nodeA.publishToRoom("r2", "hello r2");
+
+        // A 本地先投递（r2 在 A 上没有成员，本地投递是空操作），B 通过频道收到
+        Assert.assertEquals(1, redis.getPublishedCount());
+        Assert.assertEquals(1, redis.subscriberCount("ws:room:r2"));
+        Assert.assertEquals("r2:hello r2", deliveryB.rooms.get(0));
+        Assert.assertEquals(1, deliveryA.rooms.size());
+
+        nodeB.publishToRoom("r1", "hello r1");
+        Assert.assertEquals("r1:hello r1", deliveryA.rooms.get(1));
+        // 发布者不会再收到自己发布的消息
+        Assert.assertEquals(2, deliveryB.rooms.size());
+    }
+
+    @Test
+    public void nodeUnsubscribesWhenRoomEmpties() {
+        nodeA.roomActivated("r1");
+        nodeB.roomActivated("r1");
+        Assert.assertEquals(2, redis.subscriberCount("ws:room:r1"));
+
+        nodeA.roomDeactivated("r1");
+        Assert.assertEquals(1, redis.subscriberCount("ws:room:r1"));
+
+        nodeB.publishToRoom("r1", "only B");
+        Assert.assertTrue(deliveryA.rooms.isEmpty());
+    }
+
+    @Test
+    public void globalAndSessionMessages() {
+        nodeB.roomActivated("r1");
+
+        nodeA.publishToAll("to everyone");
+        Assert.assertEquals("to everyone", deliveryA.all.get(0));
+        Assert.assertEquals("to everyone", deliveryB.all.get(0));
+
+        nodeA.publishToSession("r1", "s1", "live1", "just you");
+        Assert.assertEquals("r1:s1:live1:just you", deliveryB.sessions.get(0));
+        Assert.assertTrue(deliveryA.sessions.isEmpty());
+    }
+
+    private static class RecordingDelivery implements ClusterBroadcaster.LocalDelivery {
+
+        final List<String> rooms = new CopyOnWriteArrayList<>();
+        final List<String> sessions = new CopyOnWriteArrayList<>();
+        final List<String> all = new CopyOnWriteArrayList<>();
+
+        @Override
+        public void toRoom(String roomID, String message) {
+            rooms.add(roomID + ":" + message);
+        }
+
+        @Override
+        public void toSession(String roomID, String sessionID, String liveid, String message) {
+            sessions.add(roomID + ":" + sessionID + ":" + liveid + ":" + message);
+        }
+
+        @Override
+        public void toAll(String message) {
+            all.add(message);
+        }
+    }
+}
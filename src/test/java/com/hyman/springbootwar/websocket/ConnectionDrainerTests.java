@@ -0,0 +1,120 @@
+package com.hyman.springbootwar.websocket;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.ServletServerHttpRequest;
+import org.springframework.http.server.ServletServerHttpResponse;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * 连接排空：每批关闭数的计算、单个连接关闭失败不影响后面的连接，排空中拒绝握手，以及房间中的连接按配置的关闭码关闭。
+ *
+ * 排空状态是进程级的，每个用例结束时 reset。
+ */
+public class ConnectionDrainerTests {
+
+    @After
+    public void tearDown() {
+        ConnectionDrainer.reset();
+    }
+
+    @Test
+    public void batchSizeSpreadsOverWindow() {
+        // 30 秒内每 500 毫秒一批，60 批
+        Assert.assertEquals(2, ConnectionDrainer.batchSize(100, 30_000, 500));
+        Assert.assertEquals(1, ConnectionDrainer.batchSize(60, 30_000, 500));
+        Assert.assertEquals(2, ConnectionDrainer.batchSize(61, 30_000, 500));
+        // 2 批，向上取整
+        Assert.assertEquals(4, ConnectionDrainer.batchSize(7, 1_000, 500));
+        // 窗口小于间隔、窗口为 0 时一批关完
+        Assert.assertEquals(1_000, ConnectionDrainer.batchSize(1_000, 100, 1_000));
+        Assert.assertEquals(10, ConnectionDrainer.batchSize(10, 0, 500));
+        // 没有连接时也至少是 1，不会除零或者不前进
+        Assert.assertEquals(1, ConnectionDrainer.batchSize(0, 30_000, 500));
+    }
+
+    @Test
+    public void failingCloserDoesNotStallDrain() {
+        List<Integer> closed = new ArrayList<>();
+        List<Runnable> closers = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            int index = i;
+            closers.add(() -> {
+                if (index == 1) {
+                    throw new IllegalStateException("already closed");
+                }
+                closed.add(index);
+            });
+        }
+
+        int next = ConnectionDrainer.closeBatch(closers, 0, 2);
+        Assert.assertEquals(2, next);
+        next = ConnectionDrainer.closeBatch(closers, next, 2);
+        Assert.assertEquals(4, next);
+        next = ConnectionDrainer.closeBatch(closers, next, 2);
+        Assert.assertEquals(5, next);
+        Assert.assertEquals(Arrays.asList(0, 2, 3, 4), closed);
+    }
+
+    @Test
+    public void handshakeRejectedWhileDraining() throws Exception {
+        MyInterceptor interceptor = new MyInterceptor();
+        Assert.assertTrue(ConnectionDrainer.start(0L));
+        Assert.assertFalse(ConnectionDrainer.start(0L));
+        Assert.assertTrue(ConnectionDrainer.isDraining());
+
+        MockHttpServletRequest servletRequest = new MockHttpServletRequest("GET", "/websocket");
+        servletRequest.setQueryString("token=abc");
+        MockHttpServletResponse servletResponse = new MockHttpServletResponse();
+        ServletServerHttpResponse response = new ServletServerHttpResponse(servletResponse);
+        boolean accepted = interceptor.beforeHandshake(new ServletServerHttpRequest(servletRequest), response, null, new HashMap<>());
+        response.flush();
+
+        Assert.assertFalse(accepted);
+        Assert.assertEquals(HttpStatus.SERVICE_UNAVAILABLE.value(), servletResponse.getStatus());
+        Assert.assertEquals(String.valueOf(ConnectionDrainer.retryAfterSeconds()), servletResponse.getHeader("Retry-After"));
+    }
+
+    @Test
+    public void roomConnectionsClosedWithReconnectHint() throws Exception {
+        List<Talker> talkers = new ArrayList<>();
+        List<StubWebSocketSession> sessions = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            Talker talker = new Talker();
+            talker.setRoomID("drain-r1");
+            talker.setSessionID("d" + i);
+            talker.setLiveid("drain-r1");
+            StubWebSocketSession session = new StubWebSocketSession("d" + i);
+            TalkerRoomManager.creatRoom(session, talker);
+            talkers.add(talker);
+            sessions.add(session);
+        }
+        try {
+            Assert.assertTrue(ConnectionDrainer.start(0L));
+            long deadline = System.currentTimeMillis() + 5000;
+            while (!Boolean.TRUE.equals(ConnectionDrainer.stats().get("finished")) && System.currentTimeMillis() < deadline) {
+                Thread.sleep(1);
+            }
+            for (StubWebSocketSession session : sessions) {
+                while (session.getCloseStatus() == null && System.currentTimeMillis() < deadline) {
+                    Thread.sleep(1);
+                }
+                Assert.assertEquals(ConnectionDrainer.getConfig().getCloseCode(), session.getCloseStatus().getCode());
+                Assert.assertTrue(session.getCloseStatus().getReason().startsWith(ConnectionDrainer.RECONNECT_HINT));
+            }
+        } finally {
+            for (Talker talker : talkers) {
+                TalkerRoomManager.remove(talker);
+            }
+            TalkerRoomManager.deleteRoom("drain-r1");
+        }
+    }
+}
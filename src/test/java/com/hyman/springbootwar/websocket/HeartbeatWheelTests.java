@@ -0,0 +1,180 @@
+package com.hyman.springbootwar.websocket;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.web.socket.PingMessage;
+import org.springframework.web.socket.TextMessage;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * 时间轮：直接调用 tick() 推进，检查到期发 ping、空闲清理、取消、touch 续期，以及发送队列溢出正在断开的连接不再发 ping。
+ *
+ * tickMillis 设得很大，定时线程在测试期间不会触发，只有测试线程在推进时间轮。
+ */
+public class HeartbeatWheelTests {
+
+    private final List<Talker> evicted = new CopyOnWriteArrayList<>();
+    private HeartbeatWheel wheel;
+    private FanoutEngine engine;
+
+    @After
+    public void tearDown() {
+        if (wheel != null) {
+            wheel.shutdown();
+        }
+        if (engine != null) {
+            engine.shutdown();
+        }
+    }
+
+    @Test
+    public void pingsEveryInterval() {
+        // 每 3 个 tick 一次 ping
+        wheel = wheel(8, 3, 3_600_000);
+        StubWebSocketSession session = new StubWebSocketSession("s1");
+        wheel.register(session, talker("s1"));
+
+        // 第一次 tick 把新连接挂到轮上，3 个 tick 之后到期
+        ticks(3);
+        Assert.assertEquals(0, session.getSentCount());
+        ticks(1);
+        Assert.assertEquals(1, session.getSentCount());
+        Assert.assertTrue(session.getLastMessage() instanceof PingMessage);
+        ticks(3);
+        Assert.assertEquals(2, session.getSentCount());
+        Assert.assertEquals(2L, wheel.stats().get("pingsSent"));
+        Assert.assertEquals(1L, wheel.stats().get("active"));
+    }
+
+    @Test
+    public void deadlineBeyondOneRevolution() {
+        // 轮只有 4 格，间隔 10 个 tick，中间两次转到同一格都不能提前到期
+        wheel = wheel(4, 10, 3_600_000);
+        StubWebSocketSession session = new StubWebSocketSession("s1");
+        wheel.register(session, talker("s1"));
+        ticks(10);
+        Assert.assertEquals(0, session.getSentCount());
+        ticks(1);
+        Assert.assertEquals(1, session.getSentCount());
+    }
+
+    @Test
+    public void idleConnectionIsEvicted() throws InterruptedException {
+        wheel = wheel(8, 2, 20);
+        StubWebSocketSession session = new StubWebSocketSession("s1");
+        Talker talker = talker("s1");
+        wheel.register(session, talker);
+        Thread.sleep(50);
+        ticks(3);
+        Assert.assertEquals(0, session.getSentCount());
+        Assert.assertEquals(1, evicted.size());
+        Assert.assertSame(talker, evicted.get(0));
+        Assert.assertEquals(0L, wheel.stats().get("active"));
+        Assert.assertEquals(1L, wheel.stats().get("evicted"));
+
+        // 清理过的连接不会再被处理
+        ticks(10);
+        Assert.assertEquals(1, evicted.size());
+    }
+
+    @Test
+    public void touchKeepsConnectionAlive() throws InterruptedException {
+        wheel = wheel(8, 2, 200);
+        StubWebSocketSession session = new StubWebSocketSession("s1");
+        HeartbeatWheel.Entry entry = wheel.register(session, talker("s1"));
+        session.getAttributes().put(HeartbeatWheel.ATTRIBUTE, entry);
+        Thread.sleep(120);
+        HeartbeatWheel.touch(session);
+        Thread.sleep(120);
+        ticks(3);
+        Assert.assertTrue(evicted.isEmpty());
+        Assert.assertEquals(1, session.getSentCount());
+
+        // pong 同样续期，并记录往返时间
+        wheel.pong(session);
+        Assert.assertEquals(1L, wheel.stats().get("pongs"));
+    }
+
+    @Test
+    public void cancelledEntryIsDropped() {
+        wheel = wheel(8, 2, 3_600_000);
+        StubWebSocketSession session = new StubWebSocketSession("s1");
+        HeartbeatWheel.Entry entry = wheel.register(session, talker("s1"));
+        session.getAttributes().put(HeartbeatWheel.ATTRIBUTE, entry);
+        ticks(1);
+        HeartbeatWheel.cancel(session);
+        ticks(5);
+        Assert.assertEquals(0, session.getSentCount());
+        Assert.assertTrue(evicted.isEmpty());
+        Assert.assertEquals(0L, wheel.stats().get("active"));
+        Assert.assertNull(session.getAttributes().get(HeartbeatWheel.ATTRIBUTE));
+    }
+
+    @Test
+    public void closedConnectionIsEvictedWithoutPing() throws Exception {
+        wheel = wheel(8, 2, 3_600_000);
+        StubWebSocketSession session = new StubWebSocketSession("s1");
+        wheel.register(session, talker("s1"));
+        session.close();
+        ticks(3);
+        Assert.assertEquals(1, evicted.size());
+        Assert.assertEquals(0L, wheel.stats().get("pingsSent"));
+    }
+
+    @Test
+    public void overflowingQueueIsEvictedWhileDelegateStillOpen() throws Exception {
+        wheel = wheel(8, 2, 3_600_000);
+        StubWebSocketSession stub = new StubWebSocketSession("s1");
+        CountDownLatch gate = new CountDownLatch(1);
+        stub.setSendGate(gate);
+        WebSocketProperties.Fanout config = new WebSocketProperties.Fanout();
+        config.setQueueCapacity(1);
+        config.setOverflowPolicy(OverflowPolicy.DISCONNECT);
+        engine = new FanoutEngine(config);
+        QueuedWebSocketSession session = (QueuedWebSocketSession) engine.decorate(stub);
+        wheel.register(session, talker("s1"));
+
+        // 写出线程卡在第一条上，后面的消息把队列撑满，进入待断开状态
+        session.sendMessage(new TextMessage("m0"));
+        long deadline = System.currentTimeMillis() + 5000;
+        while (session.getQueueSize() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+        session.sendMessage(new TextMessage("m1"));
+        session.sendMessage(new TextMessage("m2"));
+        Assert.assertTrue(session.isClosing());
+        Assert.assertTrue(stub.isOpen());
+
+        // 之前 ping 放入队列不会失败，连接会一直留在轮上；现在直接清理
+        ticks(3);
+        Assert.assertEquals(1, evicted.size());
+        Assert.assertEquals(0L, wheel.stats().get("pingsSent"));
+        gate.countDown();
+    }
+
+    private HeartbeatWheel wheel(int wheelSize, int intervalTicks, long idleTimeoutMillis) {
+        WebSocketProperties.Heartbeat config = new WebSocketProperties.Heartbeat();
+        config.setTickMillis(3_600_000);
+        config.setWheelSize(wheelSize);
+        config.setIntervalMillis(3_600_000L * intervalTicks);
+        config.setIdleTimeoutMillis(idleTimeoutMillis);
+        return new HeartbeatWheel(config, evicted::add);
+    }
+
+    private void ticks(int count) {
+        for (int i = 0; i < count; i++) {
+            wheel.tick();
+        }
+    }
+
+    private static Talker talker(String sessionID) {
+        Talker talker = new Talker();
+        talker.setSessionID(sessionID);
+        talker.setRoomID("r1");
+        return talker;
+    }
+}
@@ -0,0 +1,61 @@
+package com.hyman.springbootwar.websocket;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * 进程内的 redis pub/sub 替身。一个 InMemoryRoomBus 相当于一台 redis，connect() 得到的每个 RoomBus 相当于一个节点的连接，
+ * 发布同步投递给所有订阅了该频道的节点。
+ */
+public class InMemoryRoomBus {
+
+    private final Map<String, CopyOnWriteArrayList<Consumer<String>>> channels = new ConcurrentHashMap<>();
+
+    // 发布次数，相当于 redis 上的 PUBLISH 命令数
+    private final AtomicLong published = new AtomicLong();
+
+    public RoomBus connect() {
+        return new RoomBus() {
+
+            private final Map<String, Consumer<String>> subscriptions = new ConcurrentHashMap<>();
+
+            @Override
+            public void publish(String channel, String body) {
+                published.incrementAndGet();
+                CopyOnWriteArrayList<Consumer<String>> listeners = channels.get(channel);
+                if (listeners != null) {
+                    for (Consumer<String> listener : listeners) {
+                        listener.accept(body);
+                    }
+                }
+            }
+
+            @Override
+            public void subscribe(String channel, Consumer<String> listener) {
+                if (subscriptions.putIfAbsent(channel, listener) == null) {
+                    channels.computeIfAbsent(channel, c -> new CopyOnWriteArrayList<>()).add(listener);
+                }
+            }
+
+            @Override
+            public void unsubscribe(String channel) {
+                Consumer<String> listener = subscriptions.remove(channel);
+                if (listener != null) {
+                    channels.get(channel).remove(listener);
+                }
+            }
+        };
+    }
+
+    public int subscriberCount(String channel) {
+        CopyOnWriteArrayList<Consumer<String>> listeners = channels.get(channel);
+        return listeners == null ? 0 : listeners.size();
+    }
+
+    public long getPublishedCount() {
+        return published.get();
+    }
+}
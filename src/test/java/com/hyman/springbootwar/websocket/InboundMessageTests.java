@@ -0,0 +1,62 @@
+package com.hyman.springbootwar.websocket;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * 客户端消息解析：带 route 的 json 按指定方式投递，其余内容整个作为 body 按默认方式投递
+ */
+public class InboundMessageTests {
+
+    @Test
+    public void plainTextUsesDefaultRoute() {
+        InboundMessage message = InboundMessage.parse("hello", Route.ROOM);
+        Assert.assertEquals(Route.ROOM, message.getRoute());
+        Assert.assertEquals("hello", message.getBody());
+        Assert.assertNull(message.getTopic());
+    }
+
+    @Test
+    public void jsonWithoutRouteIsBody() {
+        String payload = "{\"score\":\"2:1\"}";
+        InboundMessage message = InboundMessage.parse(payload, Route.SENDER);
+        Assert.assertEquals(Route.SENDER, message.getRoute());
+        Assert.assertEquals(payload, message.getBody());
+
+        // route 只出现在内容里，解析出来没有 route 字段
+        String nested = "{\"text\":\"\\\"route\\\"\"}";
+        Assert.assertEquals(nested, InboundMessage.parse(nested, Route.ROOM).getBody());
+    }
+
+    @Test
+    public void routedJson() {
+        InboundMessage message = InboundMessage.parse("{\"route\":\"topic\",\"topic\":\"live.1.score\",\"body\":\"2:1\"}", Route.ROOM);
+        Assert.assertEquals(Route.TOPIC, message.getRoute());
+        Assert.assertEquals("live.1.score", message.getTopic());
+        Assert.assertEquals("2:1", message.getBody());
+
+        // 大小写不敏感
+        Assert.assertEquals(Route.GLOBAL, InboundMessage.parse("{\"route\":\"Global\",\"body\":\"x\"}", Route.ROOM).getRoute());
+    }
+
+    @Test
+    public void unknownRouteIsNull() {
+        InboundMessage message = InboundMessage.parse("{\"route\":\"everyone\",\"body\":\"x\"}", Route.ROOM);
+        Assert.assertNull(message.getRoute());
+    }
+
+    @Test
+    public void malformedJsonIsBody() {
+        String payload = "{\"route\":\"room\",";
+        InboundMessage message = InboundMessage.parse(payload, Route.ROOM);
+        Assert.assertEquals(Route.ROOM, message.getRoute());
+        Assert.assertEquals(payload, message.getBody());
+    }
+
+    @Test
+    public void emptyPayload() {
+        InboundMessage message = InboundMessage.parse("", Route.ROOM);
+        Assert.assertEquals(Route.ROOM, message.getRoute());
+        Assert.assertEquals("", message.getBody());
+    }
+}
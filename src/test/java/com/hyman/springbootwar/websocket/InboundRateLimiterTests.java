@@ -0,0 +1,135 @@
+package com.hyman.springbootwar.websocket;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.web.socket.CloseStatus;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 客户端消息限速：令牌桶的突发、按时间补充、等待时间，以及过大的消息和超出限速时的处理策略。
+ *
+ * tryAcquire(bytes, now) 直接指定时间，不依赖 sleep。
+ */
+public class InboundRateLimiterTests {
+
+    private static final long MILLI = TimeUnit.MILLISECONDS.toNanos(1);
+
+    @Test
+    public void burstThenWait() {
+        InboundRateLimiter limiter = new InboundRateLimiter("s1", config(10, 5, 0, 0));
+        long now = System.nanoTime();
+        for (int i = 0; i < 5; i++) {
+            Assert.assertEquals(0, limiter.tryAcquire(1, now));
+        }
+        // 每秒 10 条，下一个令牌要 100 毫秒
+        long wait = limiter.tryAcquire(1, now);
+        Assert.assertTrue(String.valueOf(wait), wait > 99 * MILLI && wait <= 100 * MILLI);
+    }
+
+    @Test
+    public void refillOverTimeCappedAtBurst() {
+        InboundRateLimiter limiter = new InboundRateLimiter("s1", config(10, 5, 0, 0));
+        long now = System.nanoTime();
+        for (int i = 0; i < 5; i++) {
+            limiter.tryAcquire(1, now);
+        }
+        Assert.assertTrue(limiter.tryAcquire(1, now) > 0);
+
+        // 100 毫秒补充一个
+        Assert.assertEquals(0, limiter.tryAcquire(1, now + 100 * MILLI));
+        Assert.assertTrue(limiter.tryAcquire(1, now + 100 * MILLI) > 0);
+
+        // 空闲很久也最多攒 burst 个
+        long later = now + TimeUnit.SECONDS.toNanos(60);
+        for (int i = 0; i < 5; i++) {
+            Assert.assertEquals(0, limiter.tryAcquire(1, later));
+        }
+        Assert.assertTrue(limiter.tryAcquire(1, later) > 0);
+    }
+
+    @Test
+    public void byteBucket() {
+        InboundRateLimiter limiter = new InboundRateLimiter("s1", config(0, 0, 1000, 100));
+        long now = System.nanoTime();
+        Assert.assertEquals(0, limiter.tryAcquire(60, now));
+        // 还剩 40，差 20 字节，每秒 1000 字节要 20 毫秒
+        long wait = limiter.tryAcquire(60, now);
+        Assert.assertTrue(String.valueOf(wait), wait > 19 * MILLI && wait <= 20 * MILLI);
+        Assert.assertEquals(0, limiter.tryAcquire(60, now + 20 * MILLI));
+
+        // 超过桶容量的消息按桶满处理，攒满之后可以通过
+        long full = now + TimeUnit.SECONDS.toNanos(1);
+        Assert.assertEquals(0, limiter.tryAcquire(500, full));
+        Assert.assertTrue(limiter.tryAcquire(1, full) > 0);
+    }
+
+    @Test
+    public void oversizedMessageClosesConnection() {
+        WebSocketProperties.RateLimit config = config(0, 0, 0, 0);
+        config.setMaxMessageBytes(10);
+
+        StubWebSocketSession ascii = register("s1", config);
+        Assert.assertTrue(InboundRateLimiter.admit(ascii, "1234567890"));
+        Assert.assertFalse(InboundRateLimiter.admit(ascii, "12345678901"));
+        Assert.assertEquals(CloseStatus.TOO_BIG_TO_PROCESS, ascii.getCloseStatus());
+
+        // 字符数没有超过，UTF-8 字节数超过（4 个汉字 12 字节）
+        StubWebSocketSession chinese = register("s2", config);
+        Assert.assertTrue(InboundRateLimiter.admit(chinese, "中文中"));
+        Assert.assertFalse(InboundRateLimiter.admit(chinese, "中文中文"));
+        Assert.assertEquals(CloseStatus.TOO_BIG_TO_PROCESS, chinese.getCloseStatus());
+        InboundRateLimiter.unregister(ascii);
+        InboundRateLimiter.unregister(chinese);
+    }
+
+    @Test
+    public void dropPolicyKeepsConnection() {
+        WebSocketProperties.RateLimit config = config(1, 2, 0, 0);
+        config.setPolicy(RateLimitPolicy.DROP);
+        StubWebSocketSession session = register("drop-1", config);
+        Assert.assertTrue(InboundRateLimiter.admit(session, "a"));
+        Assert.assertTrue(InboundRateLimiter.admit(session, "b"));
+        Assert.assertFalse(InboundRateLimiter.admit(session, "c"));
+        Assert.assertNull(session.getCloseStatus());
+        Assert.assertTrue(session.isOpen());
+        InboundRateLimiter.unregister(session);
+    }
+
+    @Test
+    public void closePolicyClosesConnection() {
+        WebSocketProperties.RateLimit config = config(1, 1, 0, 0);
+        config.setPolicy(RateLimitPolicy.CLOSE);
+        StubWebSocketSession session = register("close-1", config);
+        Assert.assertTrue(InboundRateLimiter.admit(session, "a"));
+        Assert.assertFalse(InboundRateLimiter.admit(session, "b"));
+        Assert.assertEquals(CloseStatus.POLICY_VIOLATION, session.getCloseStatus());
+        InboundRateLimiter.unregister(session);
+    }
+
+    @Test
+    public void unregisteredSessionIsNotLimited() {
+        WebSocketProperties.RateLimit config = config(1, 1, 0, 0);
+        config.setEnabled(false);
+        StubWebSocketSession session = register("disabled-1", config);
+        for (int i = 0; i < 10; i++) {
+            Assert.assertTrue(InboundRateLimiter.admit(session, "a"));
+        }
+    }
+
+    private static StubWebSocketSession register(String id, WebSocketProperties.RateLimit config) {
+        StubWebSocketSession session = new StubWebSocketSession(id);
+        InboundRateLimiter.register(session, config);
+        return session;
+    }
+
+    private static WebSocketProperties.RateLimit config(int messagesPerSecond, int messageBurst, int bytesPerSecond, int byteBurst) {
+        WebSocketProperties.RateLimit config = new WebSocketProperties.RateLimit();
+        config.setMessagesPerSecond(messagesPerSecond);
+        config.setMessageBurst(messageBurst);
+        config.setBytesPerSecond(bytesPerSecond);
+        config.setByteBurst(byteBurst);
+        config.setMaxMessageBytes(0);
+        return config;
+    }
+}
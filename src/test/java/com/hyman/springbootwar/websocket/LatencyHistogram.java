@@ -0,0 +1,68 @@
+package com.hyman.springbootwar.websocket;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 压测用的延迟直方图（微秒）。
+ *
+ * 1024 微秒以内每微秒一格，之上每个 2 的幂区间再均分 512 格，误差在 0.2% 以内。多个线程可以同时记录，不加锁、不保存原始样本，
+ * 记录几千万个样本也只占一百多 KB。
+ */
+public class LatencyHistogram {
+
+    private static final int LINEAR = 1024;
+    private static final int SUB_BUCKETS = 512;
+    private static final int SUB_BITS = 9;
+
+    private final AtomicLongArray counts = new AtomicLongArray(LINEAR + (64 - 10) * SUB_BUCKETS);
+
+    public void record(long micros) {
+        counts.incrementAndGet(index(Math.max(0, micros)));
+    }
+
+    public long count() {
+        long total = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            total += counts.get(i);
+        }
+        return total;
+    }
+
+    /**
+     * @param quantile 如 0.99
+     * @return 该分位的延迟（微秒），没有样本时返回 0
+     */
+    public long percentile(double quantile) {
+        long total = count();
+        if (total == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(total * quantile);
+        long seen = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return valueOf(i);
+            }
+        }
+        return valueOf(counts.length() - 1);
+    }
+
+    private static int index(long value) {
+        if (value < LINEAR) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) ((value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1));
+        return LINEAR + (exponent - 10) * SUB_BUCKETS + sub;
+    }
+
+    private static long valueOf(int index) {
+        if (index < LINEAR) {
+            return index;
+        }
+        int exponent = (index - LINEAR) / SUB_BUCKETS + 10;
+        long sub = (index - LINEAR) % SUB_BUCKETS;
+        return (1L << exponent) + (sub << (exponent - SUB_BITS));
+    }
+}
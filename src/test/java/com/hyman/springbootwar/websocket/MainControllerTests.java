@@ -0,0 +1,61 @@
+package com.hyman.springbootwar.websocket;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 推送接口只允许 routing.admin-tokens 中的 token 调用，单条推送只接受 POST
+ */
+public class MainControllerTests {
+
+    private MainController controller;
+
+    @Before
+    public void setUp() {
+        WebSocketProperties properties = new WebSocketProperties();
+        properties.getRouting().setAdminTokens(Collections.singletonList("admin"));
+        controller = new MainController();
+        ReflectionTestUtils.setField(controller, "properties", properties);
+    }
+
+    @Test
+    public void pushRequiresAdminToken() {
+        Assert.assertEquals(403, controller.pushToWeb("push-missing", null, "hi").get("code"));
+        Assert.assertEquals(403, controller.pushToWeb("push-missing", "user", "hi").get("code"));
+        Assert.assertEquals(200, controller.pushToWeb("push-missing", "admin", "hi").get("code"));
+    }
+
+    @Test
+    public void pushIsPostOnly() throws Exception {
+        Method push = MainController.class.getMethod("pushToWeb", String.class, String.class, String.class);
+        Assert.assertNotNull(push.getAnnotation(PostMapping.class));
+        Assert.assertNull(push.getAnnotation(GetMapping.class));
+        Assert.assertNull(push.getAnnotation(RequestMapping.class));
+    }
+
+    @Test
+    public void batchPushRequiresAdminToken() {
+        PushTarget target = new PushTarget();
+        target.setRoom("push-missing");
+        target.setPayload("hi");
+        List<PushTarget> targets = Collections.singletonList(target);
+
+        Assert.assertEquals(403, controller.pushBatch(null, targets).get("code"));
+        Assert.assertEquals(403, controller.pushBatch("user", targets).get("code"));
+        Map<String, Object> result = controller.pushBatch("admin", targets);
+        Assert.assertEquals(200, result.get("code"));
+        List<?> results = (List<?>) result.get("results");
+        Assert.assertEquals(1, results.size());
+        Assert.assertEquals(0, ((PushResult) results.get(0)).getDelivered());
+    }
+}
@@ -0,0 +1,76 @@
+package com.hyman.springbootwar.websocket;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * MicroBatchEngine：只有开启的房间合并，窗口到期、关闭合并、停止时攒下的消息都会发出
+ */
+public class MicroBatchEngineTests {
+
+    private final List<String> frames = new CopyOnWriteArrayList<>();
+    private MicroBatchEngine engine;
+
+    @After
+    public void tearDown() {
+        if (engine != null) {
+            engine.shutdown();
+        }
+    }
+
+    @Test
+    public void onlyEnabledRoomsAreBatched() throws InterruptedException {
+        engine = engine(20, "hot");
+        Assert.assertTrue(engine.isEnabled("hot"));
+        Assert.assertFalse(engine.offer("cold", "m0"));
+
+        Assert.assertTrue(engine.offer("hot", "m1"));
+        Assert.assertTrue(engine.offer("hot", "m2"));
+        long deadline = System.currentTimeMillis() + 5000;
+        while (frames.isEmpty() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        Assert.assertEquals(Arrays.asList("hot:[\"m1\",\"m2\"]"), frames);
+    }
+
+    @Test
+    public void disableFlushesPendingMessages() {
+        engine = engine(60_000);
+        engine.enable("r1");
+        engine.offer("r1", "m1");
+        Assert.assertTrue(frames.isEmpty());
+
+        engine.disable("r1");
+        Assert.assertEquals(Arrays.asList("r1:[\"m1\"]"), frames);
+        Assert.assertFalse(engine.offer("r1", "m2"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void shutdownFlushesAndReportsStats() {
+        engine = engine(60_000, "r1");
+        engine.offer("r1", "m1");
+        engine.offer("r1", "m2");
+        engine.offer("r1", "m3");
+        engine.shutdown();
+        Assert.assertEquals(Arrays.asList("r1:[\"m1\",\"m2\",\"m3\"]"), frames);
+
+        List<Map<String, Object>> rooms = (List<Map<String, Object>>) engine.stats().get("rooms");
+        Assert.assertEquals(1L, rooms.get(0).get("frames"));
+        Assert.assertEquals(3L, rooms.get(0).get("messages"));
+        engine = null;
+    }
+
+    private MicroBatchEngine engine(long windowMillis, String... rooms) {
+        WebSocketProperties.Batch config = new WebSocketProperties.Batch();
+        config.setWindowMillis(windowMillis);
+        config.setRooms(Arrays.asList(rooms));
+        return new MicroBatchEngine(config, (roomID, frame) -> frames.add(roomID + ":" + frame));
+    }
+}
@@ -0,0 +1,45 @@
+package com.hyman.springbootwar.websocket;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * MyInterceptor.getParameter：在查询串中直接找参数，不拆分成 map
+ */
+public class MyInterceptorTests {
+
+    @Test
+    public void findsParameterAnywhereInQuery() {
+        Assert.assertEquals("abc", MyInterceptor.getParameter("token=abc", "token"));
+        Assert.assertEquals("abc", MyInterceptor.getParameter("token=abc&liveid=1", "token"));
+        Assert.assertEquals("1", MyInterceptor.getParameter("token=abc&liveid=1", "liveid"));
+        Assert.assertEquals("42", MyInterceptor.getParameter("token=abc&lastSeq=42&liveid=1", "lastSeq"));
+    }
+
+    @Test
+    public void matchesWholeNameOnly() {
+        // 名字是另一个参数名的前缀或后缀时不能误匹配
+        Assert.assertEquals("2", MyInterceptor.getParameter("tokenx=1&token=2", "token"));
+        Assert.assertEquals("2", MyInterceptor.getParameter("xtoken=1&token=2", "token"));
+        Assert.assertNull(MyInterceptor.getParameter("tokenx=1", "token"));
+        Assert.assertNull(MyInterceptor.getParameter("tok=1", "token"));
+    }
+
+    @Test
+    public void missingOrEmptyValues() {
+        Assert.assertNull(MyInterceptor.getParameter(null, "token"));
+        Assert.assertNull(MyInterceptor.getParameter("", "token"));
+        Assert.assertNull(MyInterceptor.getParameter("liveid=1", "token"));
+        // 没有等号不算这个参数
+        Assert.assertNull(MyInterceptor.getParameter("token&liveid=1", "token"));
+        Assert.assertEquals("", MyInterceptor.getParameter("token=&liveid=1", "token"));
+        Assert.assertEquals("", MyInterceptor.getParameter("liveid=1&token=", "token"));
+        Assert.assertEquals("1", MyInterceptor.getParameter("&&liveid=1&", "liveid"));
+    }
+
+    @Test
+    public void firstOccurrenceWinsAndValueKeepsEquals() {
+        Assert.assertEquals("a", MyInterceptor.getParameter("token=a&token=b", "token"));
+        Assert.assertEquals("a=b", MyInterceptor.getParameter("token=a=b", "token"));
+    }
+}
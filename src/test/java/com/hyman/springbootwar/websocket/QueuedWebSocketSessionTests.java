@@ -0,0 +1,154 @@
+package com.hyman.springbootwar.websocket;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * QueuedWebSocketSession：写出顺序、三种溢出策略，以及溢出断开时关闭由写出线程执行、不与正在进行的写出并发
+ */
+public class QueuedWebSocketSessionTests {
+
+    private FanoutEngine engine;
+
+    @After
+    public void tearDown() {
+        if (engine != null) {
+            engine.shutdown();
+        }
+    }
+
+    @Test
+    public void drainKeepsOrder() throws Exception {
+        StubWebSocketSession stub = new StubWebSocketSession("s1").setRecording(true);
+        QueuedWebSocketSession session = queued(stub, 10_000, OverflowPolicy.DROP_NEWEST, 4);
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            expected.add("m" + i);
+            session.sendMessage(new TextMessage("m" + i));
+        }
+        awaitSent(stub, 1000);
+        Assert.assertEquals(expected, payloads(stub));
+        Assert.assertEquals(0, session.getQueueSize());
+    }
+
+    @Test
+    public void dropOldestKeepsNewest() throws Exception {
+        StubWebSocketSession stub = new StubWebSocketSession("s1").setRecording(true);
+        CountDownLatch gate = new CountDownLatch(1);
+        stub.setSendGate(gate);
+        QueuedWebSocketSession session = queued(stub, 3, OverflowPolicy.DROP_OLDEST, 64);
+        // 第一条被写出线程取走后停在 sendMessage 里
+        session.sendMessage(new TextMessage("m0"));
+        awaitWriting(session);
+        for (int i = 1; i <= 5; i++) {
+            session.sendMessage(new TextMessage("m" + i));
+        }
+        Assert.assertEquals(3, session.getQueueSize());
+        gate.countDown();
+        awaitSent(stub, 4);
+        Assert.assertEquals(listOf("m0", "m3", "m4", "m5"), payloads(stub));
+        Assert.assertEquals(2, engine.getDroppedCount());
+    }
+
+    @Test
+    public void dropNewestKeepsQueued() throws Exception {
+        StubWebSocketSession stub = new StubWebSocketSession("s1").setRecording(true);
+        CountDownLatch gate = new CountDownLatch(1);
+        stub.setSendGate(gate);
+        QueuedWebSocketSession session = queued(stub, 3, OverflowPolicy.DROP_NEWEST, 64);
+        session.sendMessage(new TextMessage("m0"));
+        awaitWriting(session);
+        for (int i = 1; i <= 5; i++) {
+            session.sendMessage(new TextMessage("m" + i));
+        }
+        gate.countDown();
+        awaitSent(stub, 4);
+        Assert.assertEquals(listOf("m0", "m1", "m2", "m3"), payloads(stub));
+        Assert.assertEquals(2, engine.getDroppedCount());
+    }
+
+    @Test
+    public void disconnectClosesAfterInFlightWrite() throws Exception {
+        StubWebSocketSession stub = new StubWebSocketSession("s1").setRecording(true);
+        CountDownLatch gate = new CountDownLatch(1);
+        stub.setSendGate(gate);
+        QueuedWebSocketSession session = queued(stub, 2, OverflowPolicy.DISCONNECT, 64);
+        session.sendMessage(new TextMessage("m0"));
+        awaitWriting(session);
+        for (int i = 1; i <= 4; i++) {
+            session.sendMessage(new TextMessage("m" + i));
+        }
+        // 写出线程还停在 m0 上，这时不能关闭底层连接
+        Thread.sleep(50);
+        Assert.assertTrue(stub.isOpen());
+        gate.countDown();
+        long deadline = System.currentTimeMillis() + 5000;
+        while (stub.isOpen() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        Assert.assertFalse(stub.isOpen());
+        Assert.assertFalse(stub.isClosedWhileWriting());
+        Assert.assertEquals(CloseStatus.SESSION_NOT_RELIABLE, stub.getCloseStatus());
+        Assert.assertEquals(listOf("m0"), payloads(stub));
+        Assert.assertEquals(1, engine.getDisconnectedCount());
+        Assert.assertEquals(0, session.getQueueSize());
+        // 关闭之后的发送直接忽略
+        session.sendMessage(new TextMessage("late"));
+        Assert.assertEquals(0, session.getQueueSize());
+    }
+
+    private QueuedWebSocketSession queued(StubWebSocketSession stub, int capacity, OverflowPolicy policy, int drainBatch) {
+        WebSocketProperties.Fanout config = new WebSocketProperties.Fanout();
+        config.setQueueCapacity(capacity);
+        config.setOverflowPolicy(policy);
+        config.setThreads(2);
+        config.setDrainBatch(drainBatch);
+        engine = new FanoutEngine(config);
+        return (QueuedWebSocketSession) engine.decorate(stub);
+    }
+
+    /**
+     * 等第一条消息被写出线程取走（队列空了，但还没写完）
+     */
+    private static void awaitWriting(QueuedWebSocketSession session) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (session.getQueueSize() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+        Assert.assertEquals(0, session.getQueueSize());
+    }
+
+    private static void awaitSent(StubWebSocketSession stub, int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (stub.getSentCount() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+        // 多等一会儿，确认没有多写
+        Thread.sleep(20);
+        Assert.assertEquals(count, stub.getSentCount());
+    }
+
+    private static List<String> payloads(StubWebSocketSession stub) {
+        List<String> result = new ArrayList<>();
+        for (WebSocketMessage<?> message : stub.getMessages()) {
+            result.add(String.valueOf(message.getPayload()));
+        }
+        return result;
+    }
+
+    private static List<String> listOf(String... values) {
+        List<String> result = new ArrayList<>();
+        for (String value : values) {
+            result.add(value);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,110 @@
+package com.hyman.springbootwar.websocket;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 补发缓冲区：按 {epoch}.{seq} 取出缺失的消息，环形覆盖后、epoch 不一致或格式不对时返回 null，以及堆外内存延迟分配。
+ */
+public class ReplayBufferTests {
+
+    @Test
+    public void returnsFramesAfterLastSeq() {
+        ReplayBuffer buffer = new ReplayBuffer(config(8, false));
+        for (int i = 1; i <= 5; i++) {
+            buffer.append("m" + i);
+        }
+        String epoch = buffer.getEpoch();
+        Assert.assertEquals(
+                list(epoch + ".4|m4", epoch + ".5|m5"),
+                strings(buffer.since(epoch + ".3")));
+        Assert.assertTrue(buffer.since(epoch + ".5").isEmpty());
+        Assert.assertEquals(5, buffer.since(epoch + ".0").size());
+    }
+
+    @Test
+    public void overwrittenOrAheadIsReset() {
+        ReplayBuffer buffer = new ReplayBuffer(config(4, false));
+        for (int i = 1; i <= 10; i++) {
+            buffer.append("m" + i);
+        }
+        String epoch = buffer.getEpoch();
+        // 只剩 7..10
+        Assert.assertEquals(4, buffer.since(epoch + ".6").size());
+        Assert.assertNull(buffer.since(epoch + ".5"));
+        Assert.assertNull(buffer.since(epoch + ".11"));
+    }
+
+    @Test
+    public void otherEpochIsReset() {
+        ReplayBuffer before = new ReplayBuffer(config(8, false));
+        before.append("old");
+        // 房间删除后重新创建，序号从 1 重新开始
+        ReplayBuffer recreated = new ReplayBuffer(config(8, false));
+        recreated.append("new1");
+        recreated.append("new2");
+        Assert.assertNotEquals(before.getEpoch(), recreated.getEpoch());
+        Assert.assertNull(recreated.since(before.getEpoch() + ".1"));
+    }
+
+    @Test
+    public void malformedIsReset() {
+        ReplayBuffer buffer = new ReplayBuffer(config(8, false));
+        buffer.append("m1");
+        String epoch = buffer.getEpoch();
+        Assert.assertNull(buffer.since("1"));
+        Assert.assertNull(buffer.since(epoch));
+        Assert.assertNull(buffer.since(epoch + "."));
+        Assert.assertNull(buffer.since(epoch + ".x"));
+        Assert.assertNull(buffer.since("x" + epoch + ".0"));
+    }
+
+    @Test
+    public void offHeapAllocatedOnFirstAppend() {
+        WebSocketProperties.Replay config = config(4, true);
+        config.setSlotBytes(64);
+        ReplayBuffer buffer = new ReplayBuffer(config);
+        Assert.assertFalse(buffer.isOffHeapAllocated());
+
+        // 超过 slotBytes 的消息放在堆内，不触发分配
+        StringBuilder large = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            large.append('x');
+        }
+        buffer.append(large.toString());
+        Assert.assertFalse(buffer.isOffHeapAllocated());
+
+        buffer.append("small");
+        Assert.assertTrue(buffer.isOffHeapAllocated());
+        String epoch = buffer.getEpoch();
+        Assert.assertEquals(list(epoch + ".1|" + large, epoch + ".2|small"), strings(buffer.since(epoch + ".0")));
+    }
+
+    private static WebSocketProperties.Replay config(int capacity, boolean offHeap) {
+        WebSocketProperties.Replay config = new WebSocketProperties.Replay();
+        config.setEnabled(true);
+        config.setCapacity(capacity);
+        config.setOffHeap(offHeap);
+        return config;
+    }
+
+    private static List<String> strings(List<byte[]> frames) {
+        List<String> result = new ArrayList<>();
+        for (byte[] frame : frames) {
+            result.add(new String(frame, StandardCharsets.UTF_8));
+        }
+        return result;
+    }
+
+    private static List<String> list(String... values) {
+        List<String> result = new ArrayList<>();
+        for (String value : values) {
+            result.add(value);
+        }
+        return result;
+    }
+}
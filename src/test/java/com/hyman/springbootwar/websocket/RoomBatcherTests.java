@@ -0,0 +1,119 @@
+package com.hyman.springbootwar.websocket;
+
+import com.google.gson.Gson;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * RoomBatcher：合并后的帧是 JSON 字符串数组，按字节上限立即发出，窗口到期发出
+ */
+public class RoomBatcherTests {
+
+    private ScheduledExecutorService scheduler;
+    private List<String> frames;
+
+    @Before
+    public void setUp() {
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+        frames = new CopyOnWriteArrayList<>();
+    }
+
+    @After
+    public void tearDown() {
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    public void mergedFrameSplitsBackToOriginalMessages() {
+        RoomBatcher batcher = batcher(60_000, 16 * 1024);
+        List<String> messages = Arrays.asList("第一行\n第二行", "{\"a\":\"b\\\\c\"}", "tab\there", "\u0001", "");
+        for (String message : messages) {
+            batcher.offer(message);
+        }
+        batcher.flush();
+
+        Assert.assertEquals(1, frames.size());
+        Assert.assertEquals(messages, Arrays.asList(new Gson().fromJson(frames.get(0), String[].class)));
+        Assert.assertEquals(5, batcher.getMaxBatch());
+    }
+
+    @Test
+    public void flushesWhenMaxBytesReached() {
+        // ["aaaaaaaaaa","aaaaaaaaaa"] 正好 27 字节，第三条放不下
+        RoomBatcher batcher = batcher(60_000, 27);
+        String message = "aaaaaaaaaa";
+        batcher.offer(message);
+        batcher.offer(message);
+        Assert.assertEquals(1, frames.size());
+        Assert.assertEquals("[\"aaaaaaaaaa\",\"aaaaaaaaaa\"]", frames.get(0));
+
+        batcher.offer(message);
+        batcher.offer("b");
+        batcher.offer("c");
+        Assert.assertEquals(1, frames.size());
+        // 再放一条超过上限，先发出之前攒下的
+        batcher.offer(message);
+        Assert.assertEquals(2, frames.size());
+        Assert.assertEquals("[\"aaaaaaaaaa\",\"b\",\"c\"]", frames.get(1));
+        for (String frame : frames) {
+            Assert.assertTrue(frame.getBytes(StandardCharsets.UTF_8).length <= 27);
+        }
+        batcher.flush();
+        Assert.assertEquals("[\"aaaaaaaaaa\"]", frames.get(2));
+        Assert.assertEquals(6, batcher.getMessageCount());
+    }
+
+    @Test
+    public void oversizedMessageIsSentAlone() {
+        RoomBatcher batcher = batcher(60_000, 8);
+        batcher.offer("a");
+        batcher.offer("这条消息比上限还长");
+        Assert.assertEquals(Arrays.asList("[\"a\"]", "[\"这条消息比上限还长\"]"), frames);
+    }
+
+    @Test
+    public void flushesWhenWindowExpires() throws InterruptedException {
+        RoomBatcher batcher = batcher(30, 16 * 1024);
+        batcher.offer("m1");
+        batcher.offer("m2");
+        Assert.assertTrue(frames.isEmpty());
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (frames.isEmpty() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        Assert.assertEquals(Arrays.asList("[\"m1\",\"m2\"]"), frames);
+        Assert.assertEquals(1, batcher.getFlushCount());
+        Assert.assertEquals(1, batcher.getBatchHistogram()[1]);
+
+        // 下一条消息重新开始计时
+        batcher.offer("m3");
+        deadline = System.currentTimeMillis() + 5000;
+        while (frames.size() < 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        Assert.assertEquals("[\"m3\"]", frames.get(1));
+    }
+
+    @Test
+    public void utf8LengthMatchesEncoder() {
+        String text = "aé中😀";
+        Assert.assertEquals(text.getBytes(StandardCharsets.UTF_8).length, RoomBatcher.utf8Length(text));
+    }
+
+    private RoomBatcher batcher(long windowMillis, int maxBytes) {
+        WebSocketProperties.Batch config = new WebSocketProperties.Batch();
+        config.setWindowMillis(windowMillis);
+        config.setMaxBytes(maxBytes);
+        return new RoomBatcher("r1", config, scheduler, (roomID, frame) -> frames.add(frame));
+    }
+}
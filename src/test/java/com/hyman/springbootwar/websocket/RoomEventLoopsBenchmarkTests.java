@@ -0,0 +1,79 @@
+package com.hyman.springbootwar.websocket;
+
+import lombok.extern.slf4j.Slf4j;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 房间事件循环的吞吐随循环数的变化：64 个房间，每个任务模拟一次约 2 微秒的房间内处理，循环数从 1 增加到 CPU 核数。
+ *
+ * 结果与机器的核数、负载相关，默认跳过，加 -Dws.benchmark=true 运行：
+ * mvn test -Dtest=RoomEventLoopsBenchmarkTests -Dws.benchmark=true
+ */
+@Slf4j
+public class RoomEventLoopsBenchmarkTests {
+
+    private static final int ROOMS = 64;
+    private static final int TASKS_PER_ROOM = 5_000;
+    private static final long WORK_NANOS = 2_000;
+
+    @BeforeClass
+    public static void enabled() {
+        Assume.assumeTrue("加 -Dws.benchmark=true 运行", Boolean.getBoolean("ws.benchmark"));
+    }
+
+    @Test
+    public void throughputByLoopCount() throws Exception {
+        int cores = Runtime.getRuntime().availableProcessors();
+        double single = 0;
+        double best = 0;
+        for (int loopCount = 1; loopCount <= cores; loopCount *= 2) {
+            // 预热一轮
+            run(loopCount);
+            double perSecond = run(loopCount);
+            log.info("loops={} {} tasks/s", loopCount, (long) perSecond);
+            if (loopCount == 1) {
+                single = perSecond;
+            }
+            best = Math.max(best, perSecond);
+        }
+        // 至少 4 核时多个循环应当明显快于单个循环
+        if (cores >= 4) {
+            Assert.assertTrue("best " + (long) best + " vs single " + (long) single, best > single * 1.5);
+        }
+    }
+
+    private double run(int loopCount) throws InterruptedException {
+        WebSocketProperties.Actor config = new WebSocketProperties.Actor();
+        config.setEnabled(true);
+        config.setLoops(loopCount);
+        config.setRebalanceMillis(3_600_000);
+        RoomEventLoops loops = new RoomEventLoops(config);
+        try {
+            CountDownLatch done = new CountDownLatch(ROOMS * TASKS_PER_ROOM);
+            Runnable task = () -> {
+                long end = System.nanoTime() + WORK_NANOS;
+                while (System.nanoTime() < end) {
+                    // 模拟房间内的处理
+                }
+                done.countDown();
+            };
+            long begin = System.nanoTime();
+            for (int i = 0; i < TASKS_PER_ROOM; i++) {
+                for (int r = 0; r < ROOMS; r++) {
+                    loops.execute("bench-" + r, task);
+                }
+            }
+            Assert.assertTrue(done.await(120, TimeUnit.SECONDS));
+            long nanos = System.nanoTime() - begin;
+            return ROOMS * TASKS_PER_ROOM * 1e9 / nanos;
+        } finally {
+            loops.shutdown();
+        }
+    }
+}
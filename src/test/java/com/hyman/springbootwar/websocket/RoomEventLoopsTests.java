@@ -0,0 +1,192 @@
+package com.hyman.springbootwar.websocket;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 房间事件循环：同一房间的任务按提交顺序、一次只在一个线程上执行，均衡线程同时清理空闲 RoomActor 时也不会出现两个 RoomActor
+ * 同时执行同一个房间，任务也不会丢。
+ *
+ * rebalanceMillis 设得很大，由测试线程直接调用 rebalance()。
+ */
+public class RoomEventLoopsTests {
+
+    private RoomEventLoops loops;
+
+    @After
+    public void tearDown() {
+        if (loops != null) {
+            loops.shutdown();
+        }
+    }
+
+    @Test
+    public void perRoomOrderAcrossProducers() throws Exception {
+        loops = new RoomEventLoops(config(4));
+        int rooms = 32;
+        int producers = 4;
+        int perProducer = 2_000;
+        RoomProbe[] probes = new RoomProbe[rooms];
+        for (int i = 0; i < rooms; i++) {
+            probes[i] = new RoomProbe(producers);
+        }
+
+        runProducers(producers, perProducer, rooms, probes, null);
+
+        for (RoomProbe probe : probes) {
+            Assert.assertFalse(probe.overlapped.get());
+            Assert.assertFalse(probe.outOfOrder.get());
+            Assert.assertEquals(producers * perProducer, probe.executed.get());
+        }
+    }
+
+    @Test
+    public void retireRacingWithExecute() throws Exception {
+        WebSocketProperties.Actor config = config(4);
+        config.setDrainBatch(1);
+        loops = new RoomEventLoops(config);
+        int rooms = 8;
+        int producers = 2;
+        int perProducer = 20_000;
+        RoomProbe[] probes = new RoomProbe[rooms];
+        for (int i = 0; i < rooms; i++) {
+            probes[i] = new RoomProbe(producers);
+        }
+
+        // 均衡线程不停地清理空闲的 RoomActor，生产者时断时续地提交，让清理与提交交错
+        AtomicBoolean running = new AtomicBoolean(true);
+        Thread rebalancer = new Thread(() -> {
+            while (running.get()) {
+                loops.rebalance();
+            }
+        });
+        rebalancer.start();
+        try {
+            runProducers(producers, perProducer, rooms, probes, () -> {
+                if (ThreadLocalRandom.current().nextInt(64) == 0) {
+                    Thread.yield();
+                }
+            });
+        } finally {
+            running.set(false);
+            rebalancer.join();
+        }
+
+        for (RoomProbe probe : probes) {
+            Assert.assertFalse(probe.overlapped.get());
+            Assert.assertFalse(probe.outOfOrder.get());
+            Assert.assertEquals(producers * perProducer, probe.executed.get());
+        }
+    }
+
+    @Test
+    public void idleActorIsRetiredAndRecreated() throws Exception {
+        loops = new RoomEventLoops(config(2));
+        await(loops, "idle-room");
+        Assert.assertEquals(1, loops.stats().get("actors"));
+
+        for (int i = 0; i < 4; i++) {
+            loops.rebalance();
+        }
+        Assert.assertEquals(0, loops.stats().get("actors"));
+
+        // 清理之后再提交，创建新的 RoomActor
+        await(loops, "idle-room");
+        Assert.assertEquals(1, loops.stats().get("actors"));
+    }
+
+    private void runProducers(int producers, int perProducer, int rooms, RoomProbe[] probes, Runnable pause)
+            throws InterruptedException {
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int p = 0; p < producers; p++) {
+            int producer = p;
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < perProducer; i++) {
+                    for (int r = 0; r < rooms; r++) {
+                        RoomProbe probe = probes[r];
+                        int sequence = i;
+                        loops.execute("room-" + r, () -> probe.run(producer, sequence));
+                    }
+                    if (pause != null) {
+                        pause.run();
+                    }
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        long deadline = System.currentTimeMillis() + 30_000;
+        for (RoomProbe probe : probes) {
+            while (probe.executed.get() < producers * perProducer && System.currentTimeMillis() < deadline) {
+                Thread.sleep(1);
+            }
+        }
+    }
+
+    private static void await(RoomEventLoops loops, String roomID) throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(1);
+        loops.execute(roomID, done::countDown);
+        Assert.assertTrue(done.await(5, TimeUnit.SECONDS));
+        // 等 run() 结束，scheduled 复位
+        Thread.sleep(20);
+    }
+
+    private static WebSocketProperties.Actor config(int loopCount) {
+        WebSocketProperties.Actor config = new WebSocketProperties.Actor();
+        config.setEnabled(true);
+        config.setLoops(loopCount);
+        config.setRebalanceMillis(3_600_000);
+        return config;
+    }
+
+    /**
+     * 记录一个房间的执行情况：是否有两个线程同时在执行，每个生产者的任务是否按提交顺序执行
+     */
+    private static final class RoomProbe {
+
+        final AtomicInteger active = new AtomicInteger();
+        final AtomicInteger executed = new AtomicInteger();
+        final AtomicBoolean overlapped = new AtomicBoolean();
+        final AtomicBoolean outOfOrder = new AtomicBoolean();
+        // 只在房间的任务中读写，房间的任务一次只有一个线程在执行；跨线程可见性由 RoomActor 的 scheduled 保证
+        final int[] last;
+
+        RoomProbe(int producers) {
+            last = new int[producers];
+            for (int i = 0; i < producers; i++) {
+                last[i] = -1;
+            }
+        }
+
+        void run(int producer, int sequence) {
+            if (active.incrementAndGet() > 1) {
+                overlapped.set(true);
+            }
+            if (sequence != last[producer] + 1) {
+                outOfOrder.set(true);
+            }
+            last[producer] = sequence;
+            executed.incrementAndGet();
+            active.decrementAndGet();
+        }
+    }
+}
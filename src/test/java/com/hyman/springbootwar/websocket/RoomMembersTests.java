@@ -0,0 +1,154 @@
+package com.hyman.springbootwar.websocket;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 房间成员存储：数组与 ConcurrentHashMap 之间的切换边界、替换与删除，以及多个线程在阈值附近同时加入、退出时不丢成员。
+ */
+public class RoomMembersTests {
+
+    @Test
+    public void switchesToMapAfterThreshold() {
+        RoomMembers members = new RoomMembers(4, 0);
+        for (int i = 0; i < 4; i++) {
+            Assert.assertNull(members.put("s" + i, new StubWebSocketSession("s" + i)));
+        }
+        // 正好 threshold 个时仍是数组
+        Assert.assertFalse(members.isHashed());
+        Assert.assertEquals(4, members.size());
+
+        // 已有的 session 替换不触发切换
+        StubWebSocketSession replacement = new StubWebSocketSession("s0");
+        Assert.assertNotNull(members.put("s0", replacement));
+        Assert.assertFalse(members.isHashed());
+        Assert.assertSame(replacement, members.get("s0"));
+
+        // 第 threshold + 1 个切换为 ConcurrentHashMap，已有成员全部带过去
+        members.put("s4", new StubWebSocketSession("s4"));
+        Assert.assertTrue(members.isHashed());
+        Assert.assertEquals(5, members.size());
+        for (int i = 0; i < 5; i++) {
+            Assert.assertNotNull(members.get("s" + i));
+        }
+        Assert.assertSame(replacement, members.get("s0"));
+
+        // 切换之后人数减少也不换回
+        for (int i = 0; i < 5; i++) {
+            Assert.assertNotNull(members.remove("s" + i));
+        }
+        Assert.assertTrue(members.isHashed());
+        Assert.assertTrue(members.isEmpty());
+    }
+
+    @Test
+    public void expectedSizeAboveThresholdStartsHashed() {
+        Assert.assertTrue(new RoomMembers(4, 5).isHashed());
+        Assert.assertFalse(new RoomMembers(4, 4).isHashed());
+        Assert.assertFalse(new RoomMembers().isHashed());
+    }
+
+    @Test
+    public void removeKeepsOrderOfOthers() {
+        RoomMembers members = new RoomMembers(8, 0);
+        List<StubWebSocketSession> sessions = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            StubWebSocketSession session = new StubWebSocketSession("s" + i);
+            sessions.add(session);
+            members.put("s" + i, session);
+        }
+        Assert.assertSame(sessions.get(1), members.remove("s1"));
+        Assert.assertNull(members.remove("s1"));
+        Assert.assertNull(members.remove("missing"));
+        Assert.assertNull(members.get("s1"));
+
+        List<Object> values = new ArrayList<>(members.values());
+        Assert.assertEquals(3, values.size());
+        Assert.assertSame(sessions.get(0), values.get(0));
+        Assert.assertSame(sessions.get(2), values.get(1));
+        Assert.assertSame(sessions.get(3), values.get(2));
+
+        members.remove("s0");
+        members.remove("s2");
+        members.remove("s3");
+        Assert.assertTrue(members.isEmpty());
+        Assert.assertTrue(members.values().isEmpty());
+    }
+
+    @Test
+    public void valuesIsSnapshotForArray() {
+        RoomMembers members = new RoomMembers(8, 0);
+        members.put("s0", new StubWebSocketSession("s0"));
+        Collection<?> values = members.values();
+        members.put("s1", new StubWebSocketSession("s1"));
+        Assert.assertEquals(1, values.size());
+        Assert.assertEquals(2, members.values().size());
+    }
+
+    @Test
+    public void concurrentPutRemoveAcrossThreshold() throws Exception {
+        for (int round = 0; round < 200; round++) {
+            RoomMembers members = new RoomMembers(RoomMembers.DEFAULT_THRESHOLD, 0);
+            // 常驻成员正好在阈值附近，其他线程同时加入、退出，切换可能发生在任意一次写入上
+            int resident = RoomMembers.DEFAULT_THRESHOLD - 2;
+            for (int i = 0; i < resident; i++) {
+                members.put("resident" + i, new StubWebSocketSession("resident" + i));
+            }
+            int threads = 4;
+            int perThread = 8;
+            CountDownLatch start = new CountDownLatch(1);
+            AtomicBoolean lost = new AtomicBoolean();
+            List<Thread> workers = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int worker = t;
+                Thread thread = new Thread(() -> {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int i = 0; i < perThread; i++) {
+                        String id = "w" + worker + "-" + i;
+                        members.put(id, new StubWebSocketSession(id));
+                        if (members.get(id) == null) {
+                            lost.set(true);
+                        }
+                        // 偶数的留下，奇数的退出
+                        if (i % 2 == 1 && members.remove(id) == null) {
+                            lost.set(true);
+                        }
+                    }
+                });
+                thread.start();
+                workers.add(thread);
+            }
+            start.countDown();
+            for (Thread thread : workers) {
+                thread.join();
+            }
+
+            Assert.assertFalse(lost.get());
+            int expected = resident + threads * perThread / 2;
+            Assert.assertEquals(expected, members.size());
+            Assert.assertTrue(members.isHashed());
+            Set<String> ids = new HashSet<>();
+            for (Object session : members.values()) {
+                ids.add(((StubWebSocketSession) session).getId());
+            }
+            Assert.assertEquals(expected, ids.size());
+            for (int t = 0; t < threads; t++) {
+                for (int i = 0; i < perThread; i++) {
+                    Assert.assertEquals(i % 2 == 0, members.get("w" + t + "-" + i) != null);
+                }
+            }
+        }
+    }
+}
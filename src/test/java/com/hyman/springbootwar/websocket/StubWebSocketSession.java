@@ -0,0 +1,213 @@
+package com.hyman.springbootwar.websocket;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketExtension;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.security.Principal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 测试用的 WebSocketSession，不建立真实连接，只记录发送的消息数与关闭状态。
+ * sendDelayMillis 大于 0 时模拟网络很慢的客户端。
+ *
+ * 需要检查顺序时打开 recording 记录每条消息；sendGate 让写出停在 sendMessage 里，直到测试放行；sendFailure 让发送抛出异常。
+ * 写出过程中被关闭会记下来（isClosedWhileWriting），用来检查写和关闭没有并发访问同一个连接。
+ */
+public class StubWebSocketSession implements WebSocketSession {
+
+    private final String id;
+    private final Map<String, Object> attributes = new ConcurrentHashMap<>();
+    private final AtomicLong sentCount = new AtomicLong();
+    private volatile long sendDelayMillis;
+    private volatile boolean open = true;
+    private volatile CloseStatus closeStatus;
+    private volatile WebSocketMessage<?> lastMessage;
+    private volatile List<WebSocketMessage<?>> messages;
+    private volatile CountDownLatch sendGate;
+    private volatile RuntimeException sendFailure;
+    private final AtomicInteger writing = new AtomicInteger();
+    private volatile boolean closedWhileWriting;
+
+    public StubWebSocketSession(String id) {
+        this.id = id;
+    }
+
+    public long getSentCount() {
+        return sentCount.get();
+    }
+
+    public WebSocketMessage<?> getLastMessage() {
+        return lastMessage;
+    }
+
+    public CloseStatus getCloseStatus() {
+        return closeStatus;
+    }
+
+    public void setSendDelayMillis(long sendDelayMillis) {
+        this.sendDelayMillis = sendDelayMillis;
+    }
+
+    public StubWebSocketSession setRecording(boolean recording) {
+        this.messages = recording ? Collections.synchronizedList(new ArrayList<>()) : null;
+        return this;
+    }
+
+    /**
+     * 记录下来的消息，没有打开 recording 时为空
+     */
+    public List<WebSocketMessage<?>> getMessages() {
+        List<WebSocketMessage<?>> current = messages;
+        if (current == null) {
+            return Collections.emptyList();
+        }
+        synchronized (current) {
+            return new ArrayList<>(current);
+        }
+    }
+
+    public void setSendGate(CountDownLatch sendGate) {
+        this.sendGate = sendGate;
+    }
+
+    public void setSendFailure(RuntimeException sendFailure) {
+        this.sendFailure = sendFailure;
+    }
+
+    public boolean isClosedWhileWriting() {
+        return closedWhileWriting;
+    }
+
+    @Override
+    public String getId() {
+        return id;
+    }
+
+    @Override
+    public URI getUri() {
+        return URI.create("ws://localhost/websocket?token=" + id);
+    }
+
+    @Override
+    public HttpHeaders getHandshakeHeaders() {
+        return new HttpHeaders();
+    }
+
+    @Override
+    public Map<String, Object> getAttributes() {
+        return attributes;
+    }
+
+    @Override
+    public Principal getPrincipal() {
+        return null;
+    }
+
+    @Override
+    public InetSocketAddress getLocalAddress() {
+        return null;
+    }
+
+    @Override
+    public InetSocketAddress getRemoteAddress() {
+        return null;
+    }
+
+    @Override
+    public String getAcceptedProtocol() {
+        return null;
+    }
+
+    @Override
+    public void setTextMessageSizeLimit(int messageSizeLimit) {
+    }
+
+    @Override
+    public int getTextMessageSizeLimit() {
+        return Integer.MAX_VALUE;
+    }
+
+    @Override
+    public void setBinaryMessageSizeLimit(int messageSizeLimit) {
+    }
+
+    @Override
+    public int getBinaryMessageSizeLimit() {
+        return Integer.MAX_VALUE;
+    }
+
+    @Override
+    public List<WebSocketExtension> getExtensions() {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public void sendMessage(WebSocketMessage<?> message) throws IOException {
+        if (!open) {
+            throw new IOException("session " + id + " 已关闭");
+        }
+        RuntimeException failure = sendFailure;
+        if (failure != null) {
+            throw failure;
+        }
+        writing.incrementAndGet();
+        try {
+            CountDownLatch gate = sendGate;
+            if (gate != null) {
+                try {
+                    gate.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            if (sendDelayMillis > 0) {
+                try {
+                    Thread.sleep(sendDelayMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            lastMessage = message;
+            List<WebSocketMessage<?>> current = messages;
+            if (current != null) {
+                current.add(message);
+            }
+            sentCount.incrementAndGet();
+        } finally {
+            writing.decrementAndGet();
+        }
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    @Override
+    public void close() throws IOException {
+        close(CloseStatus.NORMAL);
+    }
+
+    @Override
+    public void close(CloseStatus status) throws IOException {
+        if (writing.get() > 0) {
+            closedWhileWriting = true;
+        }
+        open = false;
+        closeStatus = status;
+    }
+}
@@ -0,0 +1,81 @@
+package com.hyman.springbootwar.websocket;
+
+import lombok.extern.slf4j.Slf4j;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * 群发分配量统计：房间人数从 10 增长到 10k，对比“每个接收者 new 一个 TextMessage”与“编码一次共用一个帧”每次群发在
+ * 当前线程上分配的字节数。
+ *
+ * 这里用的是 StubWebSocketSession，统计的只是应用这一侧的分配；真实连接上容器仍会为每个接收者各编码一次，见
+ * TalkRoom.batchSend(TextMessage)。
+ *
+ * 每种人数各跑多轮群发，默认跳过，加 -Dws.benchmark=true 运行：
+ * mvn test -Dtest=TalkRoomAllocationBenchmarkTests -Dws.benchmark=true
+ */
+@Slf4j
+public class TalkRoomAllocationBenchmarkTests {
+
+    private static final int[] ROOM_SIZES = {10, 100, 1_000, 10_000};
+    private static final int ROUNDS = 50;
+
+    private final com.sun.management.ThreadMXBean threadBean =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    @BeforeClass
+    public static void enabled() {
+        Assume.assumeTrue("加 -Dws.benchmark=true 运行", Boolean.getBoolean("ws.benchmark"));
+    }
+
+    @Test
+    public void bytesAllocatedPerBroadcast() throws Exception {
+        String message = "{\"type\":\"score\",\"liveId\":\"123\",\"home\":2,\"away\":1,\"text\":\"进球了\"}";
+        for (int size : ROOM_SIZES) {
+            TalkRoom room = new TalkRoom(size);
+            for (int i = 0; i < size; i++) {
+                room.add("s" + i, new StubWebSocketSession("s" + i));
+            }
+
+            // 预热
+            perRecipient(room, message);
+            room.batchSend(message);
+
+            long perRecipient = measure(() -> perRecipient(room, message));
+            long shared = measure(() -> room.batchSend(message));
+            log.info("room size={} per-recipient frame {} bytes/broadcast, shared frame {} bytes/broadcast",
+                    size, perRecipient, shared);
+            if (size >= 1_000) {
+                Assert.assertTrue(shared < perRecipient);
+            }
+        }
+    }
+
+    /**
+     * 之前的写法：每个接收者都 new 一个 TextMessage
+     */
+    private void perRecipient(TalkRoom room, String message) throws Exception {
+        for (WebSocketSession session : room.getSessions()) {
+            session.sendMessage(new TextMessage(message.getBytes("UTF-8")));
+        }
+    }
+
+    private long measure(Broadcast broadcast) throws Exception {
+        long threadId = Thread.currentThread().getId();
+        long before = threadBean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < ROUNDS; i++) {
+            broadcast.run();
+        }
+        return (threadBean.getThreadAllocatedBytes(threadId) - before) / ROUNDS;
+    }
+
+    private interface Broadcast {
+        void run() throws Exception;
+    }
+}
@@ -0,0 +1,102 @@
+package com.hyman.springbootwar.websocket;
+
+import lombok.extern.slf4j.Slf4j;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 房间内存占用：分别在 2、20、200、20k 人的房间规模下，对比之前“每个房间一个容量一万的 ConcurrentHashMap”与现在的
+ * RoomMembers，输出每个房间的成员存储占用的字节数（GC 之后的堆增量 / 房间数）。
+ *
+ * session 与 sessionId 事先创建好并在房间之间共用，统计的只是成员存储本身。
+ *
+ * 耗时较长且依赖 GC，默认跳过，加 -Dws.benchmark=true 运行：
+ * mvn test -Dtest=TalkRoomMemoryBenchmarkTests -Dws.benchmark=true
+ */
+@Slf4j
+public class TalkRoomMemoryBenchmarkTests {
+
+    private static final int[] ROOM_SIZES = {2, 20, 200, 20_000};
+
+    // 每种规模一共放入约 20 万个成员（受 MAX_ROOMS 限制），保证小房间的统计量足够大
+    private static final int TOTAL_MEMBERS = 200_000;
+    // 旧结构每个房间光空表就有几十 KB，房间数设个上限，避免压测本身把堆撑爆
+    private static final int MAX_ROOMS = 2_000;
+
+    private final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+
+    @BeforeClass
+    public static void enabled() {
+        Assume.assumeTrue("加 -Dws.benchmark=true 运行", Boolean.getBoolean("ws.benchmark"));
+    }
+
+    @Test
+    public void bytesPerRoom() throws Exception {
+        List<String> ids = new ArrayList<>();
+        List<WebSocketSession> sessions = new ArrayList<>();
+        for (int i = 0; i < ROOM_SIZES[ROOM_SIZES.length - 1]; i++) {
+            ids.add("s" + i);
+            sessions.add(new StubWebSocketSession("s" + i));
+        }
+
+        for (int size : ROOM_SIZES) {
+            int rooms = Math.max(2, Math.min(MAX_ROOMS, TOTAL_MEMBERS / size));
+
+            long legacy = measure(rooms, () -> {
+                ConcurrentHashMap<String, WebSocketSession> map = new ConcurrentHashMap<>(10000);
+                for (int i = 0; i < size; i++) {
+                    map.put(ids.get(i), sessions.get(i));
+                }
+                return map;
+            });
+            long compact = measure(rooms, () -> {
+                RoomMembers members = new RoomMembers();
+                for (int i = 0; i < size; i++) {
+                    members.put(ids.get(i), sessions.get(i));
+                }
+                return members;
+            });
+
+            log.info("room size={} rooms={} ConcurrentHashMap(10000) {} bytes/room, RoomMembers {} bytes/room",
+                    size, rooms, legacy, compact);
+            if (size <= 20) {
+                Assert.assertTrue(compact < legacy);
+            }
+        }
+    }
+
+    /**
+     * 创建 rooms 个房间并保持引用，返回平均每个房间增加的堆内存
+     */
+    private long measure(int rooms, RoomFactory factory) throws Exception {
+        List<Object> retained = new ArrayList<>(rooms);
+        long before = usedHeap();
+        for (int r = 0; r < rooms; r++) {
+            retained.add(factory.create());
+        }
+        long after = usedHeap();
+        Assert.assertEquals(rooms, retained.size());
+        return Math.max(0, after - before) / rooms;
+    }
+
+    private long usedHeap() throws InterruptedException {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(100);
+        }
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+
+    private interface RoomFactory {
+        Object create();
+    }
+}
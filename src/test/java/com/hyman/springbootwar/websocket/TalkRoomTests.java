@@ -0,0 +1,113 @@
+package com.hyman.springbootwar.websocket;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.web.socket.WebSocketMessage;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * TalkRoom 的群发与单发，以及加入房间时的补发
+ */
+public class TalkRoomTests {
+
+    @Test
+    public void batchSendSurvivesFailingSession() {
+        TalkRoom room = new TalkRoom();
+        StubWebSocketSession broken = new StubWebSocketSession("broken");
+        broken.setSendFailure(new IllegalStateException("The remote endpoint was in state [TEXT_PARTIAL_WRITING]"));
+        room.add("broken", broken);
+        StubWebSocketSession[] healthy = new StubWebSocketSession[10];
+        for (int i = 0; i < healthy.length; i++) {
+            healthy[i] = new StubWebSocketSession("s" + i);
+            room.add("s" + i, healthy[i]);
+        }
+
+        room.batchSend(TalkRoom.encode("hello"));
+
+        for (StubWebSocketSession session : healthy) {
+            Assert.assertEquals(1, session.getSentCount());
+        }
+        Assert.assertEquals(0, broken.getSentCount());
+        Assert.assertEquals(healthy.length, room.getStats().getMessagesOut());
+    }
+
+    @Test
+    public void sendToReportsRuntimeFailure() {
+        TalkRoom room = new TalkRoom();
+        StubWebSocketSession broken = new StubWebSocketSession("broken");
+        broken.setSendFailure(new IllegalStateException("closed"));
+        room.add("broken", broken);
+        Assert.assertFalse(room.sendTo("broken", TalkRoom.encode("hello")));
+        Assert.assertFalse(room.sendTo("missing", TalkRoom.encode("hello")));
+    }
+
+    @Test
+    public void joinReplaysMissedFramesInOrder() {
+        TalkRoom room = new TalkRoom(new ReplayBuffer(replayConfig()));
+        StubWebSocketSession first = new StubWebSocketSession("s1").setRecording(true);
+        room.join("s1", first, null);
+        room.broadcast("a");
+        room.broadcast("b");
+        room.broadcast("c");
+        String afterA = payloads(first).get(0).substring(0, payloads(first).get(0).indexOf('|'));
+
+        // 断线重连：只补发 a 之后的消息，之后的实时消息排在补发之后
+        StubWebSocketSession rejoined = new StubWebSocketSession("s2").setRecording(true);
+        room.join("s2", rejoined, afterA);
+        room.broadcast("d");
+        Assert.assertEquals(Arrays.asList("b", "c", "d"), bodies(rejoined));
+    }
+
+    @Test
+    public void joinWithOtherEpochGetsReset() {
+        TalkRoom before = new TalkRoom(new ReplayBuffer(replayConfig()));
+        StubWebSocketSession session = new StubWebSocketSession("s1").setRecording(true);
+        before.join("s1", session, null);
+        before.broadcast("a");
+        String lastSeq = payloads(session).get(0).substring(0, payloads(session).get(0).indexOf('|'));
+
+        // 房间被删除后重新创建，旧的序号不能用来补发
+        TalkRoom recreated = new TalkRoom(new ReplayBuffer(replayConfig()));
+        recreated.broadcast("x");
+        recreated.broadcast("y");
+        StubWebSocketSession rejoined = new StubWebSocketSession("s1").setRecording(true);
+        recreated.join("s1", rejoined, lastSeq);
+        Assert.assertEquals(Arrays.asList(ReplayBuffer.RESET_FRAME), payloads(rejoined));
+    }
+
+    @Test
+    public void replayFailureDoesNotBreakJoin() {
+        TalkRoom room = new TalkRoom(new ReplayBuffer(replayConfig()));
+        room.broadcast("a");
+        StubWebSocketSession broken = new StubWebSocketSession("broken");
+        broken.setSendFailure(new IllegalStateException("closed"));
+        room.join("broken", broken, "0.0");
+        Assert.assertSame(broken, room.get("broken"));
+    }
+
+    private static WebSocketProperties.Replay replayConfig() {
+        WebSocketProperties.Replay config = new WebSocketProperties.Replay();
+        config.setEnabled(true);
+        config.setCapacity(16);
+        return config;
+    }
+
+    private static List<String> payloads(StubWebSocketSession session) {
+        List<String> result = new ArrayList<>();
+        for (WebSocketMessage<?> message : session.getMessages()) {
+            result.add(String.valueOf(message.getPayload()));
+        }
+        return result;
+    }
+
+    private static List<String> bodies(StubWebSocketSession session) {
+        List<String> result = new ArrayList<>();
+        for (String payload : payloads(session)) {
+            result.add(payload.substring(payload.indexOf('|') + 1));
+        }
+        return result;
+    }
+}
@@ -0,0 +1,105 @@
+package com.hyman.springbootwar.websocket;
+
+import lombok.extern.slf4j.Slf4j;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 房间池并发压测：多个线程同时把 50k 个 session 加入 1k 个房间，再同时全部退出，模拟发版、网络抖动时的重连风暴。
+ * 分别用 1、2、4 ... 个线程跑，观察吞吐是否随核数增长（之前 creatRoom/deleteRoom 是类级别 synchronized，线程越多越慢）。
+ *
+ * 5 万个 session 按线程数跑多轮，耗时较长，默认跳过，加 -Dws.benchmark=true 运行：
+ * mvn test -Dtest=TalkerRoomManagerBenchmarkTests -Dws.benchmark=true
+ */
+@Slf4j
+public class TalkerRoomManagerBenchmarkTests {
+
+    private static final int SESSIONS = 50_000;
+    private static final int ROOMS = 1_000;
+
+    @BeforeClass
+    public static void enabled() {
+        Assume.assumeTrue("加 -Dws.benchmark=true 运行", Boolean.getBoolean("ws.benchmark"));
+    }
+
+    @Test
+    public void connectAndDisconnectStorm() throws Exception {
+        int cores = Runtime.getRuntime().availableProcessors();
+        for (int threads = 1; threads <= cores * 2; threads *= 2) {
+            runRound(threads);
+        }
+    }
+
+    private void runRound(int threads) throws Exception {
+        List<Talker> talkers = new ArrayList<>(SESSIONS);
+        List<StubWebSocketSession> sessions = new ArrayList<>(SESSIONS);
+        for (int i = 0; i < SESSIONS; i++) {
+            Talker talker = new Talker();
+            talker.setSessionID("s" + i);
+            talker.setRoomID("bench-room-" + (i % ROOMS));
+            talker.setLiveid(talker.getRoomID());
+            talkers.add(talker);
+            sessions.add(new StubWebSocketSession(talker.getSessionID()));
+        }
+        int before = TalkerRoomManager.getOnlineCount();
+
+        long connectNanos = runConcurrently(threads, i -> TalkerRoomManager.creatRoom(sessions.get(i), talkers.get(i)));
+        Assert.assertEquals(before + SESSIONS, TalkerRoomManager.getOnlineCount());
+        for (int r = 0; r < ROOMS; r++) {
+            Assert.assertEquals(SESSIONS / ROOMS, TalkerRoomManager.getRoom("bench-room-" + r).size());
+        }
+
+        long disconnectNanos = runConcurrently(threads, i -> {
+            Talker talker = talkers.get(i);
+            TalkerRoomManager.remove(talker);
+            TalkerRoomManager.deleteRoom(talker.getRoomID());
+        });
+        Assert.assertEquals(before, TalkerRoomManager.getOnlineCount());
+        for (int r = 0; r < ROOMS; r++) {
+            Assert.assertNull(TalkerRoomManager.getRoom("bench-room-" + r));
+        }
+
+        log.info("threads={} connect {} ops/s, disconnect {} ops/s", threads,
+                SESSIONS * 1_000_000_000L / connectNanos, SESSIONS * 1_000_000_000L / disconnectNanos);
+    }
+
+    private long runConcurrently(int threads, IndexTask task) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            final int offset = t;
+            pool.execute(() -> {
+                try {
+                    start.await();
+                    for (int i = offset; i < SESSIONS; i += threads) {
+                        task.run(i);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        Assert.assertTrue(done.await(2, TimeUnit.MINUTES));
+        long elapsed = System.nanoTime() - begin;
+        pool.shutdown();
+        return elapsed;
+    }
+
+    private interface IndexTask {
+        void run(int index);
+    }
+}
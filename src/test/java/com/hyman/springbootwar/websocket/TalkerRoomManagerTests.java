@@ -0,0 +1,323 @@
+package com.hyman.springbootwar.websocket;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.web.socket.WebSocketMessage;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * 集群模式下的 TalkerRoomManager：用进程内的 pub/sub 替身当作 redis，检查房间频道在房间创建、删除时订阅与取消订阅，并且订阅
+ * 发生在 ROOM_POOL.compute 之外（订阅时房间已经可见）；以及批量推送的顺序、投递数和转发。
+ */
+public class TalkerRoomManagerTests {
+
+    private InMemoryRoomBus redis;
+    private List<String> subscribedWhileRoomMissing;
+    private ClusterBroadcaster otherNode;
+    private RecordingDelivery otherDelivery;
+
+    @Before
+    public void setUp() {
+        redis = new InMemoryRoomBus();
+        subscribedWhileRoomMissing = new CopyOnWriteArrayList<>();
+        RoomBus bus = redis.connect();
+        TalkerRoomManager.startCluster(new RoomBus() {
+
+            @Override
+            public void publish(String channel, String body) {
+                bus.publish(channel, body);
+            }
+
+            @Override
+            public void subscribe(String channel, Consumer<String> listener) {
+                // compute 还没返回时新房间对 get 不可见
+                if (channel.startsWith("ws:room:") && TalkerRoomManager.getRoom(channel.substring("ws:room:".length())) == null) {
+                    subscribedWhileRoomMissing.add(channel);
+                }
+                bus.subscribe(channel, listener);
+            }
+
+            @Override
+            public void unsubscribe(String channel) {
+                bus.unsubscribe(channel);
+            }
+        }, "A", "ws:");
+        otherDelivery = new RecordingDelivery();
+        otherNode = new ClusterBroadcaster(redis.connect(), "B", "ws:", otherDelivery);
+        otherNode.start();
+    }
+
+    @After
+    public void tearDown() {
+        otherNode.stop();
+        TalkerRoomManager.stopCluster();
+    }
+
+    @Test
+    public void subscribesOutsideComputeAndUnsubscribesWhenEmpty() throws Exception {
+        Talker first = talker("cluster-r1", "s1");
+        Talker second = talker("cluster-r1", "s2");
+        StubWebSocketSession firstSession = new StubWebSocketSession("s1");
+        TalkerRoomManager.creatRoom(firstSession, first);
+        TalkerRoomManager.creatRoom(new StubWebSocketSession("s2"), second);
+
+        Assert.assertEquals(1, redis.subscriberCount("ws:room:cluster-r1"));
+        Assert.assertTrue(subscribedWhileRoomMissing.isEmpty());
+
+        // 第一个人退出，房间还在，不取消订阅
+        TalkerRoomManager.remove(first);
+        TalkerRoomManager.deleteRoom("cluster-r1");
+        Assert.assertEquals(1, redis.subscriberCount("ws:room:cluster-r1"));
+
+        TalkerRoomManager.remove(second);
+        TalkerRoomManager.deleteRoom("cluster-r1");
+        Assert.assertNull(TalkerRoomManager.getRoom("cluster-r1"));
+        Assert.assertEquals(0, redis.subscriberCount("ws:room:cluster-r1"));
+    }
+
+    @Test
+    public void otherNodeReachesLocalMember() throws Exception {
+        Talker talker = talker("cluster-r2", "s1");
+        StubWebSocketSession session = new StubWebSocketSession("s1").setRecording(true);
+        TalkerRoomManager.creatRoom(session, talker);
+        awaitSent(session, 1);
+
+        otherNode.publishToRoom("cluster-r2", "from B");
+        awaitSent(session, 2);
+        List<WebSocketMessage<?>> messages = session.getMessages();
+        Assert.assertEquals("from B", String.valueOf(messages.get(1).getPayload()));
+
+        TalkerRoomManager.remove(talker);
+        TalkerRoomManager.deleteRoom("cluster-r2");
+        Assert.assertEquals(0, redis.subscriberCount("ws:room:cluster-r2"));
+    }
+
+    @Test
+    public void stopUnsubscribesActiveRooms() {
+        Talker talker = talker("cluster-r3", "s1");
+        TalkerRoomManager.creatRoom(new StubWebSocketSession("s1"), talker);
+        Assert.assertEquals(1, redis.subscriberCount("ws:room:cluster-r3"));
+
+        TalkerRoomManager.stopCluster();
+        Assert.assertEquals(0, redis.subscriberCount("ws:room:cluster-r3"));
+
+        TalkerRoomManager.remove(talker);
+        TalkerRoomManager.deleteRoom("cluster-r3");
+    }
+
+    @Test
+    public void pushKeepsRequestOrderAndCountsDelivered() throws Exception {
+        Talker first = talker("push-r1", "s1");
+        Talker second = talker("push-r1", "s2");
+        StubWebSocketSession firstSession = new StubWebSocketSession("s1").setRecording(true);
+        StubWebSocketSession secondSession = new StubWebSocketSession("s2").setRecording(true);
+        TalkerRoomManager.creatRoom(firstSession, first);
+        TalkerRoomManager.creatRoom(secondSession, second);
+        awaitSent(firstSession, 1);
+        awaitSent(secondSession, 1);
+
+        List<PushResult> results = TalkerRoomManager.push(Arrays.asList(
+                target("push-r1", null, "a"),
+                target("push-r1", "s1", "b"),
+                target("push-r1", null, "c"),
+                target("push-missing", null, "d"),
+                target("", null, "e")));
+
+        awaitSent(firstSession, 4);
+        awaitSent(secondSession, 3);
+        // 单发的 b 在两条群发之间，与请求中的顺序一致
+        Assert.assertEquals(Arrays.asList("a", "b", "c"), payloads(firstSession).subList(1, 4));
+        Assert.assertEquals(Arrays.asList("a", "c"), payloads(secondSession).subList(1, 3));
+
+        Assert.assertEquals(2, results.get(0).getDelivered());
+        Assert.assertEquals(1, results.get(1).getDelivered());
+        Assert.assertEquals(2, results.get(2).getDelivered());
+        Assert.assertEquals(0, results.get(3).getDelivered());
+        Assert.assertNotNull(results.get(4).getError());
+
+        TalkerRoomManager.remove(first);
+        TalkerRoomManager.remove(second);
+        TalkerRoomManager.deleteRoom("push-r1");
+    }
+
+    @Test
+    public void pushPublishesOncePerRoomForOtherNodes() throws Exception {
+        Talker local = talker("push-r2", "s1");
+        StubWebSocketSession localSession = new StubWebSocketSession("s1").setRecording(true);
+        TalkerRoomManager.creatRoom(localSession, local);
+        awaitSent(localSession, 1);
+        otherNode.roomActivated("push-r2");
+        long published = redis.getPublishedCount();
+
+        List<PushResult> results = TalkerRoomManager.push(Arrays.asList(
+                target("push-r2", null, "a"),
+                target("push-r2", "s1", "b"),
+                target("push-r2", "remote", "c"),
+                target("push-r2", null, "d")));
+
+        // 同一房间需要其他节点投递的只发布一次，本节点上的 session 不转发
+        Assert.assertEquals(published + 1, redis.getPublishedCount());
+        Assert.assertEquals(Arrays.asList("room:push-r2:a", "session:push-r2:remote:c", "room:push-r2:d"), otherDelivery.received);
+        Assert.assertTrue(results.get(0).isForwarded());
+        Assert.assertFalse(results.get(1).isForwarded());
+        Assert.assertTrue(results.get(2).isForwarded());
+        Assert.assertEquals(0, results.get(2).getDelivered());
+        Assert.assertEquals(1, results.get(1).getDelivered());
+
+        awaitSent(localSession, 4);
+        Assert.assertEquals(Arrays.asList("a", "b", "d"), payloads(localSession).subList(1, 4));
+
+        otherNode.roomDeactivated("push-r2");
+        TalkerRoomManager.remove(local);
+        TalkerRoomManager.deleteRoom("push-r2");
+    }
+
+    @Test
+    public void sendRightAfterConnectReachesMemberWithActors() throws Exception {
+        WebSocketProperties.Actor config = new WebSocketProperties.Actor();
+        config.setEnabled(true);
+        config.setLoops(2);
+        TalkerRoomManager.startActors(config);
+        try {
+            for (int i = 0; i < 50; i++) {
+                Talker talker = talker("actor-r" + i, "s" + i);
+                StubWebSocketSession session = new StubWebSocketSession("s" + i).setRecording(true);
+                TalkerRoomManager.creatRoom(session, talker);
+                // 加入房间在事件循环上执行，creatRoom 返回时必须已经加入，否则这条会当作不在本节点转发出去
+                Assert.assertNotNull(TalkerRoomManager.getSession(talker));
+                TalkerRoomManager.send(talker, "first");
+                awaitSent(session, 2);
+                Assert.assertTrue(payloads(session).get(1).contains("first"));
+
+                TalkerRoomManager.remove(talker);
+                TalkerRoomManager.deleteRoom(talker.getRoomID());
+            }
+        } finally {
+            TalkerRoomManager.stopActors();
+        }
+    }
+
+    @Test
+    public void slowSubscribeDoesNotBlockRoomLoop() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        RoomBus bus = redis.connect();
+        TalkerRoomManager.stopCluster();
+        TalkerRoomManager.startCluster(new RoomBus() {
+
+            @Override
+            public void publish(String channel, String body) {
+                bus.publish(channel, body);
+            }
+
+            @Override
+            public void subscribe(String channel, Consumer<String> listener) {
+                if (channel.equals("ws:room:slow-r1")) {
+                    // redis 往返很慢
+                    try {
+                        release.await(10, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                bus.subscribe(channel, listener);
+            }
+
+            @Override
+            public void unsubscribe(String channel) {
+                bus.unsubscribe(channel);
+            }
+        }, "A", "ws:");
+        WebSocketProperties.Actor config = new WebSocketProperties.Actor();
+        config.setEnabled(true);
+        config.setLoops(1);
+        TalkerRoomManager.startActors(config);
+        Talker slow = talker("slow-r1", "s1");
+        Talker fast = talker("slow-r2", "s2");
+        try {
+            // 只有一个事件循环，两个房间在同一个循环上
+            TalkerRoomManager.creatRoom(new StubWebSocketSession("s1"), slow);
+            StubWebSocketSession fastSession = new StubWebSocketSession("s2").setRecording(true);
+            long begin = System.nanoTime();
+            TalkerRoomManager.creatRoom(fastSession, fast);
+            TalkerRoomManager.send(fast, "first");
+            awaitSent(fastSession, 2);
+            Assert.assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin) < 5_000);
+            Assert.assertEquals(0, redis.subscriberCount("ws:room:slow-r1"));
+
+            release.countDown();
+            long deadline = System.currentTimeMillis() + 5000;
+            while (redis.subscriberCount("ws:room:slow-r1") == 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(1);
+            }
+            Assert.assertEquals(1, redis.subscriberCount("ws:room:slow-r1"));
+        } finally {
+            release.countDown();
+            TalkerRoomManager.remove(slow);
+            TalkerRoomManager.remove(fast);
+            TalkerRoomManager.deleteRoom("slow-r1");
+            TalkerRoomManager.deleteRoom("slow-r2");
+            TalkerRoomManager.stopActors();
+        }
+    }
+
+    private static PushTarget target(String room, String session, String payload) {
+        PushTarget target = new PushTarget();
+        target.setRoom(room);
+        target.setSession(session);
+        target.setPayload(payload);
+        return target;
+    }
+
+    private static List<String> payloads(StubWebSocketSession session) {
+        List<String> result = new ArrayList<>();
+        for (WebSocketMessage<?> message : session.getMessages()) {
+            result.add(String.valueOf(message.getPayload()));
+        }
+        return result;
+    }
+
+    private static Talker talker(String roomID, String sessionID) {
+        Talker talker = new Talker();
+        talker.setRoomID(roomID);
+        talker.setSessionID(sessionID);
+        talker.setLiveid(roomID);
+        return talker;
+    }
+
+    private static void awaitSent(StubWebSocketSession session, int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (session.getSentCount() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+        Assert.assertEquals(count, session.getSentCount());
+    }
+
+    private static class RecordingDelivery implements ClusterBroadcaster.LocalDelivery {
+
+        final List<String> received = new CopyOnWriteArrayList<>();
+
+        @Override
+        public void toRoom(String roomID, String message) {
+            received.add("room:" + roomID + ":" + message);
+        }
+
+        @Override
+        public void toSession(String roomID, String sessionID, String liveid, String message) {
+            received.add("session:" + roomID + ":" + sessionID + ":" + message);
+        }
+
+        @Override
+        public void toAll(String message) {
+            received.add("all:" + message);
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package com.hyman.springbootwar.websocket;
+
+import lombok.extern.slf4j.Slf4j;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * 主题订阅压测：10 万个 session，每个订阅 10 个主题，一共 100 万个订阅，其中 1000 个是 live.*.alerts、live.{id}.# 这样的通配符。
+ * 分别在 1 万（同样的通配符加上 9000 个精确订阅）和 100 万个订阅下测发布耗时，两者每次发布匹配到的订阅者数相近，耗时应该在
+ * 同一个量级（与订阅总数无关，比值不超过 MAX_COST_RATIO）；并抽样与逐个比对的结果核对投递数。
+ *
+ * 建 100 万个订阅需要几百 MB 堆、十几秒，默认跳过，加 -Dws.benchmark=true 运行：
+ * mvn test -Dtest=TopicRegistryBenchmarkTests -Dws.benchmark=true
+ */
+@Slf4j
+public class TopicRegistryBenchmarkTests {
+
+    private static final int SESSIONS = 100_000;
+    private static final int TOPICS_PER_SESSION = 10;
+    private static final int WILDCARDS = 1_000;
+    private static final int SMALL = 10_000;
+    private static final int LIVES = 50_000;
+    private static final String[] KINDS = {"score", "chat", "alerts", "gift"};
+    private static final int PUBLISHES = 100_000;
+    private static final int SAMPLES = 20;
+    // 100 万与 1 万个订阅下单次发布耗时之比的上限，留出缓存命中率下降的余量
+    private static final double MAX_COST_RATIO = 10;
+
+    @BeforeClass
+    public static void enabled() {
+        Assume.assumeTrue("加 -Dws.benchmark=true 运行", Boolean.getBoolean("ws.benchmark"));
+    }
+
+    @Test
+    public void publishWithOneMillionSubscriptions() {
+        Random random = new Random(42);
+        List<StubWebSocketSession> sessions = new ArrayList<>(SESSIONS);
+        for (int i = 0; i < SESSIONS; i++) {
+            sessions.add(new StubWebSocketSession("s" + i));
+        }
+        // 前 WILDCARDS 个是通配符，其余是精确主题，每个 session 一共 TOPICS_PER_SESSION 个
+        List<String[]> subscriptions = new ArrayList<>(SESSIONS * TOPICS_PER_SESSION);
+        for (int i = 0; i < SESSIONS * TOPICS_PER_SESSION; i++) {
+            String pattern = i >= WILDCARDS ? topic(random)
+                    : i % 2 == 0 ? "live.*." + KINDS[random.nextInt(KINDS.length)] : "live." + random.nextInt(LIVES) + ".#";
+            subscriptions.add(new String[]{pattern, sessions.get(i % SESSIONS).getId()});
+        }
+
+        TopicRegistry small = new TopicRegistry();
+        for (int i = 0; i < SMALL; i++) {
+            String[] subscription = subscriptions.get(i);
+            small.subscribe(subscription[0], subscription[1], sessions.get(index(subscription[1])));
+        }
+
+        TopicRegistry registry = new TopicRegistry();
+        long begin = System.nanoTime();
+        for (String[] subscription : subscriptions) {
+            Assert.assertTrue(registry.subscribe(subscription[0], subscription[1], sessions.get(index(subscription[1]))));
+        }
+        long subscribeNanos = System.nanoTime() - begin;
+        Assert.assertTrue(registry.getSubscriptionCount() > 900_000);
+
+        // 预热一轮，两边都在 JIT 编译之后计时
+        publishRound(small, new Random(3));
+        publishRound(registry, new Random(3));
+        long smallNanos = publishRound(small, new Random(7));
+        long largeNanos = publishRound(registry, new Random(7));
+        log.info("subscriptions={} patterns={} subscribe {} ns/op", registry.getSubscriptionCount(),
+                registry.getPatternCount(), subscribeNanos / subscriptions.size());
+        log.info("publish: {} subscriptions {} ns/op, {} subscriptions {} ns/op", SMALL, smallNanos / PUBLISHES,
+                registry.getSubscriptionCount(), largeNanos / PUBLISHES);
+        double ratio = (double) largeNanos / smallNanos;
+        Assert.assertTrue("publish cost ratio " + ratio, ratio < MAX_COST_RATIO);
+
+        // 抽样核对：逐个订阅匹配的结果（按 session 去重）应与发布的投递数一致
+        for (int i = 0; i < SAMPLES; i++) {
+            String topic = topic(random);
+            Set<String> expected = new HashSet<>();
+            for (String[] subscription : subscriptions) {
+                if (matches(subscription[0], topic)) {
+                    expected.add(subscription[1]);
+                }
+            }
+            Assert.assertEquals(topic, expected.size(), registry.publish(topic, "check"));
+        }
+
+        for (String[] subscription : subscriptions) {
+            registry.unsubscribe(subscription[0], subscription[1]);
+        }
+        Assert.assertEquals(0, registry.getSubscriptionCount());
+        Assert.assertEquals(0, registry.getPatternCount());
+    }
+
+    private long publishRound(TopicRegistry registry, Random random) {
+        long delivered = 0;
+        long begin = System.nanoTime();
+        for (int i = 0; i < PUBLISHES; i++) {
+            delivered += registry.publish(topic(random), "bench");
+        }
+        long nanos = System.nanoTime() - begin;
+        log.info("delivered {} messages", delivered);
+        return nanos;
+    }
+
+    private static String topic(Random random) {
+        return "live." + random.nextInt(LIVES) + "." + KINDS[random.nextInt(KINDS.length)];
+    }
+
+    private static int index(String sessionId) {
+        return Integer.parseInt(sessionId.substring(1));
+    }
+
+    /**
+     * 逐级比对，用来核对前缀树的结果
+     */
+    private static boolean matches(String pattern, String topic) {
+        String[] patterns = pattern.split("\\.");
+        String[] segments = topic.split("\\.");
+        for (int i = 0; i < patterns.length; i++) {
+            if (TopicRegistry.MULTI_WILDCARD.equals(patterns[i])) {
+                return true;
+            }
+            if (i >= segments.length
+                    || !(TopicRegistry.SINGLE_WILDCARD.equals(patterns[i]) || patterns[i].equals(segments[i]))) {
+                return false;
+            }
+        }
+        return patterns.length == segments.length;
+    }
+}
@@ -0,0 +1,101 @@
+package com.hyman.springbootwar.websocket;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * 主题分级与通配符：split 的边界情况，以及 * 只匹配一级、# 匹配零级或多级
+ */
+public class TopicRegistryTests {
+
+    @Test
+    public void splitSegments() {
+        Assert.assertArrayEquals(new String[]{"live", "1", "score"}, TopicRegistry.split("live.1.score", false));
+        Assert.assertArrayEquals(new String[]{"live"}, TopicRegistry.split("live", false));
+        Assert.assertArrayEquals(new String[]{"live", "*", "#"}, TopicRegistry.split("live.*.#", true));
+        Assert.assertArrayEquals(new String[]{"#"}, TopicRegistry.split("#", true));
+    }
+
+    @Test
+    public void multiWildcardMustBeLast() {
+        Assert.assertNull(TopicRegistry.split("live.#.score", true));
+        Assert.assertNull(TopicRegistry.split("#.score", true));
+        Assert.assertNull(TopicRegistry.split("live.#.#", true));
+    }
+
+    @Test
+    public void emptySegmentsAreRejected() {
+        Assert.assertNull(TopicRegistry.split(null, true));
+        Assert.assertNull(TopicRegistry.split("", true));
+        Assert.assertNull(TopicRegistry.split("live..score", true));
+        Assert.assertNull(TopicRegistry.split(".live", true));
+        Assert.assertNull(TopicRegistry.split("live.", true));
+        Assert.assertNull(TopicRegistry.split(".", false));
+    }
+
+    @Test
+    public void wildcardsOnlyAsWholeSegmentsAndOnlyInPatterns() {
+        Assert.assertNull(TopicRegistry.split("live.1*.score", true));
+        Assert.assertNull(TopicRegistry.split("live.a#", true));
+        // 发布的主题中不能有通配符
+        Assert.assertNull(TopicRegistry.split("live.*.score", false));
+        Assert.assertNull(TopicRegistry.split("live.#", false));
+    }
+
+    @Test
+    public void multiWildcardMatchesZeroOrMoreLevels() {
+        TopicRegistry registry = new TopicRegistry();
+        StubWebSocketSession session = new StubWebSocketSession("s1");
+        Assert.assertTrue(registry.subscribe("live.#", "s1", session));
+
+        // live.# 也匹配 live 本身
+        Assert.assertEquals(1, registry.publish("live", "m"));
+        Assert.assertEquals(1, registry.publish("live.1", "m"));
+        Assert.assertEquals(1, registry.publish("live.1.score", "m"));
+        Assert.assertEquals(0, registry.publish("lives", "m"));
+        Assert.assertEquals(0, registry.publish("other.live", "m"));
+    }
+
+    @Test
+    public void singleWildcardMatchesExactlyOneLevel() {
+        TopicRegistry registry = new TopicRegistry();
+        Assert.assertTrue(registry.subscribe("live.*.score", "s1", new StubWebSocketSession("s1")));
+        Assert.assertEquals(1, registry.publish("live.1.score", "m"));
+        Assert.assertEquals(0, registry.publish("live.score", "m"));
+        Assert.assertEquals(0, registry.publish("live.1.2.score", "m"));
+    }
+
+    @Test
+    public void overlappingPatternsDeliverOnce() {
+        TopicRegistry registry = new TopicRegistry();
+        StubWebSocketSession session = new StubWebSocketSession("s1");
+        registry.subscribe("live.#", "s1", session);
+        registry.subscribe("live.*.score", "s1", session);
+        registry.subscribe("live.1.score", "s1", session);
+        Assert.assertEquals(1, registry.publish("live.1.score", "m"));
+        Assert.assertEquals(1, session.getSentCount());
+    }
+
+    @Test
+    public void invalidPatternIsNotSubscribed() {
+        TopicRegistry registry = new TopicRegistry();
+        Assert.assertFalse(registry.subscribe("live.#.score", "s1", new StubWebSocketSession("s1")));
+        Assert.assertFalse(registry.subscribe("live..score", "s1", new StubWebSocketSession("s1")));
+        Assert.assertEquals(0, registry.getSubscriptionCount());
+        Assert.assertFalse(registry.unsubscribe("live.#.score", "s1"));
+    }
+
+    @Test
+    public void failingSubscriberDoesNotStopOthers() {
+        TopicRegistry registry = new TopicRegistry();
+        StubWebSocketSession broken = new StubWebSocketSession("s1");
+        // 例如连接已经被容器关闭，发送时抛出 IllegalStateException
+        broken.setSendFailure(new IllegalStateException("closed"));
+        StubWebSocketSession healthy = new StubWebSocketSession("s2");
+        registry.subscribe("live.1.score", "s1", broken);
+        registry.subscribe("live.1.score", "s2", healthy);
+
+        Assert.assertEquals(1, registry.publish("live.1.score", "m"));
+        Assert.assertEquals(1, healthy.getSentCount());
+    }
+}
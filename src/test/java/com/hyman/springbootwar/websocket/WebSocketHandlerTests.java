@@ -0,0 +1,193 @@
+package com.hyman.springbootwar.websocket;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * 客户端消息的分发：普通文本走默认投递方式、不支持的投递方式、没有管理员 token 的全局群发、订阅数上限，以及开启房间单线程
+ * 执行时连接建立后立即订阅。
+ *
+ * 连接建立时的用户解析要访问 redis，这里直接把 Talker 放入 session 属性，并用 creatRoom 加入房间。
+ */
+public class WebSocketHandlerTests {
+
+    private final WebSocketHandler handler = new WebSocketHandler();
+    private final List<Talker> talkers = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        WebSocketProperties properties = new WebSocketProperties();
+        properties.getRouting().setDefaultRoute(Route.ROOM);
+        properties.getRouting().setAdminTokens(Collections.singletonList("admin-token"));
+        properties.getRouting().setMaxTopicsPerSession(2);
+        handler.setProperties(properties);
+    }
+
+    @After
+    public void tearDown() {
+        for (Talker talker : talkers) {
+            TalkerRoomManager.remove(talker);
+            TalkerRoomManager.deleteRoom(talker.getRoomID());
+        }
+        TalkerRoomManager.stopActors();
+    }
+
+    @Test
+    public void plainPayloadUsesDefaultRoute() throws Exception {
+        StubWebSocketSession sender = connect("route-r1", "s1", "t1");
+        StubWebSocketSession other = connect("route-r1", "s2", "t2");
+        StubWebSocketSession elsewhere = connect("route-r2", "s3", "t3");
+
+        handler.handleTextMessage(sender, new TextMessage("hello"));
+
+        // 默认 ROOM：只发给发送者所在房间
+        awaitSent(sender, 2);
+        awaitSent(other, 2);
+        Assert.assertEquals("hello", payloads(other).get(1));
+        Thread.sleep(20);
+        Assert.assertEquals(1, elsewhere.getSentCount());
+    }
+
+    @Test
+    public void unknownRouteIsReported() throws Exception {
+        StubWebSocketSession sender = connect("route-r3", "s1", "t1");
+        StubWebSocketSession other = connect("route-r3", "s2", "t2");
+
+        handler.handleTextMessage(sender, new TextMessage("{\"route\":\"everyone\",\"body\":\"x\"}"));
+
+        awaitSent(sender, 2);
+        Assert.assertTrue(payloads(sender).get(1).contains("不支持的投递方式"));
+        Thread.sleep(20);
+        Assert.assertEquals(1, other.getSentCount());
+    }
+
+    @Test
+    public void globalNeedsAdminToken() throws Exception {
+        StubWebSocketSession user = connect("route-r4", "s1", "t1");
+        StubWebSocketSession other = connect("route-r5", "s2", "t2");
+
+        handler.handleTextMessage(user, new TextMessage("{\"route\":\"global\",\"body\":\"to all\"}"));
+        awaitSent(user, 2);
+        Assert.assertTrue(payloads(user).get(1).contains("没有全局群发权限"));
+        Thread.sleep(20);
+        Assert.assertEquals(1, other.getSentCount());
+
+        StubWebSocketSession admin = connect("route-r4", "s3", "admin-token");
+        handler.handleTextMessage(admin, new TextMessage("{\"route\":\"global\",\"body\":\"to all\"}"));
+        awaitSent(other, 2);
+        Assert.assertEquals("to all", payloads(other).get(1));
+    }
+
+    @Test
+    public void subscribeCap() throws Exception {
+        StubWebSocketSession session = connect("route-r6", "s1", "t1");
+        subscribe(session, "cap.a");
+        subscribe(session, "cap.b");
+        // 已经订阅的重复订阅不占名额
+        subscribe(session, "cap.a");
+        Assert.assertEquals(1, session.getSentCount());
+
+        subscribe(session, "cap.c");
+        awaitSent(session, 2);
+        Assert.assertTrue(payloads(session).get(1).contains("订阅失败"));
+        Assert.assertEquals(0, TalkerRoomManager.publishToTopic("cap.c", "x"));
+        Assert.assertEquals(1, TalkerRoomManager.publishToTopic("cap.a", "x"));
+
+        // 取消一个之后可以订阅新的
+        handler.handleTextMessage(session, new TextMessage("{\"route\":\"unsubscribe\",\"topic\":\"cap.a\"}"));
+        subscribe(session, "cap.c");
+        Assert.assertEquals(1, TalkerRoomManager.publishToTopic("cap.c", "y"));
+
+        TalkerRoomManager.unsubscribeAll(session, WebSocketHandler.getTalker(session));
+        Assert.assertEquals(0, TalkerRoomManager.publishToTopic("cap.b", "z"));
+    }
+
+    @Test
+    public void concurrentSubscribesRespectCap() throws Exception {
+        StubWebSocketSession session = connect("route-r7", "s1", "t1");
+        Talker talker = WebSocketHandler.getTalker(session);
+        int threads = 8;
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            String topic = "race." + t;
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                TalkerRoomManager.subscribe(session, talker, topic, 2);
+            });
+            thread.start();
+            workers.add(thread);
+        }
+        start.countDown();
+        for (Thread thread : workers) {
+            thread.join();
+        }
+        int subscribed = 0;
+        for (int t = 0; t < threads; t++) {
+            subscribed += TalkerRoomManager.publishToTopic("race." + t, "x");
+        }
+        Assert.assertEquals(2, subscribed);
+        TalkerRoomManager.unsubscribeAll(session, talker);
+    }
+
+    @Test
+    public void subscribeRightAfterConnectWithActors() throws Exception {
+        WebSocketProperties.Actor config = new WebSocketProperties.Actor();
+        config.setEnabled(true);
+        config.setLoops(2);
+        TalkerRoomManager.startActors(config);
+        for (int i = 0; i < 20; i++) {
+            StubWebSocketSession session = connect("route-actor-" + i, "s" + i, "t" + i);
+            Assert.assertTrue(TalkerRoomManager.subscribe(session, WebSocketHandler.getTalker(session), "actor." + i, 2));
+            TalkerRoomManager.unsubscribeAll(session, WebSocketHandler.getTalker(session));
+        }
+    }
+
+    private void subscribe(StubWebSocketSession session, String topic) throws Exception {
+        handler.handleTextMessage(session, new TextMessage("{\"route\":\"subscribe\",\"topic\":\"" + topic + "\"}"));
+    }
+
+    private StubWebSocketSession connect(String roomID, String sessionID, String token) throws InterruptedException {
+        Talker talker = new Talker();
+        talker.setRoomID(roomID);
+        talker.setSessionID(sessionID);
+        talker.setLiveid(roomID);
+        talker.setToken(token);
+        talkers.add(talker);
+        StubWebSocketSession session = new StubWebSocketSession(sessionID).setRecording(true);
+        session.getAttributes().put(WebSocketHandler.TALKER_ATTRIBUTE, talker);
+        TalkerRoomManager.creatRoom(session, talker);
+        // 连接成功的通知
+        awaitSent(session, 1);
+        return session;
+    }
+
+    private static List<String> payloads(StubWebSocketSession session) {
+        List<String> result = new ArrayList<>();
+        for (WebSocketMessage<?> message : session.getMessages()) {
+            result.add(String.valueOf(message.getPayload()));
+        }
+        return result;
+    }
+
+    private static void awaitSent(StubWebSocketSession session, int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (session.getSentCount() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+        Assert.assertEquals(count, session.getSentCount());
+    }
+}
@@ -0,0 +1,193 @@
+package com.hyman.springbootwar.websocket;
+
+import lombok.extern.slf4j.Slf4j;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.boot.web.server.LocalServerPort;
+import org.springframework.context.annotation.Bean;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.client.standard.StandardWebSocketClient;
+import org.springframework.web.socket.handler.TextWebSocketHandler;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * websocket 压测：启动整个应用，通过 /websocket 建立 N 个客户端连接，分布在 M 个房间中，按设定的速率发送消息，统计端到端的
+ * 群发延迟分位数（p50/p99/p999）、吞吐以及堆内存增长。发版前跑一遍，对比上一次的结果，WebSocketHandler、TalkRoom、
+ * TalkerRoomManager 的性能退化在这里就能看出来。
+ *
+ * 需要能连上 redis、mysql 等依赖才能启动应用，所以默认跳过，加 -Dws.load=true 运行：
+ * mvn test -Dtest=WebSocketLoadHarnessTests -Dws.load=true -Dws.load.connections=2000 -Dws.load.rooms=100
+ *
+ * 参数（系统属性）：
+ * ws.load.connections  连接数，默认 1000
+ * ws.load.rooms        房间数，默认 50
+ * ws.load.rate         每秒发送的消息数，默认 100
+ * ws.load.seconds      发送持续的秒数，默认 30
+ * ws.load.mode         client：客户端发送，经 WebSocketHandler 投递给发送者所在的房间（默认）；room：服务端推送给随机一个房间
+ *
+ * 消息内容是发送时的 System.nanoTime()，客户端与服务端在同一个 JVM 中，收到时直接相减就是端到端延迟。
+ */
+@Slf4j
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+public class WebSocketLoadHarnessTests {
+
+    private static final String PREFIX = "lt:";
+
+    private static final int CONNECTIONS = Integer.getInteger("ws.load.connections", 1000);
+    private static final int ROOMS = Integer.getInteger("ws.load.rooms", 50);
+    private static final int RATE = Integer.getInteger("ws.load.rate", 100);
+    private static final int SECONDS = Integer.getInteger("ws.load.seconds", 30);
+    private static final String MODE = System.getProperty("ws.load.mode", "client");
+
+    @LocalServerPort
+    private int port;
+
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final LongAdder received = new LongAdder();
+
+    @BeforeClass
+    public static void enabled() {
+        Assume.assumeTrue("加 -Dws.load=true 运行压测", Boolean.getBoolean("ws.load"));
+    }
+
+    @Test
+    public void fanoutLatency() throws Exception {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        long heapBefore = usedHeap(memory);
+        int onlineBefore = TalkerRoomManager.getOnlineCount();
+
+        List<WebSocketSession> clients = connect();
+        waitFor(() -> TalkerRoomManager.getOnlineCount() - onlineBefore >= CONNECTIONS, 60);
+        long heapConnected = usedHeap(memory);
+
+        long expected = drive(clients);
+        waitFor(() -> received.sum() >= expected, 30);
+        long heapAfterRun = usedHeap(memory);
+
+        for (WebSocketSession client : clients) {
+            client.close();
+        }
+        waitFor(() -> TalkerRoomManager.getOnlineCount() <= onlineBefore, 30);
+        long heapClosed = usedHeap(memory);
+
+        log.info("mode={} connections={} rooms={} rate={}/s seconds={}", MODE, CONNECTIONS, ROOMS, RATE, SECONDS);
+        log.info("delivered {}/{} ({} msg/s), latency p50={}us p99={}us p999={}us max={}us",
+                received.sum(), expected, received.sum() / SECONDS,
+                latency.percentile(0.5), latency.percentile(0.99), latency.percentile(0.999), latency.percentile(1.0));
+        log.info("heap connected +{} KB ({} B/connection), after run +{} KB, after close +{} KB",
+                (heapConnected - heapBefore) / 1024, (heapConnected - heapBefore) / CONNECTIONS,
+                (heapAfterRun - heapBefore) / 1024, (heapClosed - heapBefore) / 1024);
+        log.info("server stats: fanoutDropped={} heartbeat={}",
+                TalkerRoomManager.getFanoutEngine().getDroppedCount(), TalkerRoomManager.getHeartbeat().stats());
+
+        Assert.assertTrue("没有收到任何消息", received.sum() > 0);
+    }
+
+    private List<WebSocketSession> connect() throws Exception {
+        StandardWebSocketClient client = new StandardWebSocketClient();
+        TextWebSocketHandler handler = new TextWebSocketHandler() {
+            @Override
+            protected void handleTextMessage(WebSocketSession session, TextMessage message) {
+                String payload = message.getPayload();
+                if (payload.startsWith(PREFIX)) {
+                    latency.record((System.nanoTime() - Long.parseLong(payload.substring(PREFIX.length()))) / 1000);
+                    received.increment();
+                }
+            }
+        };
+        List<WebSocketSession> clients = new ArrayList<>(CONNECTIONS);
+        for (int i = 0; i < CONNECTIONS; i++) {
+            String url = "ws://localhost:" + port + "/websocket?token=load-" + i + "&room=load-room-" + (i % ROOMS);
+            clients.add(client.doHandshake(handler, url).get(10, TimeUnit.SECONDS));
+        }
+        return clients;
+    }
+
+    /**
+     * 按速率发送，返回预期收到的消息总数
+     */
+    private long drive(List<WebSocketSession> clients) throws Exception {
+        long expected = 0;
+        long sent = 0;
+        long total = (long) RATE * SECONDS;
+        long begin = System.nanoTime();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        while (sent < total) {
+            long due = Math.min(total, (System.nanoTime() - begin) * RATE / 1_000_000_000L);
+            for (; sent < due; sent++) {
+                String message = PREFIX + System.nanoTime();
+                if ("room".equals(MODE)) {
+                    String roomID = "load-room-" + random.nextInt(ROOMS);
+                    TalkRoom room = TalkerRoomManager.getRoom(roomID);
+                    expected += room == null ? 0 : room.size();
+                    TalkerRoomManager.sendToRoom(roomID, message);
+                } else {
+                    // 单线程发送，同一个客户端 session 不会被并发写
+                    int index = (int) (sent % clients.size());
+                    TalkRoom room = TalkerRoomManager.getRoom("load-room-" + (index % ROOMS));
+                    expected += room == null ? 0 : room.size();
+                    clients.get(index).sendMessage(new TextMessage(message));
+                }
+            }
+            Thread.sleep(1);
+        }
+        return expected;
+    }
+
+    private static long usedHeap(MemoryMXBean memory) throws InterruptedException {
+        System.gc();
+        Thread.sleep(200);
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+
+    private static void waitFor(Condition condition, int seconds) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + seconds * 1000L;
+        while (!condition.done() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+    }
+
+    private interface Condition {
+        boolean done();
+    }
+
+    /**
+     * 压测用的 token 校验与用户解析：token 全部放行，房间号从连接地址的 room 参数中取，不依赖 redis 中的登录信息
+     */
+    @TestConfiguration
+    static class LoadConfig {
+
+        @Bean
+        public TokenVerifier loadTokenVerifier() {
+            return token -> true;
+        }
+
+        @Bean
+        public TalkerResolver loadTalkerResolver() {
+            return session -> {
+                String query = session.getUri().getQuery();
+                Talker talker = new Talker();
+                talker.setToken(MyInterceptor.getParameter(query, "token"));
+                talker.setSessionID(session.getId());
+                talker.setRoomID(MyInterceptor.getParameter(query, "room"));
+                talker.setLiveid(talker.getRoomID());
+                return talker;
+            };
+        }
+    }
+}